@@ -79,6 +79,148 @@ public final class ConvexHull {
 		return upperHull;
 	}
 	
+	
+	// Computes the convex hull of the first n points given by the coordinate arrays xs and ys,
+	// without creating point objects. The hull vertices are written to hullXs and hullYs, which
+	// need room for at least 2 * n points while the hull is assembled, and the number of vertices
+	// is returned. Produces the same vertices in the same order as makeHull.
+	// This algorithm runs in O(n log n) time.
+	public static int makeHull(double[] xs, double[] ys, int n, double[] hullXs, double[] hullYs) {
+		if (n <= 1) {
+			for (int i = 0; i < n; i++) {
+				hullXs[i] = xs[i];
+				hullYs[i] = ys[i];
+			}
+			return n;
+		}
+		
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		sortByCoordinates(order, new int[n], 0, n, xs, ys);
+		
+		// upper hull, kept at the start of the output arrays
+		int upperSize = 0;
+		for (int k = 0; k < n; k++) {
+			double px = xs[order[k]];
+			double py = ys[order[k]];
+			while (upperSize >= 2) {
+				double qx = hullXs[upperSize - 1], qy = hullYs[upperSize - 1];
+				double rx = hullXs[upperSize - 2], ry = hullYs[upperSize - 2];
+				if ((qx - rx) * (py - ry) >= (qy - ry) * (px - rx))
+					upperSize--;
+				else
+					break;
+			}
+			hullXs[upperSize] = px;
+			hullYs[upperSize] = py;
+			upperSize++;
+		}
+		upperSize--;
+		
+		// lower hull, appended after the upper hull
+		int size = upperSize;
+		for (int k = n - 1; k >= 0; k--) {
+			double px = xs[order[k]];
+			double py = ys[order[k]];
+			while (size - upperSize >= 2) {
+				double qx = hullXs[size - 1], qy = hullYs[size - 1];
+				double rx = hullXs[size - 2], ry = hullYs[size - 2];
+				if ((qx - rx) * (py - ry) >= (qy - ry) * (px - rx))
+					size--;
+				else
+					break;
+			}
+			hullXs[size] = px;
+			hullYs[size] = py;
+			size++;
+		}
+		size--;
+		
+		// all points are equal, both chains consist of the same single point
+		if (upperSize == 1 && size == 2 && hullXs[0] == hullXs[1] && hullYs[0] == hullYs[1])
+			size = 1;
+		return size;
+	}
+	
+	
+	// Returns the largest distance between any two vertices of the given convex polygon, whose
+	// vertices are given in either clockwise or counterclockwise order without repetition (as produced
+	// by makeHull). Uses rotating calipers over the antipodal vertex pairs, which runs in O(h) time.
+	public static double getDiameter(double[] hullXs, double[] hullYs, int h) {
+		if (h <= 1)
+			return 0;
+		if (h == 2)
+			return Math.hypot(hullXs[1] - hullXs[0], hullYs[1] - hullYs[0]);
+		
+		double maxSquaredDistance = 0;
+		int j = 1;
+		for (int i = 0; i < h; i++) {
+			int nextI = (i + 1) % h;
+			double edgeX = hullXs[nextI] - hullXs[i];
+			double edgeY = hullYs[nextI] - hullYs[i];
+			
+			// move j forward while the next vertex is further away from the edge (i, i + 1)
+			while (true) {
+				int nextJ = (j + 1) % h;
+				double area = Math.abs(edgeX * (hullYs[j] - hullYs[i]) - edgeY * (hullXs[j] - hullXs[i]));
+				double nextArea = Math.abs(edgeX * (hullYs[nextJ] - hullYs[i]) - edgeY * (hullXs[nextJ] - hullXs[i]));
+				if (nextArea > area)
+					j = nextJ;
+				else
+					break;
+			}
+			
+			// j is antipodal to both end points of the edge
+			maxSquaredDistance = Math.max(maxSquaredDistance, squaredDistance(hullXs, hullYs, i, j));
+			maxSquaredDistance = Math.max(maxSquaredDistance, squaredDistance(hullXs, hullYs, nextI, j));
+		}
+		return Math.sqrt(maxSquaredDistance);
+	}
+	
+	
+	private static double squaredDistance(double[] xs, double[] ys, int a, int b) {
+		double dx = xs[a] - xs[b];
+		double dy = ys[a] - ys[b];
+		return dx * dx + dy * dy;
+	}
+	
+	
+	// Sorts the point indexes in order[from, to) by x, then y coordinate, like ConvexHullPoint.compareTo.
+	// Stable merge sort, using buffer as temporary storage.
+	private static void sortByCoordinates(int[] order, int[] buffer, int from, int to, double[] xs, double[] ys) {
+		if (to - from <= 1)
+			return;
+		int middle = (from + to) >>> 1;
+		sortByCoordinates(order, buffer, from, middle, xs, ys);
+		sortByCoordinates(order, buffer, middle, to, xs, ys);
+		
+		// both halves are already in order, which is common for trajectories
+		if (compareCoordinates(order[middle - 1], order[middle], xs, ys) <= 0)
+			return;
+		
+		int left = from, right = middle, out = from;
+		while (left < middle && right < to) {
+			if (compareCoordinates(order[left], order[right], xs, ys) <= 0)
+				buffer[out++] = order[left++];
+			else
+				buffer[out++] = order[right++];
+		}
+		while (left < middle)
+			buffer[out++] = order[left++];
+		while (right < to)
+			buffer[out++] = order[right++];
+		System.arraycopy(buffer, from, order, from, to - from);
+	}
+	
+	
+	private static int compareCoordinates(int a, int b, double[] xs, double[] ys) {
+		if (xs[a] != xs[b])
+			return Double.compare(xs[a], xs[b]);
+		else
+			return Double.compare(ys[a], ys[b]);
+	}
+	
 }
 
 
@@ -0,0 +1,83 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.DerivedChannelPlan;
+import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FrameDataReader;
+import com.romanuhlig.weka.frameToFeature.FrameDataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the time required to read all recordings when computing every derived channel,
+ * and when computing only the channels required by the current settings
+ * <p>
+ * Reads the files in the input folder given as the first argument,
+ * or the input folder set in TestBenchSettings if there is none.
+ *
+ * @author Roman Uhlig
+ */
+public class DerivedChannelBenchmark {
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    public static void main(String[] args) throws IOException {
+
+        String inputFolder = args.length > 0 ? args[0] : TestBenchSettings.getInputBaseFolder();
+        ArrayList<String> filePaths = FrameDataReaderBenchmark.getInputFilePaths(inputFolder);
+
+        long totalBytes = 0;
+        for (String filePath : filePaths) {
+            totalBytes += new File(filePath).length();
+        }
+        System.out.println("files:   " + filePaths.size() + "     size:   " + (totalBytes >> 20) + " MB");
+
+        DerivedChannelPlan allChannels = DerivedChannelPlan.all();
+        DerivedChannelPlan settingsChannels = DerivedChannelPlan.fromSettings();
+        System.out.println("channels required by the settings:"
+                + "     linear velocity:   " + settingsChannels.includesLinearVelocity()
+                + "     linear acceleration:   " + settingsChannels.includesLinearAcceleration()
+                + "     angular velocity:   " + settingsChannels.includesAngularVelocity()
+                + "     angular acceleration:   " + settingsChannels.includesAngularAcceleration());
+
+        // make sure leaving out channels does not change the features, before comparing the speed
+        for (String filePath : filePaths) {
+            FrameDataSet withAllChannels = FrameDataReader.readFrameDataSet(filePath, allChannels);
+            FrameDataSet withSettingsChannels = FrameDataReader.readFrameDataSet(filePath, settingsChannels);
+            if (!Arrays.equals(
+                    FeatureExtractor.getFeaturesForFrameDataSet(withAllChannels).getFeaturesWithClassAndSubject(),
+                    FeatureExtractor.getFeaturesForFrameDataSet(withSettingsChannels)
+                            .getFeaturesWithClassAndSubject())) {
+                System.out.println("derived channel plans produced different features for " + filePath);
+                return;
+            }
+        }
+
+        for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+            long startAll = System.nanoTime();
+            for (String filePath : filePaths) {
+                FrameDataReader.readFrameDataSet(filePath, allChannels);
+            }
+            long durationAll = System.nanoTime() - startAll;
+
+            long startSettings = System.nanoTime();
+            for (String filePath : filePaths) {
+                FrameDataReader.readFrameDataSet(filePath, settingsChannels);
+            }
+            long durationSettings = System.nanoTime() - startSettings;
+
+            if (round >= warmupRounds) {
+                System.out.println("round " + (round - warmupRounds + 1)
+                        + "     all channels:   " + FrameDataReaderBenchmark.formatDuration(durationAll, totalBytes)
+                        + "     settings:   " + FrameDataReaderBenchmark.formatDuration(durationSettings, totalBytes)
+                        + "     speedup:   " + String.format("%.2f", durationAll / (double) durationSettings));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FrameDataCache;
+import com.romanuhlig.weka.frameToFeature.FrameDataReader;
+import com.romanuhlig.weka.frameToFeature.FrameDataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the time required to parse all recordings with the time required to load them from the FrameDataCache
+ * <p>
+ * Reads the files in the input folder given as the first argument,
+ * or the input folder set in TestBenchSettings if there is none.
+ * The cache is created in a temporary folder, which is removed afterwards.
+ *
+ * @author Roman Uhlig
+ */
+public class FrameDataCacheBenchmark {
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    public static void main(String[] args) throws IOException {
+
+        String inputFolder = args.length > 0 ? args[0] : TestBenchSettings.getInputBaseFolder();
+        ArrayList<String> filePaths = FrameDataReaderBenchmark.getInputFilePaths(inputFolder);
+
+        long totalBytes = 0;
+        for (String filePath : filePaths) {
+            totalBytes += new File(filePath).length();
+        }
+        System.out.println("files:   " + filePaths.size() + "     size:   " + (totalBytes >> 20) + " MB");
+
+        File cacheFolder = Files.createTempDirectory("frameDataCache").toFile();
+        try {
+            // fill the cache, and make sure the cached data produces the same features as the parsed data
+            long startFill = System.nanoTime();
+            for (String filePath : filePaths) {
+                FrameDataCache.readFrameDataSet(filePath, cacheFolder.getPath());
+            }
+            System.out.println("filling cache:   " + FrameDataReaderBenchmark.formatDuration(
+                    System.nanoTime() - startFill, totalBytes));
+
+            for (String filePath : filePaths) {
+                FrameDataSet fromReader = FrameDataReader.readFrameDataSet(filePath);
+                FrameDataSet fromCache = FrameDataCache.readFrameDataSet(filePath, cacheFolder.getPath());
+                if (!Arrays.equals(
+                        FeatureExtractor.getFeaturesForFrameDataSet(fromReader).getFeaturesWithClassAndSubject(),
+                        FeatureExtractor.getFeaturesForFrameDataSet(fromCache).getFeaturesWithClassAndSubject())) {
+                    System.out.println("cache produced different data for " + filePath);
+                    return;
+                }
+            }
+
+            for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+                long startReader = System.nanoTime();
+                for (String filePath : filePaths) {
+                    FrameDataReader.readFrameDataSet(filePath);
+                }
+                long durationReader = System.nanoTime() - startReader;
+
+                long startCache = System.nanoTime();
+                for (String filePath : filePaths) {
+                    FrameDataCache.readFrameDataSet(filePath, cacheFolder.getPath());
+                }
+                long durationCache = System.nanoTime() - startCache;
+
+                if (round >= warmupRounds) {
+                    System.out.println("round " + (round - warmupRounds + 1)
+                            + "     FrameDataReader:   " + FrameDataReaderBenchmark.formatDuration(
+                            durationReader, totalBytes)
+                            + "     FrameDataCache:   " + FrameDataReaderBenchmark.formatDuration(
+                            durationCache, totalBytes)
+                            + "     speedup:   " + String.format("%.1f", durationReader / (double) durationCache));
+                }
+            }
+
+        } finally {
+            File[] cacheFiles = cacheFolder.listFiles();
+            if (cacheFiles != null) {
+                for (File cacheFile : cacheFiles) {
+                    cacheFile.delete();
+                }
+            }
+            cacheFolder.delete();
+        }
+    }
+}
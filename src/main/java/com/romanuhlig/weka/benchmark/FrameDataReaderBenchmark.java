@@ -0,0 +1,105 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FrameDataReader;
+import com.romanuhlig.weka.frameToFeature.FrameDataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the time required to read all recordings through the dedicated FrameDataReader
+ * and through the previously used OpenCSV bean mapping
+ * <p>
+ * Reads the files in the input folder given as the first argument,
+ * or the input folder set in TestBenchSettings if there is none.
+ *
+ * @author Roman Uhlig
+ */
+public class FrameDataReaderBenchmark {
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    public static void main(String[] args) throws IOException {
+
+        String inputFolder = args.length > 0 ? args[0] : TestBenchSettings.getInputBaseFolder();
+        ArrayList<String> filePaths = getInputFilePaths(inputFolder);
+
+        long totalBytes = 0;
+        for (String filePath : filePaths) {
+            totalBytes += new File(filePath).length();
+        }
+        System.out.println("files:   " + filePaths.size() + "     size:   " + (totalBytes >> 20) + " MB");
+
+        // make sure both readers produce the same data, before comparing their speed
+        for (String filePath : filePaths) {
+            FrameDataSet fromReader = FrameDataReader.readFrameDataSet(filePath);
+            FrameDataSet fromOpenCsv = FeatureExtractor.readFrameDataSetWithOpenCsv(filePath);
+            if (!Arrays.equals(
+                    FeatureExtractor.getFeaturesForFrameDataSet(fromReader).getFeaturesWithClassAndSubject(),
+                    FeatureExtractor.getFeaturesForFrameDataSet(fromOpenCsv).getFeaturesWithClassAndSubject())) {
+                System.out.println("readers produced different data for " + filePath);
+                return;
+            }
+        }
+
+        for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+            long startOpenCsv = System.nanoTime();
+            for (String filePath : filePaths) {
+                FeatureExtractor.readFrameDataSetWithOpenCsv(filePath);
+            }
+            long durationOpenCsv = System.nanoTime() - startOpenCsv;
+
+            long startReader = System.nanoTime();
+            for (String filePath : filePaths) {
+                FrameDataReader.readFrameDataSet(filePath);
+            }
+            long durationReader = System.nanoTime() - startReader;
+
+            if (round >= warmupRounds) {
+                System.out.println("round " + (round - warmupRounds + 1)
+                        + "     OpenCSV:   " + formatDuration(durationOpenCsv, totalBytes)
+                        + "     FrameDataReader:   " + formatDuration(durationReader, totalBytes)
+                        + "     speedup:   " + String.format("%.1f", durationOpenCsv / (double) durationReader));
+            }
+        }
+    }
+
+    /**
+     * Collect all recordings within the given folder
+     *
+     * @param inputFolder
+     * @return
+     */
+    static ArrayList<String> getInputFilePaths(String inputFolder) {
+
+        File[] listOfInputFiles = new File(inputFolder).listFiles();
+        ArrayList<String> filePaths = new ArrayList<>();
+        if (listOfInputFiles != null) {
+            for (File inputFile : listOfInputFiles) {
+                if (inputFile.getName().endsWith(".csv") && !inputFile.getName().startsWith(".~")) {
+                    filePaths.add(inputFile.getPath());
+                }
+            }
+        }
+        return filePaths;
+    }
+
+    /**
+     * Duration in milliseconds, and the resulting throughput
+     *
+     * @param nanoseconds
+     * @param bytes
+     * @return
+     */
+    static String formatDuration(long nanoseconds, long bytes) {
+        double seconds = nanoseconds / 1e9;
+        return String.format("%7.0f ms (%6.1f MB/s)", seconds * 1000, bytes / seconds / (1 << 20));
+    }
+}
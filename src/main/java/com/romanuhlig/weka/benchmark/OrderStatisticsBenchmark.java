@@ -0,0 +1,174 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.frameToFeature.StatisticalValueCollector;
+import com.romanuhlig.weka.math.OrderStatistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the time required to determine the order statistics used as features (quartiles, minimum, maximum)
+ * by sorting each window, and by selection as done in StatisticalValueCollector
+ * <p>
+ * Windows hold 450 to 600 values, which corresponds to windows of 5 seconds at 90 Hz.
+ * The values follow a random walk, similar to the position of a sensor.
+ *
+ * @author Roman Uhlig
+ */
+public class OrderStatisticsBenchmark {
+
+    // window sizes to compare
+    private static final int[] windowSizes = new int[]{450, 525, 600};
+
+    // number of different windows, and how often all of them are processed in each round
+    private static final int numberOfWindows = 1000;
+    private static final int repetitionsPerRound = 20;
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    // prevents the JIT compiler from removing the computations
+    private static double blackhole = 0;
+
+    public static void main(String[] args) {
+
+        Random random = new Random(42);
+
+        for (int windowSize : windowSizes) {
+
+            double[][] windows = new double[numberOfWindows][windowSize];
+            for (double[] window : windows) {
+                double value = random.nextGaussian();
+                for (int i = 0; i < windowSize; i++) {
+                    value += random.nextGaussian() * 0.01;
+                    window[i] = value;
+                }
+            }
+
+            // make sure both approaches produce the same results, before comparing their speed
+            for (double[] window : windows) {
+                if (!Arrays.equals(orderStatisticsBySorting(window), orderStatisticsByCollector(window))) {
+                    System.out.println("sorting and selection produced different results");
+                    return;
+                }
+            }
+
+            long[] keys = new long[windowSize];
+            double[] sorted = new double[windowSize];
+
+            for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+                long startSorting = System.nanoTime();
+                for (int repetition = 0; repetition < repetitionsPerRound; repetition++) {
+                    for (double[] window : windows) {
+                        blackhole += sortAndSum(window, sorted);
+                    }
+                }
+                long durationSorting = System.nanoTime() - startSorting;
+
+                long startSelection = System.nanoTime();
+                for (int repetition = 0; repetition < repetitionsPerRound; repetition++) {
+                    for (double[] window : windows) {
+                        blackhole += selectAndSum(window, keys);
+                    }
+                }
+                long durationSelection = System.nanoTime() - startSelection;
+
+                if (round >= warmupRounds) {
+                    long windowsPerRound = (long) numberOfWindows * repetitionsPerRound;
+                    System.out.println("window size " + windowSize + "     round " + (round - warmupRounds + 1)
+                            + "     sort:   " + String.format("%6.2f", durationSorting / 1e3 / windowsPerRound)
+                            + " us/window     select:   "
+                            + String.format("%6.2f", durationSelection / 1e3 / windowsPerRound)
+                            + " us/window     speedup:   "
+                            + String.format("%.1f", durationSorting / (double) durationSelection));
+                }
+            }
+        }
+
+        // print the blackhole, so that it is actually used
+        System.out.println("(" + blackhole + ")");
+    }
+
+    /**
+     * The quartiles, minimum and maximum of a window, determined by sorting a copy
+     *
+     * @param window
+     * @param sorted room for a copy of the window
+     * @return the sum of all order statistics
+     */
+    private static double sortAndSum(double[] window, double[] sorted) {
+        int n = window.length;
+        System.arraycopy(window, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        return sorted[(int) ((n - 1) * 0.25)] + sorted[(int) ((n - 1) * 0.75)] + sorted[0] + sorted[n - 1];
+    }
+
+    /**
+     * The quartiles, minimum and maximum of a window, determined by selection
+     * <p>
+     * The collector tracks minimum and maximum while values are added, which is done here in the same pass
+     * that creates the keys
+     *
+     * @param window
+     * @param keys   room for the keys of the window
+     * @return the sum of all order statistics
+     */
+    private static double selectAndSum(double[] window, long[] keys) {
+        int n = window.length;
+        double minimum = window[0];
+        double maximum = window[0];
+        for (int i = 0; i < n; i++) {
+            double value = window[i];
+            keys[i] = OrderStatistics.toSortableKey(value);
+            if (Double.compare(value, minimum) < 0) {
+                minimum = value;
+            } else if (Double.compare(value, maximum) > 0) {
+                maximum = value;
+            }
+        }
+        int upperIndex = (int) ((n - 1) * 0.75);
+        int lowerIndex = (int) ((n - 1) * 0.25);
+        OrderStatistics.select(keys, 0, n, upperIndex);
+        OrderStatistics.select(keys, 0, upperIndex, lowerIndex);
+        return OrderStatistics.fromSortableKey(keys[lowerIndex]) + OrderStatistics.fromSortableKey(keys[upperIndex])
+                + minimum + maximum;
+    }
+
+    /**
+     * The order statistics used as features, by sorting a copy of the window
+     *
+     * @param window
+     * @return
+     */
+    private static double[] orderStatisticsBySorting(double[] window) {
+        double[] sorted = window.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        double quartile1 = sorted[(int) ((n - 1) * 0.25)];
+        double quartile3 = sorted[(int) ((n - 1) * 0.75)];
+        return new double[]{
+                quartile3 - quartile1, sorted[n - 1], sorted[0], Math.abs(sorted[n - 1] - sorted[0]),
+                quartile1, quartile3
+        };
+    }
+
+    /**
+     * The order statistics used as features, as determined by StatisticalValueCollector
+     *
+     * @param window
+     * @return
+     */
+    private static double[] orderStatisticsByCollector(double[] window) {
+        StatisticalValueCollector collector =
+                new StatisticalValueCollector(false, false, 1, 1, window.length);
+        for (double value : window) {
+            collector.addValue(value, 1);
+        }
+        return new double[]{
+                collector.sort_getInterquartileRange(), collector.sort_getMax(), collector.sort_getMin(),
+                collector.sort_getRange(), collector.sort_getPercentile(0.25), collector.sort_getPercentile(0.75)
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.quickhull3d.QuickHull3D;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the throughput of QuickHull3D with and without pooling, for point sets of the size of a window
+ * <p>
+ * Both hull objects are reused for all point sets, so that the comparison only shows the effect of keeping
+ * faces and half-edges between builds. Point sets are taken from the surface of a sphere, where every point is a
+ * vertex of the hull, and from a random walk, similar to the positions of a sensor.
+ * If the JVM supports it, the memory allocated per hull is shown as well.
+ *
+ * @author Roman Uhlig
+ */
+public class QuickHull3DBenchmark {
+
+    // numbers of points per hull to compare
+    private static final int[] pointCounts = new int[]{500, 1000, 1500, 2000};
+
+    // number of different point sets, and how often all of them are processed in each round
+    private static final int numberOfPointSets = 100;
+    private static final int repetitionsPerRound = 3;
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    // prevents the JIT compiler from removing the computations
+    private static long blackhole = 0;
+
+    public static void main(String[] args) {
+
+        Random random = new Random(42);
+
+        QuickHull3D unpooledHull = new QuickHull3D();
+        QuickHull3D pooledHull = new QuickHull3D();
+        pooledHull.setPooling(true);
+
+        for (boolean sphere : new boolean[]{true, false}) {
+            for (int pointCount : pointCounts) {
+
+                double[][] pointSets = new double[numberOfPointSets][];
+                for (int i = 0; i < numberOfPointSets; i++) {
+                    pointSets[i] = sphere ? pointsOnSphere(random, pointCount) : pointsOfRandomWalk(random, pointCount);
+                }
+
+                // make sure both modes produce the same hulls, before comparing their speed
+                int[] unpooledIndices = new int[pointCount];
+                int[] pooledIndices = new int[pointCount];
+                for (double[] pointSet : pointSets) {
+                    unpooledHull.build(pointSet, pointCount);
+                    pooledHull.build(pointSet, pointCount);
+                    int unpooledVertices = unpooledHull.getVertexPointIndices(unpooledIndices);
+                    int pooledVertices = pooledHull.getVertexPointIndices(pooledIndices);
+                    if (unpooledVertices != pooledVertices
+                            || unpooledHull.getNumFaces() != pooledHull.getNumFaces()
+                            || !Arrays.equals(Arrays.copyOf(unpooledIndices, unpooledVertices),
+                            Arrays.copyOf(pooledIndices, pooledVertices))) {
+                        System.out.println("pooled and unpooled hulls are different");
+                        return;
+                    }
+                }
+
+                for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+                    long startAllocationUnpooled = getAllocatedBytes();
+                    long startUnpooled = System.nanoTime();
+                    buildAll(unpooledHull, pointSets, pointCount, unpooledIndices);
+                    long durationUnpooled = System.nanoTime() - startUnpooled;
+                    long allocationUnpooled = getAllocatedBytes() - startAllocationUnpooled;
+
+                    long startAllocationPooled = getAllocatedBytes();
+                    long startPooled = System.nanoTime();
+                    buildAll(pooledHull, pointSets, pointCount, pooledIndices);
+                    long durationPooled = System.nanoTime() - startPooled;
+                    long allocationPooled = getAllocatedBytes() - startAllocationPooled;
+
+                    if (round >= warmupRounds) {
+                        long hullsPerRound = (long) numberOfPointSets * repetitionsPerRound;
+                        System.out.println((sphere ? "sphere     " : "random walk") + "   "
+                                + String.format("%4d", pointCount) + " points     round " + (round - warmupRounds + 1)
+                                + "     unpooled:   " + String.format("%7.0f", hullsPerRound / (durationUnpooled / 1e9))
+                                + " hulls/s " + String.format("%7.0f", allocationUnpooled / (double) hullsPerRound)
+                                + " bytes/hull     pooled:   "
+                                + String.format("%7.0f", hullsPerRound / (durationPooled / 1e9))
+                                + " hulls/s " + String.format("%7.0f", allocationPooled / (double) hullsPerRound)
+                                + " bytes/hull     speedup:   "
+                                + String.format("%.2f", durationUnpooled / (double) durationPooled));
+                    }
+                }
+            }
+        }
+
+        // print the blackhole, so that it is actually used
+        System.out.println("(" + blackhole + ")");
+    }
+
+    /**
+     * Build the hulls of all point sets, as often as set for each round
+     *
+     * @param hull
+     * @param pointSets
+     * @param pointCount
+     * @param indices    room for the vertex indices of a hull
+     */
+    private static void buildAll(QuickHull3D hull, double[][] pointSets, int pointCount, int[] indices) {
+        for (int repetition = 0; repetition < repetitionsPerRound; repetition++) {
+            for (double[] pointSet : pointSets) {
+                hull.build(pointSet, pointCount);
+                int numberOfVertices = hull.getVertexPointIndices(indices);
+                blackhole += numberOfVertices + indices[numberOfVertices - 1];
+            }
+        }
+    }
+
+    /**
+     * Random points on the surface of the unit sphere
+     *
+     * @param random
+     * @param pointCount
+     * @return x, y and z coordinates of each point
+     */
+    private static double[] pointsOnSphere(Random random, int pointCount) {
+        double[] coordinates = new double[pointCount * 3];
+        for (int p = 0; p < pointCount; p++) {
+            double x = random.nextGaussian();
+            double y = random.nextGaussian();
+            double z = random.nextGaussian();
+            double length = Math.sqrt(x * x + y * y + z * z);
+            coordinates[p * 3] = x / length;
+            coordinates[p * 3 + 1] = y / length;
+            coordinates[p * 3 + 2] = z / length;
+        }
+        return coordinates;
+    }
+
+    /**
+     * Points of a random walk, in which the step direction changes slowly
+     *
+     * @param random
+     * @param pointCount
+     * @return x, y and z coordinates of each point
+     */
+    private static double[] pointsOfRandomWalk(Random random, int pointCount) {
+        double[] coordinates = new double[pointCount * 3];
+        double[] position = new double[3];
+        double[] step = new double[3];
+        for (int p = 0; p < pointCount; p++) {
+            for (int axis = 0; axis < 3; axis++) {
+                step[axis] = step[axis] * 0.95 + random.nextGaussian() * 0.001;
+                position[axis] += step[axis];
+                coordinates[p * 3 + axis] = position[axis];
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * The number of bytes allocated by the current thread so far, if supported by the JVM
+     *
+     * @return 0, if not supported
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,294 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.ConvexHull.ConvexHull;
+import com.romanuhlig.weka.ConvexHull.ConvexHullPoint;
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FrameDataReader;
+import com.romanuhlig.weka.frameToFeature.FrameDataSet;
+import com.romanuhlig.weka.frameToFeature.SensorColumns;
+import com.romanuhlig.weka.math.MathHelper;
+import com.romanuhlig.weka.math.PointSetRange;
+import com.romanuhlig.weka.quickhull3d.Point3d;
+import com.romanuhlig.weka.quickhull3d.QuickHull3D;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the time required to calculate the range of each sensor within a window
+ * (the largest distance between two of its positions) with the time required for all features of the window
+ * <p>
+ * The range is determined by creating a new hull from point objects and comparing all pairs of hull vertices,
+ * as the feature was originally implemented, and by PointSetRange, which reuses its arrays and searches
+ * either among the vertices of a reused hull, or among all points.
+ * The same comparison is done for the 2D range (X and Z), between ConvexHull.makeHull on point objects
+ * and the coordinate array path with rotating calipers.
+ * <p>
+ * Reads the files in the input folder given as the first argument,
+ * or the input folder set in TestBenchSettings if there is none.
+ *
+ * @author Roman Uhlig
+ */
+public class RangeFeatureBenchmark {
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    // the largest accepted difference between both range computations, relative to the range
+    private static final double relativeTolerance = 1e-12;
+
+    // prevents the JIT compiler from removing the computations
+    private static double blackhole = 0;
+
+    public static void main(String[] args) throws IOException {
+
+        String inputFolder = args.length > 0 ? args[0] : TestBenchSettings.getInputBaseFolder();
+        ArrayList<FrameDataSet> windows = readWindows(inputFolder);
+
+        int numberOfRanges = 0;
+        for (FrameDataSet window : windows) {
+            numberOfRanges += window.getAllSensorColumns().size();
+        }
+        System.out.println("windows:   " + windows.size() + "     sensor ranges:   " + numberOfRanges);
+
+        // make sure both computations produce the same ranges, before comparing the speed
+        PointSetRange pointSetRange = new PointSetRange();
+        for (FrameDataSet window : windows) {
+            for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                int firstFrameIndex = window.getFirstFrameIndex();
+                int endFrameIndex = window.getEndFrameIndex(sensorColumns);
+                double original = getRangeXYZWithPointObjects(sensorColumns, firstFrameIndex, endFrameIndex);
+                double reused = pointSetRange.getRangeXYZOfHull(sensorColumns.getPosX(), sensorColumns.getPosY(),
+                        sensorColumns.getPosZ(), firstFrameIndex, endFrameIndex);
+                double pruned = pointSetRange.getRangeXYZ(sensorColumns.getPosX(), sensorColumns.getPosY(),
+                        sensorColumns.getPosZ(), firstFrameIndex, endFrameIndex);
+                double original2D = getRangeXZWithPointObjects(sensorColumns, firstFrameIndex, endFrameIndex);
+                double calipers2D = getRangeXZWithCalipers(sensorColumns, firstFrameIndex, endFrameIndex);
+                // without a hull, the search also finds the range of points that do not span a volume
+                if (!isSameRange(original, reused) || (original != 0 && !isSameRange(original, pruned))
+                        || !isSameRange(original2D, calipers2D)) {
+                    System.out.println("range computations differ for " + sensorColumns.getSensorPosition()
+                            + ":   " + original + " / " + reused + " / " + pruned
+                            + "     2D:   " + original2D + " / " + calipers2D);
+                    return;
+                }
+            }
+        }
+
+        for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+            long startFeatures = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                blackhole += FeatureExtractor.getFeaturesForFrameDataSet(window).getNumberOfFeatures();
+            }
+            long durationFeatures = System.nanoTime() - startFeatures;
+
+            long startOriginal = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                    blackhole += getRangeXYZWithPointObjects(sensorColumns,
+                            window.getFirstFrameIndex(), window.getEndFrameIndex(sensorColumns));
+                }
+            }
+            long durationOriginal = System.nanoTime() - startOriginal;
+
+            long startReused = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                    blackhole += pointSetRange.getRangeXYZOfHull(sensorColumns.getPosX(), sensorColumns.getPosY(),
+                            sensorColumns.getPosZ(), window.getFirstFrameIndex(),
+                            window.getEndFrameIndex(sensorColumns));
+                }
+            }
+            long durationReused = System.nanoTime() - startReused;
+
+            long startPruned = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                    blackhole += pointSetRange.getRangeXYZ(sensorColumns.getPosX(), sensorColumns.getPosY(),
+                            sensorColumns.getPosZ(), window.getFirstFrameIndex(),
+                            window.getEndFrameIndex(sensorColumns));
+                }
+            }
+            long durationPruned = System.nanoTime() - startPruned;
+
+            long startOriginal2D = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                    blackhole += getRangeXZWithPointObjects(sensorColumns,
+                            window.getFirstFrameIndex(), window.getEndFrameIndex(sensorColumns));
+                }
+            }
+            long durationOriginal2D = System.nanoTime() - startOriginal2D;
+
+            long startCalipers2D = System.nanoTime();
+            for (FrameDataSet window : windows) {
+                for (SensorColumns sensorColumns : window.getAllSensorColumns()) {
+                    blackhole += getRangeXZWithCalipers(sensorColumns,
+                            window.getFirstFrameIndex(), window.getEndFrameIndex(sensorColumns));
+                }
+            }
+            long durationCalipers2D = System.nanoTime() - startCalipers2D;
+
+            if (round >= warmupRounds) {
+                System.out.println("round " + (round - warmupRounds + 1)
+                        + "     all features:   " + formatPerWindow(durationFeatures, windows.size())
+                        + "     range 3D (point objects):   " + formatPerWindow(durationOriginal, windows.size())
+                        + "     range 3D (reused hull):   " + formatPerWindow(durationReused, windows.size())
+                        + "     range 3D (all points):   " + formatPerWindow(durationPruned, windows.size())
+                        + "     range 2D (point objects):   " + formatPerWindow(durationOriginal2D, windows.size())
+                        + "     range 2D (calipers):   " + formatPerWindow(durationCalipers2D, windows.size()));
+            }
+        }
+
+        if (blackhole == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Read all recordings of the input folder, and separate them into windows as set in TestBenchSettings
+     * <p>
+     * Recordings that are too short for a single window are used as a whole
+     *
+     * @param inputFolder
+     * @return
+     * @throws IOException
+     */
+    private static ArrayList<FrameDataSet> readWindows(String inputFolder) throws IOException {
+        ArrayList<FrameDataSet> windows = new ArrayList<>();
+        for (String filePath : FrameDataReaderBenchmark.getInputFilePaths(inputFolder)) {
+            FrameDataSet recording = FrameDataReader.readFrameDataSet(filePath);
+            if (recording.getAllSensorColumns().isEmpty()) {
+                continue;
+            }
+            double windowSize = TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion();
+            if (recording.enoughDataForWindowSize(windowSize)) {
+                windows.addAll(recording.separateFrameDataIntoValidWindows(
+                        windowSize, TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion()));
+            } else {
+                windows.add(recording);
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * The range of the sensor, using a new hull built from point objects, and comparing all pairs of its vertices
+     *
+     * @param sensorColumns
+     * @param firstFrameIndex
+     * @param endFrameIndex
+     * @return
+     */
+    private static double getRangeXYZWithPointObjects(SensorColumns sensorColumns,
+                                                      int firstFrameIndex, int endFrameIndex) {
+
+        Point3d[] points = new Point3d[endFrameIndex - firstFrameIndex];
+        for (int i = firstFrameIndex; i < endFrameIndex; i++) {
+            points[i - firstFrameIndex] = new Point3d(
+                    sensorColumns.getPosX()[i], sensorColumns.getPosY()[i], sensorColumns.getPosZ()[i]);
+        }
+
+        double rangeXYZ = 0;
+        try {
+            QuickHull3D hull = new QuickHull3D(points);
+            Point3d[] outerPoints = hull.getVertices();
+            for (int a = 0; a < outerPoints.length; a++) {
+                Point3d pointA = outerPoints[a];
+                for (int b = a + 1; b < outerPoints.length; b++) {
+                    Point3d pointB = outerPoints[b];
+                    double distance = MathHelper.distance(
+                            pointA.x, pointA.y, pointA.z,
+                            pointB.x, pointB.y, pointB.z);
+                    if (distance > rangeXYZ) {
+                        rangeXYZ = distance;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // all points were too similar, keep the range at 0
+        }
+        return rangeXYZ;
+    }
+
+    /**
+     * The range of the sensor on the X-Z plane, using the hull of point objects, and comparing all pairs of its
+     * vertices
+     *
+     * @param sensorColumns
+     * @param firstFrameIndex
+     * @param endFrameIndex
+     * @return
+     */
+    private static double getRangeXZWithPointObjects(SensorColumns sensorColumns,
+                                                     int firstFrameIndex, int endFrameIndex) {
+
+        ArrayList<ConvexHullPoint> points = new ArrayList<>(endFrameIndex - firstFrameIndex);
+        for (int i = firstFrameIndex; i < endFrameIndex; i++) {
+            points.add(new ConvexHullPoint(sensorColumns.getPosX()[i], sensorColumns.getPosZ()[i]));
+        }
+
+        List<ConvexHullPoint> outerPoints = ConvexHull.makeHull(points);
+        double rangeXZ = 0;
+        for (int a = 0; a < outerPoints.size(); a++) {
+            ConvexHullPoint pointA = outerPoints.get(a);
+            for (int b = a + 1; b < outerPoints.size(); b++) {
+                ConvexHullPoint pointB = outerPoints.get(b);
+                double distance = MathHelper.distance(pointA.x, pointA.y, pointB.x, pointB.y);
+                if (distance > rangeXZ) {
+                    rangeXZ = distance;
+                }
+            }
+        }
+        return rangeXZ;
+    }
+
+    /**
+     * The range of the sensor on the X-Z plane, using the hull of the coordinate arrays, and rotating calipers
+     *
+     * @param sensorColumns
+     * @param firstFrameIndex
+     * @param endFrameIndex
+     * @return
+     */
+    private static double getRangeXZWithCalipers(SensorColumns sensorColumns,
+                                                 int firstFrameIndex, int endFrameIndex) {
+
+        int numberOfPoints = endFrameIndex - firstFrameIndex;
+        double[] xs = new double[numberOfPoints];
+        double[] zs = new double[numberOfPoints];
+        System.arraycopy(sensorColumns.getPosX(), firstFrameIndex, xs, 0, numberOfPoints);
+        System.arraycopy(sensorColumns.getPosZ(), firstFrameIndex, zs, 0, numberOfPoints);
+
+        double[] hullXs = new double[2 * numberOfPoints];
+        double[] hullZs = new double[2 * numberOfPoints];
+        int numberOfVertices = ConvexHull.makeHull(xs, zs, numberOfPoints, hullXs, hullZs);
+        return ConvexHull.getDiameter(hullXs, hullZs, numberOfVertices);
+    }
+
+    /**
+     * Whether both ranges are equal, apart from rounding
+     *
+     * @param rangeA
+     * @param rangeB
+     * @return
+     */
+    private static boolean isSameRange(double rangeA, double rangeB) {
+        return Math.abs(rangeA - rangeB) <= relativeTolerance * Math.max(Math.abs(rangeA), Math.abs(rangeB));
+    }
+
+    /**
+     * Format the given duration as time per window
+     *
+     * @param nanoseconds
+     * @param numberOfWindows
+     * @return
+     */
+    private static String formatPerWindow(long nanoseconds, int numberOfWindows) {
+        return String.format("%.1f us/window", nanoseconds / 1e3 / numberOfWindows);
+    }
+}
@@ -0,0 +1,171 @@
+package com.romanuhlig.weka.benchmark;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FeatureVector;
+import com.romanuhlig.weka.frameToFeature.FrameDataReader;
+import com.romanuhlig.weka.frameToFeature.FrameDataSet;
+import com.romanuhlig.weka.frameToFeature.SlidingWindowFeatureExtractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Compares the features of overlapping windows computed by the SlidingWindowFeatureExtractor with those of the
+ * batch computation, and the time required by both
+ * <p>
+ * Each feature of the sliding computation has to lie within SlidingWindowFeatureExtractor.relativeTolerance of the
+ * batch computation, relative to the largest magnitude of the values of its data series within the window
+ * (taken from the maximum and minimum features of the series). Features without those are compared relative to
+ * their own largest magnitude over all windows of the recording.
+ * Reads the files in the input folder given as the first argument, or the input folder set in TestBenchSettings
+ * if there is none. The window size and spacing can be given as second and third argument, and default to the
+ * settings. Short windows with a small spacing move each series many times, which is the hardest case.
+ *
+ * @author Roman Uhlig
+ */
+public class SlidingWindowBenchmark {
+
+    // number of untimed rounds to give the JIT compiler a chance, and number of measured rounds
+    private static final int warmupRounds = 1;
+    private static final int measuredRounds = 3;
+
+    public static void main(String[] args) throws IOException {
+
+        String inputFolder = args.length > 0 ? args[0] : TestBenchSettings.getInputBaseFolder();
+        double windowSize = args.length > 1
+                ? Double.parseDouble(args[1]) : TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion();
+        double windowSpacing = args.length > 2
+                ? Double.parseDouble(args[2]) : TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion();
+        ArrayList<String> filePaths = FrameDataReaderBenchmark.getInputFilePaths(inputFolder);
+
+        ArrayList<ArrayList<FrameDataSet>> windowsPerRecording = new ArrayList<>();
+        int numberOfWindows = 0;
+        for (String filePath : filePaths) {
+            ArrayList<FrameDataSet> windows = FrameDataReader.readFrameDataSet(filePath)
+                    .separateFrameDataIntoValidWindows(windowSize, windowSpacing);
+            windowsPerRecording.add(windows);
+            numberOfWindows += windows.size();
+        }
+        System.out.println("files:   " + filePaths.size() + "     windows:   " + numberOfWindows
+                + "     window size:   " + windowSize + "     spacing:   " + windowSpacing);
+
+        // make sure the sliding computation stays within the tolerance, before comparing the speed
+        int numberOfComparedFeatures = 0;
+        int numberOfFeaturesBeyondTolerance = 0;
+        double largestRelativeDifference = 0;
+        String largestRelativeDifferenceLocation = "";
+        for (int r = 0; r < filePaths.size(); r++) {
+            ArrayList<FrameDataSet> windows = windowsPerRecording.get(r);
+            if (windows.isEmpty()) {
+                continue;
+            }
+            ArrayList<String> header = FeatureExtractor.getFeatureHeaderForFrameDataSet(windows.get(0), false, false);
+            ArrayList<FeatureVector> sliding = SlidingWindowFeatureExtractor.getFeaturesForWindows(windows);
+            double[][] batchFeatures = new double[windows.size()][];
+            for (int w = 0; w < windows.size(); w++) {
+                batchFeatures[w] = FeatureExtractor.getFeaturesForFrameDataSet(windows.get(w))
+                        .getFeaturesWithoutClassAndSubject();
+            }
+
+            for (int f = 0; f < header.size(); f++) {
+                int[] seriesMaximumAndMinimum = getSeriesMaximumAndMinimum(header, f);
+
+                // the magnitude of the feature over all windows of the recording
+                double featureMagnitude = 0;
+                for (double[] features : batchFeatures) {
+                    featureMagnitude = Math.max(featureMagnitude, Math.abs(features[f]));
+                }
+
+                for (int w = 0; w < windows.size(); w++) {
+                    double magnitude = featureMagnitude;
+                    if (seriesMaximumAndMinimum != null) {
+                        magnitude = Math.max(Math.abs(batchFeatures[w][seriesMaximumAndMinimum[0]]),
+                                Math.abs(batchFeatures[w][seriesMaximumAndMinimum[1]]));
+                    }
+                    double batchValue = batchFeatures[w][f];
+                    double slidingValue = sliding.get(w).getFeaturesWithoutClassAndSubject()[f];
+                    double relativeDifference;
+                    if (Double.compare(batchValue, slidingValue) == 0) {
+                        relativeDifference = 0;
+                    } else if (magnitude == 0 || Double.isNaN(batchValue) || Double.isNaN(slidingValue)) {
+                        relativeDifference = Double.POSITIVE_INFINITY;
+                    } else {
+                        relativeDifference = Math.abs(batchValue - slidingValue) / magnitude;
+                    }
+
+                    numberOfComparedFeatures++;
+                    if (relativeDifference > SlidingWindowFeatureExtractor.relativeTolerance) {
+                        numberOfFeaturesBeyondTolerance++;
+                    }
+                    if (relativeDifference > largestRelativeDifference) {
+                        largestRelativeDifference = relativeDifference;
+                        largestRelativeDifferenceLocation = new File(filePaths.get(r)).getName()
+                                + "   window " + w + "   " + header.get(f)
+                                + "   batch " + batchValue + "   sliding " + slidingValue;
+                    }
+                }
+            }
+        }
+        System.out.println("compared features:   " + numberOfComparedFeatures
+                + "     beyond tolerance:   " + numberOfFeaturesBeyondTolerance
+                + "     largest relative difference:   " + largestRelativeDifference);
+        if (numberOfFeaturesBeyondTolerance > 0) {
+            System.out.println("sliding computation exceeds the tolerance of "
+                    + SlidingWindowFeatureExtractor.relativeTolerance + ", largest difference at   "
+                    + largestRelativeDifferenceLocation);
+            return;
+        }
+
+        for (int round = 0; round < warmupRounds + measuredRounds; round++) {
+
+            long startBatch = System.nanoTime();
+            for (ArrayList<FrameDataSet> windows : windowsPerRecording) {
+                for (FrameDataSet window : windows) {
+                    FeatureExtractor.getFeaturesForFrameDataSet(window);
+                }
+            }
+            long durationBatch = System.nanoTime() - startBatch;
+
+            long startSliding = System.nanoTime();
+            for (ArrayList<FrameDataSet> windows : windowsPerRecording) {
+                SlidingWindowFeatureExtractor.getFeaturesForWindows(windows);
+            }
+            long durationSliding = System.nanoTime() - startSliding;
+
+            if (round >= warmupRounds) {
+                System.out.println("round " + (round - warmupRounds + 1)
+                        + "     batch:   " + String.format("%7.0f ms", durationBatch / 1e6)
+                        + "     sliding:   " + String.format("%7.0f ms", durationSliding / 1e6)
+                        + "     speedup:   " + String.format("%.2f", durationBatch / (double) durationSliding));
+            }
+        }
+    }
+
+    /**
+     * The indices of the maximum and minimum features of the data series the given feature belongs to
+     * <p>
+     * A statistic of a series is named like its maximum and minimum, with "max" or "min" in place of the statistic
+     * (e.g. hip_standardDeviation_Position_X, hip_max_Position_X and hip_min_Position_X)
+     *
+     * @param header
+     * @param feature
+     * @return null, if the feature does not belong to a series with maximum and minimum
+     */
+    private static int[] getSeriesMaximumAndMinimum(ArrayList<String> header, int feature) {
+        String[] nameParts = header.get(feature).split("_");
+        for (int i = 0; i < nameParts.length; i++) {
+            String[] maximumName = nameParts.clone();
+            String[] minimumName = nameParts.clone();
+            maximumName[i] = "max";
+            minimumName[i] = "min";
+            int maximum = header.indexOf(String.join("_", maximumName));
+            int minimum = header.indexOf(String.join("_", minimumName));
+            if (maximum >= 0 && minimum >= 0) {
+                return new int[]{maximum, minimum};
+            }
+        }
+        return null;
+    }
+}
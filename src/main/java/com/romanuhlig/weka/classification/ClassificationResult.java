@@ -108,32 +108,8 @@ public class ClassificationResult {
                                  double[] averageF1PerTask,
                                  double accuracy, long timeTaken) {
 
-        // create header for CSV writing later on, MIND THE ORDER, has to stay the same as values below
-        if (headerForCSV == null) {
-            LinkedList<String> headerList = new LinkedList<>();
-            headerList = new LinkedList<>();
-            headerList.add("Classifier");
-            headerList.add("F1");
-            headerList.add("Precision");
-            headerList.add("Recall");
-            headerList.add("TP Rate");
-            headerList.add("FP Rate");
-            headerList.add("Number-of-sensors");
-            for (String sensor : GlobalData.getAllAvailableSensors()) {
-                headerList.add(getSensorNameForTable(sensor));
-            }
-            headerList.add("Sensor-summary");
-            headerList.add("Subject");
-            headerList.add("Accuracy");
-            headerList.add("Time-taken");
-
-            for (String activity : GlobalData.getAllActivities()) {
-                headerList.add(activity);
-            }
-
-            headerForCSV = headerList.toArray(new String[headerList.size()]);
-        }
-
+        // create header for CSV writing later on
+        initializeHeaderForCSV();
 
         // collect data for CSV writing later on, MIND THE ORDER
         LinkedList<String> dataForCSVList = new LinkedList<>();
@@ -342,6 +318,39 @@ public class ClassificationResult {
         return sensorList;
     }
 
+    /**
+     * Create the header for CSV writing, unless it exists already
+     * <p>
+     * Results may be constructed by several evaluations at the same time, the header is only created once
+     */
+    private static synchronized void initializeHeaderForCSV() {
+        // MIND THE ORDER, has to stay the same as values in the constructor
+        if (headerForCSV == null) {
+            LinkedList<String> headerList = new LinkedList<>();
+            headerList = new LinkedList<>();
+            headerList.add("Classifier");
+            headerList.add("F1");
+            headerList.add("Precision");
+            headerList.add("Recall");
+            headerList.add("TP Rate");
+            headerList.add("FP Rate");
+            headerList.add("Number-of-sensors");
+            for (String sensor : GlobalData.getAllAvailableSensors()) {
+                headerList.add(getSensorNameForTable(sensor));
+            }
+            headerList.add("Sensor-summary");
+            headerList.add("Subject");
+            headerList.add("Accuracy");
+            headerList.add("Time-taken");
+
+            for (String activity : GlobalData.getAllActivities()) {
+                headerList.add(activity);
+            }
+
+            headerForCSV = headerList.toArray(new String[headerList.size()]);
+        }
+    }
+
     /**
      * The average overall F1 score
      *
@@ -356,7 +365,7 @@ public class ClassificationResult {
      * Compatible with getDataForCSV
      * @return
      */
-    public static String[] getHeaderForCSV() {
+    public static synchronized String[] getHeaderForCSV() {
         return headerForCSV;
     }
 
@@ -393,7 +402,10 @@ public class ClassificationResult {
         } else if (value == 1) {
             return "1.0";
         } else {
-            return ClassificationResult.tableDoubleFormatter.format(value);
+            // the formatter is shared by all results, and not thread-safe itself
+            synchronized (tableDoubleFormatter) {
+                return ClassificationResult.tableDoubleFormatter.format(value);
+            }
         }
     }
 
@@ -425,7 +437,7 @@ public class ClassificationResult {
      * @param sensor
      * @return
      */
-    private String getSensorNameForTable(String sensor) {
+    private static String getSensorNameForTable(String sensor) {
         return sensorNamesForTable.get(sensor);
     }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package com.romanuhlig.weka.controller;
+
+import com.romanuhlig.weka.controller.TestBenchSettings.SubjectDataInclusion;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+/**
+ * Index over the rows of a feature set with all subjects, for separating it into training and test data
+ * for each subject (leave one out)
+ * <p>
+ * The rows of each subject, and the blocks of consecutive rows with the same task within them, are determined once
+ * when the index is created. Training and test data are then copied row by row from the index,
+ * without looking at the subject or task of any row again.
+ * The result is the same as removing the unwanted rows from a complete copy of the feature set.
+ *
+ * @author Roman Uhlig
+ */
+class SubjectSplitIndex {
+
+    private final Attribute subjectAttribute;
+    private final int numberOfRows;
+
+    // the rows of each subject (by the index of its nominal value), in ascending order
+    private final int[][] rowsPerSubject;
+    // the end (exclusive) of each task block within the rows of each subject
+    private final int[][] taskBlockEndsPerSubject;
+
+    /**
+     * Create the index for the given feature set, whose last two attributes are the subject and the class
+     *
+     * @param allData
+     */
+    SubjectSplitIndex(Instances allData) {
+
+        subjectAttribute = allData.attribute(allData.numAttributes() - 2);
+        int subjectAttributeIndex = allData.numAttributes() - 2;
+        int classAttributeIndex = allData.numAttributes() - 1;
+        numberOfRows = allData.size();
+
+        // count the rows of each subject first, so that each of them can be stored in an array of the right size
+        int numberOfSubjects = subjectAttribute.numValues();
+        int[] numberOfRowsPerSubject = new int[numberOfSubjects];
+        for (int row = 0; row < numberOfRows; row++) {
+            numberOfRowsPerSubject[(int) allData.instance(row).value(subjectAttributeIndex)]++;
+        }
+
+        rowsPerSubject = new int[numberOfSubjects][];
+        taskBlockEndsPerSubject = new int[numberOfSubjects][];
+        int[] taskBlocksPerSubject = new int[numberOfSubjects];
+        double[] previousTaskPerSubject = new double[numberOfSubjects];
+        for (int s = 0; s < numberOfSubjects; s++) {
+            rowsPerSubject[s] = new int[numberOfRowsPerSubject[s]];
+            taskBlockEndsPerSubject[s] = new int[numberOfRowsPerSubject[s]];
+            numberOfRowsPerSubject[s] = 0;
+        }
+
+        // the nominal values are compared by their index, the same index means the same subject or task
+        for (int row = 0; row < numberOfRows; row++) {
+            int subject = (int) allData.instance(row).value(subjectAttributeIndex);
+            double task = allData.instance(row).value(classAttributeIndex);
+            int rowOfSubject = numberOfRowsPerSubject[subject]++;
+            rowsPerSubject[subject][rowOfSubject] = row;
+
+            // a new task block starts whenever the task changes between two rows of the subject
+            if (rowOfSubject > 0 && task != previousTaskPerSubject[subject]) {
+                taskBlockEndsPerSubject[subject][taskBlocksPerSubject[subject]++] = rowOfSubject;
+            }
+            previousTaskPerSubject[subject] = task;
+        }
+        for (int s = 0; s < numberOfSubjects; s++) {
+            if (rowsPerSubject[s].length > 0) {
+                taskBlockEndsPerSubject[s][taskBlocksPerSubject[s]++] = rowsPerSubject[s].length;
+            }
+            taskBlockEndsPerSubject[s] = Arrays.copyOf(taskBlockEndsPerSubject[s], taskBlocksPerSubject[s]);
+        }
+    }
+
+    /**
+     * Create the training data for the given subject, according to the current subject data inclusion
+     *
+     * @param dataSet the feature set the index was created for, or one with the same rows (e.g. fewer attributes)
+     * @param subject
+     * @return
+     */
+    Instances createTrainingData(Instances dataSet, String subject) {
+
+        int[] subjectRows = getRowsOfSubject(subject);
+
+        switch (TestBenchSettings.getSubjectTrainingDataInclusion()) {
+            case All:
+                // if requested to include all subject data (for sanity checks), just keep it as it is
+                return new Instances(dataSet);
+            case AllAndNoOtherData:
+                // only for debugging purposes, one can use the test data as the training data
+                return copyRows(dataSet, subjectRows, subjectRows.length);
+            case Half:
+            case HalfAndNoOtherData:
+                return createTrainingDataWithHalfOfSubject(dataSet, subject, subjectRows);
+            default:
+                // normal case, the current subject is removed from the training data
+                return copyRowsExcept(dataSet, subjectRows, subjectRows.length);
+        }
+    }
+
+    /**
+     * Create the test data for the given subject, according to the current subject data inclusion
+     *
+     * @param dataSet the feature set the index was created for, or one with the same rows (e.g. fewer attributes)
+     * @param subject
+     * @return
+     */
+    Instances createTestData(Instances dataSet, String subject) {
+
+        int[] subjectRows = getRowsOfSubject(subject);
+
+        SubjectDataInclusion subjectDataInclusion = TestBenchSettings.getSubjectTrainingDataInclusion();
+        if (subjectDataInclusion != SubjectDataInclusion.Half
+                && subjectDataInclusion != SubjectDataInclusion.HalfAndNoOtherData) {
+            return copyRows(dataSet, subjectRows, subjectRows.length);
+        }
+
+        // if some of the subject data stays in the training data, the test data only holds the first part
+        // of each task, up to the data that is left out to account for the window size
+        int[] taskBlockEnds = getTaskBlockEnds(subject);
+        int[] testRows = new int[subjectRows.length];
+        int numberOfTestRows = 0;
+        int blockStart = 0;
+        for (int blockEnd : taskBlockEnds) {
+            int rowsToKeep = Math.max(0, (blockEnd - blockStart) - getInstancesToRemoveFromTestData(blockEnd - blockStart));
+            System.arraycopy(subjectRows, blockStart, testRows, numberOfTestRows, rowsToKeep);
+            numberOfTestRows += rowsToKeep;
+            blockStart = blockEnd;
+        }
+        return copyRows(dataSet, testRows, numberOfTestRows);
+    }
+
+    /**
+     * Create training data that only includes the last part of each task of the given subject,
+     * and (unless requested otherwise) all data of the other subjects
+     *
+     * @param dataSet
+     * @param subject
+     * @param subjectRows
+     * @return
+     */
+    private Instances createTrainingDataWithHalfOfSubject(Instances dataSet, String subject, int[] subjectRows) {
+
+        // the subject rows that are removed from the training data
+        int[] taskBlockEnds = getTaskBlockEnds(subject);
+        int[] removedRows = new int[subjectRows.length];
+        int numberOfRemovedRows = 0;
+        int blockStart = 0;
+        for (int blockEnd : taskBlockEnds) {
+            int rowsToKeep = Math.min(blockEnd - blockStart,
+                    Math.max(0, getInstancesToKeepInTrainingData(blockEnd - blockStart)));
+            int rowsToRemove = (blockEnd - blockStart) - rowsToKeep;
+            System.arraycopy(subjectRows, blockStart, removedRows, numberOfRemovedRows, rowsToRemove);
+            numberOfRemovedRows += rowsToRemove;
+            blockStart = blockEnd;
+        }
+
+        if (TestBenchSettings.getSubjectTrainingDataInclusion() == SubjectDataInclusion.HalfAndNoOtherData) {
+            // only the remaining subject rows
+            int[] keptRows = new int[subjectRows.length - numberOfRemovedRows];
+            int numberOfKeptRows = 0;
+            for (int i = 0, r = 0; i < subjectRows.length; i++) {
+                if (r < numberOfRemovedRows && removedRows[r] == subjectRows[i]) {
+                    r++;
+                } else {
+                    keptRows[numberOfKeptRows++] = subjectRows[i];
+                }
+            }
+            return copyRows(dataSet, keptRows, numberOfKeptRows);
+        }
+
+        return copyRowsExcept(dataSet, removedRows, numberOfRemovedRows);
+    }
+
+    /**
+     * The number of instances of a task that stay in the training data, if half of the subject data is included
+     *
+     * @param instancesForTask
+     * @return may be negative, if there are fewer instances than the window spans
+     */
+    private static int getInstancesToKeepInTrainingData(int instancesForTask) {
+        return (int) Math.ceil((instancesForTask - getInstancesToLeaveOutForWindow()) / 2f);
+    }
+
+    /**
+     * The number of instances at the end of a task that are removed from the test data,
+     * if half of the subject data is included
+     *
+     * @param instancesForTask
+     * @return
+     */
+    private static int getInstancesToRemoveFromTestData(int instancesForTask) {
+        return getInstancesToKeepInTrainingData(instancesForTask) + getInstancesToLeaveOutForWindow();
+    }
+
+    /**
+     * The number of instances between training and test data of a task, if half of the subject data is included
+     * <p>
+     * Data in the middle is left out to account for the window size, to prevent data that
+     * could end up in both training and test data
+     *
+     * @return
+     */
+    private static int getInstancesToLeaveOutForWindow() {
+        return (int) Math.ceil(TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion()
+                / TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion())
+                - 1;
+    }
+
+    /**
+     * The rows of the given subject, in ascending order
+     *
+     * @param subject
+     * @return an empty array, if the subject is not part of the feature set
+     */
+    private int[] getRowsOfSubject(String subject) {
+        int subjectIndex = subjectAttribute.indexOfValue(subject);
+        return subjectIndex < 0 ? new int[0] : rowsPerSubject[subjectIndex];
+    }
+
+    /**
+     * The end (exclusive) of each task block within the rows of the given subject
+     *
+     * @param subject
+     * @return
+     */
+    private int[] getTaskBlockEnds(String subject) {
+        int subjectIndex = subjectAttribute.indexOfValue(subject);
+        return subjectIndex < 0 ? new int[0] : taskBlockEndsPerSubject[subjectIndex];
+    }
+
+    /**
+     * Copy the given rows into new Instances with the same header
+     *
+     * @param dataSet
+     * @param rows         ascending
+     * @param numberOfRows number of rows used from the array
+     * @return
+     */
+    private static Instances copyRows(Instances dataSet, int[] rows, int numberOfRows) {
+        Instances copy = new Instances(dataSet, numberOfRows);
+        for (int i = 0; i < numberOfRows; i++) {
+            copy.add(dataSet.instance(rows[i]));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy all but the given rows into new Instances with the same header
+     *
+     * @param dataSet
+     * @param excludedRows         ascending
+     * @param numberOfExcludedRows number of rows used from the array
+     * @return
+     */
+    private Instances copyRowsExcept(Instances dataSet, int[] excludedRows, int numberOfExcludedRows) {
+        Instances copy = new Instances(dataSet, numberOfRows - numberOfExcludedRows);
+        // copy the ranges between the excluded rows
+        int rangeStart = 0;
+        for (int i = 0; i <= numberOfExcludedRows; i++) {
+            int rangeEnd = i < numberOfExcludedRows ? excludedRows[i] : numberOfRows;
+            for (int row = rangeStart; row < rangeEnd; row++) {
+                copy.add(dataSet.instance(row));
+            }
+            rangeStart = rangeEnd + 1;
+        }
+        return copy;
+    }
+}
@@ -4,24 +4,28 @@ import com.romanuhlig.weka.classification.ClassificationResult;
 import com.romanuhlig.weka.classification.ClassifierFactory;
 import com.romanuhlig.weka.classification.ConfusionMatrixSummary;
 import com.romanuhlig.weka.frameToFeature.FeatureExtractor;
+import com.romanuhlig.weka.frameToFeature.FeatureSetCache;
 import com.romanuhlig.weka.io.*;
 import com.romanuhlig.weka.time.TimeHelper;
 
 import org.apache.commons.lang3.time.StopWatch;
 
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.evaluation.Evaluation;
 import weka.classifiers.meta.AdaBoostM1;
 import weka.classifiers.meta.Bagging;
 import weka.classifiers.meta.RandomCommittee;
 import weka.core.Attribute;
-import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SerializationHelper;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,8 +37,6 @@ public class TestBench {
 
     // stop watch for a ongoing time tracking during the evaluation process
     StopWatch stopWatchEvaluation = new StopWatch();
-    // stop watch for individual evaluations
-    StopWatch singleTestStopWatch = new StopWatch();
     // collection for total time used by individual classifiers
     HashMap<Classifier, Long> classifierTimeUsage = new HashMap<>();
 
@@ -55,18 +57,7 @@ public class TestBench {
                 + "   " + TestBenchSettings.getOutputFolderTag() + startTime + "/";
 
         // load / create features
-        SubjectsFeatureExtractionResults subjectsFeatureExtractionResults;
-        if (TestBenchSettings.useExistingFeatureFile()) {
-            // load existing feature file reference, if requested
-            subjectsFeatureExtractionResults = FileWriter.readExistingFeatureSet(
-                    TestBenchSettings.getExistingFeaturesInputFolder());
-        } else {
-            // create new feature file
-            subjectsFeatureExtractionResults = FeatureExtractor.createFeatureFiles(
-                    TestBenchSettings.getInputBaseFolder(), outputFolderPath);
-            FileWriter.writeNewFeatureExtractionResults(subjectsFeatureExtractionResults, outputFolderPath,
-                    TestBenchSettings.getExistingFeaturesInputFolder(), "featureExtractionResults_" + startTime);
-        }
+        SubjectsFeatureExtractionResults subjectsFeatureExtractionResults = getFeatures(outputFolderPath);
 
         // determine all possible sensor subsets for the given dataset
         ArrayList<SensorSubset> sensorSubsets = SensorSubset.generateAllSubsets(
@@ -182,317 +173,119 @@ public class TestBench {
         FileWriter.writeTextFile(TestBenchSettings.getSettingsSummary(), outputFolderPath, "settings.txt");
 
 
-        // Training and evaluation for all sensor subsets, classifiers and test subjects
-        // ... all sensor subsets
-        for (SensorSubset sensorSubset : sensorSubsets) {
-
-            // prepare to collect all results for this sensor subset
-            ArrayList<ClassificationResult> sensorSubsetResults = new ArrayList<>();
-            String outputFolderSensorSubset = resultsBaseFolder + sensorSubset.getNumberOfSensors() + " sensors/"
-                    + sensorSubset.getFolderStringRepresentation() + "/";
-
-            // ... all classifiers
-            for (Classifier classifier : classifiers) {
-
-                // prepare to collect all results for this classifier
-                ArrayList<ClassificationResult> classifierResults = new ArrayList<>();
-                String outputFolderClassifier = outputFolderSensorSubset + classifier.getClass().getSimpleName() + "/";
-                if (classifier instanceof AdaBoostM1) {
-                    AdaBoostM1 adaBoost = (AdaBoostM1) classifier;
-                    outputFolderClassifier = outputFolderClassifier + adaBoost.getClassifier().getClass().getSimpleName() + "/";
-                } else if (classifier instanceof Bagging) {
-                    Bagging bagging = (Bagging) classifier;
-                    outputFolderClassifier = outputFolderClassifier + bagging.getClassifier().getClass().getSimpleName() + "/";
-                } else if (classifier instanceof RandomCommittee) {
-                    RandomCommittee randomCommittee = (RandomCommittee) classifier;
-                    outputFolderClassifier = outputFolderClassifier + randomCommittee.getClassifier().getClass().getSimpleName() + "/";
+        // Training and evaluation for all sensor subsets, classifiers and test subjects:
+        // the evaluations run at the same time, each with its own copy of the classifier,
+        // but their results are collected and summarized in the same order as in a sequential run
+        setActivities(subjectsFeatureExtractionResults.getCompleteFeatureSet().getTrainingDataUnfiltered());
+        ArrayList<SubjectTrainingAndTestFilePackage> filePackages =
+                subjectsFeatureExtractionResults.getSubjectTrainingAndTestFilePackages();
+        int numberOfEvaluationsPerClassifier = TestBenchSettings.isLeaveOneOut() ? filePackages.size() : 1;
+        // the rows of each subject within the complete feature set are only looked up once, for all evaluations
+        SubjectSplitIndex subjectSplitIndex =
+                TestBenchSettings.isLeaveOneOut() && !TestBenchSettings.useIndividualFeatureFilesForEachSubject()
+                        ? new SubjectSplitIndex(subjectsFeatureExtractionResults.getCompleteFeatureSet().getTrainingDataUnfiltered())
+                        : null;
+        ForkJoinPool evaluationPool = new ForkJoinPool(TestBenchSettings.getNumberOfThreadsForEvaluation());
+        try {
+            // start all evaluations, in the order of a sequential run
+            ArrayList<ForkJoinTask<EvaluationOutcome>> evaluationTasks = new ArrayList<>();
+            for (SensorSubset sensorSubset : sensorSubsets) {
+                String outputFolderSensorSubset = getOutputFolderSensorSubset(resultsBaseFolder, sensorSubset);
+
+                // the complete feature set is reduced to the sensor subset only once, for all classifiers and subjects
+                // (with individual files for each subject, each evaluation reduces the files of its subject instead)
+                ForkJoinTask<Instances> sensorSubsetDataTask = null;
+                if (!TestBenchSettings.isLeaveOneOut() || !TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
+                    sensorSubsetDataTask = evaluationPool.submit(() -> getAttributesForSensorSubset(
+                            subjectsFeatureExtractionResults.getCompleteFeatureSet().getTrainingDataUnfiltered(),
+                            sensorSubset));
                 }
-                ConfusionMatrixSummary classifierConfusionMatrixSummary = new ConfusionMatrixSummary();
-
-                // Leave one out
-                if (TestBenchSettings.isLeaveOneOut()) {
-                    for (int fp = 0; fp < subjectsFeatureExtractionResults.getSubjectTrainingAndTestFilePackages().size(); fp++) {
-
-                        // retrieve features for this subject
-                        SubjectTrainingAndTestFilePackage filePackage =
-                                subjectsFeatureExtractionResults.getSubjectTrainingAndTestFilePackages().get(fp);
-
-                        // prepare to collect all results for this subject
-                        String outputFolderSubject = outputFolderClassifier + filePackage.getSubject() + "/";
-
-                        // setup data sources
-                        Instances trainingDataAllSensors;
-                        Instances testDataAllSensors;
-
-                        // when using individual files for test and training for each subject, just load them
-                        if (TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
-                            trainingDataAllSensors = filePackage.getTrainingDataUnfiltered();
-                            testDataAllSensors = filePackage.getTestDataUnfiltered();
-                        } else {
-                            // otherwise, load the complete data file and separate both parts
-                            Instances allDataUnfiltered = subjectsFeatureExtractionResults.getCompleteFeatureSet().getTrainingDataUnfiltered();
-
-                            // determine nominal index of current subject within list of available subjects,
-                            // from the perspective of the loaded weka data set
-                            int subjectAttributeIndex = allDataUnfiltered.numAttributes() - 2;
-                            int classAttributeIndex = allDataUnfiltered.numAttributes() - 1;
-
-                            // Determine how much data to remove from the subject, for each task,
-                            // in case not all should be removed from training set (personal model).
-                            // The tasks are saved in blocks within the feature set for each subject
-                            ArrayList<Integer> instancesPerTask = new ArrayList<>();
-                            ArrayList<Integer> instancesToKeepInTrainingDataPerTask = new ArrayList<>();
-                            ArrayList<Integer> instancesToRemoveFromTestDataPerTask = new ArrayList<>();
-                            List<String> allActivities = new ArrayList<>();
-                            if (TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.Half
-                                    || TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.HalfAndNoOtherData) {
-                                String previousTask = "";
-                                // go through the list backwards, as we will have to do the same when deleting instances later
-                                for (int i = allDataUnfiltered.size() - 1; i >= 0; i--) {
-                                    Instance instance = allDataUnfiltered.get(i);
-                                    String instanceSubject = instance.stringValue(subjectAttributeIndex);
-                                    String instanceClass = instance.stringValue(classAttributeIndex);
-                                    // count the task, or add a new one, if this is the current subject
-                                    if (instanceSubject.equals(filePackage.getSubject())) {
-                                        if (!instanceClass.equals(previousTask)) {
-                                            instancesPerTask.add(0);
-                                            previousTask = instanceClass;
-                                        }
-                                        instancesPerTask.set(instancesPerTask.size() - 1, instancesPerTask.get(instancesPerTask.size() - 1) + 1);
-                                    }
-                                }
-                                // after determining how much data there is per task, determine how much to remove and keep
-                                for (int i = 0; i < instancesPerTask.size(); i++) {
-                                    Integer instancesForTask = instancesPerTask.get(i);
-                                    // leave out data in the middle to account for window size, to prevent data that
-                                    // could end up in both training and test data
-                                    int instancesToLeaveOutForWindow =
-                                            (int) Math.ceil(TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion()
-                                                    / TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion())
-                                                    - 1;
-                                    int instancesToKeepForTrainingData = (int) Math.ceil((instancesForTask - instancesToLeaveOutForWindow) / 2f);
-                                    instancesToKeepInTrainingDataPerTask.add((instancesToKeepForTrainingData));
-                                    instancesToRemoveFromTestDataPerTask.add(instancesToKeepForTrainingData + instancesToLeaveOutForWindow);
-                                }
-                            }
-
-                            // if requested to include all subject data (for sanity checks), just keep it as it is
-                            if (TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.All) {
-                                trainingDataAllSensors = new Instances(allDataUnfiltered);
-                            } else if (TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.Half
-                                    || TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.HalfAndNoOtherData) {
-                                // if some subject data is to be kept, copy the data and filter out what is required
-                                trainingDataAllSensors = new Instances(allDataUnfiltered);
-                                // remove the required amount of subject data for each class in the training data
-                                int countForCurrentClass = 0;
-                                int classIndex = -1;
-                                String previousTask = "";
-                                for (int i = trainingDataAllSensors.size() - 1; i >= 0; i--) {
-                                    Instance instance = trainingDataAllSensors.get(i);
-                                    String instanceSubject = instance.stringValue(subjectAttributeIndex);
-                                    String instanceClass = instance.stringValue(classAttributeIndex);
-                                    // delete second half of each class
-                                    if (instanceSubject.equals(filePackage.getSubject())) {
-                                        if (!instanceClass.equals(previousTask)) {
-                                            countForCurrentClass = 0;
-                                            previousTask = instanceClass;
-                                            classIndex++;
-                                        }
-                                        countForCurrentClass++;
-                                        if (countForCurrentClass > instancesToKeepInTrainingDataPerTask.get(classIndex))
-                                            trainingDataAllSensors.remove(i);
-                                    }
-                                }
-
-                                // also delete all data from other subjects, if only subject data should be included
-                                if (TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.HalfAndNoOtherData) {
-                                    for (int i = trainingDataAllSensors.size() - 1; i >= 0; i--) {
-                                        Instance instance = trainingDataAllSensors.get(i);
-                                        String instanceSubject = instance.stringValue(subjectAttributeIndex);
-                                        if (!instanceSubject.equals(filePackage.getSubject())) {
-                                            trainingDataAllSensors.remove(i);
-                                        }
-                                    }
-                                }
-
-                            } else {
-                                // normal case, the current subject needs to be removed from training data
-                                // copy the training data and remove all subject data
-                                trainingDataAllSensors = new Instances(allDataUnfiltered);
-                                for (int i = trainingDataAllSensors.size() - 1; i >= 0; i--) {
-                                    Instance instance = trainingDataAllSensors.get(i);
-                                    String instanceSubject = instance.stringValue(subjectAttributeIndex);
-                                    if (instanceSubject.equals(filePackage.getSubject())) {
-                                        trainingDataAllSensors.remove(i);
-                                    }
-                                }
-                            }
-
-                            // create test data, and remove all but the current subject
-                            testDataAllSensors = new Instances(allDataUnfiltered);
-                            for (int i = testDataAllSensors.size() - 1; i >= 0; i--) {
-                                Instance instance = testDataAllSensors.get(i);
-                                String instanceSubject = instance.stringValue(subjectAttributeIndex);
-                                if (!instanceSubject.equals(filePackage.getSubject())) {
-                                    testDataAllSensors.remove(i);
-                                }
-                            }
-
-                            // if some of the subject data was supposed to stay in the training data,
-                            // it should not also be in the test data and needs to be removed
-                            if (TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.Half
-                                    || TestBenchSettings.getSubjectTrainingDataInclusion() == TestBenchSettings.SubjectDataInclusion.HalfAndNoOtherData) {
-
-                                int countForCurrentClass = 0;
-                                int classIndex = -1;
-                                String previousClass = "";
-                                for (int i = testDataAllSensors.size() - 1; i >= 0; i--) {
-                                    Instance instance = testDataAllSensors.get(i);
-                                    String instanceClass = instance.stringValue(classAttributeIndex);
-
-                                    // delete first half of each class
-                                    if (!instanceClass.equals(previousClass)) {
-                                        countForCurrentClass = 0;
-                                        previousClass = instanceClass;
-                                        classIndex++;
-                                    }
-                                    countForCurrentClass++;
-                                    if (countForCurrentClass <= instancesToRemoveFromTestDataPerTask.get(classIndex)) {
-                                        testDataAllSensors.remove(i);
-                                    }
-                                }
-                            }
-
-                            // only for debugging purposes, one can use the test data as the training data
-                            if (TestBenchSettings.getSubjectTrainingDataInclusion()
-                                    == TestBenchSettings.SubjectDataInclusion.AllAndNoOtherData) {
-                                trainingDataAllSensors = new Instances(testDataAllSensors);
-                            }
+                ForkJoinTask<Instances> sensorSubsetData = sensorSubsetDataTask;
+
+                for (Classifier classifier : classifiers) {
+                    String outputFolderClassifier = getOutputFolderClassifier(outputFolderSensorSubset, classifier);
+
+                    // Leave one out
+                    if (TestBenchSettings.isLeaveOneOut()) {
+                        for (SubjectTrainingAndTestFilePackage filePackage : filePackages) {
+                            String outputFolderSubject = outputFolderClassifier + filePackage.getSubject() + "/";
+                            evaluationTasks.add(evaluationPool.submit(() -> evaluateForSubject(
+                                    sensorSubsetData, subjectSplitIndex, filePackage, sensorSubset, classifier,
+                                    outputFolderSubject)));
                         }
+                    } else {
+                        evaluationTasks.add(evaluationPool.submit(() -> evaluateWithCrossValidation(
+                                subjectsFeatureExtractionResults, sensorSubsetData, sensorSubset, classifier,
+                                outputFolderClassifier + "/")));
+                    }
+                }
+            }
 
-                        Instances trainingDataFinal = getAttributesForSensorSubset(trainingDataAllSensors, sensorSubset);
-                        Instances testDataFinal = getAttributesForSensorSubset(testDataAllSensors, sensorSubset);
-
-                        setActivities(trainingDataFinal);
-
-                        // measure time for single evaluation
-                        singleTestStopWatch.reset();
-                        singleTestStopWatch.start();
+            // ... all sensor subsets
+            int nextTask = 0;
+            for (SensorSubset sensorSubset : sensorSubsets) {
 
-                        // build and evaluate model for current sensor subset, classifier and subject
-                        Evaluation eval = null;
-                        try {
-                            classifier.buildClassifier(trainingDataFinal);
+                // prepare to collect all results for this sensor subset
+                ArrayList<ClassificationResult> sensorSubsetResults = new ArrayList<>();
+                String outputFolderSensorSubset = getOutputFolderSensorSubset(resultsBaseFolder, sensorSubset);
 
-                            // leave one out
-                            eval = new Evaluation(trainingDataFinal);
-                            eval.evaluateModel(classifier, testDataFinal);
+                // ... all classifiers
+                for (Classifier classifier : classifiers) {
 
-                            //getEvaluationSummary(classifier, eval, sensorSubset);
-                        } catch (Exception e) {
-                            System.out.println("Unable to train and evaluate model: " + classifier.getClass().toString());
-                            e.printStackTrace();
-                            System.exit(-1);
-                        }
+                    // prepare to collect all results for this classifier
+                    ArrayList<ClassificationResult> classifierResults = new ArrayList<>();
+                    String outputFolderClassifier = getOutputFolderClassifier(outputFolderSensorSubset, classifier);
+                    ConfusionMatrixSummary classifierConfusionMatrixSummary = new ConfusionMatrixSummary();
 
-                        measureTime(classifier);
+                    // ... all test subjects (or the single cross-validation)
+                    for (int e = 0; e < numberOfEvaluationsPerClassifier; e++) {
 
-                        // get classification results
-                        ClassificationResult classificationResult = collectClassificationResults(classifier, eval, trainingDataFinal, filePackage.getSubject(), sensorSubset, outputFolderSubject);
+                        // wait for the evaluation, and forget the task afterwards
+                        EvaluationOutcome outcome = evaluationTasks.get(nextTask).join();
+                        evaluationTasks.set(nextTask, null);
+                        nextTask++;
 
-                        // features used
-                        FileWriter.writeFeaturesUsed(trainingDataFinal, testDataFinal, outputFolderSubject, "features used.txt");
+                        addTimeUsage(classifier, outcome.getTimeTaken());
 
-                        // confusion matrix
-                        saveConfusionMatrix(eval, trainingDataFinal, outputFolderSubject);
                         // add confusion matrix to classifier summary
-                        classifierConfusionMatrixSummary.addResults(eval.confusionMatrix(), trainingDataFinal);
+                        classifierConfusionMatrixSummary.addResults(outcome.getConfusionMatrix(), outcome.getTrainingData());
 
                         // collect result for summaries
-                        classifierResults.add(classificationResult);
+                        classifierResults.add(outcome.getClassificationResult());
 
                         // console output: evaluation counter and estimation of remaining time
                         numberOfEvaluationsCompleted++;
                         printTimeMetrics(numberOfEvaluationsCompleted, numberOfEvaluationsInTotal);
                     }
-                } else {
-
-                    // prepare to collect all results for this subject
-                    String outputFolder = outputFolderClassifier + "/";
-
-                    SubjectTrainingAndTestFilePackage allDataUnfiltered = subjectsFeatureExtractionResults.getCompleteFeatureSet();
-                    Instances dataSet = allDataUnfiltered.getTrainingDataUnfiltered();
-
-                    Instances finalDataSet = getAttributesForSensorSubset(dataSet, sensorSubset);
-
-                    setActivities(finalDataSet);
-
-                    // measure time for single evaluation
-                    singleTestStopWatch.reset();
-                    singleTestStopWatch.start();
 
-                    // build and evaluate model for current sensor subset and classifier
-                    Evaluation eval = null;
-                    final int numFolds = 10;
-                    try {
-                        classifier.buildClassifier(finalDataSet);
-                        // cross-validation
-                        eval = new Evaluation(finalDataSet);
-                        eval.crossValidateModel(classifier, finalDataSet, numFolds, new Random(1));
-
-                        //getEvaluationSummary(classifier, eval, sensorSubset);
-                    } catch (Exception e) {
-                        System.out.println("Unable to train and evaluate model: " + classifier.getClass().toString());
-                        e.printStackTrace();
-                        System.exit(-1);
+                    // collect and store results for current classifier:
+                    // summarized confusion matrix
+                    FileWriter.writeTextFile(classifierConfusionMatrixSummary.toOutputString(), outputFolderClassifier, "confusion matrix.txt");
+                    FileWriter.writeTextFile(classifierConfusionMatrixSummary.toOutputStringLatex(), outputFolderClassifier, "confusion matrix latex.txt");
+                    // summarized results
+                    ClassificationResult classifierResultSummary = ClassificationResult.summarizeClassifierResults(classifierResults);
+                    classifierResults.add(classifierResultSummary);
+                    FileWriter.writeClassificationResults(classifierResults, outputFolderClassifier, "classificationResult");
+
+                    // collect for overall summary
+                    allResults.add(classifierResultSummary);
+                    // collect for sensor subset summary
+                    sensorSubsetResults.add(classifierResultSummary);
+                    // collect for sensor number summary
+                    if (sensorNumberResults.containsKey(sensorSubset.getNumberOfSensors())) {
+                        sensorNumberResults.get(sensorSubset.getNumberOfSensors()).add(classifierResultSummary);
+                    } else {
+                        ArrayList<ClassificationResult> sensorNumberResultList = new ArrayList<>();
+                        sensorNumberResultList.add(classifierResultSummary);
+                        sensorNumberResults.put(sensorSubset.getNumberOfSensors(), sensorNumberResultList);
                     }
-
-                    measureTime(classifier);
-
-                    // get classification results
-                    ClassificationResult classificationResult = collectClassificationResults(classifier, eval, dataSet, "", sensorSubset, outputFolder);
-
-                    // features used
-                    FileWriter.writeFeaturesUsed(dataSet, dataSet, outputFolder, "features used.txt");
-
-                    // confusion matrix
-                    saveConfusionMatrix(eval, dataSet, outputFolder);
-                    // add confusion matrix to classifier summary
-                    classifierConfusionMatrixSummary.addResults(eval.confusionMatrix(), dataSet);
-
-                    // collect result for summaries
-                    classifierResults.add(classificationResult);
-
-                    // console output: evaluation counter and estimation of remaining time
-                    numberOfEvaluationsCompleted++;
-                    printTimeMetrics(numberOfEvaluationsCompleted, numberOfEvaluationsInTotal);
                 }
 
-                // collect and store results for current classifier:
-                // summarized confusion matrix
-                FileWriter.writeTextFile(classifierConfusionMatrixSummary.toOutputString(), outputFolderClassifier, "confusion matrix.txt");
-                FileWriter.writeTextFile(classifierConfusionMatrixSummary.toOutputStringLatex(), outputFolderClassifier, "confusion matrix latex.txt");
-                // summarized results
-                ClassificationResult classifierResultSummary = ClassificationResult.summarizeClassifierResults(classifierResults);
-                classifierResults.add(classifierResultSummary);
-                FileWriter.writeClassificationResults(classifierResults, outputFolderClassifier, "classificationResult");
-
-                // collect for overall summary
-                allResults.add(classifierResultSummary);
-                // collect for sensor subset summary
-                sensorSubsetResults.add(classifierResultSummary);
-                // collect for sensor number summary
-                if (sensorNumberResults.containsKey(sensorSubset.getNumberOfSensors())) {
-                    sensorNumberResults.get(sensorSubset.getNumberOfSensors()).add(classifierResultSummary);
-                } else {
-                    ArrayList<ClassificationResult> sensorNumberResultList = new ArrayList<>();
-                    sensorNumberResultList.add(classifierResultSummary);
-                    sensorNumberResults.put(sensorSubset.getNumberOfSensors(), sensorNumberResultList);
-                }
+                // store results for current sensor subset
+                FileWriter.writeClassificationResults(sensorSubsetResults, outputFolderSensorSubset, "classificationResult");
             }
-
-            // store results for current sensor subset
-            FileWriter.writeClassificationResults(sensorSubsetResults, outputFolderSensorSubset, "classificationResult");
+        } finally {
+            evaluationPool.shutdown();
         }
 
         // write all results
@@ -522,24 +315,247 @@ public class TestBench {
         }
     }
 
-    void measureTime(Classifier classifier) {
-        // measure time for a single evaluation, and add up time used by current classifier
+    /**
+     * Load the features for the current settings and recordings from a previous run (if reuse is enabled),
+     * or create them
+     *
+     * @param outputFolderPath
+     * @return
+     */
+    SubjectsFeatureExtractionResults getFeatures(String outputFolderPath) {
+
+        // create new features, unless they may be reused
+        if (!TestBenchSettings.useExistingFeatureFile()) {
+            return FeatureExtractor.createFeatureFiles(TestBenchSettings.getInputBaseFolder(), outputFolderPath);
+        }
+
+        // the feature sets of previous runs are found by a key for the current settings and recordings
+        FeatureSetCache featureSetCache = new FeatureSetCache(
+                TestBenchSettings.getExistingFeaturesInputFolder(),
+                TestBenchSettings.getMaximumMegabytesForExistingFeatures());
+        String featureSetKey = null;
+        try {
+            featureSetKey = featureSetCache.getKey(TestBenchSettings.getInputBaseFolder());
+        } catch (IOException e) {
+            // the recordings are read as usual, which reports the problem if it persists
+        }
+        SubjectsFeatureExtractionResults subjectsFeatureExtractionResults = null;
+        if (featureSetKey != null) {
+            // load existing features, if there are any
+            subjectsFeatureExtractionResults = featureSetCache.read(featureSetKey);
+            if (subjectsFeatureExtractionResults != null) {
+                System.out.println("reused existing features " + featureSetKey);
+            }
+        }
+        if (subjectsFeatureExtractionResults == null) {
+            // create new features, and keep them for later runs
+            // the recordings hashed for the key are not hashed again
+            subjectsFeatureExtractionResults = FeatureExtractor.createFeatureFiles(
+                    TestBenchSettings.getInputBaseFolder(), outputFolderPath, featureSetCache.getContentHashes());
+            if (featureSetKey != null) {
+                featureSetCache.write(featureSetKey, subjectsFeatureExtractionResults);
+            }
+        }
+        return subjectsFeatureExtractionResults;
+    }
+
+    /**
+     * The output folder for the results of the given sensor subset
+     *
+     * @param resultsBaseFolder
+     * @param sensorSubset
+     * @return
+     */
+    String getOutputFolderSensorSubset(String resultsBaseFolder, SensorSubset sensorSubset) {
+        return resultsBaseFolder + sensorSubset.getNumberOfSensors() + " sensors/"
+                + sensorSubset.getFolderStringRepresentation() + "/";
+    }
+
+    /**
+     * The output folder for the results of the given classifier, within the folder of its sensor subset
+     *
+     * @param outputFolderSensorSubset
+     * @param classifier
+     * @return
+     */
+    String getOutputFolderClassifier(String outputFolderSensorSubset, Classifier classifier) {
+        String outputFolderClassifier = outputFolderSensorSubset + classifier.getClass().getSimpleName() + "/";
+        if (classifier instanceof AdaBoostM1) {
+            AdaBoostM1 adaBoost = (AdaBoostM1) classifier;
+            outputFolderClassifier = outputFolderClassifier + adaBoost.getClassifier().getClass().getSimpleName() + "/";
+        } else if (classifier instanceof Bagging) {
+            Bagging bagging = (Bagging) classifier;
+            outputFolderClassifier = outputFolderClassifier + bagging.getClassifier().getClass().getSimpleName() + "/";
+        } else if (classifier instanceof RandomCommittee) {
+            RandomCommittee randomCommittee = (RandomCommittee) classifier;
+            outputFolderClassifier = outputFolderClassifier + randomCommittee.getClassifier().getClass().getSimpleName() + "/";
+        }
+        return outputFolderClassifier;
+    }
+
+    /**
+     * Train a copy of the given classifier on all but the given subject, evaluate it on the subject,
+     * and write the results for the subject
+     * <p>
+     * Only uses data of its own or data that is not changed, so that multiple evaluations can run at the same time
+     *
+     * @param sensorSubsetData    the complete feature set, reduced to the sensor subset (unless using individual files)
+     * @param subjectSplitIndex   index of the complete feature set (unless using individual files)
+     * @param filePackage
+     * @param sensorSubset
+     * @param classifierTemplate  copied, not trained itself
+     * @param outputFolderSubject
+     * @return
+     */
+    EvaluationOutcome evaluateForSubject(ForkJoinTask<Instances> sensorSubsetData, SubjectSplitIndex subjectSplitIndex,
+                                         SubjectTrainingAndTestFilePackage filePackage, SensorSubset sensorSubset,
+                                         Classifier classifierTemplate, String outputFolderSubject) {
+
+        // setup data sources
+        Instances trainingDataFinal;
+        Instances testDataFinal;
+
+        // when using individual files for test and training for each subject, just load them
+        if (TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
+            trainingDataFinal = getAttributesForSensorSubset(filePackage.getTrainingDataUnfiltered(), sensorSubset);
+            testDataFinal = getAttributesForSensorSubset(filePackage.getTestDataUnfiltered(), sensorSubset);
+        } else {
+            // otherwise, separate both parts from the complete data set, using the index of its rows
+            // (the data set keeps its rows when reduced to the sensor subset, so the index still applies)
+            Instances allDataFiltered = sensorSubsetData.join();
+            trainingDataFinal = subjectSplitIndex.createTrainingData(allDataFiltered, filePackage.getSubject());
+            testDataFinal = subjectSplitIndex.createTestData(allDataFiltered, filePackage.getSubject());
+        }
+
+        Classifier classifier = copyClassifier(classifierTemplate);
+
+        // measure time for single evaluation
+        StopWatch singleTestStopWatch = new StopWatch();
+        singleTestStopWatch.start();
+
+        // build and evaluate model for current sensor subset, classifier and subject
+        Evaluation eval = null;
+        try {
+            classifier.buildClassifier(trainingDataFinal);
+
+            // leave one out
+            eval = new Evaluation(trainingDataFinal);
+            eval.evaluateModel(classifier, testDataFinal);
+
+            //getEvaluationSummary(classifier, eval, sensorSubset);
+        } catch (Exception e) {
+            System.out.println("Unable to train and evaluate model: " + classifier.getClass().toString());
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        singleTestStopWatch.stop();
+        long timeTaken = singleTestStopWatch.getTime(TimeUnit.MILLISECONDS);
+
+        // get classification results
+        ClassificationResult classificationResult = collectClassificationResults(classifier, eval, trainingDataFinal, filePackage.getSubject(), sensorSubset, outputFolderSubject, timeTaken);
+
+        // features used
+        FileWriter.writeFeaturesUsed(trainingDataFinal, testDataFinal, outputFolderSubject, "features used.txt");
+
+        // confusion matrix
+        saveConfusionMatrix(eval, trainingDataFinal, outputFolderSubject);
+
+        return new EvaluationOutcome(classificationResult, eval.confusionMatrix(), trainingDataFinal, timeTaken);
+    }
+
+    /**
+     * Train a copy of the given classifier on all data, evaluate it with cross-validation, and write the results
+     * <p>
+     * Only uses data of its own or data that is not changed, so that multiple evaluations can run at the same time
+     *
+     * @param subjectsFeatureExtractionResults
+     * @param sensorSubsetData                 the complete feature set, reduced to the sensor subset
+     * @param sensorSubset
+     * @param classifierTemplate               copied, not trained itself
+     * @param outputFolder
+     * @return
+     */
+    EvaluationOutcome evaluateWithCrossValidation(SubjectsFeatureExtractionResults subjectsFeatureExtractionResults,
+                                                  ForkJoinTask<Instances> sensorSubsetData,
+                                                  SensorSubset sensorSubset, Classifier classifierTemplate,
+                                                  String outputFolder) {
+
+        SubjectTrainingAndTestFilePackage allDataUnfiltered = subjectsFeatureExtractionResults.getCompleteFeatureSet();
+        Instances dataSet = allDataUnfiltered.getTrainingDataUnfiltered();
+
+        // the reduced data set is shared with the other classifiers, and must not be changed by this one
+        Instances finalDataSet = new Instances(sensorSubsetData.join());
+
+        Classifier classifier = copyClassifier(classifierTemplate);
+
+        // measure time for single evaluation
+        StopWatch singleTestStopWatch = new StopWatch();
+        singleTestStopWatch.start();
+
+        // build and evaluate model for current sensor subset and classifier
+        Evaluation eval = null;
+        final int numFolds = 10;
+        try {
+            classifier.buildClassifier(finalDataSet);
+            // cross-validation
+            eval = new Evaluation(finalDataSet);
+            eval.crossValidateModel(classifier, finalDataSet, numFolds, new Random(1));
+
+            //getEvaluationSummary(classifier, eval, sensorSubset);
+        } catch (Exception e) {
+            System.out.println("Unable to train and evaluate model: " + classifier.getClass().toString());
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
         singleTestStopWatch.stop();
+        long timeTaken = singleTestStopWatch.getTime(TimeUnit.MILLISECONDS);
+
+        // get classification results
+        ClassificationResult classificationResult = collectClassificationResults(classifier, eval, dataSet, "", sensorSubset, outputFolder, timeTaken);
+
+        // features used
+        FileWriter.writeFeaturesUsed(dataSet, dataSet, outputFolder, "features used.txt");
+
+        // confusion matrix
+        saveConfusionMatrix(eval, dataSet, outputFolder);
+
+        return new EvaluationOutcome(classificationResult, eval.confusionMatrix(), dataSet, timeTaken);
+    }
+
+    /**
+     * An untrained copy of the given classifier, with the same options
+     *
+     * @param classifier
+     * @return
+     */
+    Classifier copyClassifier(Classifier classifier) {
+        try {
+            return AbstractClassifier.makeCopy(classifier);
+        } catch (Exception e) {
+            System.out.println("Unable to copy classifier: " + classifier.getClass().toString());
+            e.printStackTrace();
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    void addTimeUsage(Classifier classifier, long timeTaken) {
+        // add up time used by current classifier
         if (classifierTimeUsage.containsKey(classifier)) {
             long overallTimeForClassifier = classifierTimeUsage.get(classifier);
-            classifierTimeUsage.put(
-                    classifier,
-                    overallTimeForClassifier + singleTestStopWatch.getTime(TimeUnit.MILLISECONDS));
+            classifierTimeUsage.put(classifier, overallTimeForClassifier + timeTaken);
         } else {
-            classifierTimeUsage.put(classifier, singleTestStopWatch.getTime(TimeUnit.MILLISECONDS));
+            classifierTimeUsage.put(classifier, timeTaken);
         }
     }
 
-    ClassificationResult collectClassificationResults(Classifier classifier, Evaluation eval, Instances trainingDataFinal, String subjectName, SensorSubset sensorSubset, String outputFolderSubject) {
+    ClassificationResult collectClassificationResults(Classifier classifier, Evaluation eval, Instances trainingDataFinal, String subjectName, SensorSubset sensorSubset, String outputFolderSubject, long timeTaken) {
         // collect and store evaluation results:
         // current result
         ClassificationResult classificationResult = ClassificationResult.constructClassificationResultForSinglePerson
-                (eval, classifier, trainingDataFinal, subjectName, sensorSubset, singleTestStopWatch.getTime(TimeUnit.MILLISECONDS));
+                (eval, classifier, trainingDataFinal, subjectName, sensorSubset, timeTaken);
         FileWriter.writeClassificationResult(classificationResult, outputFolderSubject, "classificationResult");
         // current model
         if (TestBenchSettings.writeAllModelsToFolder()) {
@@ -623,6 +639,9 @@ public class TestBench {
                 e.printStackTrace();
                 System.exit(-1);
             }
+        } else {
+            // the data set may be shared with other evaluations, and must not be changed by the classifier
+            dataSetFinal = new Instances(dataSet);
         }
         return dataSetFinal;
     }
@@ -636,4 +655,40 @@ public class TestBench {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The outcome of a single evaluation, as needed for the summaries
+     */
+    private static class EvaluationOutcome {
+
+        private final ClassificationResult classificationResult;
+        private final double[][] confusionMatrix;
+        // only the header is kept, the data itself is not needed for the summaries
+        private final Instances trainingData;
+        private final long timeTaken;
+
+        EvaluationOutcome(ClassificationResult classificationResult, double[][] confusionMatrix,
+                          Instances trainingData, long timeTaken) {
+            this.classificationResult = classificationResult;
+            this.confusionMatrix = confusionMatrix;
+            this.trainingData = new Instances(trainingData, 0);
+            this.timeTaken = timeTaken;
+        }
+
+        ClassificationResult getClassificationResult() {
+            return classificationResult;
+        }
+
+        double[][] getConfusionMatrix() {
+            return confusionMatrix;
+        }
+
+        Instances getTrainingData() {
+            return trainingData;
+        }
+
+        long getTimeTaken() {
+            return timeTaken;
+        }
+    }
+}
@@ -7,9 +7,13 @@ import com.romanuhlig.weka.io.SensorSubset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.TreeSet;
 
 /**
  * Determines the settings used throughout the feature extraction, training and testing process
+ * <p>
+ * The settings are only assigned while the class is initialized, so they can be read from any thread
+ * (e.g. the threads of the ParallelFeatureExtractor) without further synchronization.
  *
  * @author Roman Uhlig
  */
@@ -29,10 +33,17 @@ public class TestBenchSettings {
     // Evaluate a classifier using leave-one-out principle (true) or 10-fold cross-validation (false)
     private static boolean leaveOneOut = true;
 
-    // Do not generate new features, read old file instead?
-    // To read an old file, place the existing featureExtractionResults file (not the actual feature file)
-    // in the existingFeaturesInputFolder specified further below
+    // Do not generate new features, if a previous run created them with the same settings and recordings?
+    // If enabled, the feature sets are kept in the existingFeaturesInputFolder specified further below,
+    // and the matching one is found automatically. Features are generated (and kept) as usual if there is none.
+    // If disabled, the features are always generated, and nothing is kept for later runs.
     private static boolean useExistingFeatureFile = false;
+    // upper limit for the combined size of the feature sets kept for later runs, in megabytes
+    // (the least recently used feature sets are removed first, the current one is always kept)
+    private static int maximumMegabytesForExistingFeatures = 4096;
+    // store the features for later runs with single instead of double precision
+    // (halves the size of the feature store, but the features of later runs are rounded)
+    private static boolean useSinglePrecisionFeatureStore = false;
 
     // leave empty if you want to use the standard folder name, generated from the chosen settings
     private static String forceFolderName = "";
@@ -40,6 +51,9 @@ public class TestBenchSettings {
     // window size and spacing for feature generation
     private static double windowSizeForFrameDataToFeatureConversion = 5;
     private static double windowSpacingForFrameDataToFeatureConversion = 1;
+    // move the statistics from one overlapping window to the next, instead of recomputing them for each window
+    // (mean, standard deviation and mean absolute deviation may differ from the default computation by rounding)
+    private static boolean useSlidingWindowFeatureExtraction = false;
 
     // whether to include data of tested subject in training data (subject independent: None)
     // TODO: Set SubjectDataInclusion.All for the final model!!!
@@ -177,18 +191,51 @@ public class TestBenchSettings {
     // save all created models to their respective subject folder
     private static boolean writeAllModelsToFolder = true;
 
+    // number of models that are trained and evaluated at the same time (0 = one per available processor core)
+    // (each evaluation trains its own copy of the classifier, the results are the same as with a single thread)
+    private static int numberOfThreadsForEvaluation = 0;
+
     // Write one feature file per subject, instead of writing all into one file (and separating later).
     // Much slower due to frequent need to reload data, and needs much more memory due to size of training files.
     // Good for debugging at the start, but no longer tested as well as the standard setting (false),
     // checks recommended before using it again.
     private static boolean useIndividualFeatureFilesForEachSubject = false;
 
+    // Also write the extracted features into csv files, on a separate thread while the models are evaluated.
+    // The evaluation uses the features directly, the files are only needed to inspect the features (e.g. in the
+    // Weka Gui), later runs can reuse them from the feature store instead (see useExistingFeatureFile).
+    private static boolean writeFeatureFilesAsCSV = true;
+
+
+    // Resources used while reading the input data
+    // number of recordings that are parsed at the same time (0 = one per available processor core)
+    private static int numberOfThreadsForReadingInput = 0;
+    // upper limit for the combined size of all recordings that are parsed or held at the same time, in megabytes
+    // (a single recording larger than this is still read, just not alongside any other recording)
+    private static int maximumMegabytesForReadingInput = 512;
+    // number of threads that calculate features at the same time (0 = one per available processor core)
+    // (in streaming mode, up to this number of recordings may wait for their features beyond the limit above)
+    private static int numberOfThreadsForFeatureExtraction = 0;
+    // extract the features of each recording right after reading it, instead of reading all recordings first
+    // (produces the same features, but only needs memory for the recordings within the limit above)
+    private static boolean useStreamingFeatureExtraction = true;
+    // keep a binary copy of each parsed recording in the frameDataCacheFolder, and use it instead of the
+    // original recording in later runs (as long as the original recording has not changed)
+    private static boolean useFrameDataCache = true;
+    // keep the features extracted from each recording in the recordingFeatureCacheFolder, and reuse them
+    // in later runs with the same feature extraction settings (only applies to streaming feature extraction)
+    private static boolean useRecordingFeatureCache = true;
+
 
     // Input and output folders
     // collected exercise data
     private static String inputBaseFolder = "./inputFrameData/currentInput";
-    // place the existing featureExtractionResults file (not the actual feature file) here for feature reuse
+    // feature sets of previous runs, see useExistingFeatureFile
     private static String existingFeaturesInputFolder = "./inputFrameData/existingFeatures";
+    // binary copies of parsed recordings, see useFrameDataCache
+    private static String frameDataCacheFolder = "./inputFrameData/frameDataCache";
+    // features extracted from individual recordings, see useRecordingFeatureCache
+    private static String recordingFeatureCacheFolder = "./inputFrameData/recordingFeatureCache";
     // base folder for results
     private static String outputBaseFolder = "./outputResults/";
     // optional tag to add to automatically generated output folder name
@@ -268,6 +315,48 @@ public class TestBenchSettings {
     }
 
 
+    /**
+     * Describes all settings that influence the features extracted from a single recording
+     * <p>
+     * Used to decide whether features extracted in a previous run can be reused
+     *
+     * @return
+     */
+    public static String getFeatureExtractionSettingsDescription() {
+        StringBuilder stringBuilder = new StringBuilder();
+
+        stringBuilder.append("window size:   " + windowSizeForFrameDataToFeatureConversion);
+        stringBuilder.append(System.lineSeparator());
+
+        stringBuilder.append("window spacing:   " + windowSpacingForFrameDataToFeatureConversion);
+        stringBuilder.append(System.lineSeparator());
+
+        stringBuilder.append("sliding window feature extraction:   " + useSlidingWindowFeatureExtraction);
+        stringBuilder.append(System.lineSeparator());
+
+        // listed in a fixed order, regardless of the order in which they were specified
+        stringBuilder.append("forbidden feature types:   ");
+        for (FeatureType featureType : FeatureType.values()) {
+            if (forbiddenFeatureTypes.contains(featureType)) {
+                stringBuilder.append(featureType.toString() + "   ");
+            }
+        }
+        stringBuilder.append(System.lineSeparator());
+
+        // sensors are blocked if they are not part of any specific combination
+        TreeSet<String> allowedSensors = new TreeSet<>();
+        for (String[] allowedSensorSubset : onlyAllowSensorSubset) {
+            allowedSensors.addAll(Arrays.asList(allowedSensorSubset));
+        }
+        stringBuilder.append("only allowed sensors:   " + allowedSensors);
+        stringBuilder.append(System.lineSeparator());
+
+        stringBuilder.append("scale all features by:   " + scaleAllFeaturesBy);
+        stringBuilder.append(System.lineSeparator());
+
+        return stringBuilder.toString();
+    }
+
     /**
      * Summarizes the most important settings as a multiline text
      *
@@ -385,6 +474,16 @@ public class TestBenchSettings {
         return windowSpacingForFrameDataToFeatureConversion;
     }
 
+    /**
+     * Whether the statistics of overlapping windows are moved from one window to the next,
+     * instead of being recomputed for each window
+     *
+     * @return
+     */
+    public static boolean useSlidingWindowFeatureExtraction() {
+        return useSlidingWindowFeatureExtraction;
+    }
+
     /**
      * Whether the HMD should be included in sensor subsets
      *
@@ -488,6 +587,107 @@ public class TestBenchSettings {
         return useIndividualFeatureFilesForEachSubject;
     }
 
+    /**
+     * Whether the extracted features are also written into csv files
+     * <p>
+     * The files are written on a separate thread, the evaluation uses the features directly.
+     *
+     * @return
+     */
+    public static boolean writeFeatureFilesAsCSV() {
+        return writeFeatureFilesAsCSV;
+    }
+
+    /**
+     * The number of recordings that are parsed at the same time
+     *
+     * @return
+     */
+    public static int getNumberOfThreadsForReadingInput() {
+        if (numberOfThreadsForReadingInput <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return numberOfThreadsForReadingInput;
+    }
+
+    /**
+     * The number of threads that calculate features at the same time
+     *
+     * @return
+     */
+    public static int getNumberOfThreadsForFeatureExtraction() {
+        if (numberOfThreadsForFeatureExtraction <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return numberOfThreadsForFeatureExtraction;
+    }
+
+    /**
+     * The number of models that are trained and evaluated at the same time
+     *
+     * @return
+     */
+    public static int getNumberOfThreadsForEvaluation() {
+        if (numberOfThreadsForEvaluation <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return numberOfThreadsForEvaluation;
+    }
+
+    /**
+     * The upper limit for the combined size of all recordings that are parsed or held at the same time, in megabytes
+     *
+     * @return
+     */
+    public static int getMaximumMegabytesForReadingInput() {
+        return maximumMegabytesForReadingInput;
+    }
+
+    /**
+     * Whether the features of each recording are extracted right after reading it
+     *
+     * @return
+     */
+    public static boolean useStreamingFeatureExtraction() {
+        return useStreamingFeatureExtraction;
+    }
+
+    /**
+     * Whether the features extracted from each recording are kept, and reused in later runs
+     *
+     * @return
+     */
+    public static boolean useRecordingFeatureCache() {
+        return useRecordingFeatureCache;
+    }
+
+    /**
+     * The folder for features extracted from individual recordings
+     *
+     * @return
+     */
+    public static String getRecordingFeatureCacheFolder() {
+        return recordingFeatureCacheFolder;
+    }
+
+    /**
+     * Whether parsed recordings are kept in binary form, and reused in later runs
+     *
+     * @return
+     */
+    public static boolean useFrameDataCache() {
+        return useFrameDataCache;
+    }
+
+    /**
+     * The folder for binary copies of parsed recordings
+     *
+     * @return
+     */
+    public static String getFrameDataCacheFolder() {
+        return frameDataCacheFolder;
+    }
+
     /**
      * Test whether the given sensor subset is blocked from use
      * due to choice of specific combinations only
@@ -637,7 +837,8 @@ public class TestBenchSettings {
     }
 
     /**
-     * Whether to use an existing feature file instead of generating a new one
+     * Whether to use the features of a previous run with the same settings and recordings, if there are any,
+     * instead of generating new ones
      *
      * @return
      */
@@ -646,10 +847,7 @@ public class TestBenchSettings {
     }
 
     /**
-     * The folder in which existing feature reference file has to be placed
-     * <p>
-     * The feature reference file is not the feature file itself,
-     * but the file containing the location of all feature files
+     * The folder in which the feature sets of previous runs are kept
      *
      * @return
      */
@@ -657,6 +855,24 @@ public class TestBenchSettings {
         return existingFeaturesInputFolder;
     }
 
+    /**
+     * The upper limit for the combined size of the feature sets kept for later runs, in megabytes
+     *
+     * @return
+     */
+    public static int getMaximumMegabytesForExistingFeatures() {
+        return maximumMegabytesForExistingFeatures;
+    }
+
+    /**
+     * Whether the features are stored for later runs with single instead of double precision
+     *
+     * @return
+     */
+    public static boolean useSinglePrecisionFeatureStore() {
+        return useSinglePrecisionFeatureStore;
+    }
+
     /**
      * Whether to include data from the current subject in the training data
      * <p>
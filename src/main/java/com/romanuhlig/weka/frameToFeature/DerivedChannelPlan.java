@@ -0,0 +1,98 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.controller.TestBenchSettings.FeatureType;
+
+/**
+ * Determines which of the values derived from consecutive frames are computed and stored for each sensor
+ * <p>
+ * Position, rotation, time, scale and frame duration are always available.
+ * Everything else is only worth computing if an enabled feature consumes it.
+ *
+ * @author Roman Uhlig
+ */
+public class DerivedChannelPlan {
+
+    private final boolean linearVelocity;
+    private final boolean linearAcceleration;
+    private final boolean angularVelocity;
+    private final boolean angularAcceleration;
+
+    /**
+     * Create a plan with the given channels
+     * <p>
+     * Accelerations are derived from velocities, so requesting an acceleration includes the matching velocity
+     *
+     * @param linearVelocity
+     * @param linearAcceleration
+     * @param angularVelocity
+     * @param angularAcceleration
+     */
+    public DerivedChannelPlan(boolean linearVelocity, boolean linearAcceleration,
+                              boolean angularVelocity, boolean angularAcceleration) {
+        this.linearVelocity = linearVelocity || linearAcceleration;
+        this.linearAcceleration = linearAcceleration;
+        this.angularVelocity = angularVelocity || angularAcceleration;
+        this.angularAcceleration = angularAcceleration;
+    }
+
+    /**
+     * The channels consumed by the features enabled in TestBenchSettings
+     * <p>
+     * No feature is currently based on angular velocity or acceleration, so those are never included
+     *
+     * @return
+     */
+    public static DerivedChannelPlan fromSettings() {
+        return new DerivedChannelPlan(
+                TestBenchSettings.featureTagsAllowed(FeatureType.Velocity),
+                TestBenchSettings.featureTagsAllowed(FeatureType.Acceleration),
+                false,
+                false);
+    }
+
+    /**
+     * All channels, regardless of the settings
+     *
+     * @return
+     */
+    public static DerivedChannelPlan all() {
+        return new DerivedChannelPlan(true, true, true, true);
+    }
+
+    /**
+     * Whether the linear velocity is computed
+     *
+     * @return
+     */
+    public boolean includesLinearVelocity() {
+        return linearVelocity;
+    }
+
+    /**
+     * Whether the linear acceleration is computed
+     *
+     * @return
+     */
+    public boolean includesLinearAcceleration() {
+        return linearAcceleration;
+    }
+
+    /**
+     * Whether the angular velocity is computed
+     *
+     * @return
+     */
+    public boolean includesAngularVelocity() {
+        return angularVelocity;
+    }
+
+    /**
+     * Whether the angular acceleration is computed
+     *
+     * @return
+     */
+    public boolean includesAngularAcceleration() {
+        return angularAcceleration;
+    }
+}
@@ -0,0 +1,164 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.frameToFeature.FeaturePlan.StandardFeature;
+import com.romanuhlig.weka.math.OrderStatistics;
+
+/**
+ * The values of several data series (channels) within a window, and the statistics needed for their features
+ * <p>
+ * Values are added frame by frame, which also sums them up, tracks their minimum and maximum
+ * and creates their selection keys. A single pass over each channel then determines variance,
+ * mean absolute deviation and mean crossing rate together. The order of floating point operations is the same
+ * as in StatisticalValueCollector, so that the resulting features are identical.
+ * <p>
+ * The arrays are kept, and only grow if they cannot hold the requested channels and values.
+ *
+ * @author Roman Uhlig
+ */
+final class FeatureChannels {
+
+    // the values of each channel within the window, and their keys for selecting percentiles
+    private double[][] values = new double[0][0];
+    private long[][] selectionKeys = new long[0][0];
+
+    // accumulated while collecting the values
+    private double[] runningSum = new double[0];
+    private double[] sum = new double[0];
+    private double[] minimum = new double[0];
+    private double[] maximum = new double[0];
+
+    // the unscaled value of each standard feature of the channel being written, indexed by ordinal
+    private final double[] features = new double[StandardFeature.values().length];
+
+    /**
+     * Make room for the given number of channels and values, and reset the accumulated statistics
+     *
+     * @param numberOfChannels
+     * @param numberOfValues
+     */
+    void prepare(int numberOfChannels, int numberOfValues) {
+
+        if (numberOfValues <= 0) {
+            throw new IllegalStateException("no values collected");
+        }
+
+        if (values.length < numberOfChannels || values[0].length < numberOfValues) {
+            int channelCapacity = Math.max(numberOfChannels, values.length);
+            int valueCapacity = Math.max(numberOfValues, values.length == 0 ? 0 : values[0].length);
+            values = new double[channelCapacity][valueCapacity];
+            selectionKeys = new long[channelCapacity][valueCapacity];
+            runningSum = new double[channelCapacity];
+            sum = new double[channelCapacity];
+            minimum = new double[channelCapacity];
+            maximum = new double[channelCapacity];
+        }
+
+        for (int channel = 0; channel < numberOfChannels; channel++) {
+            runningSum[channel] = 0;
+            sum[channel] = 0;
+        }
+    }
+
+    /**
+     * Add the value of a single frame to the given channel
+     *
+     * @param channel
+     * @param index         index of the frame within the window
+     * @param value
+     * @param frameDuration
+     */
+    void collect(int channel, int index, double value, double frameDuration) {
+
+        values[channel][index] = value;
+        selectionKeys[channel][index] = OrderStatistics.toSortableKey(value);
+
+        // the same order of operations as StatisticalValueCollector, to get identical results
+        runningSum[channel] += value * frameDuration;
+        sum[channel] += value;
+
+        if (index == 0) {
+            minimum[channel] = value;
+            maximum[channel] = value;
+        } else if (Double.compare(value, minimum[channel]) < 0) {
+            minimum[channel] = value;
+        } else if (Double.compare(value, maximum[channel]) > 0) {
+            maximum[channel] = value;
+        }
+    }
+
+    /**
+     * Write the given standard features of the given channel into the row, starting at the given offset
+     *
+     * @param row
+     * @param offset
+     * @param channel
+     * @param numberOfValues
+     * @param overallTimePassed
+     * @param bodySize           1 if the channel is not scaled by body size
+     * @param scaleAllFeaturesBy
+     * @param standardFeatures   the features of the channel as listed by the FeaturePlan, in that order
+     * @return the offset after the written features
+     */
+    int writeFeatures(double[] row, int offset, int channel, int numberOfValues,
+                      double overallTimePassed, double bodySize, double scaleAllFeaturesBy,
+                      StandardFeature[] standardFeatures) {
+
+        double[] channelValues = values[channel];
+        double mean = sum[channel] / numberOfValues;
+
+        // variance, mean absolute deviation and mean crossing rate in a single pass
+        double squaredDeviations = 0;
+        double absoluteDeviations = 0;
+        double crossings = 0;
+        double previousValue = channelValues[0];
+        for (int i = 0; i < numberOfValues; i++) {
+            double value = channelValues[i];
+            double deviation = value - mean;
+            squaredDeviations += deviation * deviation;
+            absoluteDeviations += Math.abs(deviation);
+            if (previousValue < mean && value > mean || previousValue > mean && value < mean) {
+                crossings++;
+            }
+            previousValue = value;
+        }
+        double standardDeviation = Math.sqrt(squaredDeviations / (numberOfValues - 1));
+        double meanAbsoluteDeviation = absoluteDeviations / numberOfValues;
+        double meanCrossingRate = crossings / (numberOfValues - 1);
+
+        // select the upper quartile first, which leaves a smaller range for the lower one
+        long[] keys = selectionKeys[channel];
+        int upperIndex = (int) ((numberOfValues - 1) * 0.75);
+        int lowerIndex = (int) ((numberOfValues - 1) * 0.25);
+        OrderStatistics.select(keys, 0, numberOfValues, upperIndex);
+        if (lowerIndex < upperIndex) {
+            OrderStatistics.select(keys, 0, upperIndex, lowerIndex);
+        }
+        double quartile1 = OrderStatistics.fromSortableKey(keys[lowerIndex]);
+        double quartile3 = OrderStatistics.fromSortableKey(keys[upperIndex]);
+
+        double channelMinimum = minimum[channel];
+        double channelMaximum = maximum[channel];
+
+        double[] features = this.features;
+        features[StandardFeature.Mean.ordinal()] = runningSum[channel] / overallTimePassed;
+        features[StandardFeature.StandardDeviation.ordinal()] = standardDeviation;
+        features[StandardFeature.MeanAbsoluteDeviation.ordinal()] = meanAbsoluteDeviation;
+        features[StandardFeature.InterquartileRange.ordinal()] = quartile3 - quartile1;
+        features[StandardFeature.Max.ordinal()] = channelMaximum;
+        features[StandardFeature.Min.ordinal()] = channelMinimum;
+        features[StandardFeature.Range.ordinal()] = Math.abs(channelMaximum - channelMinimum);
+        features[StandardFeature.MeanCrossingRate.ordinal()] = meanCrossingRate;
+        features[StandardFeature.Percentile25.ordinal()] = quartile1;
+        features[StandardFeature.Percentile75.ordinal()] = quartile3;
+
+        for (StandardFeature standardFeature : standardFeatures) {
+            double feature = features[standardFeature.ordinal()];
+            if (standardFeature.isScaledByBodySize()) {
+                feature /= bodySize;
+            }
+            row[offset++] = feature * scaleAllFeaturesBy;
+        }
+
+        return offset;
+    }
+}
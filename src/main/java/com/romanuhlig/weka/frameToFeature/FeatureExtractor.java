@@ -3,23 +3,23 @@ package com.romanuhlig.weka.frameToFeature;
 import com.opencsv.CSVWriter;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
-import com.romanuhlig.weka.ConvexHull.ConvexHull;
-import com.romanuhlig.weka.ConvexHull.ConvexHullPoint;
 import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.frameToFeature.FeaturePlan.StandardFeature;
+import com.romanuhlig.weka.io.SubjectRowRanges;
 import com.romanuhlig.weka.io.SubjectsFeatureExtractionResults;
 import com.romanuhlig.weka.io.SubjectTrainingAndTestFilePackage;
-import com.romanuhlig.weka.math.MathHelper;
+import weka.core.Instances;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-
-import com.romanuhlig.weka.controller.TestBenchSettings.FeatureType;
-import com.romanuhlig.weka.quickhull3d.Point3d;
-import com.romanuhlig.weka.quickhull3d.QuickHull3D;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Reads and processes sensor readings produced by the BodyTrackingFramework
@@ -31,6 +31,9 @@ public class FeatureExtractor {
     // the feature folder name to be added to the overall base output folder
     private static final String outputBaseFolder = "features";
 
+    // the number of windows used from each recording (except for those that are used as a whole)
+    private static final int maximumWindowsPerRecording = 10;
+
     /**
      * Read and process all sensor readings in the given file
      *
@@ -39,6 +42,67 @@ public class FeatureExtractor {
      */
     public static FrameDataSet readFrameDataSet(String filePath) {
 
+        try {
+            // reuse the data of previous runs, if the recording did not change in between
+            if (TestBenchSettings.useFrameDataCache()) {
+                return FrameDataCache.readFrameDataSet(filePath, TestBenchSettings.getFrameDataCacheFolder());
+            }
+            // parse the required columns directly, instead of going through OpenCSV
+            return FrameDataReader.readFrameDataSet(filePath);
+        } catch (Exception e) {
+            System.err.println("unable to read file " + filePath);
+            return null;
+        }
+    }
+
+    /**
+     * Read and process all sensor readings in the given file, whose content hash has already been computed
+     * <p>
+     * Same as readFrameDataSet, but the FrameDataCache uses the given hash instead of reading the whole file for it
+     *
+     * @param filePath
+     * @param contentHash
+     * @return
+     */
+    private static FrameDataSet readFrameDataSet(String filePath, long contentHash) {
+
+        try {
+            if (TestBenchSettings.useFrameDataCache()) {
+                return FrameDataCache.readFrameDataSet(
+                        filePath, TestBenchSettings.getFrameDataCacheFolder(), contentHash);
+            }
+            return FrameDataReader.readFrameDataSet(filePath);
+        } catch (Exception e) {
+            System.err.println("unable to read file " + filePath);
+            return null;
+        }
+    }
+
+    /**
+     * Read and process all sensor readings in the given file, using the content hash from the given ones if present
+     *
+     * @param inputFile
+     * @param knownContentHashes
+     * @return
+     */
+    private static FrameDataSet readFrameDataSet(File inputFile, Map<File, Long> knownContentHashes) {
+        Long contentHash = knownContentHashes.get(inputFile);
+        if (contentHash == null) {
+            return readFrameDataSet(inputFile.getPath());
+        }
+        return readFrameDataSet(inputFile.getPath(), contentHash);
+    }
+
+    /**
+     * Read and process all sensor readings in the given file, using the reflection-based OpenCSV bean mapping
+     * <p>
+     * Much slower than readFrameDataSet, only kept as a reference for comparisons
+     *
+     * @param filePath
+     * @return
+     */
+    public static FrameDataSet readFrameDataSetWithOpenCsv(String filePath) {
+
         try (
                 // reader in resource statement is automatically closed on failure
                 Reader reader = Files.newBufferedReader(Paths.get(filePath));
@@ -65,11 +129,27 @@ public class FeatureExtractor {
 
     /**
      * Read and process all sensor readings within files in the given folder
+     * <p>
+     * Files are read in parallel, as specified in TestBenchSettings,
+     * but the order of the returned data matches the order of the files
      *
      * @param inputFilePath
      * @return
      */
     public static ArrayList<FrameDataSet> readAllFrameDataSets(String inputFilePath) {
+        return readAllFrameDataSets(inputFilePath, Collections.emptyMap());
+    }
+
+    /**
+     * Read and process all sensor readings within files in the given folder,
+     * without hashing the recordings whose content hashes are already known
+     *
+     * @param inputFilePath
+     * @param knownContentHashes
+     * @return
+     */
+    private static ArrayList<FrameDataSet> readAllFrameDataSets(
+            String inputFilePath, Map<File, Long> knownContentHashes) {
 
         // read existing data
         // get files in path
@@ -77,32 +157,69 @@ public class FeatureExtractor {
         File[] listOfInputFiles = inputFolder.listFiles();
 
         // read and collect the frame data from all files
-        ArrayList<FrameDataSet> allFrameDataSets = new ArrayList<>();
-        for (int i = 0; i < listOfInputFiles.length; i++) {
+        ArrayList<FrameDataSet> frameDataSets = createParallelFrameDataReader()
+                .readAll(getRecordingFiles(listOfInputFiles), listOfInputFiles.length,
+                        inputFile -> readFrameDataSet(inputFile, knownContentHashes));
+
+        printRejectionSummary();
+
+        return frameDataSets;
+    }
+
+    /**
+     * Create a reader for multiple recordings, using the resources specified in TestBenchSettings
+     *
+     * @return
+     */
+    private static ParallelFrameDataReader createParallelFrameDataReader() {
+        return new ParallelFrameDataReader(
+                TestBenchSettings.getNumberOfThreadsForReadingInput(),
+                TestBenchSettings.getMaximumMegabytesForReadingInput());
+    }
+
+    /**
+     * Create an extractor for the features of multiple windows, using the threads specified in TestBenchSettings
+     *
+     * @return
+     */
+    private static ParallelFeatureExtractor createParallelFeatureExtractor() {
+        return new ParallelFeatureExtractor(TestBenchSettings.getNumberOfThreadsForFeatureExtraction());
+    }
+
+    /**
+     * Summarize which plausibility checks removed frames
+     */
+    private static void printRejectionSummary() {
+        for (String rejectionLine : SensorRegistry.getRejectionSummary()) {
+            System.out.println("frames rejected by plausibility check, " + rejectionLine);
+        }
+    }
+
+    /**
+     * Filter the given files down to actual recordings
+     *
+     * @param listOfInputFiles
+     * @return
+     */
+    static ArrayList<File> getRecordingFiles(File[] listOfInputFiles) {
+
+        ArrayList<File> recordingFiles = new ArrayList<>();
+        for (File inputFile : listOfInputFiles) {
 
             // windows likes to place a desktop.ini file wherever it feels like, so we have to ignore it
-            if (listOfInputFiles[i].getName().equals("desktop.ini") || listOfInputFiles[i].getName().equals(".DS_Store")) {
+            if (inputFile.getName().equals("desktop.ini") || inputFile.getName().equals(".DS_Store")) {
                 System.out.println("ignored desktop.ini or .DS_Store");
                 continue;
             }
 
-            // progression log output
-            System.out.println("reading input file:   " + (i + 1) + " / " + listOfInputFiles.length);
-
-            File inputFile = listOfInputFiles[i];
-
             // files may be opened while debugging, so exclude lock files
             if (inputFile.getName().startsWith(".~")) {
                 continue;
             }
 
-            // read and collect the data
-            FrameDataSet frameDataSet = readFrameDataSet(inputFile.getPath());
-            allFrameDataSets.add(frameDataSet);
+            recordingFiles.add(inputFile);
         }
-
-        return allFrameDataSets;
-
+        return recordingFiles;
     }
 
     /**
@@ -134,66 +251,55 @@ public class FeatureExtractor {
      * @return
      */
     public static SubjectsFeatureExtractionResults createFeatureFiles(String inputFilePath, String outputFilePath) {
+        return createFeatureFiles(inputFilePath, outputFilePath, Collections.emptyMap());
+    }
 
-        ArrayList<FrameDataSet> windows = new ArrayList<>();
-
-        ArrayList<FrameDataSet> originalFrameDataSets = readAllFrameDataSets(inputFilePath);
-
-        for (FrameDataSet originalFrameDataSet : originalFrameDataSets) {
-            if (originalFrameDataSet.getActivity().contains("Krieger")) {
-                // read original recorded data and separate for each movement (one window == movement)
-                windows.add(originalFrameDataSet);
-            } else {
-                // read original recorded data, and separate into windows
-                ArrayList<FrameDataSet> dataSetWindows =
-                        originalFrameDataSet.separateFrameDataIntoValidWindows(TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion(),
-                                TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion());
-                // add only the first 10 windows (because we also have only 10 trials for each yoga pose)
-                for (int i = 0; i < 10; i++) {
-                    if (i < dataSetWindows.size()) {
-                        windows.add(dataSetWindows.get(i));
-                    }
-                }
-                //windows.addAll(dataSetWindows);
-            }
-        }
+    /**
+     * Create feature vectors based on the given input files, and save them
+     * <p>
+     * Recordings whose content hashes are already known, e.g. from the key of the FeatureSetCache,
+     * are not hashed again
+     *
+     * @param inputFilePath
+     * @param outputFilePath
+     * @param knownContentHashes
+     * @return
+     */
+    public static SubjectsFeatureExtractionResults createFeatureFiles(
+            String inputFilePath, String outputFilePath, Map<File, Long> knownContentHashes) {
 
-        // collect all subject names
+        // collected while extracting the features
         HashSet<String> subjectNames = new HashSet<>();
-        for (FrameDataSet originalFrameDataSet : originalFrameDataSets) {
-            subjectNames.add(originalFrameDataSet.getSubject());
+        ArrayList<String> sensorTypes = new ArrayList<>();
+
+        ArrayList<FeatureVector> featureVectors;
+        if (TestBenchSettings.useStreamingFeatureExtraction()) {
+            featureVectors = extractFeaturesWhileReading(
+                    inputFilePath, knownContentHashes, subjectNames, sensorTypes);
+        } else {
+            featureVectors = extractFeaturesAfterReading(
+                    inputFilePath, knownContentHashes, subjectNames, sensorTypes);
         }
+        System.out.println(FrameDataSet.getLeftOutWindowSummary());
 
-        // free up memory
-        originalFrameDataSets = null;
+        // sort by class once, which also keeps the vectors of each subject sorted
+        // The Weka Gui is unable to deal with unordered classes, which makes sanity checks difficult otherwise
+        featureVectors.sort(new Comparator<FeatureVector>() {
+            @Override
+            public int compare(FeatureVector o1, FeatureVector o2) {
+                return o1.getClassValue().compareTo(o2.getClassValue());
+            }
+        });
 
         // prepare header for output file
-        // identify sensors in original data
-        ArrayList<String> sensorTypes = windows.get(0).getAllSensorPositions();
         ArrayList<String> headerFields =
                 getFeatureHeaderForSensorTypes(
                         sensorTypes, true,
                         !TestBenchSettings.useIndividualFeatureFilesForEachSubject());
 
-        ArrayList<FeatureVector> featureVectors = new ArrayList<>();
-
-        // extract features for each window
-        int numberOfWindows = windows.size();
-        for (int i = windows.size() - 1; i >= 0; i--) {
-
-            if ((numberOfWindows - i) % 100 == 0) {
-                System.out.println("calculated features for window:   "
-                        + (numberOfWindows - i) + " / " + numberOfWindows);
-            }
-
-            // shorten list as we go, to save on memory
-            FrameDataSet singleWindow = windows.get(i);
-            windows.remove(i);
-
-            // create new data line
-            FeatureVector currentFeatureVector = getFeaturesForFrameDataSet(singleWindow);
-            featureVectors.add(currentFeatureVector);
-        }
+        // the features are used directly, without writing and reloading them
+        FeatureInstancesBuilder instancesBuilder = new FeatureInstancesBuilder(
+                headerFields, featureVectors, !TestBenchSettings.useIndividualFeatureFilesForEachSubject());
 
         // create folder for feature output file
         String outputFeaturesFilePath = outputFilePath + "/" + outputBaseFolder + "/";
@@ -209,599 +315,540 @@ public class FeatureExtractor {
         SubjectsFeatureExtractionResults subjectsFeatureExtractionResults
                 = new SubjectsFeatureExtractionResults(sensorTypes);
 
-        // create training and test file for each subject individually
-        if (TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
+        // feature files are written on a separate thread, which keeps the program running until it is done
+        ExecutorService featureFileWriter = null;
+        if (TestBenchSettings.writeFeatureFilesAsCSV()) {
+            featureFileWriter = Executors.newSingleThreadExecutor();
+        }
 
-            System.out.println("writing features to individual files for each subject");
+        try {
+            // create training and test file for each subject individually
+            if (TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
 
-            for (String subject : subjectNameList) {
+                System.out.println("creating individual feature sets for each subject");
 
-                // collect training and test examples
-                ArrayList<FeatureVector> onlySubjectVectors = new ArrayList<>();
-                ArrayList<FeatureVector> allButSubjectVectors = new ArrayList<>();
-                for (FeatureVector originalVector : featureVectors) {
-                    if (originalVector.getSubject().equals(subject)) {
-                        onlySubjectVectors.add(originalVector);
-                    } else {
-                        allButSubjectVectors.add(originalVector);
+                for (String subject : subjectNameList) {
+
+                    // collect training and test examples
+                    ArrayList<FeatureVector> onlySubjectVectors = new ArrayList<>();
+                    ArrayList<FeatureVector> allButSubjectVectors = new ArrayList<>();
+                    for (FeatureVector originalVector : featureVectors) {
+                        if (originalVector.getSubject().equals(subject)) {
+                            onlySubjectVectors.add(originalVector);
+                        } else {
+                            allButSubjectVectors.add(originalVector);
+                        }
                     }
-                }
 
-                // write and collect files
-                String trainingFilePath = outputFeaturesFilePath + subject + "/trainingDataSet.csv";
-                String testFilePath = outputFeaturesFilePath + subject + "/testDataSet.csv";
+                    // write and collect files
+                    String trainingFilePath = outputFeaturesFilePath + subject + "/trainingDataSet.csv";
+                    String testFilePath = outputFeaturesFilePath + subject + "/testDataSet.csv";
 
-                writeOutputFeatureVectorToCSV(trainingFilePath, headerFields, allButSubjectVectors);
-                writeOutputFeatureVectorToCSV(testFilePath, headerFields, onlySubjectVectors);
+                    writeOutputFeatureVectorToCSV(featureFileWriter, trainingFilePath, headerFields, allButSubjectVectors);
+                    writeOutputFeatureVectorToCSV(featureFileWriter, testFilePath, headerFields, onlySubjectVectors);
 
-                subjectsFeatureExtractionResults.addTrainingAndTestFilePackage(new SubjectTrainingAndTestFilePackage(
-                        trainingFilePath, testFilePath, subject));
-            }
-        } else {
-            // create dummy file packages if they are only needed as a reference to the subjects
-            for (String subject : subjectNameList) {
-                subjectsFeatureExtractionResults.addTrainingAndTestFilePackage(
-                        new SubjectTrainingAndTestFilePackage(subject));
+                    subjectsFeatureExtractionResults.addTrainingAndTestFilePackage(new SubjectTrainingAndTestFilePackage(
+                            trainingFilePath, testFilePath, subject,
+                            instancesBuilder.createInstances("trainingDataSet", allButSubjectVectors),
+                            instancesBuilder.createInstances("testDataSet", onlySubjectVectors)));
+                }
+            } else {
+                // create dummy file packages if they are only needed as a reference to the subjects
+                for (String subject : subjectNameList) {
+                    subjectsFeatureExtractionResults.addTrainingAndTestFilePackage(
+                            new SubjectTrainingAndTestFilePackage(subject));
+                }
             }
-        }
 
-        System.out.println("writing all features into a single file");
+            System.out.println("creating a single feature set for all subjects");
 
-        // write all features in a single data file
-        String completeFeatureSetFilePath = outputFeaturesFilePath + "/allDataInOne.csv";
-        writeOutputFeatureVectorToCSV(completeFeatureSetFilePath, headerFields, featureVectors);
-        subjectsFeatureExtractionResults.setCompleteFeatureSet(new SubjectTrainingAndTestFilePackage(
-                completeFeatureSetFilePath, completeFeatureSetFilePath, "completeFeatureSet"));
+            // write all features in a single data file
+            // (the same data serves as training and test data, only the training data is used)
+            String completeFeatureSetFilePath = outputFeaturesFilePath + "/allDataInOne.csv";
+            writeOutputFeatureVectorToCSV(featureFileWriter, completeFeatureSetFilePath, headerFields, featureVectors);
+            Instances completeFeatureSet = instancesBuilder.createInstances("allDataInOne", featureVectors);
+            subjectsFeatureExtractionResults.setCompleteFeatureSet(new SubjectTrainingAndTestFilePackage(
+                    completeFeatureSetFilePath, completeFeatureSetFilePath, "completeFeatureSet",
+                    completeFeatureSet, completeFeatureSet));
 
-        return subjectsFeatureExtractionResults;
+            // keep track of the rows of each subject, since the feature set does not always include the subject
+            ArrayList<String> subjectOfEachRow = new ArrayList<>(featureVectors.size());
+            for (FeatureVector featureVector : featureVectors) {
+                subjectOfEachRow.add(featureVector.getSubject());
+            }
+            subjectsFeatureExtractionResults.setSubjectRowRanges(new SubjectRowRanges(subjectOfEachRow));
 
-    }
+        } finally {
+            // finish the files that were started, without waiting for them
+            if (featureFileWriter != null) {
+                featureFileWriter.shutdown();
+            }
+        }
 
-    /**
-     * Get the feature headers required for the sensors contained in the FrameDataSet
-     *
-     * @param frameDataSet
-     * @param includeClassForTraining
-     * @param includeSubjectForTraining
-     * @return
-     */
-    public static ArrayList<String> getFeatureHeaderForFrameDataSet(FrameDataSet frameDataSet,
-                                                                    boolean includeClassForTraining,
-                                                                    boolean includeSubjectForTraining) {
+        return subjectsFeatureExtractionResults;
 
-        ArrayList<String> sensorTypes = frameDataSet.getAllSensorPositions();
-        return getFeatureHeaderForSensorTypes(sensorTypes, includeClassForTraining, includeSubjectForTraining);
     }
 
     /**
-     * Calculate the features for the given FrameDataSet
+     * Read all recordings first, and then extract the features for all of their windows
      * <p>
-     * The FrameDataSet should represent one window of the original sensor data
+     * Requires enough memory to hold all recordings at the same time
      *
-     * @param dataSource
+     * @param inputFilePath
+     * @param knownContentHashes
+     * @param subjectNames       filled with the subjects of all recordings
+     * @param sensorTypes        filled with the sensors of the first window
      * @return
      */
-    public static FeatureVector getFeaturesForFrameDataSet(FrameDataSet dataSource) {
+    private static ArrayList<FeatureVector> extractFeaturesAfterReading(
+            String inputFilePath, Map<File, Long> knownContentHashes,
+            HashSet<String> subjectNames, ArrayList<String> sensorTypes) {
 
-        // create new data line
-        FeatureVector featureVector = new FeatureVector(dataSource.getSubject(), dataSource.getActivity());
+        // windows are kept per recording, so that overlapping windows can be processed together
+        ArrayList<ArrayList<FrameDataSet>> windowsPerRecording = new ArrayList<>();
 
-        ArrayList<List<FrameData>> allSensorLists = dataSource.getAllSensorLists();
+        ArrayList<FrameDataSet> originalFrameDataSets = readAllFrameDataSets(inputFilePath, knownContentHashes);
 
-        // collect features that are calculated from the data of a single sensor
-        for (int sensorID = 0; sensorID < allSensorLists.size(); sensorID++) {
+        int numberOfWindows = 0;
+        for (FrameDataSet originalFrameDataSet : originalFrameDataSets) {
+            ArrayList<FrameDataSet> windows = getWindowsForFeatureExtraction(originalFrameDataSet);
+            windowsPerRecording.add(windows);
+            numberOfWindows += windows.size();
+        }
 
-            List<FrameData> singleSensorList = allSensorLists.get(sensorID);
+        // collect all subject names
+        for (FrameDataSet originalFrameDataSet : originalFrameDataSets) {
+            subjectNames.add(originalFrameDataSet.getSubject());
+        }
 
-            // leave out blocked sensors
-            if (TestBenchSettings.isSensorBlocked(singleSensorList.get(0).getSensorPosition())) {
-                continue;
-            }
+        // free up memory
+        originalFrameDataSets = null;
 
-            // determine values that stay true for the whole window
-            double overallTimePassed =
-                    singleSensorList.get(singleSensorList.size() - 1).getTime()
-                            - singleSensorList.get(0).getTime();
-            double bodySize = singleSensorList.get(0).getScale();
-
-            // Calculate features for sensor.
-            // Intuition suggests that average velocity and height / range will be more affected by body size
-            // than acceleration, testing shows that this corresponds to the "best" setting for detection.
-            StatisticalValueCollector Position_X =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-            StatisticalValueCollector Position_Y =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-            StatisticalValueCollector Position_Z =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-
-            StatisticalValueCollector Rotation_X =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-            StatisticalValueCollector Rotation_Y =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-            StatisticalValueCollector Rotation_Z =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-            StatisticalValueCollector Rotation_W =
-                    new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-
-
-            StatisticalValueCollector Velocity_Y =
-                    new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-            StatisticalValueCollector Acceleration_Y =
-                    new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-            StatisticalValueCollector Velocity_XYZ =
-                    new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-            StatisticalValueCollector Acceleration_XYZ =
-                    new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-
-            //StatisticalValueCollector AngularVelocity =
-            //        new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-            //StatisticalValueCollector AngularAcceleration =
-            //        new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-
-            // collect points in order to calculate maximum range in different dimensions
-            //ArrayList<ConvexHullPoint> rangePointsXZ = new ArrayList<>(singleSensorList.size());
-            Point3d[] rangePointsXYZ = new Point3d[singleSensorList.size()];
-
-            // collect values of this sensor over time
-            for (int i = 0; i < singleSensorList.size(); i++) {
-
-                FrameData frameData = singleSensorList.get(i);
-
-                // collect points in order to calculate maximum range in different dimensions
-                rangePointsXYZ[i] = new Point3d(frameData.getPosX(), frameData.getPosY(), frameData.getPosZ());
-
-                // collect other values over time for future analysis
-                double timeSinceLastFrame = frameData.getFrameDuration();
-
-                // velocity
-                Velocity_Y.addValue(frameData.getLinVelZ(), timeSinceLastFrame);
-                Velocity_XYZ.addValue(
-                        MathHelper.EuclideanNorm(
-                                frameData.getLinVelX(),
-                                frameData.getLinVelY(),
-                                frameData.getLinVelZ()),
-                        timeSinceLastFrame);
-
-                // acceleration
-                Acceleration_Y.addValue(frameData.getLinAccelerationZ(), timeSinceLastFrame);
-                Acceleration_XYZ.addValue(
-                        MathHelper.EuclideanNorm(
-                                frameData.getLinAccelerationX(),
-                                frameData.getLinAccelerationY(),
-                                frameData.getLinAccelerationZ()),
-                        timeSinceLastFrame);
-
-                // angular velocity
-                /*AngularVelocity.addValue(
-                        MathHelper.EuclideanNorm(
-                                frameData.getAngVelX(),
-                                frameData.getAngVelY(),
-                                frameData.getAngVelZ()),
-                        timeSinceLastFrame);
-                AngularAcceleration.addValue(
-                        MathHelper.EuclideanNorm(
-                                frameData.getAngAccelerationX(),
-                                frameData.getAngAccelerationY(),
-                                frameData.getAngAccelerationZ()),
-                        timeSinceLastFrame);*/
-
-                // position
-                Position_X.addValue(frameData.getPosX(), timeSinceLastFrame);
-                Position_Y.addValue(frameData.getPosY(), timeSinceLastFrame);
-                Position_Z.addValue(frameData.getPosZ(), timeSinceLastFrame);
-
-                // rotation
-                Rotation_X.addValue(frameData.getRotX(), timeSinceLastFrame);
-                Rotation_Y.addValue(frameData.getRotY(), timeSinceLastFrame);
-                Rotation_Z.addValue(frameData.getRotZ(), timeSinceLastFrame);
-                Rotation_W.addValue(frameData.getRotW(), timeSinceLastFrame);
+        // identify sensors in original data
+        for (ArrayList<FrameDataSet> windows : windowsPerRecording) {
+            if (!windows.isEmpty()) {
+                sensorTypes.addAll(windows.get(0).getAllSensorPositions());
+                break;
             }
+        }
 
-            // determine individual values that do not use the collector class
-            // compute convex hull in 2D, and test for maximum distance among hull points
-            /*List<ConvexHullPoint> rangeXZouterPoints = ConvexHull.makeHull(rangePointsXZ);
-            double rangeXZ = 0;
-            for (int a = 0; a < rangeXZouterPoints.size(); a++) {
-                ConvexHullPoint pointA = rangeXZouterPoints.get(a);
-                for (int b = a + 1; b < rangeXZouterPoints.size(); b++) {
-                    ConvexHullPoint pointB = rangeXZouterPoints.get(b);
-                    double distance = MathHelper.distance(
-                            pointA.x, pointA.y,
-                            pointB.x, pointB.y);
-                    if (distance > rangeXZ) {
-                        rangeXZ = distance;
-                    }
-                }
+        ArrayList<FeatureVector> featureVectors = new ArrayList<>();
+
+        // extract features for all recordings at the same time, starting with the last one
+        ParallelFeatureExtractor parallelFeatureExtractor = createParallelFeatureExtractor();
+        try {
+            ArrayList<ForkJoinTask<ArrayList<FeatureVector>>> featureTasks =
+                    new ArrayList<>(windowsPerRecording.size());
+            for (int r = windowsPerRecording.size() - 1; r >= 0; r--) {
+                ArrayList<FrameDataSet> windows = windowsPerRecording.get(r);
+                featureTasks.add(parallelFeatureExtractor.submit(
+                        () -> getFeaturesForWindows(windows, parallelFeatureExtractor)));
             }
-            rangeXZ /= bodySize;*/
-            // compute convex hull in 3D, and test for maximum distance among hull points
-            /*double rangeXYZ = 0;
-            try {
-                QuickHull3D hull = new QuickHull3D(rangePointsXYZ);
-                Point3d[] rangeXYZouterPoints = hull.getVertices();
-                for (int a = 0; a < rangeXYZouterPoints.length; a++) {
-                    Point3d pointA = rangeXYZouterPoints[a];
-                    for (int b = a + 1; b < rangeXYZouterPoints.length; b++) {
-                        Point3d pointB = rangeXYZouterPoints[b];
-                        double distance = MathHelper.distance(
-                                pointA.x, pointA.y, pointA.z,
-                                pointB.x, pointB.y, pointB.z);
-                        if (distance > rangeXYZ) {
-                            rangeXYZ = distance;
-                        }
+            windowsPerRecording = null;
+
+            // collect the results in a fixed order, regardless of the order in which they were finished
+            int windowsDone = 0;
+            for (int t = 0; t < featureTasks.size(); t++) {
+
+                // shorten list as we go, to save on memory
+                ArrayList<FeatureVector> recordingFeatureVectors = featureTasks.get(t).join();
+                featureTasks.set(t, null);
+
+                for (int i = recordingFeatureVectors.size() - 1; i >= 0; i--) {
+                    featureVectors.add(recordingFeatureVectors.get(i));
+
+                    windowsDone++;
+                    if (windowsDone % 100 == 0) {
+                        System.out.println("calculated features for window:   "
+                                + windowsDone + " / " + numberOfWindows);
                     }
                 }
-            } catch (Exception e) {
-                // if there is an exception, it is because all points were too similar
-                // if this is the case, we can just keep the maximum distance value at 0
             }
-            rangeXYZ /= bodySize;*/
+        } finally {
+            parallelFeatureExtractor.shutdown();
+        }
 
+        return featureVectors;
+    }
 
-            // collect the calculated single-sensor values for output
-            // the order and type-based selection here has to be consistent with the generated header
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Position) && !TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-                //Position_X.adjustToLowestValueAsZero();
-                //Position_Y.adjustToLowestValueAsZero();
-                addStandardFeatures(featureVector, Position_X);
-                addStandardFeatures(featureVector, Position_Y);
-                addStandardFeatures(featureVector, Position_Z);
+    /**
+     * Extract the features of each recording as soon as it has been read, and forget the recording afterwards
+     * <p>
+     * Only the feature vectors and the recordings read ahead within the memory limit are held at the same time.
+     * Recordings whose features are found in the RecordingFeatureCache are not read at all.
+     * Each recording is hashed at most once, on the reading threads, unless its content hash is already known.
+     * The returned feature vectors are in the same order as for extractFeaturesAfterReading.
+     *
+     * @param inputFilePath
+     * @param knownContentHashes
+     * @param subjectNames       filled with the subjects of all recordings
+     * @param sensorTypes        filled with the sensors of the first window
+     * @return
+     */
+    private static ArrayList<FeatureVector> extractFeaturesWhileReading(
+            String inputFilePath, Map<File, Long> knownContentHashes,
+            HashSet<String> subjectNames, ArrayList<String> sensorTypes) {
 
-                //featureVector.addFeature(rangeXYZ);
-            }
+        File[] listOfInputFiles = new File(inputFilePath).listFiles();
+        ArrayList<File> recordingFiles = getRecordingFiles(listOfInputFiles);
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Rotation)) {
-                addStandardFeatures(featureVector, Rotation_X);
-                addStandardFeatures(featureVector, Rotation_Y);
-                addStandardFeatures(featureVector, Rotation_Z);
-                addStandardFeatures(featureVector, Rotation_W);
-            }
+        // the features of each recording, in the order of the files
+        RecordingFeatures[] featuresPerRecording = new RecordingFeatures[recordingFiles.size()];
+
+        // reuse the features of recordings that did not change since a previous run with the same settings
+        RecordingFeatureCache featureCache = null;
+        if (TestBenchSettings.useRecordingFeatureCache()) {
+            featureCache = new RecordingFeatureCache(TestBenchSettings.getRecordingFeatureCacheFolder());
+        }
 
+        // read the recordings, and extract their features while the following ones are being read
+        // recordings handed over to the extraction are no longer counted by the reader, so the number of
+        // recordings waiting for their features is limited by the number of extraction threads
+        RecordingFeatureCache finalFeatureCache = featureCache;
+        ParallelFeatureExtractor parallelFeatureExtractor = createParallelFeatureExtractor();
+        int maximumPendingRecordings = TestBenchSettings.getNumberOfThreadsForFeatureExtraction();
+        ArrayDeque<ForkJoinTask<RecordingFeatures>> pendingTasks = new ArrayDeque<>();
+        ArrayDeque<Integer> pendingRecordingIndexes = new ArrayDeque<>();
+        int[] recordingIndex = {0};
+        int[] numberOfCachedRecordings = {0};
+        try {
+            createParallelFrameDataReader().readAllInOrder(
+                    recordingFiles, listOfInputFiles.length,
+                    recordingFile -> readRecording(recordingFile, knownContentHashes, finalFeatureCache),
+                    recordingInput -> {
+
+                        int currentRecordingIndex = recordingIndex[0]++;
+                        if (recordingInput.cachedFeatures != null) {
+                            featuresPerRecording[currentRecordingIndex] = recordingInput.cachedFeatures;
+                            numberOfCachedRecordings[0]++;
+                            return;
+                        }
+                        if (recordingInput.frameDataSet == null) {
+                            return;
+                        }
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Velocity) && !TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-                //addStandardFeatures(featureVector, Velocity_Y);
-                addStandardFeatures(featureVector, Velocity_XYZ);
-                //addStandardFeatures(featureVector, AngularVelocity);
-            }
+                        pendingTasks.add(parallelFeatureExtractor.submit(() -> {
+                            RecordingFeatures recordingFeatures =
+                                    getFeaturesForRecording(recordingInput.frameDataSet, parallelFeatureExtractor);
+                            if (finalFeatureCache != null && recordingInput.contentHash != null) {
+                                finalFeatureCache.write(recordingFiles.get(currentRecordingIndex),
+                                        recordingInput.contentHash, recordingFeatures);
+                            }
+                            return recordingFeatures;
+                        }));
+                        pendingRecordingIndexes.add(currentRecordingIndex);
+
+                        while (pendingTasks.size() > maximumPendingRecordings) {
+                            featuresPerRecording[pendingRecordingIndexes.removeFirst()] =
+                                    pendingTasks.removeFirst().join();
+                        }
+                    });
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Acceleration)) {
-                //addStandardFeatures(featureVector, Acceleration_Y);
-                addStandardFeatures(featureVector, Acceleration_XYZ);
-                //addStandardFeatures(featureVector, AngularAcceleration);
+            while (!pendingTasks.isEmpty()) {
+                featuresPerRecording[pendingRecordingIndexes.removeFirst()] = pendingTasks.removeFirst().join();
             }
+        } finally {
+            parallelFeatureExtractor.shutdown();
         }
 
+        if (featureCache != null) {
+            System.out.println("reused cached features for recordings:   "
+                    + numberOfCachedRecordings[0] + " / " + recordingFiles.size());
+        }
 
-        // collect features that depend on the relationship between two sensors
-        if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.DualSensorCombination) || TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-            for (int ssA = 0; ssA < allSensorLists.size(); ssA++) {
-                List<FrameData> singleSensorA = allSensorLists.get(ssA);
+        printRejectionSummary();
 
-                if (TestBenchSettings.isSensorBlocked(singleSensorA.get(0).getSensorPosition())) {
-                    continue;
-                }
+        // merge the features of all recordings in the order of the files
+        ArrayList<FeatureVector> featureVectors = new ArrayList<>();
+        for (RecordingFeatures recordingFeatures : featuresPerRecording) {
+            if (recordingFeatures == null) {
+                continue;
+            }
 
-                // determine values that stay true for the whole window
-                double overallTimePassed =
-                        singleSensorA.get(singleSensorA.size() - 1).getTime()
-                                - singleSensorA.get(0).getTime();
-                double bodySize = singleSensorA.get(0).getScale();
+            subjectNames.add(recordingFeatures.getSubject());
 
+            // identify sensors in original data
+            if (sensorTypes.isEmpty() && !recordingFeatures.getFeatureVectors().isEmpty()) {
+                sensorTypes.addAll(recordingFeatures.getSensorPositions());
+            }
 
-                for (int ssB = ssA + 1; ssB < allSensorLists.size(); ssB++) {
-                    List<FrameData> singleSensorB = allSensorLists.get(ssB);
+            featureVectors.addAll(recordingFeatures.getFeatureVectors());
+        }
 
-                    if (TestBenchSettings.isSensorBlocked(singleSensorB.get(0).getSensorPosition())) {
-                        continue;
-                    }
+        // the windows of all recordings are processed backwards when extracting after reading
+        Collections.reverse(featureVectors);
+        return featureVectors;
+    }
 
-                    StatisticalValueCollector distanceX =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-                    StatisticalValueCollector distanceY =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-                    StatisticalValueCollector distanceZ =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-
-                    StatisticalValueCollector distanceXY =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-                    StatisticalValueCollector distanceXZ =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-                    StatisticalValueCollector distanceYZ =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-                    StatisticalValueCollector distanceXYZ =
-                            new StatisticalValueCollector(true, true, overallTimePassed, bodySize);
-
-                    StatisticalValueCollector differenceVelocityY =
-                            new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-                    StatisticalValueCollector differenceVelocityXYZ =
-                            new StatisticalValueCollector(true, false, overallTimePassed, bodySize);
-
-                    for (int i = 0; i < singleSensorA.size(); i++) {
-
-                        // prepare current frame
-                        FrameData frameDataA = singleSensorA.get(i);
-                        FrameData frameDataB = singleSensorB.get(i);
-                        double timeSinceLastFrame = frameDataA.getFrameDuration();
-
-                        // distance
-                        double positionDistanceCurrentFrameX =
-                                MathHelper.distance(
-                                        frameDataA.getPosX(),
-                                        frameDataB.getPosX());
-                        double positionDistanceCurrentFrameY =
-                                MathHelper.distance(
-                                        frameDataA.getPosY(),
-                                        frameDataB.getPosY());
-                        double positionDistanceCurrentFrameZ =
-                                MathHelper.distance(
-                                        frameDataA.getPosZ(),
-                                        frameDataB.getPosZ());
-                        double positionDistanceCurrentFrameXY =
-                                MathHelper.distance(
-                                        frameDataA.getPosX(),
-                                        frameDataA.getPosY(),
-                                        frameDataB.getPosX(),
-                                        frameDataB.getPosY());
-                        double positionDistanceCurrentFrameXZ =
-                                MathHelper.distance(
-                                        frameDataA.getPosX(),
-                                        frameDataA.getPosZ(),
-                                        frameDataB.getPosX(),
-                                        frameDataB.getPosZ());
-                        double positionDistanceCurrentFrameYZ =
-                                MathHelper.distance(
-                                        frameDataA.getPosY(),
-                                        frameDataA.getPosZ(),
-                                        frameDataB.getPosY(),
-                                        frameDataB.getPosZ());
-                        double positionDistanceCurrentFrameXYZ =
-                                MathHelper.distance(
-                                        frameDataA.getPosX(),
-                                        frameDataA.getPosY(),
-                                        frameDataA.getPosZ(),
-                                        frameDataB.getPosX(),
-                                        frameDataB.getPosY(),
-                                        frameDataB.getPosZ());
-
-                        // distance in position
-                        distanceX.addValue(positionDistanceCurrentFrameX, timeSinceLastFrame);
-                        distanceY.addValue(positionDistanceCurrentFrameY, timeSinceLastFrame);
-                        distanceZ.addValue(positionDistanceCurrentFrameZ, timeSinceLastFrame);
-                        distanceXY.addValue(positionDistanceCurrentFrameXY, timeSinceLastFrame);
-                        distanceXZ.addValue(positionDistanceCurrentFrameXZ, timeSinceLastFrame);
-                        distanceYZ.addValue(positionDistanceCurrentFrameYZ, timeSinceLastFrame);
-                        distanceXYZ.addValue(positionDistanceCurrentFrameXYZ, timeSinceLastFrame);
-
-                        // difference in velocity
-                        differenceVelocityY.addValue(Math.abs(frameDataA.getLinVelY() - frameDataB.getLinVelY()), timeSinceLastFrame);
-                        double velocityXYZa = MathHelper.EuclideanNorm(
-                                frameDataA.getLinVelX(),
-                                frameDataA.getLinVelY(),
-                                frameDataA.getLinVelZ());
-                        double velocityXYZb = MathHelper.EuclideanNorm(
-                                frameDataB.getLinVelX(),
-                                frameDataB.getLinVelY(),
-                                frameDataB.getLinVelZ());
-                        differenceVelocityXYZ.addValue(Math.abs(velocityXYZa - velocityXYZb), timeSinceLastFrame);
-                    }
+    /**
+     * Hash the given recording once, and either load its features from the given cache, or read it
+     * <p>
+     * Called on the reading threads. The recording is only hashed if one of the caches requires it.
+     *
+     * @param recordingFile
+     * @param knownContentHashes
+     * @param featureCache       null if the features are not cached
+     * @return
+     */
+    private static RecordingInput readRecording(
+            File recordingFile, Map<File, Long> knownContentHashes, RecordingFeatureCache featureCache) {
 
-                    // collect the calculated dual-sensor values for output
-                    // the order and type-based selection here has to be consistent with the generated header
-                    if (TestBenchSettings.featureTagsAllowed(FeatureType.Position)) {
-                        addStandardFeatures(featureVector, distanceX, true, true, false);
-                        addStandardFeatures(featureVector, distanceY, true, true, false);
-                        addStandardFeatures(featureVector, distanceZ, true, true, false);
-                        /*addStandardFeatures(featureVector, distanceXY, true, true, false);
-                        addStandardFeatures(featureVector, distanceXZ, true, true, false);
-                        addStandardFeatures(featureVector, distanceYZ, true, true, false);*/
-                        addStandardFeatures(featureVector, distanceXYZ, true, true, false);
-                    }
+        RecordingInput recordingInput = new RecordingInput();
+        recordingInput.contentHash = knownContentHashes.get(recordingFile);
+        if (recordingInput.contentHash == null && (featureCache != null || TestBenchSettings.useFrameDataCache())) {
+            try {
+                recordingInput.contentHash = FrameDataCache.computeContentHash(recordingFile.toPath());
+            } catch (IOException e) {
+                // the recording is read as usual, which reports the problem if it persists
+            }
+        }
 
-                    if (TestBenchSettings.featureTagsAllowed(FeatureType.Velocity)) {
-                        //addStandardFeatures(featureVector, differenceVelocityY, true, true, false);
-                        addStandardFeatures(featureVector, differenceVelocityXYZ, true, true, false);
-                    }
+        if (recordingInput.contentHash == null) {
+            recordingInput.frameDataSet = readFrameDataSet(recordingFile.getPath());
+            return recordingInput;
+        }
 
-                }
-            }
+        if (featureCache != null) {
+            recordingInput.cachedFeatures = featureCache.read(recordingFile, recordingInput.contentHash);
         }
-        return featureVector;
+        if (recordingInput.cachedFeatures == null) {
+            recordingInput.frameDataSet = readFrameDataSet(recordingFile.getPath(), recordingInput.contentHash);
+        }
+        return recordingInput;
     }
 
     /**
-     * Assemble the header for the features produced by the given sensors
-     *
-     * @param sensorTypes
-     * @param includeClassForTraining
-     * @param includeSubjectForTraining
-     * @return
+     * The result of reading a single recording: its content hash, and either its cached features or its frame data
      */
-    public static ArrayList<String> getFeatureHeaderForSensorTypes(ArrayList<String> sensorTypes,
-                                                                   boolean includeClassForTraining,
-                                                                   boolean includeSubjectForTraining) {
+    private static class RecordingInput {
 
-        ArrayList<String> headerFields = new ArrayList<>();
+        // null if the recording was not hashed
+        Long contentHash;
+        RecordingFeatures cachedFeatures;
+        FrameDataSet frameDataSet;
+    }
 
-        // collect the single-sensor header fields
-        // the order and type-based selection here has to be consistent with the generated features
-        for (String sensorType : sensorTypes) {
+    /**
+     * Calculate the features for all windows of the given recording
+     *
+     * @param originalFrameDataSet
+     * @param parallelFeatureExtractor
+     * @return
+     */
+    private static RecordingFeatures getFeaturesForRecording(
+            FrameDataSet originalFrameDataSet, ParallelFeatureExtractor parallelFeatureExtractor) {
 
-            // leave out blocked sensors
-            if (TestBenchSettings.isSensorBlocked(sensorType)) {
-                continue;
-            }
+        ArrayList<FrameDataSet> windows = getWindowsForFeatureExtraction(originalFrameDataSet);
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Position) && !TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-                addStandardFeatureHeader(headerFields, sensorType, "Position_X");
-                addStandardFeatureHeader(headerFields, sensorType, "Position_Y");
-                addStandardFeatureHeader(headerFields, sensorType, "Position_Z");
+        ArrayList<FeatureVector> featureVectors = getFeaturesForWindows(windows, parallelFeatureExtractor);
 
-                //headerFields.add(sensorType + "_Range_XYZ");
-            }
+        ArrayList<String> sensorPositions =
+                windows.isEmpty() ? new ArrayList<>() : windows.get(0).getAllSensorPositions();
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Rotation)) {
-                addStandardFeatureHeader(headerFields, sensorType, "Rotation_X");
-                addStandardFeatureHeader(headerFields, sensorType, "Rotation_Y");
-                addStandardFeatureHeader(headerFields, sensorType, "Rotation_Z");
-                addStandardFeatureHeader(headerFields, sensorType, "Rotation_W");
-            }
+        return new RecordingFeatures(originalFrameDataSet.getSubject(), sensorPositions, featureVectors);
+    }
 
-            if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.Velocity) && !TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-                //addStandardFeatureHeader(headerFields, sensorType, "Velocity_Y");
-                addStandardFeatureHeader(headerFields, sensorType, "Velocity_XYZ");
-            }
+    /**
+     * Calculate the features for the given windows of a single recording
+     * <p>
+     * Overlapping windows are processed by the SlidingWindowFeatureExtractor, if enabled in TestBenchSettings,
+     * otherwise the windows are distributed among the threads of the ParallelFeatureExtractor
+     *
+     * @param windows
+     * @param parallelFeatureExtractor
+     * @return one feature vector per window, in the order of the windows
+     */
+    private static ArrayList<FeatureVector> getFeaturesForWindows(
+            ArrayList<FrameDataSet> windows, ParallelFeatureExtractor parallelFeatureExtractor) {
 
-            if (TestBenchSettings.featureTagsAllowed(FeatureType.Acceleration)) {
-                //addStandardFeatureHeader(headerFields, sensorType, "Acceleration_Y");
-                addStandardFeatureHeader(headerFields, sensorType, "Acceleration_XYZ");
-            }
+        if (windows.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        // collect the dual-sensor header fields
-        // the order and type-based selection here has to be consistent with the generated features
-        if (TestBenchSettings.featureTagsAllowed(TestBenchSettings.FeatureType.DualSensorCombination) || TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly)) {
-            for (int ssA = 0; ssA < sensorTypes.size(); ssA++) {
-                String singleSensorA = sensorTypes.get(ssA);
+        // all windows of a recording share the same sensors, and therefore the same plan
+        FeaturePlan featurePlan = FeaturePlan.forFrameDataSet(windows.get(0));
 
-                // ignore blocked sensors
-                if (TestBenchSettings.isSensorBlocked(singleSensorA)) {
-                    continue;
-                }
+        if (TestBenchSettings.useSlidingWindowFeatureExtraction() && windows.size() > 1) {
+            return SlidingWindowFeatureExtractor.getFeaturesForWindows(windows, featurePlan);
+        }
 
-                for (int ssB = ssA + 1; ssB < sensorTypes.size(); ssB++) {
-                    String singleSensorB = sensorTypes.get(ssB);
+        return parallelFeatureExtractor.getFeaturesForWindows(windows, featurePlan);
+    }
 
-                    // ignore blocked sensors
-                    if (TestBenchSettings.isSensorBlocked(singleSensorB)) {
-                        continue;
-                    }
+    /**
+     * The windows of the given recording that are used for feature extraction
+     *
+     * @param originalFrameDataSet
+     * @return
+     */
+    private static ArrayList<FrameDataSet> getWindowsForFeatureExtraction(FrameDataSet originalFrameDataSet) {
 
-                    if (TestBenchSettings.featureTagsAllowed(FeatureType.Position)) {
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_X", true, true, false);
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_Y", true, true, false);
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_Z", true, true, false);
-                        /*addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_XY", true, true, false);
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_XZ", true, true, false);
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_YZ", true, true, false);*/
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "PositionDistance_XYZ", true, true, false);
-                    }
+        ArrayList<FrameDataSet> windows = new ArrayList<>();
 
-                    if (TestBenchSettings.featureTagsAllowed(FeatureType.Velocity)) {
-                        //addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "DifferenceVelocity_Y", true, true, false);
-                        addStandardFeatureHeader(headerFields, singleSensorA + "_" + singleSensorB, "DifferenceVelocity_XYZ", true, true, false);
-                    }
-                }
+        if (originalFrameDataSet.getActivity().contains("Krieger")) {
+            // read original recorded data and separate for each movement (one window == movement)
+            windows.add(originalFrameDataSet);
+        } else {
+            // read original recorded data, and separate into windows
+            Iterator<FrameDataSet> dataSetWindows =
+                    originalFrameDataSet.getValidWindowIterator(TestBenchSettings.getWindowSizeForFrameDataToFeatureConversion(),
+                            TestBenchSettings.getWindowSpacingForFrameDataToFeatureConversion());
+            // add only the first windows (because we also have only 10 trials for each yoga pose),
+            // the remaining windows are never created
+            while (windows.size() < maximumWindowsPerRecording && dataSetWindows.hasNext()) {
+                windows.add(dataSetWindows.next());
             }
         }
 
-        // add optional fields
-        if (includeSubjectForTraining) {
-            headerFields.add("subject");
-        }
-        if (includeClassForTraining) {
-            headerFields.add("activity");
-        }
+        return windows;
+    }
+
+    /**
+     * Get the feature headers required for the sensors contained in the FrameDataSet
+     *
+     * @param frameDataSet
+     * @param includeClassForTraining
+     * @param includeSubjectForTraining
+     * @return
+     */
+    public static ArrayList<String> getFeatureHeaderForFrameDataSet(FrameDataSet frameDataSet,
+                                                                    boolean includeClassForTraining,
+                                                                    boolean includeSubjectForTraining) {
+
+        ArrayList<String> sensorTypes = frameDataSet.getAllSensorPositions();
+        return getFeatureHeaderForSensorTypes(sensorTypes, includeClassForTraining, includeSubjectForTraining);
+    }
 
-        return headerFields;
+    /**
+     * Calculate the features for the given FrameDataSet
+     * <p>
+     * The FrameDataSet should represent one window of the original sensor data
+     *
+     * @param dataSource
+     * @return
+     */
+    public static FeatureVector getFeaturesForFrameDataSet(FrameDataSet dataSource) {
+        return getFeaturesForFrameDataSet(dataSource, FeaturePlan.forFrameDataSet(dataSource));
     }
 
     /**
-     * Add the standard features of the given ValueCollector to the given FeatureVector
+     * Calculate the planned features for the given FrameDataSet
+     * <p>
+     * The FrameDataSet should represent one window of the original sensor data,
+     * with the sensors the FeaturePlan was created for
      *
-     * @param featureVector
-     * @param valueCollector
-     * @param includeMin
-     * @param includeMax
+     * @param dataSource
+     * @param featurePlan
+     * @return
      */
-    private static void addStandardFeatures(
-            FeatureVector featureVector, StatisticalValueCollector valueCollector,
-            boolean includeMin, boolean includeMax, boolean mean_crossing_rate) {
+    static FeatureVector getFeaturesForFrameDataSet(FrameDataSet dataSource, FeaturePlan featurePlan) {
 
-        // the order and option-based selection here has to be consistent with the standard feature header
-        featureVector.addFeature(valueCollector.getMeanScaledByTime());
+        ArrayList<SensorColumns> allSensorColumns = dataSource.getAllSensorColumns();
+        int firstFrameIndex = dataSource.getFirstFrameIndex();
 
-        //featureVector.addFeature(valueCollector.getRootMeanSquare());
-        featureVector.addFeature(valueCollector.getStandardDeviation());
-        featureVector.addFeature(valueCollector.getMeanAbsoluteDeviation());
+        // create new data line, with room for all features
+        FeatureVector featureVector = new FeatureVector(dataSource.getSubject(), dataSource.getActivity(),
+                featurePlan.getNumberOfFeatures());
 
-        featureVector.addFeature(valueCollector.sort_getInterquartileRange());
+        // the kernel is reused for every sensor, instead of creating new collectors
+        SensorFeatureKernel kernel = SensorFeatureKernel.forCurrentThread();
 
-        if (includeMax) {
-            featureVector.addFeature(valueCollector.sort_getMax());
-        }
-        if (includeMin) {
-            featureVector.addFeature(valueCollector.sort_getMin());
-        }
+        // collect features that are calculated from the data of a single sensor
+        for (int sensorID : featurePlan.getPlannedSensors()) {
 
-        featureVector.addFeature(valueCollector.sort_getRange());
+            SensorColumns singleSensor = allSensorColumns.get(sensorID);
 
-        if (mean_crossing_rate) {
-            featureVector.addFeature(valueCollector.sort_getMeanCrossingRate());
+            // calculate all single-sensor features of this sensor in a single pass over its frames
+            // (including the range of its positions)
+            int endFrameIndex = dataSource.getEndFrameIndex(singleSensor);
+            kernel.addFeatures(featureVector, featurePlan, singleSensor, firstFrameIndex, endFrameIndex);
         }
 
-        featureVector.addFeature(valueCollector.sort_getPercentile(0.25));
-        featureVector.addFeature(valueCollector.sort_getPercentile(0.75));
+        // collect features that depend on the relationship between two sensors
+        if (featurePlan.includesPairs()) {
+            PairFeatureKernel.forCurrentThread().addFeatures(featureVector, featurePlan, dataSource);
+        }
+        return featureVector;
     }
 
     /**
-     * Add the standard set of features
+     * Add the planned features of a single sensor, based on the statistics of its values within the window
      *
      * @param featureVector
-     * @param valueCollector
+     * @param featurePlan
+     * @param channelStatistics the statistics of each channel, indexed like the channels of the FeaturePlan
+     * @param rangeXYZ          the range of the sensor, already scaled by body size (if planned)
      */
-    private static void addStandardFeatures(
-            FeatureVector featureVector, StatisticalValueCollector valueCollector) {
-        addStandardFeatures(featureVector, valueCollector, true, true, true);
+    static void addSingleSensorFeatures(
+            FeatureVector featureVector, FeaturePlan featurePlan, WindowStatistics[] channelStatistics,
+            double rangeXYZ) {
+        for (int channel : featurePlan.getSensorChannels()) {
+            addStandardFeatures(featureVector, channelStatistics[channel], featurePlan.getSensorChannelFeatures());
+            if (channel == FeaturePlan.positionZ && featurePlan.isRangeXYZPlanned()) {
+                featureVector.addFeature(rangeXYZ);
+            }
+        }
     }
 
     /**
-     * Add the standard features for the given sensor and attribute to the given header fields
+     * Add the planned features of a pair of sensors, based on the statistics of their relationship within the window
      *
-     * @param headerFields
-     * @param sensor
-     * @param attribute
-     * @param includeMin
-     * @param includeMax
+     * @param featureVector
+     * @param featurePlan
+     * @param seriesStatistics the statistics of each series, indexed like the pair series of the FeaturePlan
      */
-    private static void addStandardFeatureHeader(ArrayList<String> headerFields, String sensor, String attribute,
-                                                 boolean includeMin, boolean includeMax,
-                                                 boolean mean_crossing_rate) {
-
-        // the order and option-based selection here has to be consistent with the standard features
-        headerFields.add(sensor + "_mean_" + attribute);
-
-        //headerFields.add(sensor + "_rootMeanSquare_" + attribute);
-        headerFields.add(sensor + "_standardDeviation_" + attribute);
-        headerFields.add(sensor + "_meanAbsoluteDeviation_" + attribute);
-
-        headerFields.add(sensor + "_interquartileRange_" + attribute);
-
-        if (includeMax) {
-            headerFields.add(sensor + "_max_" + attribute);
-        }
-        if (includeMin) {
-            headerFields.add(sensor + "_min_" + attribute);
+    static void addDualSensorFeatures(
+            FeatureVector featureVector, FeaturePlan featurePlan, WindowStatistics[] seriesStatistics) {
+        for (int series : featurePlan.getPairSeries()) {
+            addStandardFeatures(featureVector, seriesStatistics[series], featurePlan.getPairSeriesFeatures());
         }
+    }
 
-        headerFields.add(sensor + "_range_" + attribute);
+    /**
+     * Assemble the header for the features produced by the given sensors
+     *
+     * @param sensorTypes
+     * @param includeClassForTraining
+     * @param includeSubjectForTraining
+     * @return
+     */
+    public static ArrayList<String> getFeatureHeaderForSensorTypes(ArrayList<String> sensorTypes,
+                                                                   boolean includeClassForTraining,
+                                                                   boolean includeSubjectForTraining) {
+        return FeaturePlan.forSensorTypes(sensorTypes).getHeader(includeClassForTraining, includeSubjectForTraining);
+    }
 
-        if (mean_crossing_rate) {
-            headerFields.add(sensor + "_meanCrossingRate_" + attribute);
+    /**
+     * Add the given standard features of the given statistics to the given FeatureVector
+     *
+     * @param featureVector
+     * @param statistics
+     * @param standardFeatures the features of the channel or series as listed by the FeaturePlan, in that order
+     */
+    private static void addStandardFeatures(
+            FeatureVector featureVector, WindowStatistics statistics, StandardFeature[] standardFeatures) {
+        for (StandardFeature standardFeature : standardFeatures) {
+            featureVector.addFeature(standardFeature.getFrom(statistics));
         }
-
-        headerFields.add(sensor + "_percentile25_" + attribute);
-        headerFields.add(sensor + "_percentile75_" + attribute);
     }
 
     /**
-     * Add headed for the standard set of features
+     * Save the feature vectors into a table with the given header, at the given path location,
+     * on the given writer thread
+     * <p>
+     * The vectors must already be sorted, and must not change afterwards
      *
+     * @param featureFileWriter nothing is written if null
+     * @param filePath
      * @param headerFields
-     * @param sensor
-     * @param attribute
+     * @param featureVectors
      */
-    private static void addStandardFeatureHeader(ArrayList<String> headerFields, String sensor, String attribute) {
-        addStandardFeatureHeader(headerFields, sensor, attribute, true, true, true);
+    private static void writeOutputFeatureVectorToCSV(
+            ExecutorService featureFileWriter, String filePath, ArrayList<String> headerFields,
+            ArrayList<FeatureVector> featureVectors) {
+        if (featureFileWriter != null) {
+            featureFileWriter.execute(() -> writeOutputFeatureVectorToCSV(filePath, headerFields, featureVectors));
+        }
     }
 
     /**
@@ -814,15 +861,6 @@ public class FeatureExtractor {
     private static void writeOutputFeatureVectorToCSV(
             String filePath, ArrayList<String> headerFields, ArrayList<FeatureVector> featureVectors) {
 
-        // sort output by class
-        // The Weka Gui is unable to deal with unordered classes, which makes sanity checks difficult otherwise
-        featureVectors.sort(new Comparator<FeatureVector>() {
-            @Override
-            public int compare(FeatureVector o1, FeatureVector o2) {
-                return o1.getClassValue().compareTo(o2.getClassValue());
-            }
-        });
-
         try (
                 // setup writer
                 Writer writer = Files.newBufferedWriter(Paths.get(filePath));
@@ -839,7 +877,7 @@ public class FeatureExtractor {
                 csvWriter.writeNext(featureVector.getFeaturesWithClassAndSubject());
             }
         } catch (Exception e) {
-            System.err.println("unable to write file " + featureVectors);
+            System.err.println("unable to write file " + filePath);
         }
     }
-}
\ No newline at end of file
+}
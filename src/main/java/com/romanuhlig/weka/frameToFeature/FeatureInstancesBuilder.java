@@ -0,0 +1,111 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Creates Weka Instances directly from feature vectors, instead of writing them into a file and loading it again
+ * <p>
+ * The result matches what Weka's CSVLoader creates from a feature file written from the same vectors:
+ * all features are numeric, while the subject (if included) and the class are nominal, with their values
+ * in the order of their first appearance.
+ * The nominal values are determined once, from all vectors, and are shared by all Instances of the builder.
+ *
+ * @author Roman Uhlig
+ */
+class FeatureInstancesBuilder {
+
+    // numeric attributes for the features, followed by the nominal subject (if included) and class
+    private final ArrayList<Attribute> attributes;
+    private final int numberOfFeatures;
+    private final boolean includeSubject;
+
+    // the index of each nominal value within its attribute
+    private final HashMap<String, Integer> subjectIndexes = new HashMap<>();
+    private final HashMap<String, Integer> classIndexes = new HashMap<>();
+
+    /**
+     * Create a builder for the given header, whose nominal values are taken from the given vectors
+     *
+     * @param headerFields   the feature names, followed by subject (if included) and class
+     * @param featureVectors all vectors that are later passed to the builder, in their final order
+     * @param includeSubject
+     */
+    FeatureInstancesBuilder(List<String> headerFields, List<FeatureVector> featureVectors, boolean includeSubject) {
+
+        this.includeSubject = includeSubject;
+        this.numberOfFeatures = headerFields.size() - (includeSubject ? 2 : 1);
+
+        // collect the nominal values in the order of their first appearance
+        LinkedHashSet<String> subjects = new LinkedHashSet<>();
+        LinkedHashSet<String> classes = new LinkedHashSet<>();
+        for (FeatureVector featureVector : featureVectors) {
+            subjects.add(featureVector.getSubject());
+            classes.add(featureVector.getClassValue());
+        }
+        ArrayList<String> subjectValues = indexValues(subjects, subjectIndexes);
+        ArrayList<String> classValues = indexValues(classes, classIndexes);
+
+        attributes = new ArrayList<>(headerFields.size());
+        for (int i = 0; i < numberOfFeatures; i++) {
+            attributes.add(new Attribute(headerFields.get(i)));
+        }
+        if (includeSubject) {
+            attributes.add(new Attribute(headerFields.get(numberOfFeatures), subjectValues));
+        }
+        attributes.add(new Attribute(headerFields.get(headerFields.size() - 1), classValues));
+    }
+
+    /**
+     * Store the index of each value, and return the values as list
+     *
+     * @param values
+     * @param indexes
+     * @return
+     */
+    private static ArrayList<String> indexValues(LinkedHashSet<String> values, HashMap<String, Integer> indexes) {
+        ArrayList<String> valueList = new ArrayList<>(values);
+        for (int i = 0; i < valueList.size(); i++) {
+            indexes.put(valueList.get(i), i);
+        }
+        return valueList;
+    }
+
+    /**
+     * Create Instances holding the given vectors in their given order, with the class as the last attribute
+     *
+     * @param relationName the name Weka would derive from the feature file (its name without extension)
+     * @param featureVectors
+     * @return
+     */
+    Instances createInstances(String relationName, List<FeatureVector> featureVectors) {
+
+        Instances instances = new Instances(relationName, new ArrayList<>(attributes), featureVectors.size());
+        instances.setClassIndex(attributes.size() - 1);
+
+        for (FeatureVector featureVector : featureVectors) {
+            if (featureVector.getNumberOfFeatures() != numberOfFeatures) {
+                throw new IllegalArgumentException("feature vector does not match header, "
+                        + featureVector.getNumberOfFeatures() + " instead of " + numberOfFeatures + " features");
+            }
+
+            // each row only holds numbers, nominal values are stored as the index of the value
+            double[] row = new double[attributes.size()];
+            System.arraycopy(featureVector.getFeaturesWithoutClassAndSubject(), 0, row, 0, numberOfFeatures);
+            if (includeSubject) {
+                row[numberOfFeatures] = subjectIndexes.get(featureVector.getSubject());
+            }
+            row[row.length - 1] = classIndexes.get(featureVector.getClassValue());
+
+            instances.add(new DenseInstance(1.0, row));
+        }
+
+        return instances;
+    }
+}
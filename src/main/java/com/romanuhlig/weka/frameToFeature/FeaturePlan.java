@@ -0,0 +1,445 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.controller.TestBenchSettings.FeatureType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The features produced for a given list of sensors, as determined once from TestBenchSettings
+ * <p>
+ * The plan lists the sensors that are not blocked, the single-sensor channels and the dual-sensor series
+ * to be calculated, in the order of their features. Both the header and the extractors are driven by it,
+ * so that they cannot disagree, and only the planned data series are computed.
+ * Each planned channel or series produces its list of standard features (getSensorChannelFeatures and
+ * getPairSeriesFeatures), and the position channels of a sensor are followed by its range (Range_XYZ).
+ *
+ * @author Roman Uhlig
+ */
+public final class FeaturePlan {
+
+    // the single-sensor channels, in the order of their features
+    static final int positionX = 0;
+    static final int positionY = 1;
+    static final int positionZ = 2;
+    static final int rotationX = 3;
+    static final int rotationY = 4;
+    static final int rotationZ = 5;
+    static final int rotationW = 6;
+    static final int velocityXYZ = 7;
+    static final int accelerationXYZ = 8;
+    static final int numberOfSensorChannels = 9;
+
+    // the dual-sensor series of each pair, in the order of their features
+    static final int distanceX = 0;
+    static final int distanceY = 1;
+    static final int distanceZ = 2;
+    static final int distanceXYZ = 3;
+    static final int differenceVelocityXYZ = 4;
+    static final int numberOfPairSeries = 5;
+
+    /**
+     * The statistics each channel or series is summarized by, in the order of their features
+     */
+    enum StandardFeature {
+        Mean("mean", true),
+        StandardDeviation("standardDeviation", true),
+        MeanAbsoluteDeviation("meanAbsoluteDeviation", true),
+        InterquartileRange("interquartileRange", true),
+        Max("max", true),
+        Min("min", true),
+        Range("range", true),
+        MeanCrossingRate("meanCrossingRate", false),
+        Percentile25("percentile25", true),
+        Percentile75("percentile75", true);
+
+        private final String attributeName;
+        private final boolean scaledByBodySize;
+
+        StandardFeature(String attributeName, boolean scaledByBodySize) {
+            this.attributeName = attributeName;
+            this.scaledByBodySize = scaledByBodySize;
+        }
+
+        /**
+         * The name of the feature within the header, between the sensor and the channel or series
+         *
+         * @return
+         */
+        String getAttributeName() {
+            return attributeName;
+        }
+
+        /**
+         * Whether the feature is scaled by body size, for channels or series that are
+         *
+         * @return
+         */
+        boolean isScaledByBodySize() {
+            return scaledByBodySize;
+        }
+
+        /**
+         * The value of the feature for the given statistics
+         *
+         * @param statistics
+         * @return
+         */
+        double getFrom(WindowStatistics statistics) {
+            switch (this) {
+                case Mean:
+                    return statistics.getMeanScaledByTime();
+                case StandardDeviation:
+                    return statistics.getStandardDeviation();
+                case MeanAbsoluteDeviation:
+                    return statistics.getMeanAbsoluteDeviation();
+                case InterquartileRange:
+                    return statistics.sort_getInterquartileRange();
+                case Max:
+                    return statistics.sort_getMax();
+                case Min:
+                    return statistics.sort_getMin();
+                case Range:
+                    return statistics.sort_getRange();
+                case MeanCrossingRate:
+                    return statistics.sort_getMeanCrossingRate();
+                case Percentile25:
+                    return statistics.sort_getPercentile(0.25);
+                default:
+                    return statistics.sort_getPercentile(0.75);
+            }
+        }
+    }
+
+    // the standard features of each single-sensor channel and of each dual-sensor series
+    // (the mean crossing rate of a distance between sensors is left out)
+    private static final StandardFeature[] sensorChannelFeatures = StandardFeature.values();
+    private static final StandardFeature[] pairSeriesFeatures = {
+            StandardFeature.Mean, StandardFeature.StandardDeviation, StandardFeature.MeanAbsoluteDeviation,
+            StandardFeature.InterquartileRange, StandardFeature.Max, StandardFeature.Min, StandardFeature.Range,
+            StandardFeature.Percentile25, StandardFeature.Percentile75
+    };
+
+    // the attribute names within the header, indexed by channel or series
+    private static final String[] sensorChannelAttributes = {
+            "Position_X", "Position_Y", "Position_Z",
+            "Rotation_X", "Rotation_Y", "Rotation_Z", "Rotation_W",
+            "Velocity_XYZ", "Acceleration_XYZ"
+    };
+    private static final String[] pairSeriesAttributes = {
+            "PositionDistance_X", "PositionDistance_Y", "PositionDistance_Z", "PositionDistance_XYZ",
+            "DifferenceVelocity_XYZ"
+    };
+
+    // the sensors the plan was created for, and the indexes of those that are not blocked
+    private final List<String> sensorTypes;
+    private final int[] plannedSensors;
+
+    // the planned channels and series, in the order of their features
+    private final int[] sensorChannels;
+    private final boolean[] sensorChannelPlanned = new boolean[numberOfSensorChannels];
+    private final boolean rangeXYZPlanned;
+    private final int[] pairSeries;
+    private final boolean[] pairSeriesPlanned = new boolean[numberOfPairSeries];
+
+    private final int numberOfFeaturesPerSensor;
+    private final int numberOfFeaturesPerPair;
+    private final int numberOfFeatures;
+
+    /**
+     * Create the plan for the given sensors, based on the current TestBenchSettings
+     *
+     * @param sensorTypes
+     */
+    private FeaturePlan(List<String> sensorTypes) {
+
+        this.sensorTypes = Collections.unmodifiableList(new ArrayList<>(sensorTypes));
+
+        // leave out blocked sensors
+        int numberOfPlannedSensors = 0;
+        int[] sensors = new int[sensorTypes.size()];
+        for (int s = 0; s < sensorTypes.size(); s++) {
+            if (!TestBenchSettings.isSensorBlocked(sensorTypes.get(s))) {
+                sensors[numberOfPlannedSensors++] = s;
+            }
+        }
+        plannedSensors = new int[numberOfPlannedSensors];
+        System.arraycopy(sensors, 0, plannedSensors, 0, numberOfPlannedSensors);
+
+        // select the single-sensor channels
+        boolean dualSensorOnly = TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorOnly);
+        if (TestBenchSettings.featureTagsAllowed(FeatureType.Position) && !dualSensorOnly) {
+            planSensorChannels(positionX, positionY, positionZ);
+        }
+        if (TestBenchSettings.featureTagsAllowed(FeatureType.Rotation)) {
+            planSensorChannels(rotationX, rotationY, rotationZ, rotationW);
+        }
+        if (TestBenchSettings.featureTagsAllowed(FeatureType.Velocity) && !dualSensorOnly) {
+            planSensorChannels(velocityXYZ);
+        }
+        if (TestBenchSettings.featureTagsAllowed(FeatureType.Acceleration)) {
+            planSensorChannels(accelerationXYZ);
+        }
+        sensorChannels = getPlannedIndexes(sensorChannelPlanned);
+        rangeXYZPlanned = sensorChannelPlanned[positionZ];
+
+        // select the dual-sensor series
+        if (TestBenchSettings.featureTagsAllowed(FeatureType.DualSensorCombination) || dualSensorOnly) {
+            if (TestBenchSettings.featureTagsAllowed(FeatureType.Position)) {
+                pairSeriesPlanned[distanceX] = true;
+                pairSeriesPlanned[distanceY] = true;
+                pairSeriesPlanned[distanceZ] = true;
+                pairSeriesPlanned[distanceXYZ] = true;
+            }
+            if (TestBenchSettings.featureTagsAllowed(FeatureType.Velocity)) {
+                pairSeriesPlanned[differenceVelocityXYZ] = true;
+            }
+        }
+        pairSeries = getPlannedIndexes(pairSeriesPlanned);
+
+        numberOfFeaturesPerSensor = sensorChannels.length * sensorChannelFeatures.length + (rangeXYZPlanned ? 1 : 0);
+        numberOfFeaturesPerPair = pairSeries.length * pairSeriesFeatures.length;
+        int numberOfPairs = numberOfPlannedSensors * (numberOfPlannedSensors - 1) / 2;
+        numberOfFeatures = numberOfPlannedSensors * numberOfFeaturesPerSensor
+                + numberOfPairs * numberOfFeaturesPerPair;
+    }
+
+    /**
+     * Create the plan for the given sensors, based on the current TestBenchSettings
+     *
+     * @param sensorTypes
+     * @return
+     */
+    public static FeaturePlan forSensorTypes(List<String> sensorTypes) {
+        return new FeaturePlan(sensorTypes);
+    }
+
+    /**
+     * Create the plan for the sensors of the given FrameDataSet, based on the current TestBenchSettings
+     * <p>
+     * The plan applies to all windows that share the sensors of this FrameDataSet, in the same order
+     *
+     * @param frameDataSet
+     * @return
+     */
+    public static FeaturePlan forFrameDataSet(FrameDataSet frameDataSet) {
+        return new FeaturePlan(frameDataSet.getAllSensorPositions());
+    }
+
+    /**
+     * Mark the given single-sensor channels as planned
+     *
+     * @param channels
+     */
+    private void planSensorChannels(int... channels) {
+        for (int channel : channels) {
+            sensorChannelPlanned[channel] = true;
+        }
+    }
+
+    /**
+     * The indexes of all planned entries, in ascending order
+     *
+     * @param planned
+     * @return
+     */
+    private static int[] getPlannedIndexes(boolean[] planned) {
+        int numberOfPlannedIndexes = 0;
+        for (boolean isPlanned : planned) {
+            if (isPlanned) {
+                numberOfPlannedIndexes++;
+            }
+        }
+        int[] indexes = new int[numberOfPlannedIndexes];
+        int next = 0;
+        for (int i = 0; i < planned.length; i++) {
+            if (planned[i]) {
+                indexes[next++] = i;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * The sensors the plan was created for, including blocked ones
+     *
+     * @return
+     */
+    public List<String> getSensorTypes() {
+        return sensorTypes;
+    }
+
+    /**
+     * The indexes of the sensors that are not blocked, in the order of their features
+     *
+     * @return
+     */
+    int[] getPlannedSensors() {
+        return plannedSensors;
+    }
+
+    /**
+     * The planned single-sensor channels, in the order of their features
+     *
+     * @return
+     */
+    int[] getSensorChannels() {
+        return sensorChannels;
+    }
+
+    /**
+     * The standard features of each planned single-sensor channel, in the order of their features
+     *
+     * @return
+     */
+    StandardFeature[] getSensorChannelFeatures() {
+        return sensorChannelFeatures;
+    }
+
+    /**
+     * Whether the given single-sensor channel is planned
+     *
+     * @param channel
+     * @return
+     */
+    boolean isSensorChannelPlanned(int channel) {
+        return sensorChannelPlanned[channel];
+    }
+
+    /**
+     * Whether the range of each sensor is planned, directly after the features of its position channels
+     *
+     * @return
+     */
+    boolean isRangeXYZPlanned() {
+        return rangeXYZPlanned;
+    }
+
+    /**
+     * The planned dual-sensor series of each pair, in the order of their features
+     *
+     * @return
+     */
+    int[] getPairSeries() {
+        return pairSeries;
+    }
+
+    /**
+     * The standard features of each planned dual-sensor series, in the order of their features
+     *
+     * @return
+     */
+    StandardFeature[] getPairSeriesFeatures() {
+        return pairSeriesFeatures;
+    }
+
+    /**
+     * Whether the given dual-sensor series is planned
+     *
+     * @param series
+     * @return
+     */
+    boolean isPairSeriesPlanned(int series) {
+        return pairSeriesPlanned[series];
+    }
+
+    /**
+     * Whether any features are calculated for pairs of sensors
+     *
+     * @return
+     */
+    boolean includesPairs() {
+        return pairSeries.length > 0;
+    }
+
+    /**
+     * The number of single-sensor features of each planned sensor
+     *
+     * @return
+     */
+    int getNumberOfFeaturesPerSensor() {
+        return numberOfFeaturesPerSensor;
+    }
+
+    /**
+     * The number of dual-sensor features of each pair of planned sensors
+     *
+     * @return
+     */
+    int getNumberOfFeaturesPerPair() {
+        return numberOfFeaturesPerPair;
+    }
+
+    /**
+     * The number of features of each window, without class and subject
+     *
+     * @return
+     */
+    public int getNumberOfFeatures() {
+        return numberOfFeatures;
+    }
+
+    /**
+     * Assemble the header for the planned features
+     *
+     * @param includeClassForTraining
+     * @param includeSubjectForTraining
+     * @return
+     */
+    public ArrayList<String> getHeader(boolean includeClassForTraining, boolean includeSubjectForTraining) {
+
+        ArrayList<String> headerFields = new ArrayList<>(numberOfFeatures + 2);
+
+        // collect the single-sensor header fields
+        for (int sensor : plannedSensors) {
+            String sensorType = sensorTypes.get(sensor);
+            for (int channel : sensorChannels) {
+                addStandardFeatureHeader(headerFields, sensorType, sensorChannelAttributes[channel],
+                        sensorChannelFeatures);
+                if (channel == positionZ && rangeXYZPlanned) {
+                    headerFields.add(sensorType + "_Range_XYZ");
+                }
+            }
+        }
+
+        // collect the dual-sensor header fields
+        if (includesPairs()) {
+            for (int a = 0; a < plannedSensors.length; a++) {
+                for (int b = a + 1; b < plannedSensors.length; b++) {
+                    String pairName = sensorTypes.get(plannedSensors[a]) + "_" + sensorTypes.get(plannedSensors[b]);
+                    for (int series : pairSeries) {
+                        addStandardFeatureHeader(headerFields, pairName, pairSeriesAttributes[series],
+                                pairSeriesFeatures);
+                    }
+                }
+            }
+        }
+
+        // add optional fields
+        if (includeSubjectForTraining) {
+            headerFields.add("subject");
+        }
+        if (includeClassForTraining) {
+            headerFields.add("activity");
+        }
+
+        return headerFields;
+    }
+
+    /**
+     * Add the standard features for the given sensor and attribute to the given header fields
+     *
+     * @param headerFields
+     * @param sensor
+     * @param attribute
+     * @param standardFeatures
+     */
+    private static void addStandardFeatureHeader(ArrayList<String> headerFields, String sensor, String attribute,
+                                                 StandardFeature[] standardFeatures) {
+        for (StandardFeature standardFeature : standardFeatures) {
+            headerFields.add(sensor + "_" + standardFeature.getAttributeName() + "_" + attribute);
+        }
+    }
+}
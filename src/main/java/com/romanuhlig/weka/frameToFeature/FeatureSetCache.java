@@ -0,0 +1,191 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.io.FeatureStore;
+import com.romanuhlig.weka.io.SubjectsFeatureExtractionResults;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the feature sets of previous runs as feature stores, so that a run with the same settings and recordings
+ * can reuse them instead of extracting the features again
+ * <p>
+ * Each feature set is addressed by a key, which covers the feature extraction settings and the name, size and
+ * content hash of all recordings, so that the matching feature set is found automatically.
+ * Several feature sets are kept at the same time, up to the given overall size. Beyond that, the feature sets
+ * that were used least recently are removed (the time of last use is kept as modification time of the file).
+ *
+ * @author Roman Uhlig
+ */
+public class FeatureSetCache {
+
+    // increase whenever the feature set produced from the same features changes, e.g. its order or layout
+    private static final int featureSetVersion = 1;
+
+    private final File cacheFolder;
+    private final long maximumBytes;
+
+    // the content hashes computed for the last key, so that the recordings are not hashed again when extracting
+    private final HashMap<File, Long> contentHashes = new HashMap<>();
+
+    /**
+     * Create a cache within the given folder, which holds feature sets up to the given overall size
+     *
+     * @param cacheFolder
+     * @param maximumMegabytes
+     */
+    public FeatureSetCache(String cacheFolder, int maximumMegabytes) {
+        this.cacheFolder = new File(cacheFolder);
+        this.maximumBytes = Math.max(0, maximumMegabytes) * 1024L * 1024L;
+    }
+
+    /**
+     * The key for the feature set created from the recordings in the given folder, with the current settings
+     *
+     * @param inputFilePath
+     * @return
+     * @throws IOException if a recording cannot be read
+     */
+    public String getKey(String inputFilePath) throws IOException {
+
+        StringBuilder description = new StringBuilder();
+        description.append("feature set version:   " + featureSetVersion + System.lineSeparator());
+        description.append("recording features:   " + RecordingFeatureCache.getSettingsFingerprint()
+                + System.lineSeparator());
+        description.append("individual feature files:   " + TestBenchSettings.useIndividualFeatureFilesForEachSubject()
+                + System.lineSeparator());
+        description.append("single precision:   " + TestBenchSettings.useSinglePrecisionFeatureStore()
+                + System.lineSeparator());
+
+        // the order of the recordings is the order of the rows, so it is kept
+        File[] listOfInputFiles = new File(inputFilePath).listFiles();
+        if (listOfInputFiles == null) {
+            throw new IOException("input folder not found");
+        }
+        contentHashes.clear();
+        for (File recording : FeatureExtractor.getRecordingFiles(listOfInputFiles)) {
+            long contentHash = FrameDataCache.computeContentHash(recording.toPath());
+            contentHashes.put(recording, contentHash);
+            description.append(recording.getName() + "   " + recording.length() + "   "
+                    + contentHash + System.lineSeparator());
+        }
+
+        return RecordingFeatureCache.getFingerprint(description.toString());
+    }
+
+    /**
+     * The content hashes of all recordings, as computed for the last key
+     *
+     * @return
+     */
+    public Map<File, Long> getContentHashes() {
+        return Collections.unmodifiableMap(contentHashes);
+    }
+
+    /**
+     * Load the feature set with the given key, and mark it as used
+     *
+     * @param key
+     * @return the feature set, or null if there is none for the key
+     */
+    public SubjectsFeatureExtractionResults read(String key) {
+
+        File storeFile = getStoreFile(key);
+        if (!storeFile.isFile()) {
+            return null;
+        }
+
+        try {
+            SubjectsFeatureExtractionResults results = FeatureStore.read(storeFile.toPath());
+            storeFile.setLastModified(System.currentTimeMillis());
+            return results;
+        } catch (IOException | RuntimeException e) {
+            // a damaged feature set is simply replaced
+            System.err.println("unable to read cached feature set " + storeFile.getPath());
+            return null;
+        }
+    }
+
+    /**
+     * Keep the given feature set for later runs, and remove the least recently used feature sets beyond the size limit
+     * <p>
+     * Failing to do so is reported, but does not stop the current run
+     *
+     * @param key
+     * @param results
+     */
+    public void write(String key, SubjectsFeatureExtractionResults results) {
+
+        File storeFile = getStoreFile(key);
+        try {
+            FeatureStore.write(results, storeFile.toPath(), TestBenchSettings.useSinglePrecisionFeatureStore());
+        } catch (IOException e) {
+            System.err.println("unable to write cached feature set " + storeFile.getPath());
+            return;
+        }
+
+        removeLeastRecentlyUsed(storeFile);
+    }
+
+    /**
+     * Remove the least recently used feature sets, until all of them fit into the size limit
+     * <p>
+     * The given feature set is kept in any case
+     *
+     * @param keptStoreFile
+     */
+    private void removeLeastRecentlyUsed(File keptStoreFile) {
+
+        File[] listOfFiles = cacheFolder.listFiles();
+        if (listOfFiles == null) {
+            return;
+        }
+
+        ArrayList<File> storeFiles = new ArrayList<>();
+        long overallBytes = 0;
+        for (File file : listOfFiles) {
+            if (file.isFile() && file.getName().endsWith(FeatureStore.fileEnding)) {
+                storeFiles.add(file);
+                overallBytes += file.length();
+            }
+        }
+
+        // the modification time is read only once, since it may change while sorting
+        long[] lastUsed = new long[storeFiles.size()];
+        Integer[] order = new Integer[storeFiles.size()];
+        for (int i = 0; i < storeFiles.size(); i++) {
+            lastUsed[i] = storeFiles.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+
+        for (int i = 0; i < order.length && overallBytes > maximumBytes; i++) {
+            File storeFile = storeFiles.get(order[i]);
+            if (storeFile.equals(keptStoreFile)) {
+                continue;
+            }
+            long bytes = storeFile.length();
+            if (storeFile.delete()) {
+                overallBytes -= bytes;
+                System.out.println("removed least recently used feature set " + storeFile.getName());
+            }
+        }
+    }
+
+    /**
+     * The feature store for the given key
+     *
+     * @param key
+     * @return
+     */
+    private File getStoreFile(String key) {
+        return new File(cacheFolder, key + FeatureStore.fileEnding);
+    }
+}
@@ -2,16 +2,23 @@ package com.romanuhlig.weka.frameToFeature;
 
 import com.romanuhlig.weka.controller.TestBenchSettings;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Represents the computed featureValues for a given time window
+ * <p>
+ * The values are kept in a primitive row, which can be preallocated if the number of features is known.
  *
  * @author Roman Uhlig
  */
 public class FeatureVector {
 
-    private final ArrayList<Double> featureValues;
+    // initial capacity if the number of features is not known in advance
+    private static final int defaultCapacity = 64;
+
+    // the feature values in the order they were added, followed by unused capacity
+    private double[] featureValues;
+    private int numberOfFeatures;
     private final String classValue;
     private final String subject;
 
@@ -24,20 +31,62 @@ public class FeatureVector {
      * @param classValue
      */
     public FeatureVector(String subject, String classValue) {
-        this.featureValues = new ArrayList<>();
+        this(subject, classValue, defaultCapacity);
+    }
+
+    /**
+     * Create a new feature vector for the given subject and class, with room for the expected number of features
+     *
+     * @param subject
+     * @param classValue
+     * @param expectedNumberOfFeatures
+     */
+    public FeatureVector(String subject, String classValue, int expectedNumberOfFeatures) {
+        this.featureValues = new double[Math.max(expectedNumberOfFeatures, 1)];
+        this.numberOfFeatures = 0;
+        this.subject = subject;
+        this.classValue = classValue;
+    }
+
+    /**
+     * Recreate a feature vector from previously extracted feature values
+     * <p>
+     * The values are used as they are, they have already been scaled when they were first added
+     *
+     * @param subject
+     * @param classValue
+     * @param featureValues
+     */
+    FeatureVector(String subject, String classValue, double[] featureValues) {
+        this.featureValues = featureValues;
+        this.numberOfFeatures = featureValues.length;
         this.subject = subject;
         this.classValue = classValue;
     }
 
     /**
      * Only the feature values
+     * <p>
+     * Unused capacity is removed first, so that the length of the array is the number of features
      *
      * @return
      */
-    public ArrayList<Double> getFeaturesWithoutClassAndSubject() {
+    public double[] getFeaturesWithoutClassAndSubject() {
+        if (featureValues.length != numberOfFeatures) {
+            featureValues = Arrays.copyOf(featureValues, numberOfFeatures);
+        }
         return featureValues;
     }
 
+    /**
+     * The number of feature values added so far
+     *
+     * @return
+     */
+    public int getNumberOfFeatures() {
+        return numberOfFeatures;
+    }
+
     /**
      * The subject that recorded the data this feature vector was extracted from
      *
@@ -54,8 +103,46 @@ public class FeatureVector {
      *
      * @param newFeature
      */
-    public void addFeature(Double newFeature) {
-        featureValues.add(newFeature * TestBenchSettings.scaleAllFeaturesBy());
+    public void addFeature(double newFeature) {
+        ensureCapacity(numberOfFeatures + 1);
+        featureValues[numberOfFeatures++] = newFeature * TestBenchSettings.scaleAllFeaturesBy();
+    }
+
+    /**
+     * Append the given number of features, which are then written directly into the row
+     * <p>
+     * The written values have to be scaled like those passed to addFeature
+     *
+     * @param count
+     * @return the index of the first reserved feature within the row
+     */
+    int reserveFeatures(int count) {
+        ensureCapacity(numberOfFeatures + count);
+        int firstReservedIndex = numberOfFeatures;
+        numberOfFeatures += count;
+        return firstReservedIndex;
+    }
+
+    /**
+     * The row holding the feature values, which may be longer than the number of features
+     * <p>
+     * Only valid until the next feature is added or reserved
+     *
+     * @return
+     */
+    double[] getFeatureRow() {
+        return featureValues;
+    }
+
+    /**
+     * Grow the row, if it cannot hold the given number of features
+     *
+     * @param requiredCapacity
+     */
+    private void ensureCapacity(int requiredCapacity) {
+        if (requiredCapacity > featureValues.length) {
+            featureValues = Arrays.copyOf(featureValues, Math.max(requiredCapacity, featureValues.length * 2));
+        }
     }
 
     /**
@@ -71,14 +158,14 @@ public class FeatureVector {
         // create longer array if subject is required
         String[] allFeaturesWithClass;
         if (TestBenchSettings.useIndividualFeatureFilesForEachSubject()) {
-            allFeaturesWithClass = new String[featureValues.size() + 1];
+            allFeaturesWithClass = new String[numberOfFeatures + 1];
         } else {
-            allFeaturesWithClass = new String[featureValues.size() + 2];
+            allFeaturesWithClass = new String[numberOfFeatures + 2];
         }
 
         // convert feature values to strings
-        for (int i = 0; i < featureValues.size(); i++) {
-            allFeaturesWithClass[i] = Double.toString(featureValues.get(i));
+        for (int i = 0; i < numberOfFeatures; i++) {
+            allFeaturesWithClass[i] = Double.toString(featureValues[i]);
         }
 
         // add subject (if required) and class
@@ -1,12 +1,12 @@
 package com.romanuhlig.weka.frameToFeature;
 
 import com.opencsv.bean.CsvBindByName;
-import com.romanuhlig.weka.math.MathHelper;
 
 /**
  * Represents the data collected during a single frame, for a single sensor
  * <p>
- * Primarily used for reading recorded data through OpenCSV
+ * Primarily used for reading recorded data through OpenCSV, and for passing live data to a FrameDataSet.
+ * Data derived from consecutive frames is kept by the FrameDataSet itself, within its SensorColumns.
  *
  * @author Roman Uhlig
  */
@@ -54,28 +54,11 @@ public class FrameData {
     private double angVelY;
     private double angVelZ;
 
-    // the acceleration can not be read directly from the sensors, and has to be derived using two frames
-    private double linAccelerationX;
-    private double linAccelerationY;
-    private double linAccelerationZ;
-    private double angAccelerationX;
-    private double angAccelerationY;
-    private double angAccelerationZ;
-
     @CsvBindByName
     private double scale;
     @CsvBindByName
     private double time;
 
-    // acceleration and frame duration have to be calculated from the previous frame,
-    // which leaves data points where that data can not be determined
-    private boolean derivedDataCalculated = false;
-    private double frameDuration = 0;
-
-    // whether invalid values were detected while reading the data
-    private boolean invalid = false;
-
-
     /**
      * DO NOT USE, empty constructor:
      * Required by OpenCSV to fill fields automatically when reading from csv file, but should not be used manually
@@ -132,57 +115,6 @@ public class FrameData {
         this.time = time;
     }
 
-    /**
-     * Fill out the data for this frame that requires knowledge of the previous frame
-     *
-     * @param previousFrame
-     */
-    public void computeAdditionalDataBasedOnPreviousFrame(FrameData previousFrame) {
-        
-        // linear velocity
-        this.linVelX = MathHelper.calculateVelocityFromPosition(
-                previousFrame.posX, this.posX, previousFrame.time, this.time);
-        this.linVelY = MathHelper.calculateVelocityFromPosition(
-                previousFrame.posY, this.posY, previousFrame.time, this.time);
-        this.linVelZ = MathHelper.calculateVelocityFromPosition(
-                previousFrame.posZ, this.posZ, previousFrame.time, this.time);
-        
-        // angular velocity
-        double roll = MathHelper.getRoll(this.rotX, this.rotY, this.rotZ, this.rotW);
-        double pitch = MathHelper.getPitch(this.rotX, this.rotY, this.rotZ, this.rotW);
-        double yaw = MathHelper.getYaw(this.rotX, this.rotY, this.rotZ, this.rotW);
-        double rollPrevious = MathHelper.getRoll(previousFrame.rotX, previousFrame.rotY, previousFrame.rotZ, previousFrame.rotW);
-        double pitchPrevious = MathHelper.getPitch(previousFrame.rotX, previousFrame.rotY, previousFrame.rotZ, previousFrame.rotW);
-        double yawPrevious = MathHelper.getYaw(previousFrame.rotX, previousFrame.rotY, previousFrame.rotZ, previousFrame.rotW);
-        this.angVelX = MathHelper.calculateVelocityFromPosition(
-                rollPrevious, roll, previousFrame.time, this.time);
-        this.angVelY = MathHelper.calculateVelocityFromPosition(
-                pitchPrevious, pitch, previousFrame.time, this.time);
-        this.angVelZ = MathHelper.calculateVelocityFromPosition(
-                yawPrevious, yaw, previousFrame.time, this.time);
-
-        // linear acceleration
-        this.linAccelerationX = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.linVelX, this.linVelX, previousFrame.time, this.time);
-        this.linAccelerationY = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.linVelY, this.linVelY, previousFrame.time, this.time);
-        this.linAccelerationZ = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.linVelZ, this.linVelZ, previousFrame.time, this.time);
-
-        // angular acceleration
-        this.angAccelerationX = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.angVelX, this.angVelX, previousFrame.time, this.time);
-        this.angAccelerationY = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.angVelY, this.angVelY, previousFrame.time, this.time);
-        this.angAccelerationZ = MathHelper.calculateAccelerationFromVelocity(
-                previousFrame.angVelZ, this.angVelZ, previousFrame.time, this.time);
-
-        // frame duration
-        this.frameDuration = this.time - previousFrame.time;
-
-        derivedDataCalculated = true;
-    }
-
     /**
      * The position the sensor is worn, also known as the "tag"
      *
@@ -327,60 +259,6 @@ public class FrameData {
         return linVelZ;
     }
 
-    /**
-     * The x linear acceleration, derived from the velocity of this frame and the previous frame
-     *
-     * @return
-     */
-    public double getLinAccelerationX() {
-        return linAccelerationX;
-    }
-
-    /**
-     * The y linear acceleration, derived from the velocity of this frame and the previous frame
-     *
-     * @return
-     */
-    public double getLinAccelerationY() {
-        return linAccelerationY;
-    }
-
-    /**
-     * The z linear acceleration, derived from the velocity of this frame and the previous frame
-     *
-     * @return
-     */
-    public double getLinAccelerationZ() {
-        return linAccelerationZ;
-    }
-
-    /**
-     * The x angular acceleration, derived from the velocity of this and the previous frame
-     *
-     * @return
-     */
-    public double getAngAccelerationX() {
-        return angAccelerationX;
-    }
-
-    /**
-     * The y angular acceleration, derived from the velocity of this and the previous frame
-     *
-     * @return
-     */
-    public double getAngAccelerationY() {
-        return angAccelerationY;
-    }
-
-    /**
-     * The z angular acceleration, derived from the velocity of this and the previous frame
-     *
-     * @return
-     */
-    public double getAngAccelerationZ() {
-        return angAccelerationZ;
-    }
-
     /**
      * The scale, as determined by the height of the HMD during the subject calibration
      *
@@ -399,35 +277,4 @@ public class FrameData {
         return time;
     }
 
-    /**
-     * Whether the previous frame was already used to derive additional features for this frame
-     *
-     * @return
-     */
-    public boolean derivedDataWasCalculated() {
-        return derivedDataCalculated;
-    }
-
-    /**
-     * The difference in time between this frame and the previous frame
-     *
-     * @return
-     */
-    public double getFrameDuration() {
-        return frameDuration;
-    }
-
-    /**
-     * Mark this frame as containing data which cannot have been recorded correctly
-     * <p>
-     * E.g., if the sensor reported to be 100 meters above the ground
-     */
-    public void setInvalid() {
-        this.invalid = true;
-    }
-
-    public boolean includesInvalidData() {
-        return invalid;
-    }
-
 }
@@ -0,0 +1,490 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a binary, column-wise copy of each parsed recording, so that later runs do not have to parse it again
+ * <p>
+ * The copy contains all sensor columns as they are after reading, including the derived data and invalid flags.
+ * Time and frame duration columns and invalid flags that sensors share with the first sensor are stored only once.
+ * It is only used while the size, modification time and content hash of the original recording still match,
+ * and while it contains all derived channels of the requested DerivedChannelPlan.
+ *
+ * @author Roman Uhlig
+ */
+public class FrameDataCache {
+
+    // file ending for cached recordings
+    private static final String cacheFileEnding = ".frames";
+
+    // identifies the file type and layout, increase the version whenever the layout or stored data changes
+    private static final int magicNumber = 0x46524D53;
+    private static final int formatVersion = 4;
+
+    // magic number, version, source length, modification time and hash, and the start of the columns
+    private static final int fixedHeaderSize = 4 + 4 + 8 + 8 + 8 + 4;
+
+    // all data is written in the same byte order, regardless of the machine
+    private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    // buffer size used when hashing the original recording
+    private static final int hashBufferSize = 1 << 16;
+
+    /**
+     * DO NOT USE, only static methods
+     */
+    private FrameDataCache() {
+    }
+
+    /**
+     * Read the given recording from the cache in the given folder, or parse it and add it to the cache
+     * <p>
+     * Only the derived channels required by the current settings are computed
+     *
+     * @param filePath
+     * @param cacheFolder
+     * @return
+     * @throws IOException if the recording itself cannot be read
+     */
+    public static FrameDataSet readFrameDataSet(String filePath, String cacheFolder) throws IOException {
+        return readFrameDataSet(filePath, cacheFolder, DerivedChannelPlan.fromSettings());
+    }
+
+    /**
+     * Read the given recording from the cache in the given folder, or parse it and add it to the cache
+     * <p>
+     * A cached copy that lacks any of the requested derived channels is replaced
+     *
+     * @param filePath
+     * @param cacheFolder
+     * @param derivedChannelPlan
+     * @return
+     * @throws IOException if the recording itself cannot be read
+     */
+    public static FrameDataSet readFrameDataSet(String filePath, String cacheFolder,
+                                                DerivedChannelPlan derivedChannelPlan) throws IOException {
+        return readFrameDataSet(filePath, cacheFolder, derivedChannelPlan, computeContentHash(Paths.get(filePath)));
+    }
+
+    /**
+     * Read the given recording from the cache in the given folder, or parse it and add it to the cache
+     * <p>
+     * The content hash of the recording has already been computed by the caller, and is not computed again
+     *
+     * @param filePath
+     * @param cacheFolder
+     * @param sourceHash  the content hash of the recording, as computed by computeContentHash
+     * @return
+     * @throws IOException if the recording itself cannot be read
+     */
+    public static FrameDataSet readFrameDataSet(String filePath, String cacheFolder, long sourceHash)
+            throws IOException {
+        return readFrameDataSet(filePath, cacheFolder, DerivedChannelPlan.fromSettings(), sourceHash);
+    }
+
+    /**
+     * Read the given recording from the cache in the given folder, or parse it and add it to the cache
+     *
+     * @param filePath
+     * @param cacheFolder
+     * @param derivedChannelPlan
+     * @param sourceHash
+     * @return
+     * @throws IOException if the recording itself cannot be read
+     */
+    private static FrameDataSet readFrameDataSet(String filePath, String cacheFolder,
+                                                 DerivedChannelPlan derivedChannelPlan, long sourceHash)
+            throws IOException {
+
+        File sourceFile = new File(filePath);
+        File cacheFile = new File(cacheFolder, sourceFile.getName() + cacheFileEnding);
+
+        // the source properties are checked first, since they do not require reading any data
+        long sourceLength = sourceFile.length();
+        long sourceLastModified = sourceFile.lastModified();
+
+        if (cacheFile.isFile()) {
+            try {
+                FrameDataSet frameDataSet =
+                        readCacheFile(cacheFile.toPath(), sourceLength, sourceLastModified, sourceHash,
+                                SensorColumns.getIncludedColumns(derivedChannelPlan));
+                if (frameDataSet != null) {
+                    return frameDataSet;
+                }
+            } catch (IOException | RuntimeException e) {
+                // a damaged cache file is simply replaced
+                System.err.println("unable to read cached file " + cacheFile.getPath());
+            }
+        }
+
+        FrameDataSet frameDataSet = FrameDataReader.readFrameDataSet(filePath, derivedChannelPlan);
+
+        try {
+            writeCacheFile(frameDataSet, cacheFile.toPath(), sourceLength, sourceLastModified, sourceHash);
+        } catch (IOException e) {
+            // the recording could still be read, so only the next run will be slower
+            System.err.println("unable to write cached file " + cacheFile.getPath());
+        }
+
+        return frameDataSet;
+    }
+
+    /**
+     * Compute the hash used to detect changes to the content of the original recording
+     *
+     * @param sourcePath
+     * @return
+     * @throws IOException
+     */
+    static long computeContentHash(Path sourcePath) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(hashBufferSize);
+        try (FileChannel channel = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Map the given cache file, and copy its columns into a new FrameDataSet
+     * <p>
+     * The header is read and checked first, and the file is only mapped once it is known to be used.
+     * A file that is still mapped cannot be replaced on every platform (e.g. on Windows), and the mapping
+     * lives on until it is garbage collected, so an outdated cache file must never be mapped.
+     *
+     * @param cachePath
+     * @param sourceLength
+     * @param sourceLastModified
+     * @param sourceHash
+     * @param requiredColumns
+     * @return the cached FrameDataSet, or null if the cache file does not belong to the current recording,
+     * or lacks any of the required columns
+     * @throws IOException
+     */
+    private static FrameDataSet readCacheFile(Path cachePath, long sourceLength, long sourceLastModified,
+                                              long sourceHash, boolean[] requiredColumns) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            return readCacheFile(channel, sourceLength, sourceLastModified, sourceHash, requiredColumns);
+        }
+    }
+
+    /**
+     * Check the header of the given open cache file, and copy its columns into a new FrameDataSet
+     *
+     * @param channel
+     * @param sourceLength
+     * @param sourceLastModified
+     * @param sourceHash
+     * @param requiredColumns
+     * @return the cached FrameDataSet, or null if the cache file does not belong to the current recording,
+     * or lacks any of the required columns
+     * @throws IOException
+     */
+    private static FrameDataSet readCacheFile(FileChannel channel, long sourceLength, long sourceLastModified,
+                                              long sourceHash, boolean[] requiredColumns) throws IOException {
+
+        long cacheFileSize = channel.size();
+
+        // fixed header
+        ByteBuffer buffer = readFully(channel, 0, fixedHeaderSize);
+        if (buffer == null || buffer.getInt() != magicNumber || buffer.getInt() != formatVersion) {
+            return null;
+        }
+        if (buffer.getLong() != sourceLength
+                || buffer.getLong() != sourceLastModified
+                || buffer.getLong() != sourceHash) {
+            return null;
+        }
+        int columnsStart = buffer.getInt();
+        if (columnsStart < fixedHeaderSize || columnsStart > cacheFileSize) {
+            throw new IllegalStateException("columns start outside of the cache file");
+        }
+
+        // the rest of the header, up to the columns
+        buffer = readFully(channel, fixedHeaderSize, columnsStart - fixedHeaderSize);
+        if (buffer == null) {
+            throw new IllegalStateException("header longer than the cache file");
+        }
+        String subject = getString(buffer);
+        String activity = getString(buffer);
+
+        int numberOfSensors = buffer.getInt();
+        String[] sensorPositions = new String[numberOfSensors];
+        int[] sizes = new int[numberOfSensors];
+        boolean[] firstFrameLacksDerivedData = new boolean[numberOfSensors];
+        boolean[][] includedColumns = new boolean[numberOfSensors][];
+        double[] scales = new double[numberOfSensors];
+        boolean[] sharesFramesOfFirstSensor = new boolean[numberOfSensors];
+        for (int sensor = 0; sensor < numberOfSensors; sensor++) {
+            sensorPositions[sensor] = getString(buffer);
+            sizes[sensor] = buffer.getInt();
+            firstFrameLacksDerivedData[sensor] = buffer.getInt() != 0;
+            includedColumns[sensor] = getColumnFlags(buffer.getInt());
+            scales[sensor] = buffer.getDouble();
+            sharesFramesOfFirstSensor[sensor] = buffer.getInt() != 0;
+            if (sharesFramesOfFirstSensor[sensor] && (sensor == 0 || sizes[sensor] != sizes[0])) {
+                throw new IllegalStateException("shared frames without a matching first sensor");
+            }
+            for (int column = 0; column < SensorColumns.numberOfColumns; column++) {
+                boolean shared = sharesFramesOfFirstSensor[sensor] && SensorColumns.isFrameColumn(column);
+                if (requiredColumns[column] && !includedColumns[sensor][column] && !shared) {
+                    return null;
+                }
+            }
+        }
+
+        // columns, one bulk copy each from the mapped file
+        MappedByteBuffer mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, cacheFileSize);
+        buffer = mappedBuffer.order(byteOrder);
+        buffer.position(columnsStart);
+        ArrayList<SensorColumns> allSensorColumns = new ArrayList<>(numberOfSensors);
+        for (int sensor = 0; sensor < numberOfSensors; sensor++) {
+            int size = sizes[sensor];
+            alignToDoubles(buffer);
+
+            // columns that are stored but not required are loaded as well, they are already paid for
+            double[][] columns = new double[SensorColumns.numberOfColumns][];
+            for (int column = 0; column < SensorColumns.numberOfColumns; column++) {
+                if (includedColumns[sensor][column]) {
+                    columns[column] = new double[size];
+                    buffer.slice().order(byteOrder).asDoubleBuffer().get(columns[column]);
+                    buffer.position(buffer.position() + size * Double.BYTES);
+                }
+            }
+
+            boolean[] invalid = null;
+            if (!sharesFramesOfFirstSensor[sensor]) {
+                byte[] invalidBytes = new byte[size];
+                buffer.get(invalidBytes);
+                invalid = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    invalid[i] = invalidBytes[i] != 0;
+                }
+            }
+
+            SensorColumns sensorColumns = new SensorColumns(sensorPositions[sensor], columns, invalid, size,
+                    firstFrameLacksDerivedData[sensor], scales[sensor]);
+            if (sharesFramesOfFirstSensor[sensor]) {
+                sensorColumns.shareFramesOf(allSensorColumns.get(0));
+            }
+            allSensorColumns.add(sensorColumns);
+        }
+
+        return new FrameDataSet(allSensorColumns, subject, activity);
+    }
+
+    /**
+     * Write the given FrameDataSet into the given cache file
+     * <p>
+     * The file is written under a temporary name first, so that an interrupted run leaves no partial cache file
+     *
+     * @param frameDataSet
+     * @param cachePath
+     * @param sourceLength
+     * @param sourceLastModified
+     * @param sourceHash
+     * @throws IOException
+     */
+    private static void writeCacheFile(FrameDataSet frameDataSet, Path cachePath, long sourceLength,
+                                       long sourceLastModified, long sourceHash) throws IOException {
+
+        ArrayList<SensorColumns> allSensorColumns = frameDataSet.getAllSensorColumns();
+        boolean[] sharesFramesOfFirstSensor = new boolean[allSensorColumns.size()];
+        for (int sensor = 1; sensor < allSensorColumns.size(); sensor++) {
+            sharesFramesOfFirstSensor[sensor] = allSensorColumns.get(sensor).sharesFramesOf(allSensorColumns.get(0));
+        }
+        byte[] subject = frameDataSet.getSubject().getBytes(StandardCharsets.UTF_8);
+        byte[] activity = frameDataSet.getActivity().getBytes(StandardCharsets.UTF_8);
+
+        // determine the overall size first, to fill a single buffer
+        long fileSize = fixedHeaderSize + 4 + subject.length + 4 + activity.length + 4;
+        for (SensorColumns sensorColumns : allSensorColumns) {
+            fileSize += 4 + sensorColumns.getSensorPosition().getBytes(StandardCharsets.UTF_8).length + 4 + 4 + 4
+                    + 8 + 4;
+        }
+        for (int sensor = 0; sensor < allSensorColumns.size(); sensor++) {
+            SensorColumns sensorColumns = allSensorColumns.get(sensor);
+            boolean sharesFrames = sharesFramesOfFirstSensor[sensor];
+            int numberOfIncludedColumns = Integer.bitCount(getColumnMask(sensorColumns, sharesFrames));
+            fileSize = alignedToDoubles(fileSize);
+            fileSize += (long) sensorColumns.size() * (numberOfIncludedColumns * Double.BYTES + (sharesFrames ? 0 : 1));
+        }
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("recording too large for the cache");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize).order(byteOrder);
+
+        // header
+        buffer.putInt(magicNumber);
+        buffer.putInt(formatVersion);
+        buffer.putLong(sourceLength);
+        buffer.putLong(sourceLastModified);
+        buffer.putLong(sourceHash);
+        // start of the columns, filled in once the rest of the header is written
+        int columnsStartPosition = buffer.position();
+        buffer.putInt(0);
+        putString(buffer, subject);
+        putString(buffer, activity);
+        buffer.putInt(allSensorColumns.size());
+        for (int sensor = 0; sensor < allSensorColumns.size(); sensor++) {
+            SensorColumns sensorColumns = allSensorColumns.get(sensor);
+            putString(buffer, sensorColumns.getSensorPosition().getBytes(StandardCharsets.UTF_8));
+            buffer.putInt(sensorColumns.size());
+            buffer.putInt(sensorColumns.firstFrameLacksDerivedData() ? 1 : 0);
+            buffer.putInt(getColumnMask(sensorColumns, sharesFramesOfFirstSensor[sensor]));
+            buffer.putDouble(sensorColumns.getScale());
+            buffer.putInt(sharesFramesOfFirstSensor[sensor] ? 1 : 0);
+        }
+
+        buffer.putInt(columnsStartPosition, buffer.position());
+
+        // columns, leaving out those shared with the first sensor
+        for (int sensor = 0; sensor < allSensorColumns.size(); sensor++) {
+            SensorColumns sensorColumns = allSensorColumns.get(sensor);
+            int columnMask = getColumnMask(sensorColumns, sharesFramesOfFirstSensor[sensor]);
+            int size = sensorColumns.size();
+            alignToDoubles(buffer);
+            for (int column = 0; column < SensorColumns.numberOfColumns; column++) {
+                if ((columnMask & (1 << column)) != 0) {
+                    buffer.slice().order(byteOrder).asDoubleBuffer().put(sensorColumns.getColumn(column), 0, size);
+                    buffer.position(buffer.position() + size * Double.BYTES);
+                }
+            }
+            if (!sharesFramesOfFirstSensor[sensor]) {
+                boolean[] invalid = sensorColumns.getInvalidFlags();
+                for (int i = 0; i < size; i++) {
+                    buffer.put(invalid[i] ? (byte) 1 : (byte) 0);
+                }
+            }
+        }
+        buffer.flip();
+
+        Files.createDirectories(cachePath.getParent());
+        Path temporaryPath = Paths.get(cachePath.toString() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The columns stored for the given sensor, one bit for each column in the order given by getColumn
+     *
+     * @param sensorColumns
+     * @param sharesFramesOfFirstSensor whether the time and frame duration columns are left out
+     * @return
+     */
+    private static int getColumnMask(SensorColumns sensorColumns, boolean sharesFramesOfFirstSensor) {
+        int columnMask = 0;
+        for (int column = 0; column < SensorColumns.numberOfColumns; column++) {
+            boolean shared = sharesFramesOfFirstSensor && SensorColumns.isFrameColumn(column);
+            if (sensorColumns.includesColumn(column) && !shared) {
+                columnMask |= 1 << column;
+            }
+        }
+        return columnMask;
+    }
+
+    /**
+     * Convert the stored column mask back into one flag for each column
+     *
+     * @param columnMask
+     * @return
+     */
+    private static boolean[] getColumnFlags(int columnMask) {
+        boolean[] columnFlags = new boolean[SensorColumns.numberOfColumns];
+        for (int column = 0; column < SensorColumns.numberOfColumns; column++) {
+            columnFlags[column] = (columnMask & (1 << column)) != 0;
+        }
+        return columnFlags;
+    }
+
+    /**
+     * Read the given number of bytes, starting at the given position of the file, into a new heap buffer
+     *
+     * @param channel
+     * @param position
+     * @param length
+     * @return the buffer, ready to be read, or null if the file ends before
+     * @throws IOException
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(byteOrder);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read a string stored as its length followed by its UTF-8 bytes
+     *
+     * @param buffer
+     * @return
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a string as its length followed by its UTF-8 bytes
+     *
+     * @param buffer
+     * @param bytes
+     */
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Move the buffer position to the next multiple of the size of a double
+     *
+     * @param buffer
+     */
+    private static void alignToDoubles(ByteBuffer buffer) {
+        buffer.position((int) alignedToDoubles(buffer.position()));
+    }
+
+    /**
+     * The next multiple of the size of a double, starting at the given position
+     *
+     * @param position
+     * @return
+     */
+    private static long alignedToDoubles(long position) {
+        return (position + Double.BYTES - 1) & ~(long) (Double.BYTES - 1);
+    }
+}
@@ -0,0 +1,455 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads sensor readings produced by the BodyTrackingFramework, without going through OpenCSV
+ * <p>
+ * The header is resolved once, after which only the required columns are parsed directly into primitives.
+ * Unused columns (e.g. des* and raw*) are skipped without being converted,
+ * and frames are added to the FrameDataSet while the file is being read.
+ *
+ * @author Roman Uhlig
+ */
+public class FrameDataReader {
+
+    // separator used by the BodyTrackingFramework
+    private static final byte separator = ';';
+
+    // initial size of the read buffer, grows if a single line does not fit
+    private static final int initialBufferSize = 1 << 16;
+
+    // the columns we are interested in, in the order of the column indices used below
+    private static final String[] requiredColumnNames = new String[]{
+            "tag", "subject", "activity",
+            "finalPosX", "finalPosY", "finalPosZ",
+            "finalRotX", "finalRotY", "finalRotZ", "finalRotW",
+            "scale", "time"
+    };
+    private static final int columnTag = 0;
+    private static final int columnSubject = 1;
+    private static final int columnActivity = 2;
+    private static final int columnPosX = 3;
+    private static final int columnPosY = 4;
+    private static final int columnPosZ = 5;
+    private static final int columnRotX = 6;
+    private static final int columnRotY = 7;
+    private static final int columnRotZ = 8;
+    private static final int columnRotW = 9;
+    private static final int columnScale = 10;
+    private static final int columnTime = 11;
+
+    // powers of ten that can be represented exactly as a double, used for fast and exact number parsing
+    private static final double[] exactPowersOfTen = new double[]{
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // largest mantissa that can be represented exactly as a double
+    private static final long maximumExactMantissa = 1L << 53;
+
+    // input
+    private final InputStream inputStream;
+    private byte[] buffer = new byte[initialBufferSize];
+    private int bufferStart = 0;
+    private int bufferEnd = 0;
+    private boolean endOfInput = false;
+
+    // position of the current line within the buffer
+    private int lineStart;
+    private int lineEnd;
+
+    // for each column within the file, which required column it represents (or -1 if it is not needed)
+    private int[] requiredColumnForFileColumn;
+
+    // values of the current line
+    private final double[] numericValues = new double[requiredColumnNames.length];
+    private final String[] textValues = new String[requiredColumnNames.length];
+
+    // previously seen text values, so that a new String is only created if the text actually changes
+    private final byte[][] knownTextBytes = new byte[requiredColumnNames.length][];
+    private final String[] knownTextValues = new String[requiredColumnNames.length];
+    private final byte[][] knownTagBytes = new byte[32][];
+    private final String[] knownTags = new String[32];
+    private int numberOfKnownTags = 0;
+
+    // the derived channels computed for the new FrameDataSet
+    private final DerivedChannelPlan derivedChannelPlan;
+
+    /**
+     * Create a reader for the given input
+     *
+     * @param inputStream
+     * @param derivedChannelPlan
+     */
+    private FrameDataReader(InputStream inputStream, DerivedChannelPlan derivedChannelPlan) {
+        this.inputStream = inputStream;
+        this.derivedChannelPlan = derivedChannelPlan;
+    }
+
+    /**
+     * Read and process all sensor readings in the given file
+     * <p>
+     * Only the derived channels required by the current settings are computed
+     *
+     * @param filePath
+     * @return
+     * @throws IOException
+     */
+    public static FrameDataSet readFrameDataSet(String filePath) throws IOException {
+        return readFrameDataSet(filePath, DerivedChannelPlan.fromSettings());
+    }
+
+    /**
+     * Read and process all sensor readings in the given file, computing the given derived channels
+     *
+     * @param filePath
+     * @param derivedChannelPlan
+     * @return
+     * @throws IOException
+     */
+    public static FrameDataSet readFrameDataSet(String filePath, DerivedChannelPlan derivedChannelPlan)
+            throws IOException {
+        try (
+                // stream in resource statement is automatically closed on failure
+                InputStream inputStream = Files.newInputStream(Paths.get(filePath))
+        ) {
+            return new FrameDataReader(inputStream, derivedChannelPlan).readFrameDataSet();
+        }
+    }
+
+    /**
+     * Read the header, and add all following lines to a new FrameDataSet
+     *
+     * @return
+     * @throws IOException
+     */
+    private FrameDataSet readFrameDataSet() throws IOException {
+
+        if (!nextLine()) {
+            throw new IOException("missing header");
+        }
+        readHeader();
+
+        FrameDataSet frameDataSet = null;
+        while (nextLine()) {
+
+            // ignore empty lines
+            if (lineStart == lineEnd) {
+                continue;
+            }
+
+            readValues();
+
+            // subject and activity are determined by the first line
+            if (frameDataSet == null) {
+                frameDataSet = new FrameDataSet(
+                        textValues[columnSubject], textValues[columnActivity], derivedChannelPlan);
+            }
+
+            // angular and linear velocity are not read from the file, but derived from previous frames
+            frameDataSet.addFrameData(textValues[columnTag],
+                    numericValues[columnPosX], numericValues[columnPosY], numericValues[columnPosZ],
+                    numericValues[columnRotX], numericValues[columnRotY],
+                    numericValues[columnRotZ], numericValues[columnRotW],
+                    0, 0, 0,
+                    0, 0, 0,
+                    numericValues[columnScale], numericValues[columnTime]);
+        }
+
+        if (frameDataSet == null) {
+            throw new IOException("no frame data");
+        }
+
+        // check data consistency for last added frame
+        frameDataSet.checkDataConsistencyForNewestData();
+        frameDataSet.trimToSize();
+
+        return frameDataSet;
+    }
+
+    /**
+     * Determine which columns of the file are required, based on the header line
+     * <p>
+     * Like OpenCSV, column names are matched without regard to case, and missing columns keep their default value
+     */
+    private void readHeader() {
+
+        String[] fileColumnNames =
+                new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).split(";", -1);
+
+        requiredColumnForFileColumn = new int[fileColumnNames.length];
+        Arrays.fill(requiredColumnForFileColumn, -1);
+        for (int fileColumn = 0; fileColumn < fileColumnNames.length; fileColumn++) {
+            String fileColumnName = fileColumnNames[fileColumn].trim();
+            for (int requiredColumn = 0; requiredColumn < requiredColumnNames.length; requiredColumn++) {
+                if (requiredColumnNames[requiredColumn].equalsIgnoreCase(fileColumnName)) {
+                    requiredColumnForFileColumn[fileColumn] = requiredColumn;
+                }
+            }
+        }
+
+        // default values for columns that are not included in the file
+        Arrays.fill(numericValues, 0);
+        Arrays.fill(textValues, null);
+    }
+
+    /**
+     * Parse all required values within the current line, skipping the rest
+     *
+     * @throws IOException
+     */
+    private void readValues() throws IOException {
+
+        int fieldStart = lineStart;
+        int fileColumn = 0;
+        while (fieldStart <= lineEnd && fileColumn < requiredColumnForFileColumn.length) {
+
+            // find the end of the current field
+            int fieldEnd = fieldStart;
+            while (fieldEnd < lineEnd && buffer[fieldEnd] != separator) {
+                fieldEnd++;
+            }
+
+            int requiredColumn = requiredColumnForFileColumn[fileColumn];
+            if (requiredColumn >= 0) {
+
+                // leading white space is ignored, as it was for OpenCSV
+                int valueStart = fieldStart;
+                while (valueStart < fieldEnd && isWhiteSpace(buffer[valueStart])) {
+                    valueStart++;
+                }
+
+                if (valueStart == fieldEnd) {
+                    // like OpenCSV, empty fields keep their default value
+                    numericValues[requiredColumn] = 0;
+                    textValues[requiredColumn] = null;
+                } else if (requiredColumn == columnTag) {
+                    textValues[requiredColumn] = getTag(valueStart, fieldEnd);
+                } else if (requiredColumn == columnSubject || requiredColumn == columnActivity) {
+                    textValues[requiredColumn] = getText(requiredColumn, valueStart, fieldEnd);
+                } else {
+                    numericValues[requiredColumn] = parseDouble(valueStart, fieldEnd);
+                }
+            }
+
+            fieldStart = fieldEnd + 1;
+            fileColumn++;
+        }
+    }
+
+    /**
+     * The sensor tag for the given part of the buffer, reusing the String instances of tags seen before
+     *
+     * @param start
+     * @param end
+     * @return
+     */
+    private String getTag(int start, int end) {
+
+        for (int i = 0; i < numberOfKnownTags; i++) {
+            if (bytesEqual(knownTagBytes[i], start, end)) {
+                return knownTags[i];
+            }
+        }
+
+        String tag = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        if (numberOfKnownTags < knownTags.length) {
+            knownTagBytes[numberOfKnownTags] = Arrays.copyOfRange(buffer, start, end);
+            knownTags[numberOfKnownTags] = tag;
+            numberOfKnownTags++;
+        }
+        return tag;
+    }
+
+    /**
+     * The text for the given part of the buffer, reusing the last String instance if the text did not change
+     *
+     * @param requiredColumn
+     * @param start
+     * @param end
+     * @return
+     */
+    private String getText(int requiredColumn, int start, int end) {
+
+        if (knownTextBytes[requiredColumn] != null && bytesEqual(knownTextBytes[requiredColumn], start, end)) {
+            return knownTextValues[requiredColumn];
+        }
+
+        String text = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        knownTextBytes[requiredColumn] = Arrays.copyOfRange(buffer, start, end);
+        knownTextValues[requiredColumn] = text;
+        return text;
+    }
+
+    /**
+     * Whether the given bytes are identical to the given part of the buffer
+     *
+     * @param bytes
+     * @param start
+     * @param end
+     * @return
+     */
+    private boolean bytesEqual(byte[] bytes, int start, int end) {
+
+        if (bytes.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the number within the given part of the buffer
+     * <p>
+     * Plain decimal numbers with up to 15 significant digits are converted directly, which yields exactly the same
+     * result as Double.parseDouble. Anything else (exponents, NaN, very long numbers...) is handed to
+     * Double.parseDouble instead.
+     *
+     * @param start
+     * @param end
+     * @return
+     * @throws IOException
+     */
+    private double parseDouble(int start, int end) throws IOException {
+
+        // trailing white space is ignored as well
+        while (end > start && isWhiteSpace(buffer[end - 1])) {
+            end--;
+        }
+
+        int position = start;
+        boolean negative = false;
+        if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+            negative = buffer[position] == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        boolean digitFound = false;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fractionStarted = false;
+        boolean simpleNumber = true;
+
+        for (; position < end; position++) {
+            byte character = buffer[position];
+            if (character >= '0' && character <= '9') {
+                digitFound = true;
+                // leading zeros do not count as significant digits
+                if (mantissa != 0 || character != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (character - '0');
+                if (fractionStarted) {
+                    fractionDigits++;
+                }
+                if (digits > 15) {
+                    simpleNumber = false;
+                    break;
+                }
+            } else if (character == '.' && !fractionStarted) {
+                fractionStarted = true;
+            } else {
+                simpleNumber = false;
+                break;
+            }
+        }
+
+        // a single division of two exactly representable values is rounded correctly, just like parseDouble
+        if (simpleNumber && digitFound && mantissa < maximumExactMantissa
+                && fractionDigits < exactPowersOfTen.length) {
+            double value = mantissa / exactPowersOfTen[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        try {
+            return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new IOException("unable to parse number "
+                    + new String(buffer, start, end - start, StandardCharsets.US_ASCII), e);
+        }
+    }
+
+    /**
+     * Whether the given character counts as white space
+     *
+     * @param character
+     * @return
+     */
+    private static boolean isWhiteSpace(byte character) {
+        return character == ' ' || character == '\t';
+    }
+
+    /**
+     * Advance to the next line within the input, refilling the buffer if necessary
+     *
+     * @return false if there are no more lines
+     * @throws IOException
+     */
+    private boolean nextLine() throws IOException {
+
+        int searchFrom = bufferStart;
+        while (true) {
+
+            // search for the end of the line within the current buffer content
+            for (int i = searchFrom; i < bufferEnd; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(bufferStart, i);
+                    bufferStart = i + 1;
+                    return true;
+                }
+            }
+
+            // the last line does not need to end with a line break
+            if (endOfInput) {
+                if (bufferStart < bufferEnd) {
+                    setLine(bufferStart, bufferEnd);
+                    bufferStart = bufferEnd;
+                    return true;
+                }
+                return false;
+            }
+
+            // move the incomplete line to the front, and grow the buffer if the line does not fit
+            searchFrom = bufferEnd - bufferStart;
+            if (bufferStart > 0) {
+                System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd - bufferStart);
+                bufferEnd -= bufferStart;
+                bufferStart = 0;
+            } else if (bufferEnd == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            int bytesRead = inputStream.read(buffer, bufferEnd, buffer.length - bufferEnd);
+            if (bytesRead < 0) {
+                endOfInput = true;
+            } else {
+                bufferEnd += bytesRead;
+            }
+        }
+    }
+
+    /**
+     * Set the current line, excluding the line break
+     *
+     * @param start
+     * @param end
+     */
+    private void setLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+    }
+}
@@ -6,34 +6,60 @@ import java.util.*;
 
 /**
  * Represents all data for a single recording produced by one subject for one task
+ * <p>
+ * The data of each sensor is stored column-wise within SensorColumns.
+ * A FrameDataSet may also represent a window of another set, in which case it shares the columns of that set
+ * and only covers the frames within its index range.
  *
  * @author Roman Uhlig
  */
 public class FrameDataSet {
 
-    // any inner List represents all data collected for a single individual sensor
-    private final ArrayList<List<FrameData>> allSensorLists;
+    // the columns of all sensors, sorted by sensor name
+    private final ArrayList<SensorColumns> allSensorColumns;
+    // the same columns, indexed by their id within the SensorRegistry (null for sensors not within this set)
+    private SensorColumns[] sensorColumnsById = new SensorColumns[0];
+
+    // the range of frames within the sensor columns that belong to this set
+    // an end index of -1 means that all frames up to the current size of each sensor are included
+    private final int firstFrameIndex;
+    private final int endFrameIndex;
 
     private final String subject;
     private final String activity;
 
+    // the derived channels computed for sensors added to this set
+    private final DerivedChannelPlan derivedChannelPlan;
+
     private double timestampOfLatestEntry;
 
-    // for debugging purposes, count the number of frame data sets which have been removed
-    // because they contained invalid data
-    private static int segmentsLeftOut = 0;
+    // for debugging purposes, count the number of windows which have been checked,
+    // and of those which have been removed because they contained invalid data
+    private static long windowsChecked = 0;
+    private static long windowsLeftOut = 0;
 
 
     /**
      * Construct an empty FrameDataSet for the given subject and activity
+     * <p>
+     * Only the derived channels required by the current settings are computed
      *
      * @param subject
      * @param activity
      */
     public FrameDataSet(String subject, String activity) {
-        this.subject = subject;
-        this.activity = activity;
-        allSensorLists = new ArrayList<>();
+        this(subject, activity, DerivedChannelPlan.fromSettings());
+    }
+
+    /**
+     * Construct an empty FrameDataSet for the given subject and activity, computing the given derived channels
+     *
+     * @param subject
+     * @param activity
+     * @param derivedChannelPlan
+     */
+    public FrameDataSet(String subject, String activity, DerivedChannelPlan derivedChannelPlan) {
+        this(new ArrayList<>(), subject, activity, derivedChannelPlan, 0, -1);
     }
 
     /**
@@ -42,9 +68,8 @@ public class FrameDataSet {
      * @param originalFrameData
      */
     public FrameDataSet(List<FrameData> originalFrameData) {
-
-        subject = originalFrameData.get(0).getSubject();
-        activity = originalFrameData.get(0).getActivity();
+        this(new ArrayList<>(), originalFrameData.get(0).getSubject(), originalFrameData.get(0).getActivity(),
+                DerivedChannelPlan.fromSettings(), 0, -1);
 
         // replace Krieger_1, Krieger_2, Krieger_3 with Krieger (for feet it does not matter which pose we detect)
         /*if(originalFrameData.get(0).getActivity().startsWith("Krieger"))
@@ -52,14 +77,26 @@ public class FrameDataSet {
         else
             activity = originalFrameData.get(0).getActivity();*/
 
-        allSensorLists = new ArrayList<>();
-
-        // collect all frame data in its corresponding sensor list
+        // collect all frame data in its corresponding sensor columns
         for (FrameData frameData : originalFrameData) {
             addFrameData(frameData);
         }
         // check data consistency for last added frame
         checkDataConsistencyForNewestData();
+        trimToSize();
+    }
+
+    /**
+     * Construct a FrameDataSet from previously prepared data, covering all frames of all sensors
+     * <p>
+     * No further checks will be made, the data needs to be ordered and checked for consistencies already
+     *
+     * @param allSensorColumns
+     * @param subject
+     * @param activity
+     */
+    FrameDataSet(ArrayList<SensorColumns> allSensorColumns, String subject, String activity) {
+        this(allSensorColumns, subject, activity, DerivedChannelPlan.fromSettings(), 0, -1);
     }
 
     /**
@@ -67,14 +104,22 @@ public class FrameDataSet {
      * <p>
      * No further checks will be made, the data needs to be ordered and checked for consistencies already
      *
-     * @param allSensorLists
+     * @param allSensorColumns
      * @param subject
      * @param activity
+     * @param derivedChannelPlan
+     * @param firstFrameIndex
+     * @param endFrameIndex      -1 to include all frames of each sensor
      */
-    public FrameDataSet(ArrayList<List<FrameData>> allSensorLists, String subject, String activity) {
-        this.allSensorLists = allSensorLists;
+    private FrameDataSet(ArrayList<SensorColumns> allSensorColumns, String subject, String activity,
+                         DerivedChannelPlan derivedChannelPlan, int firstFrameIndex, int endFrameIndex) {
+        this.allSensorColumns = allSensorColumns;
         this.subject = subject;
         this.activity = activity;
+        this.derivedChannelPlan = derivedChannelPlan;
+        this.firstFrameIndex = firstFrameIndex;
+        this.endFrameIndex = endFrameIndex;
+        updateSensorIdLookup();
     }
 
     /**
@@ -85,222 +130,237 @@ public class FrameDataSet {
      * @param newFrameData
      */
     public void addFrameData(FrameData newFrameData) {
+        addFrameData(newFrameData.getSensorPosition(),
+                newFrameData.getPosX(), newFrameData.getPosY(), newFrameData.getPosZ(),
+                newFrameData.getRotX(), newFrameData.getRotY(), newFrameData.getRotZ(), newFrameData.getRotW(),
+                newFrameData.getAngVelX(), newFrameData.getAngVelY(), newFrameData.getAngVelZ(),
+                newFrameData.getLinVelX(), newFrameData.getLinVelY(), newFrameData.getLinVelZ(),
+                newFrameData.getScale(), newFrameData.getTime());
+    }
+
+    /**
+     * Add a single sensor reading to this set, without creating a FrameData object first
+     * <p>
+     * Sensor readings need to be added in order, with the highest timestamp added last
+     *
+     * @param sensorPosition
+     * @param posX
+     * @param posY
+     * @param posZ
+     * @param rotX
+     * @param rotY
+     * @param rotZ
+     * @param rotW
+     * @param angVelX
+     * @param angVelY
+     * @param angVelZ
+     * @param linVelX
+     * @param linVelY
+     * @param linVelZ
+     * @param scale
+     * @param time
+     */
+    void addFrameData(String sensorPosition,
+                      double posX, double posY, double posZ,
+                      double rotX, double rotY, double rotZ, double rotW,
+                      double angVelX, double angVelY, double angVelZ,
+                      double linVelX, double linVelY, double linVelZ,
+                      double scale, double time) {
 
         // if the data that was last added has another timestamp, the previous frame has been completed
         // in that case, check the previous frame for data inconsistencies
-        if (!allSensorLists.isEmpty() && newFrameData.getTime() != timestampOfLatestEntry) {
+        if (!allSensorColumns.isEmpty() && time != timestampOfLatestEntry) {
             checkDataConsistencyForNewestData();
         }
-        timestampOfLatestEntry = newFrameData.getTime();
-
-
-        // find the corresponding sensor list for the new data, and add it there
-        boolean sensorPositionAlreadyKnown = false;
-        for (List<FrameData> sensorList : allSensorLists) {
-            if (!sensorList.isEmpty()
-                    && sensorList.get(0).getSensorPosition().equals(newFrameData.getSensorPosition())) {
-                sensorList.add(newFrameData);
-                sensorPositionAlreadyKnown = true;
-
-                // if this is not the first frame to be added, compute additional data
-                // which depends on the previous frame to be known
-                if (sensorList.size() > 1) {
-                    FrameData previousFrameData = sensorList.get(sensorList.size() - 2);
-                    newFrameData.computeAdditionalDataBasedOnPreviousFrame(previousFrameData);
-
-                    // remove the first frame, where that data could not yet have been set correctly
-                    if (!previousFrameData.derivedDataWasCalculated()) {
-                        // can only happen when the first data pieces are added,
-                        // meaning the previous piece of data has to be the first in the list
-                        sensorList.remove(0);
-                    }
-                }
-                break;
-            }
-        }
+        timestampOfLatestEntry = time;
 
-        // if no sensor list exist for this sensor yet, add a new one
-        if (!sensorPositionAlreadyKnown) {
-            ArrayList<FrameData> newSensorList = new ArrayList<FrameData>();
-            newSensorList.add(newFrameData);
-            addNewSensorListAndSortByPosition(newSensorList);
+        // find the corresponding sensor columns for the new data, or add new ones if the sensor is not known yet
+        int sensorId = SensorRegistry.getSensorId(sensorPosition);
+        SensorColumns sensorColumns = sensorId < sensorColumnsById.length ? sensorColumnsById[sensorId] : null;
+        if (sensorColumns == null) {
+            sensorColumns = addNewSensorAndSortByPosition(sensorPosition);
         }
+
+        sensorColumns.addFrame(posX, posY, posZ,
+                rotX, rotY, rotZ, rotW,
+                angVelX, angVelY, angVelZ,
+                linVelX, linVelY, linVelZ,
+                scale, time);
     }
 
     /**
      * Within the newest entries for each sensor, mark data which contains impossible values
      * <p>
-     * E.g. a sensor that is 10 meters above the ground
+     * E.g. a sensor that is 10 meters above the ground.
+     * The limits are taken from the SensorRegistry, which also counts the frames rejected by each rule.
      */
-    private void checkDataConsistencyForNewestData() {
+    void checkDataConsistencyForNewestData() {
 
-        int indexForNewestData = allSensorLists.get(0).size() - 1;
+        int indexForNewestData = allSensorColumns.get(0).size() - 1;
+        SensorRegistry.PlausibilityRules rules = SensorRegistry.getPlausibilityRules();
 
-        for (int a = 0; a < allSensorLists.size(); a++) {
+        for (int a = 0; a < allSensorColumns.size(); a++) {
 
-            FrameData frameDataA = allSensorLists.get(a).get(indexForNewestData);
+            SensorColumns sensorA = allSensorColumns.get(a);
+            int sensorIdA = sensorA.getSensorId();
+            double posXA = sensorA.getPosX()[indexForNewestData];
+            double posYA = sensorA.getPosY()[indexForNewestData];
+            double posZA = sensorA.getPosZ()[indexForNewestData];
+            boolean invalidA = false;
 
             // single sensor checks
             // height can always be checked for sanity
-            if (frameDataA.getSensorPosition().equals("lForeArm")
-                    || frameDataA.getSensorPosition().equals("rForeArm")
-                    || frameDataA.getSensorPosition().equals("lHand")
-                    || frameDataA.getSensorPosition().equals("rHand")) {
-                if (frameDataA.getPosZ() > 3.0) {
-                    frameDataA.setInvalid();
-                }
-            } else if (frameDataA.getSensorPosition().equals("head")) {
-                if (frameDataA.getPosZ() > 2.75) {
-                    frameDataA.setInvalid();
-                }
-            } else if (frameDataA.getSensorPosition().equals("rArm")) {
-                if (frameDataA.getPosY() > 2.5) {
-                    frameDataA.setInvalid();
-                }
-            } else if (frameDataA.getSensorPosition().equals("spine")) {
-                if (frameDataA.getPosY() > 2.25) {
-                    frameDataA.setInvalid();
-                }
-            } else if (frameDataA.getSensorPosition().equals("hip")) {
-                if (frameDataA.getPosY() > 1.5) {
-                    frameDataA.setInvalid();
-                }
-            } else if (frameDataA.getSensorPosition().equals("lLeg")
-                    || frameDataA.getSensorPosition().equals("rLeg")
-                    || frameDataA.getSensorPosition().equals("lFoot")
-                    || frameDataA.getSensorPosition().equals("rFoot")) {
-                if (frameDataA.getPosY() > 1.0) {
-                    frameDataA.setInvalid();
+            int heightAxis = rules.heightAxes[sensorIdA];
+            if (heightAxis != SensorRegistry.noHeightCheck) {
+                double height = heightAxis == SensorRegistry.heightAlongZ ? posZA : posYA;
+                if (height > rules.heightLimits[sensorIdA]) {
+                    invalidA = true;
+                    SensorRegistry.countHeightRejection(sensorIdA);
                 }
             }
 
             // dual sensor checks
             // based on the maximum achievable distance between neighbouring sensors
-            for (int b = a + 1; b < allSensorLists.size(); b++) {
-
-                FrameData frameDataB = allSensorLists.get(b).get(indexForNewestData);
-                double distance = MathHelper.distancePosition(frameDataA, frameDataB);
-
-                // no distance should be higher than this, no matter which sensor combination
-                if (distance > 3.5) {
-                    frameDataA.setInvalid();
-                    frameDataB.setInvalid();
+            double[] maximumDistancesA = rules.maximumDistances[sensorIdA];
+            for (int b = a + 1; b < allSensorColumns.size(); b++) {
+
+                SensorColumns sensorB = allSensorColumns.get(b);
+                double distance = MathHelper.distance(
+                        posXA, posYA, posZA,
+                        sensorB.getPosX()[indexForNewestData],
+                        sensorB.getPosY()[indexForNewestData],
+                        sensorB.getPosZ()[indexForNewestData]);
+
+                if (distance > maximumDistancesA[sensorB.getSensorId()]) {
+                    invalidA = true;
+                    sensorB.setInvalid(indexForNewestData);
+                    SensorRegistry.countDistanceRejection(sensorIdA, sensorB.getSensorId());
                 }
+            }
 
-                // specific pairs
-                // sensor lists are sorted alphabetically, dual sensor checks have to list the "lower" one first
-                switch (frameDataA.getSensorPosition()) {
-                    case "head":
-                        if (frameDataB.getSensorPosition().equals("spine")) {
-                            if (distance > 0.95) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        } else if (frameDataB.getSensorPosition().equals("lForeArm")
-                                || frameDataB.getSensorPosition().equals("rForeArm")) {
-                            if (distance > 1.5) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "hip":
-                        if (frameDataB.getSensorPosition().equals("spine")) {
-                            if (distance > 0.9) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        } else if (frameDataB.getSensorPosition().equals("lLeg")
-                                || frameDataB.getSensorPosition().equals("rLeg")) {
-                            if (distance > 1.4) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "lFoot":
-                        if (frameDataB.getSensorPosition().equals("lLeg")) {
-                            if (distance > 0.5) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "lForeArm":
-                        if (frameDataB.getSensorPosition().equals("lHand")) {
-                            if (distance > 0.5) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        } else if (frameDataB.getSensorPosition().equals("spine")) {
-                            if (distance > 1.1) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "rArm":
-                        if (frameDataB.getSensorPosition().equals("rForeArm")) {
-                            if (distance > 0.6) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        } else if (frameDataB.getSensorPosition().equals("spine")) {
-                            if (distance > 0.8) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "rFoot":
-                        if (frameDataB.getSensorPosition().equals("rLeg")) {
-                            if (distance > 0.5) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                    case "rForeArm":
-                        if (frameDataB.getSensorPosition().equals("rHand")) {
-                            if (distance > 0.5) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        } else if (frameDataB.getSensorPosition().equals("spine")) {
-                            if (distance > 1.1) {
-                                frameDataA.setInvalid();
-                                frameDataB.setInvalid();
-                            }
-                        }
-                        break;
-                }
+            if (invalidA) {
+                sensorA.setInvalid(indexForNewestData);
             }
         }
     }
 
     /**
-     * Add the new sensor list to this data set and sort all sensor lists by their sensor names
+     * Add new, empty columns for the given sensor, and sort all sensors by their names
      *
-     * @param newSensorList
+     * @param sensorPosition
+     * @return
      */
-    void addNewSensorListAndSortByPosition(ArrayList<FrameData> newSensorList) {
+    private SensorColumns addNewSensorAndSortByPosition(String sensorPosition) {
+
+        SensorColumns newSensorColumns = new SensorColumns(sensorPosition, derivedChannelPlan);
+        allSensorColumns.add(newSensorColumns);
+        allSensorColumns.sort(new Comparator<SensorColumns>() {
+            @Override
+            public int compare(SensorColumns o1, SensorColumns o2) {
+                return o1.getSensorPosition().compareTo(o2.getSensorPosition());
+            }
+        });
+        updateSensorIdLookup();
+        return newSensorColumns;
+    }
 
-        allSensorLists.add(newSensorList);
-        sortSensorListsByPosition();
+    /**
+     * Rebuild the lookup of sensor columns by sensor id, after the sensor columns have changed
+     */
+    private void updateSensorIdLookup() {
+        int highestSensorId = -1;
+        for (SensorColumns sensorColumns : allSensorColumns) {
+            highestSensorId = Math.max(highestSensorId, sensorColumns.getSensorId());
+        }
+        sensorColumnsById = new SensorColumns[highestSensorId + 1];
+        for (SensorColumns sensorColumns : allSensorColumns) {
+            sensorColumnsById[sensorColumns.getSensorId()] = sensorColumns;
+        }
+    }
 
+    /**
+     * Get the columns of all sensors contained in this set
+     * <p>
+     * Only the frames from getFirstFrameIndex() up to getEndFrameIndex() belong to this set
+     *
+     * @return
+     */
+    public ArrayList<SensorColumns> getAllSensorColumns() {
+        return allSensorColumns;
     }
 
     /**
-     * Get all sensor lists contained in this set
+     * The index of the first frame within the sensor columns which belongs to this set
      *
      * @return
      */
-    public ArrayList<List<FrameData>> getAllSensorLists() {
-        return allSensorLists;
+    public int getFirstFrameIndex() {
+        return firstFrameIndex;
+    }
+
+    /**
+     * The index after the last frame within the given sensor columns which belongs to this set
+     *
+     * @param sensorColumns
+     * @return
+     */
+    public int getEndFrameIndex(SensorColumns sensorColumns) {
+        if (endFrameIndex < 0) {
+            return sensorColumns.size();
+        } else {
+            return endFrameIndex;
+        }
+    }
+
+    /**
+     * Release the memory reserved for frames that were never added, and the memory of frame data that is the same
+     * for several sensors
+     * <p>
+     * Should be called once all data has been added
+     */
+    void trimToSize() {
+        for (SensorColumns sensorColumns : allSensorColumns) {
+            sensorColumns.trimToSize();
+        }
+        shareFrameColumns();
+    }
+
+    /**
+     * Let all sensors with the same frames as the first sensor share its time and frame duration columns
+     * and its invalid flags
+     * <p>
+     * A frame then counts as invalid for all of these sensors if it is invalid for any of them. This makes no
+     * difference for the windows, which are left out if any of their sensors contains invalid data.
+     */
+    private void shareFrameColumns() {
+
+        if (allSensorColumns.isEmpty()) {
+            return;
+        }
+        SensorColumns firstSensor = allSensorColumns.get(0);
+
+        // merge the invalid flags first, before they are replaced
+        ArrayList<SensorColumns> sensorsWithSameFrames = new ArrayList<>();
+        for (int s = 1; s < allSensorColumns.size(); s++) {
+            SensorColumns sensorColumns = allSensorColumns.get(s);
+            if (sensorColumns.hasSameFramesAs(firstSensor)) {
+                sensorsWithSameFrames.add(sensorColumns);
+                for (int i = 0; i < sensorColumns.size(); i++) {
+                    if (sensorColumns.includesInvalidData(i)) {
+                        firstSensor.setInvalid(i);
+                    }
+                }
+            }
+        }
+        for (SensorColumns sensorColumns : sensorsWithSameFrames) {
+            sensorColumns.shareFramesOf(firstSensor);
+        }
     }
 
     /**
      * Separate this FrameDataSet into pieces of the given length, with the given distance between them
+     * <p>
+     * The resulting pieces refer to the data of this set, instead of copying it
      *
      * @param windowSize
      * @param timeBetweenWindows
@@ -308,80 +368,62 @@ public class FrameDataSet {
      */
     public ArrayList<FrameDataSet> separateFrameDataIntoValidWindows(double windowSize, double timeBetweenWindows) {
 
-        // get first point in time
-        List<FrameData> firstSensorList = allSensorLists.get(0);
-        FrameData firstDataPoint = firstSensorList.get(0);
-        double startTime = firstDataPoint.getTime();
-
-        // initialize counters
-        LinkedList<Integer> potentialSegmentStartIndexes = new LinkedList<>();
-        potentialSegmentStartIndexes.add(0);
-        double lastPotentialSegmentStartTime = startTime;
-        double currentSegmentStartTime = startTime;
-
         // prepare to collect created sets
         ArrayList<FrameDataSet> frameDataSegments = new ArrayList<>();
 
-        // advance through the timestamps of any sensor list to determine the points of separation
-        for (int i = 0; i < firstSensorList.size(); i++) {
-
-            double frameTime = firstSensorList.get(i).getTime();
-
-            // add another segment start index if enough time has passed
-            if (frameTime >= lastPotentialSegmentStartTime + timeBetweenWindows) {
+        Iterator<FrameDataSet> windows = getValidWindowIterator(windowSize, timeBetweenWindows);
+        while (windows.hasNext()) {
+            frameDataSegments.add(windows.next());
+        }
 
-                potentialSegmentStartIndexes.add(i);
-                lastPotentialSegmentStartTime = firstSensorList.get(i).getTime();
-            }
+        return frameDataSegments;
+    }
 
-            // extract another segment if enough time has passed
-            if (frameTime >= currentSegmentStartTime + windowSize) {
-
-                // choose indexes for this segment
-                int startIndex = potentialSegmentStartIndexes.getFirst();
-                int endIndex = i;
-
-                // extract a new segment for all sensors
-                ArrayList<List<FrameData>> newFrameDataSegment = new ArrayList<>();
-                for (List<FrameData> sensorList : allSensorLists) {
-                    // if for any reason it becomes necessary to change the window lists afterwards,
-                    // this needs to be a normal ArrayList instead of a sublist
-                    // a sublist will change the original list when it changes
-                    List<FrameData> sensorSegment = sensorList.subList(startIndex, endIndex);
-                    newFrameDataSegment.add(sensorSegment);
-                }
-                FrameDataSet newFrameDataSet = new FrameDataSet(newFrameDataSegment, subject, activity);
+    /**
+     * Iterate over the same pieces as separateFrameDataIntoValidWindows, creating each piece only when it is requested
+     * <p>
+     * The frames are only scanned as far as necessary for the requested pieces, so callers that stop early
+     * do not pay for the remaining pieces. The data of this set must not change during the iteration.
+     *
+     * @param windowSize
+     * @param timeBetweenWindows
+     * @return
+     */
+    public Iterator<FrameDataSet> getValidWindowIterator(double windowSize, double timeBetweenWindows) {
+        return new ValidWindowIterator(windowSize, timeBetweenWindows);
+    }
 
-                // add new segment, or throw it out if it contains wrong sensor readings
-                if (newFrameDataSet.includesOnlyValidData()) {
-                    frameDataSegments.add(newFrameDataSet);
-                } else {
-                    System.out.println("segments left out:  " + segmentsLeftOut++);
-                }
+    /**
+     * Like getValidWindowIterator, as an ordered Spliterator, e.g. for use with StreamSupport
+     *
+     * @param windowSize
+     * @param timeBetweenWindows
+     * @return
+     */
+    public Spliterator<FrameDataSet> getValidWindowSpliterator(double windowSize, double timeBetweenWindows) {
+        return Spliterators.spliteratorUnknownSize(getValidWindowIterator(windowSize, timeBetweenWindows),
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
 
-                // update segment indexes and time
-                potentialSegmentStartIndexes.removeFirst();
-                currentSegmentStartTime = firstSensorList.get(potentialSegmentStartIndexes.getFirst()).getTime();
-            }
+    /**
+     * Count a window checked for invalid data
+     *
+     * @param leftOut whether the window has been removed because of invalid data
+     */
+    private static synchronized void countCheckedWindow(boolean leftOut) {
+        windowsChecked++;
+        if (leftOut) {
+            windowsLeftOut++;
         }
-
-        return frameDataSegments;
     }
 
     /**
-     * Whether any of the included data has been determined to result from an erroneous sensor reading
+     * Summarize how many of the windows created so far have been removed because they contained invalid data
      *
      * @return
      */
-    private boolean includesOnlyValidData() {
-        for (List<FrameData> sensor : allSensorLists) {
-            for (FrameData frameData : sensor) {
-                if (frameData.includesInvalidData()) {
-                    return false;
-                }
-            }
-        }
-        return true;
+    public static synchronized String getLeftOutWindowSummary() {
+        return "windows left out because of invalid data:   " + windowsLeftOut + " / " + windowsChecked;
     }
 
     /**
@@ -397,29 +439,29 @@ public class FrameDataSet {
 
 
         // determine index of first data point within requested time frame
-        List<FrameData> firstSensorList = allSensorLists.get(0);
-        double latestTime = firstSensorList.get(firstSensorList.size() - 1).getTime();
+        SensorColumns firstSensor = allSensorColumns.get(0);
+        double[] times = firstSensor.getTime();
+        double latestTime = times[firstSensor.size() - 1];
         int indexOfFirstSensorData = 0;
-        for (int i = firstSensorList.size() - 1; i >= 0; i--) {
-            if (latestTime - firstSensorList.get(i).getTime() >= windowSize) {
+        for (int i = firstSensor.size() - 1; i >= 0; i--) {
+            if (latestTime - times[i] >= windowSize) {
                 indexOfFirstSensorData = i;
                 break;
             }
         }
 
-        // collect sublists within the requested time frame
-        ArrayList<List<FrameData>> newSensorLists = new ArrayList<>();
-        for (int i = 0; i < allSensorLists.size(); i++) {
-            List<FrameData> oldSensorList = allSensorLists.get(i);
-            ArrayList<FrameData> newSensorList =
-                    new ArrayList<>(oldSensorList.subList(indexOfFirstSensorData, oldSensorList.size() - 1));
-            newSensorLists.add(newSensorList);
-            // forget the old data by using the reduced list from now on
-            allSensorLists.set(i, newSensorList);
+        // copy the data within the requested time frame
+        ArrayList<SensorColumns> newSensorColumns = new ArrayList<>();
+        for (int i = 0; i < allSensorColumns.size(); i++) {
+            SensorColumns oldSensorColumns = allSensorColumns.get(i);
+            newSensorColumns.add(oldSensorColumns.copyRange(indexOfFirstSensorData, oldSensorColumns.size() - 1));
+            // forget the old data by using the reduced columns from now on
+            allSensorColumns.set(i, oldSensorColumns.copyRange(indexOfFirstSensorData, oldSensorColumns.size() - 1));
         }
+        updateSensorIdLookup();
 
-        // using the newSensorList ensures a true copy instead of a mirror
-        return new FrameDataSet(newSensorLists, subject, activity);
+        // using separate copies ensures that further data added to this set does not change the result
+        return new FrameDataSet(newSensorColumns, subject, activity, derivedChannelPlan, 0, -1);
     }
 
     /**
@@ -440,18 +482,6 @@ public class FrameDataSet {
         return activity;
     }
 
-    /**
-     * Sort all sensor lists by their sensor name
-     */
-    private void sortSensorListsByPosition() {
-        allSensorLists.sort(new Comparator<List<FrameData>>() {
-            @Override
-            public int compare(List<FrameData> o1, List<FrameData> o2) {
-                return o1.get(0).getSensorPosition().compareTo(o2.get(0).getSensorPosition());
-            }
-        });
-    }
-
     /**
      * Get the names of all sensors positions which recorded data for this set
      *
@@ -459,8 +489,8 @@ public class FrameDataSet {
      */
     public ArrayList<String> getAllSensorPositions() {
         ArrayList<String> sensorPositions = new ArrayList<>();
-        for (List<FrameData> sensorList : allSensorLists) {
-            sensorPositions.add(sensorList.get(0).getSensorPosition());
+        for (SensorColumns sensorColumns : allSensorColumns) {
+            sensorPositions.add(sensorColumns.getSensorPosition());
         }
         return sensorPositions;
     }
@@ -473,13 +503,111 @@ public class FrameDataSet {
      */
     public boolean enoughDataForWindowSize(double windowSize) {
         // if there is data at all, simply determine earliest and latest data
-        if (allSensorLists.size() > 0 && allSensorLists.get(0).size() > 0) {
-            List<FrameData> firstSensorList = allSensorLists.get(0);
-            double startTime = firstSensorList.get(0).getTime();
-            double endTime = firstSensorList.get(firstSensorList.size() - 1).getTime();
+        if (allSensorColumns.size() > 0 && getEndFrameIndex(allSensorColumns.get(0)) > firstFrameIndex) {
+            SensorColumns firstSensor = allSensorColumns.get(0);
+            double startTime = firstSensor.getTime()[firstFrameIndex];
+            double endTime = firstSensor.getTime()[getEndFrameIndex(firstSensor) - 1];
             return (endTime - startTime) > windowSize;
         } else {
             return false;
         }
     }
+
+    /**
+     * Finds the windows of the surrounding FrameDataSet one at a time, by looking up their boundaries in a WindowIndex
+     * <p>
+     * A window starts at the first frame that is far enough from the start of the previous window,
+     * and ends at the first frame that is far enough from its own start (and after the end of the previous window).
+     */
+    private class ValidWindowIterator implements Iterator<FrameDataSet> {
+
+        private final double windowSize;
+        private final double timeBetweenWindows;
+
+        private final WindowIndex windowIndex;
+
+        // the start of the next window, where to search for the start after it,
+        // and the first frame that may end the next window
+        private int segmentStartIndex;
+        private int nextSegmentStartSearchIndex;
+        private int earliestSegmentEndIndex;
+
+        // the window to be returned next, null once all frames have been looked at
+        private FrameDataSet nextWindow;
+
+        /**
+         * Prepare to separate the surrounding FrameDataSet into windows
+         *
+         * @param windowSize
+         * @param timeBetweenWindows
+         */
+        ValidWindowIterator(double windowSize, double timeBetweenWindows) {
+
+            this.windowSize = windowSize;
+            this.timeBetweenWindows = timeBetweenWindows;
+
+            windowIndex = new WindowIndex(FrameDataSet.this);
+
+            // initialize counters
+            segmentStartIndex = windowIndex.getFirstFrameIndex();
+            nextSegmentStartSearchIndex = windowIndex.getFirstFrameIndex();
+            earliestSegmentEndIndex = windowIndex.getFirstFrameIndex();
+
+            nextWindow = findNextWindow();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextWindow != null;
+        }
+
+        @Override
+        public FrameDataSet next() {
+            if (nextWindow == null) {
+                throw new NoSuchElementException();
+            }
+            FrameDataSet window = nextWindow;
+            nextWindow = findNextWindow();
+            return window;
+        }
+
+        /**
+         * Look up the boundaries of the following windows, until a window without invalid data is found
+         *
+         * @return null, if no further valid window exists
+         */
+        private FrameDataSet findNextWindow() {
+
+            int endOfFirstSensor = windowIndex.getEndFrameIndex();
+
+            while (segmentStartIndex < endOfFirstSensor) {
+
+                // choose indexes for this segment, which covers the same range for all sensors
+                int startIndex = segmentStartIndex;
+                double startTime = windowIndex.getTime(startIndex);
+                int endIndex = windowIndex.findFirstFrameAtOrAfter(startTime + windowSize,
+                        Math.max(earliestSegmentEndIndex, startIndex));
+                if (endIndex >= endOfFirstSensor) {
+                    break;
+                }
+
+                // update segment indexes for the next segment
+                segmentStartIndex =
+                        windowIndex.findFirstFrameAtOrAfter(startTime + timeBetweenWindows, nextSegmentStartSearchIndex);
+                nextSegmentStartSearchIndex = segmentStartIndex + 1;
+                earliestSegmentEndIndex = endIndex + 1;
+
+                // return new segment, or throw it out if it contains wrong sensor readings
+                boolean valid = windowIndex.includesOnlyValidData(startIndex, endIndex);
+                countCheckedWindow(!valid);
+                if (valid) {
+                    return new FrameDataSet(allSensorColumns, subject, activity, derivedChannelPlan,
+                            startIndex, endIndex);
+                }
+            }
+
+            segmentStartIndex = endOfFirstSensor;
+            return null;
+        }
+    }
 }
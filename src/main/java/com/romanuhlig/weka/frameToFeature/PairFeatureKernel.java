@@ -0,0 +1,208 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.math.MathHelper;
+
+import java.util.ArrayList;
+
+/**
+ * Calculates the dual-sensor features of all sensor pairs within a window
+ * <p>
+ * The velocity norm of each sensor is computed once per frame, instead of once per pair,
+ * and only the data series of the FeaturePlan are evaluated.
+ * The features are written directly into the row of the FeatureVector, in the order of the plan.
+ * <p>
+ * Each thread keeps one kernel, whose arrays are reused for every window.
+ *
+ * @author Roman Uhlig
+ */
+final class PairFeatureKernel {
+
+    // one kernel for each thread, since it holds the state of the window currently being processed
+    private static final ThreadLocal<PairFeatureKernel> kernelOfThread =
+            ThreadLocal.withInitial(PairFeatureKernel::new);
+
+    // the values and statistics of the pair currently being processed
+    private final FeatureChannels channels = new FeatureChannels();
+
+    // the columns of all planned sensors
+    private SensorColumns[] sensors = new SensorColumns[0];
+    private double[][] posX = new double[0][];
+    private double[][] posY = new double[0][];
+    private double[][] posZ = new double[0][];
+
+    // the velocity norm of each sensor, for each frame of the window
+    private double[][] velocityNorms = new double[0][0];
+
+    /**
+     * DO NOT USE, one kernel per thread is available through forCurrentThread
+     */
+    private PairFeatureKernel() {
+    }
+
+    /**
+     * The kernel of the current thread
+     *
+     * @return
+     */
+    static PairFeatureKernel forCurrentThread() {
+        return kernelOfThread.get();
+    }
+
+    /**
+     * Calculate the dual-sensor features of all pairs of planned sensors, and add them to the FeatureVector
+     *
+     * @param featureVector
+     * @param featurePlan
+     * @param window
+     */
+    void addFeatures(FeatureVector featureVector, FeaturePlan featurePlan, FrameDataSet window) {
+
+        boolean position = featurePlan.isPairSeriesPlanned(FeaturePlan.distanceX);
+        boolean velocity = featurePlan.isPairSeriesPlanned(FeaturePlan.differenceVelocityXYZ);
+        int numberOfFeaturesPerPair = featurePlan.getNumberOfFeaturesPerPair();
+        int firstFrameIndex = window.getFirstFrameIndex();
+
+        int numberOfSensors = prepareSensors(featurePlan, window);
+
+        if (velocity) {
+            computeVelocityNorms(window, numberOfSensors, firstFrameIndex);
+        }
+
+        double scaleAllFeaturesBy = TestBenchSettings.scaleAllFeaturesBy();
+        FeatureChannels channels = this.channels;
+
+        for (int a = 0; a < numberOfSensors - 1; a++) {
+
+            // the pairs use the frames, timing and body size of their first sensor
+            SensorColumns sensorA = sensors[a];
+            int endFrameIndex = window.getEndFrameIndex(sensorA);
+            int numberOfValues = endFrameIndex - firstFrameIndex;
+            double[] frameDurationA = sensorA.getFrameDuration();
+            double[] posXA = posX[a];
+            double[] posYA = posY[a];
+            double[] posZA = posZ[a];
+            double[] velocityNormsA = velocity ? velocityNorms[a] : null;
+
+            // determine values that stay true for the whole window
+            double overallTimePassed =
+                    sensorA.getTime()[endFrameIndex - 1] - sensorA.getTime()[firstFrameIndex];
+            double bodySize = sensorA.getScale();
+
+            for (int b = a + 1; b < numberOfSensors; b++) {
+
+                // like the frames of the first sensor, all frames of the pair have to be within the second sensor
+                if (window.getEndFrameIndex(sensors[b]) < endFrameIndex) {
+                    throw new IndexOutOfBoundsException("sensor " + sensors[b].getSensorPosition()
+                            + " has fewer frames than sensor " + sensorA.getSensorPosition());
+                }
+
+                double[] posXB = posX[b];
+                double[] posYB = posY[b];
+                double[] posZB = posZ[b];
+                double[] velocityNormsB = velocity ? velocityNorms[b] : null;
+
+                // one pair at a time, so that its values stay in the cache until its features are written
+                channels.prepare(FeaturePlan.numberOfPairSeries, numberOfValues);
+
+                for (int i = firstFrameIndex; i < endFrameIndex; i++) {
+
+                    int index = i - firstFrameIndex;
+                    double timeSinceLastFrame = frameDurationA[i];
+
+                    if (position) {
+                        channels.collect(FeaturePlan.distanceX, index,
+                                MathHelper.distance(posXA[i], posXB[i]), timeSinceLastFrame);
+                        channels.collect(FeaturePlan.distanceY, index,
+                                MathHelper.distance(posYA[i], posYB[i]), timeSinceLastFrame);
+                        channels.collect(FeaturePlan.distanceZ, index,
+                                MathHelper.distance(posZA[i], posZB[i]), timeSinceLastFrame);
+                        channels.collect(FeaturePlan.distanceXYZ, index,
+                                MathHelper.distance(posXA[i], posYA[i], posZA[i], posXB[i], posYB[i], posZB[i]),
+                                timeSinceLastFrame);
+                    }
+
+                    if (velocity) {
+                        channels.collect(FeaturePlan.differenceVelocityXYZ, index,
+                                Math.abs(velocityNormsA[index] - velocityNormsB[index]), timeSinceLastFrame);
+                    }
+                }
+
+                // write the features of each planned series of the pair into the row
+                int offset = featureVector.reserveFeatures(numberOfFeaturesPerPair);
+                double[] row = featureVector.getFeatureRow();
+
+                for (int series : featurePlan.getPairSeries()) {
+                    double scaleBy = series < FeaturePlan.differenceVelocityXYZ ? bodySize : 1;
+                    offset = channels.writeFeatures(row, offset, series, numberOfValues,
+                            overallTimePassed, scaleBy, scaleAllFeaturesBy, featurePlan.getPairSeriesFeatures());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the columns of all planned sensors within the window
+     *
+     * @param featurePlan
+     * @param window
+     * @return the number of planned sensors
+     */
+    private int prepareSensors(FeaturePlan featurePlan, FrameDataSet window) {
+
+        int[] plannedSensors = featurePlan.getPlannedSensors();
+        int numberOfSensors = plannedSensors.length;
+        if (sensors.length < numberOfSensors) {
+            sensors = new SensorColumns[numberOfSensors];
+            posX = new double[numberOfSensors][];
+            posY = new double[numberOfSensors][];
+            posZ = new double[numberOfSensors][];
+        }
+
+        ArrayList<SensorColumns> allSensorColumns = window.getAllSensorColumns();
+        for (int s = 0; s < numberOfSensors; s++) {
+            SensorColumns sensorColumns = allSensorColumns.get(plannedSensors[s]);
+            sensors[s] = sensorColumns;
+            posX[s] = sensorColumns.getPosX();
+            posY[s] = sensorColumns.getPosY();
+            posZ[s] = sensorColumns.getPosZ();
+        }
+        return numberOfSensors;
+    }
+
+    /**
+     * Compute the velocity norm of every sensor for every frame of the window, once for all pairs
+     * <p>
+     * The norms of each sensor cover its own frames within the window, which include all frames it is paired with
+     *
+     * @param window
+     * @param numberOfSensors
+     * @param firstFrameIndex
+     */
+    private void computeVelocityNorms(FrameDataSet window, int numberOfSensors, int firstFrameIndex) {
+
+        int endFrameIndex = firstFrameIndex;
+        for (int s = 0; s < numberOfSensors; s++) {
+            endFrameIndex = Math.max(endFrameIndex, window.getEndFrameIndex(sensors[s]));
+        }
+        int numberOfValues = endFrameIndex - firstFrameIndex;
+
+        if (velocityNorms.length < numberOfSensors
+                || (velocityNorms.length > 0 && velocityNorms[0].length < numberOfValues)) {
+            int sensorCapacity = Math.max(numberOfSensors, velocityNorms.length);
+            int valueCapacity = Math.max(numberOfValues, velocityNorms.length == 0 ? 0 : velocityNorms[0].length);
+            velocityNorms = new double[sensorCapacity][valueCapacity];
+        }
+
+        for (int s = 0; s < numberOfSensors; s++) {
+            double[] linVelX = sensors[s].getLinVelX();
+            double[] linVelY = sensors[s].getLinVelY();
+            double[] linVelZ = sensors[s].getLinVelZ();
+            double[] norms = velocityNorms[s];
+            int end = window.getEndFrameIndex(sensors[s]);
+            for (int i = firstFrameIndex; i < end; i++) {
+                norms[i - firstFrameIndex] = MathHelper.EuclideanNorm(linVelX[i], linVelY[i], linVelZ[i]);
+            }
+        }
+    }
+}
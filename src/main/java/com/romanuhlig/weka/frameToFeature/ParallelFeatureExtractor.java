@@ -0,0 +1,145 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the features of multiple windows and recordings at the same time, on a fork/join pool
+ * <p>
+ * The results are returned in the order of the given windows, regardless of the order in which they were finished,
+ * so that the produced features do not depend on the number of threads.
+ * Each worker thread uses its own feature kernels (SensorFeatureKernel and PairFeatureKernel),
+ * which are created once per thread and reused for every window.
+ *
+ * @author Roman Uhlig
+ */
+public class ParallelFeatureExtractor {
+
+    // windows are split up until a task holds no more than this number of windows
+    private static final int maximumWindowsPerTask = 4;
+
+    // null if everything is calculated on the calling thread
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an extractor that uses the given number of threads
+     * <p>
+     * With a single thread, all features are calculated on the calling thread, without any pool.
+     *
+     * @param numberOfThreads
+     */
+    public ParallelFeatureExtractor(int numberOfThreads) {
+        if (numberOfThreads > 1) {
+            pool = new ForkJoinPool(numberOfThreads);
+        } else {
+            pool = null;
+        }
+    }
+
+    /**
+     * Calculate the features of the given windows, using all threads of the pool
+     *
+     * @param windows     windows with the sensors the FeaturePlan was created for
+     * @param featurePlan
+     * @return one feature vector per window, in the order of the windows
+     */
+    public ArrayList<FeatureVector> getFeaturesForWindows(List<FrameDataSet> windows, FeaturePlan featurePlan) {
+
+        FeatureVector[] featureVectors = new FeatureVector[windows.size()];
+
+        if (pool == null) {
+            for (int i = 0; i < featureVectors.length; i++) {
+                featureVectors[i] = FeatureExtractor.getFeaturesForFrameDataSet(windows.get(i), featurePlan);
+            }
+        } else {
+            WindowRangeTask task = new WindowRangeTask(windows, featurePlan, featureVectors, 0, windows.size());
+            if (ForkJoinTask.inForkJoinPool()) {
+                // part of a larger task, the calling worker does its share of the work
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+        }
+
+        return new ArrayList<>(Arrays.asList(featureVectors));
+    }
+
+    /**
+     * Start the given calculation on the pool, e.g. the features of a whole recording
+     * <p>
+     * Without a pool, the calculation is done right away, and the returned task is already completed
+     *
+     * @param calculation
+     * @param <T>
+     * @return the task, whose result is available through join
+     */
+    public <T> ForkJoinTask<T> submit(Callable<T> calculation) {
+        ForkJoinTask<T> task = ForkJoinTask.adapt(calculation);
+        if (pool == null) {
+            task.invoke();
+            return task;
+        } else {
+            return pool.submit(task);
+        }
+    }
+
+    /**
+     * Stop all threads of the pool, once all submitted tasks are done
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Calculates the features of a range of windows, splitting it up if it is too large
+     */
+    private static class WindowRangeTask extends RecursiveAction {
+
+        // tasks are never serialized, but RecursiveAction is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final List<FrameDataSet> windows;
+        private final FeaturePlan featurePlan;
+        private final FeatureVector[] featureVectors;
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a task for the windows from the first index (inclusive) to the last index (exclusive)
+         *
+         * @param windows
+         * @param featurePlan
+         * @param featureVectors filled at the same index as each window
+         * @param from
+         * @param to
+         */
+        WindowRangeTask(List<FrameDataSet> windows, FeaturePlan featurePlan,
+                        FeatureVector[] featureVectors, int from, int to) {
+            this.windows = windows;
+            this.featurePlan = featurePlan;
+            this.featureVectors = featureVectors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= maximumWindowsPerTask) {
+                for (int i = from; i < to; i++) {
+                    featureVectors[i] = FeatureExtractor.getFeaturesForFrameDataSet(windows.get(i), featurePlan);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new WindowRangeTask(windows, featurePlan, featureVectors, from, middle),
+                        new WindowRangeTask(windows, featurePlan, featureVectors, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads multiple recordings at the same time, on a bounded number of threads
+ * <p>
+ * The results are returned in the order of the given files, regardless of the order in which reading finished,
+ * so that the produced features do not depend on the number of threads.
+ *
+ * @author Roman Uhlig
+ */
+public class ParallelFrameDataReader {
+
+    // the cost of a single recording is measured in kilobytes of the input file
+    private static final int bytesPerPermit = 1024;
+
+    private final int numberOfThreads;
+    private final int maximumPermits;
+
+    /**
+     * Create a reader that uses the given number of threads,
+     * and does not parse more than the given amount of input data at the same time
+     *
+     * @param numberOfThreads
+     * @param maximumMegabytes
+     */
+    public ParallelFrameDataReader(int numberOfThreads, int maximumMegabytes) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.maximumPermits = Math.max(1, maximumMegabytes) * (1024 * 1024 / bytesPerPermit);
+    }
+
+    /**
+     * Read all given files, and return the resulting FrameDataSets in the same order
+     *
+     * @param inputFiles
+     * @param totalNumberOfFiles used for the progress output only
+     * @return
+     */
+    public ArrayList<FrameDataSet> readAll(List<File> inputFiles, int totalNumberOfFiles) {
+        return readAll(inputFiles, totalNumberOfFiles,
+                inputFile -> FeatureExtractor.readFrameDataSet(inputFile.getPath()));
+    }
+
+    /**
+     * Read all given files with the given function, and return the results in the same order
+     *
+     * @param inputFiles
+     * @param totalNumberOfFiles used for the progress output only
+     * @param reader             called on the reading threads, once per file
+     * @param <T>
+     * @return
+     */
+    public <T> ArrayList<T> readAll(List<File> inputFiles, int totalNumberOfFiles, Function<File, T> reader) {
+        ArrayList<T> results = new ArrayList<>(inputFiles.size());
+        readAllInOrder(inputFiles, totalNumberOfFiles, reader, results::add);
+        return results;
+    }
+
+    /**
+     * Read all given files, and pass the resulting FrameDataSets to the consumer in the order of the files
+     * <p>
+     * Following files are read ahead while the consumer is busy, but only as far as the memory limit allows.
+     * A FrameDataSet counts against that limit until the consumer is done with it,
+     * so the consumer should not keep it any longer than needed.
+     *
+     * @param inputFiles
+     * @param totalNumberOfFiles used for the progress output only
+     * @param consumer
+     */
+    public void readAllInOrder(List<File> inputFiles, int totalNumberOfFiles, Consumer<FrameDataSet> consumer) {
+        readAllInOrder(inputFiles, totalNumberOfFiles,
+                inputFile -> FeatureExtractor.readFrameDataSet(inputFile.getPath()), consumer);
+    }
+
+    /**
+     * Read all given files with the given function, and pass the results to the consumer in the order of the files
+     * <p>
+     * Works like readAllInOrder for FrameDataSets, but allows the reading threads to do additional work per file,
+     * e.g. to look it up in a cache first.
+     *
+     * @param inputFiles
+     * @param totalNumberOfFiles used for the progress output only
+     * @param reader             called on the reading threads, once per file
+     * @param consumer
+     * @param <T>
+     */
+    public <T> void readAllInOrder(List<File> inputFiles, int totalNumberOfFiles,
+                                   Function<File, T> reader, Consumer<T> consumer) {
+
+        ExecutorService threadPool = Executors.newFixedThreadPool(numberOfThreads);
+        AtomicInteger numberOfFilesRead = new AtomicInteger(totalNumberOfFiles - inputFiles.size());
+
+        // files that are being read or waiting for the consumer, in their original order
+        ArrayDeque<Future<T>> pendingResults = new ArrayDeque<>();
+        ArrayDeque<Integer> pendingPermits = new ArrayDeque<>();
+        int availablePermits = maximumPermits;
+        int nextFile = 0;
+
+        try {
+            while (nextFile < inputFiles.size() || !pendingResults.isEmpty()) {
+
+                // start reading as many of the following files as the memory limit allows
+                while (nextFile < inputFiles.size()) {
+                    File inputFile = inputFiles.get(nextFile);
+                    int permits = getPermitsForFile(inputFile);
+                    if (permits > availablePermits) {
+                        break;
+                    }
+                    availablePermits -= permits;
+                    nextFile++;
+
+                    pendingResults.add(threadPool.submit(() -> {
+                        try {
+                            return reader.apply(inputFile);
+                        } finally {
+                            // progression log output
+                            System.out.println("reading input file:   "
+                                    + numberOfFilesRead.incrementAndGet() + " / " + totalNumberOfFiles);
+                        }
+                    }));
+                    pendingPermits.add(permits);
+                }
+
+                // hand over the next result in order, which frees its memory once the consumer is done
+                consumer.accept(pendingResults.removeFirst().get());
+                availablePermits += pendingPermits.removeFirst();
+            }
+
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("unable to read input files", e);
+        } finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+    /**
+     * The number of memory permits required to read the given file
+     * <p>
+     * Files larger than the overall limit only require all permits, so that they can still be read on their own
+     *
+     * @param inputFile
+     * @return
+     */
+    private int getPermitsForFile(File inputFile) {
+        long permits = Math.max(1, inputFile.length() / bytesPerPermit);
+        return (int) Math.min(permits, maximumPermits);
+    }
+}
@@ -0,0 +1,196 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * Keeps the features extracted from each recording, so that only new or changed recordings
+ * have to be processed again in later runs
+ * <p>
+ * Entries are addressed by the content hash and size of the recording,
+ * within a folder for the fingerprint of all settings that influence the extracted features.
+ * Changing those settings therefore leads to a separate set of entries, instead of replacing the existing ones.
+ *
+ * @author Roman Uhlig
+ */
+public class RecordingFeatureCache {
+
+    // file ending for cached features
+    private static final String cacheFileEnding = ".features";
+
+    // identifies the file type
+    private static final int magicNumber = 0x46454154;
+
+    // increase whenever the features extracted for the same recording and settings change,
+    // e.g. when a feature is added, or its computation is changed
+    private static final int featureVersion = 3;
+
+    // the folder for the current settings
+    private final File cacheFolder;
+
+    /**
+     * Create a cache for the current feature extraction settings, within the given base folder
+     *
+     * @param baseFolder
+     */
+    public RecordingFeatureCache(String baseFolder) {
+        this.cacheFolder = new File(baseFolder, getSettingsFingerprint());
+    }
+
+    /**
+     * A short, stable name for all settings that influence the extracted features
+     *
+     * @return
+     */
+    public static String getSettingsFingerprint() {
+        return getFingerprint("feature version:   " + featureVersion + System.lineSeparator()
+                + TestBenchSettings.getFeatureExtractionSettingsDescription());
+    }
+
+    /**
+     * A short, stable name for the given description
+     *
+     * @param description
+     * @return
+     */
+    static String getFingerprint(String description) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(description.getBytes(StandardCharsets.UTF_8));
+            StringBuilder fingerprint = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                fingerprint.append(String.format("%02x", digest[i]));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read the features previously extracted from the given recording
+     *
+     * @param recording
+     * @param contentHash
+     * @return the cached features, or null if there are none for the current content and settings
+     */
+    public RecordingFeatures read(File recording, long contentHash) {
+
+        File cacheFile = getCacheFile(recording, contentHash);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+
+            if (input.readInt() != magicNumber
+                    || input.readLong() != recording.length()
+                    || input.readLong() != contentHash) {
+                return null;
+            }
+
+            String subject = input.readUTF();
+
+            int numberOfSensors = input.readInt();
+            ArrayList<String> sensorPositions = new ArrayList<>(numberOfSensors);
+            for (int i = 0; i < numberOfSensors; i++) {
+                sensorPositions.add(input.readUTF());
+            }
+
+            int numberOfFeatureVectors = input.readInt();
+            ArrayList<FeatureVector> featureVectors = new ArrayList<>(numberOfFeatureVectors);
+            for (int v = 0; v < numberOfFeatureVectors; v++) {
+                String vectorSubject = input.readUTF();
+                String classValue = input.readUTF();
+                int numberOfFeatures = input.readInt();
+                double[] featureValues = new double[numberOfFeatures];
+                for (int f = 0; f < numberOfFeatures; f++) {
+                    featureValues[f] = input.readDouble();
+                }
+                featureVectors.add(new FeatureVector(vectorSubject, classValue, featureValues));
+            }
+
+            return new RecordingFeatures(subject, sensorPositions, featureVectors);
+
+        } catch (IOException | RuntimeException e) {
+            // a damaged entry is simply replaced
+            System.err.println("unable to read cached features " + cacheFile.getPath());
+            return null;
+        }
+    }
+
+    /**
+     * Keep the features extracted from the given recording for later runs
+     * <p>
+     * Failing to do so is reported, but does not stop the current run
+     *
+     * @param recording
+     * @param contentHash
+     * @param recordingFeatures
+     */
+    public void write(File recording, long contentHash, RecordingFeatures recordingFeatures) {
+
+        File cacheFile = getCacheFile(recording, contentHash);
+        Path temporaryPath = Paths.get(cacheFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+
+        try {
+            Files.createDirectories(cacheFolder.toPath());
+
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+
+                output.writeInt(magicNumber);
+                output.writeLong(recording.length());
+                output.writeLong(contentHash);
+                output.writeUTF(recordingFeatures.getSubject());
+
+                output.writeInt(recordingFeatures.getSensorPositions().size());
+                for (String sensorPosition : recordingFeatures.getSensorPositions()) {
+                    output.writeUTF(sensorPosition);
+                }
+
+                output.writeInt(recordingFeatures.getFeatureVectors().size());
+                for (FeatureVector featureVector : recordingFeatures.getFeatureVectors()) {
+                    output.writeUTF(featureVector.getSubject());
+                    output.writeUTF(featureVector.getClassValue());
+                    double[] featureValues = featureVector.getFeaturesWithoutClassAndSubject();
+                    output.writeInt(featureValues.length);
+                    for (double featureValue : featureValues) {
+                        output.writeDouble(featureValue);
+                    }
+                }
+            }
+
+            Files.move(temporaryPath, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException e) {
+            System.err.println("unable to write cached features " + cacheFile.getPath());
+        }
+    }
+
+    /**
+     * The cache file for the given recording content
+     *
+     * @param recording
+     * @param contentHash
+     * @return
+     */
+    private File getCacheFile(File recording, long contentHash) {
+        return new File(cacheFolder, String.format("%08x_%d", contentHash, recording.length()) + cacheFileEnding);
+    }
+}
@@ -0,0 +1,57 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.util.ArrayList;
+
+/**
+ * The feature vectors extracted from all windows of a single recording
+ *
+ * @author Roman Uhlig
+ */
+public class RecordingFeatures {
+
+    private final String subject;
+    // the sensors contained in the windows, which determine the feature header
+    private final ArrayList<String> sensorPositions;
+    private final ArrayList<FeatureVector> featureVectors;
+
+    /**
+     * Collect the given feature vectors of a single recording
+     *
+     * @param subject
+     * @param sensorPositions
+     * @param featureVectors
+     */
+    public RecordingFeatures(String subject, ArrayList<String> sensorPositions,
+                             ArrayList<FeatureVector> featureVectors) {
+        this.subject = subject;
+        this.sensorPositions = sensorPositions;
+        this.featureVectors = featureVectors;
+    }
+
+    /**
+     * The subject which recorded the data
+     *
+     * @return
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * The sensors contained in the windows of the recording
+     *
+     * @return
+     */
+    public ArrayList<String> getSensorPositions() {
+        return sensorPositions;
+    }
+
+    /**
+     * The feature vectors of all windows, in the order of the windows
+     *
+     * @return
+     */
+    public ArrayList<FeatureVector> getFeatureVectors() {
+        return featureVectors;
+    }
+}
@@ -0,0 +1,740 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.math.MathHelper;
+
+import java.util.Arrays;
+
+/**
+ * Holds all data recorded for a single sensor, stored column-wise
+ * <p>
+ * Every value of a sensor reading has its own primitive array, indexed by frame, except for the scale,
+ * which stays the same for the whole recording and is kept only once.
+ * Once a recording is complete, sensors whose frames were recorded at the same times share their time and
+ * frame duration columns and their invalid flags (see shareFramesOf).
+ * FrameDataSets that represent only a window of a recording refer to these columns through an index range,
+ * instead of copying the data.
+ *
+ * @author Roman Uhlig
+ */
+public class SensorColumns {
+
+    // initial number of frames, grows as needed
+    private static final int initialCapacity = 256;
+
+    // indices of the individual columns
+    // recorded values
+    private static final int posXColumn = 0;
+    private static final int posYColumn = 1;
+    private static final int posZColumn = 2;
+    private static final int rotXColumn = 3;
+    private static final int rotYColumn = 4;
+    private static final int rotZColumn = 5;
+    private static final int rotWColumn = 6;
+    private static final int timeColumn = 7;
+    // values derived from the previous frame
+    private static final int frameDurationColumn = 8;
+    private static final int linVelXColumn = 9;
+    private static final int linVelYColumn = 10;
+    private static final int linVelZColumn = 11;
+    private static final int angVelXColumn = 12;
+    private static final int angVelYColumn = 13;
+    private static final int angVelZColumn = 14;
+    private static final int linAccelerationXColumn = 15;
+    private static final int linAccelerationYColumn = 16;
+    private static final int linAccelerationZColumn = 17;
+    private static final int angAccelerationXColumn = 18;
+    private static final int angAccelerationYColumn = 19;
+    private static final int angAccelerationZColumn = 20;
+    static final int numberOfColumns = 21;
+
+    // the position the sensor is worn, also known as the "tag", and its id within the SensorRegistry
+    private final String sensorPosition;
+    private final int sensorId;
+
+    // all columns share the same capacity, only the first "size" frames are in use
+    private final double[][] columns = new double[numberOfColumns][];
+    private boolean[] invalid;
+    private int size = 0;
+
+    // the scale reported with the frames, the same for all frames of a recording
+    private double scale;
+
+    // the very first frame of a sensor can not have derived data, since there is no previous frame
+    private boolean firstFrameLacksDerivedData = false;
+
+    /**
+     * Create empty columns for the given sensor, including the derived channels of the given plan
+     *
+     * @param sensorPosition
+     * @param derivedChannelPlan
+     */
+    public SensorColumns(String sensorPosition, DerivedChannelPlan derivedChannelPlan) {
+        this(sensorPosition, getIncludedColumns(derivedChannelPlan), initialCapacity);
+    }
+
+    /**
+     * Create empty columns for the given sensor, with room for the given number of frames
+     * <p>
+     * Columns that are not included stay null
+     *
+     * @param sensorPosition
+     * @param includedColumns
+     * @param capacity
+     */
+    private SensorColumns(String sensorPosition, boolean[] includedColumns, int capacity) {
+        this.sensorPosition = sensorPosition;
+        this.sensorId = SensorRegistry.getSensorId(sensorPosition);
+        for (int column = 0; column < numberOfColumns; column++) {
+            if (includedColumns[column]) {
+                columns[column] = new double[capacity];
+            }
+        }
+        invalid = new boolean[capacity];
+    }
+
+    /**
+     * The columns that are stored for the given plan
+     *
+     * @param derivedChannelPlan
+     * @return one flag for each column, in the order given by getColumn
+     */
+    static boolean[] getIncludedColumns(DerivedChannelPlan derivedChannelPlan) {
+        boolean[] includedColumns = new boolean[numberOfColumns];
+        // recorded values and frame duration are always needed
+        for (int column = 0; column <= frameDurationColumn; column++) {
+            includedColumns[column] = true;
+        }
+        setIncluded(includedColumns, derivedChannelPlan.includesLinearVelocity(),
+                linVelXColumn, linVelYColumn, linVelZColumn);
+        setIncluded(includedColumns, derivedChannelPlan.includesAngularVelocity(),
+                angVelXColumn, angVelYColumn, angVelZColumn);
+        setIncluded(includedColumns, derivedChannelPlan.includesLinearAcceleration(),
+                linAccelerationXColumn, linAccelerationYColumn, linAccelerationZColumn);
+        setIncluded(includedColumns, derivedChannelPlan.includesAngularAcceleration(),
+                angAccelerationXColumn, angAccelerationYColumn, angAccelerationZColumn);
+        return includedColumns;
+    }
+
+    /**
+     * Set the flags of the given columns
+     *
+     * @param includedColumns
+     * @param included
+     * @param columnsToSet
+     */
+    private static void setIncluded(boolean[] includedColumns, boolean included, int... columnsToSet) {
+        for (int column : columnsToSet) {
+            includedColumns[column] = included;
+        }
+    }
+
+    /**
+     * Create columns from previously prepared data, e.g. when loading them from the FrameDataCache
+     * <p>
+     * The given arrays are used directly, and all of them need to hold at least the given number of frames.
+     * Derived channels that were not computed are null.
+     *
+     * @param sensorPosition
+     * @param columns                    all columns, in the order given by getColumn
+     * @param invalid                    null, if the frames of another sensor are shared afterwards
+     * @param size
+     * @param firstFrameLacksDerivedData
+     * @param scale
+     */
+    SensorColumns(String sensorPosition, double[][] columns, boolean[] invalid, int size,
+                  boolean firstFrameLacksDerivedData, double scale) {
+        this.sensorPosition = sensorPosition;
+        this.sensorId = SensorRegistry.getSensorId(sensorPosition);
+        System.arraycopy(columns, 0, this.columns, 0, numberOfColumns);
+        this.invalid = invalid;
+        this.size = size;
+        this.firstFrameLacksDerivedData = firstFrameLacksDerivedData;
+        this.scale = scale;
+    }
+
+    /**
+     * Add a single sensor reading
+     * <p>
+     * The data that depends on the previous frame is derived immediately, as far as it is included in these columns.
+     * The first frame of a sensor is dropped once the second one arrives,
+     * since its derived data could not have been determined correctly.
+     *
+     * @param posX
+     * @param posY
+     * @param posZ
+     * @param rotX
+     * @param rotY
+     * @param rotZ
+     * @param rotW
+     * @param angVelX
+     * @param angVelY
+     * @param angVelZ
+     * @param linVelX
+     * @param linVelY
+     * @param linVelZ
+     * @param scale
+     * @param time
+     */
+    void addFrame(double posX, double posY, double posZ,
+                  double rotX, double rotY, double rotZ, double rotW,
+                  double angVelX, double angVelY, double angVelZ,
+                  double linVelX, double linVelY, double linVelZ,
+                  double scale, double time) {
+
+        ensureCapacity(size + 1);
+
+        int index = size;
+        columns[posXColumn][index] = posX;
+        columns[posYColumn][index] = posY;
+        columns[posZColumn][index] = posZ;
+        columns[rotXColumn][index] = rotX;
+        columns[rotYColumn][index] = rotY;
+        columns[rotZColumn][index] = rotZ;
+        columns[rotWColumn][index] = rotW;
+        columns[timeColumn][index] = time;
+        // the reported velocities are only relevant as the base for the first derived acceleration
+        if (includesColumn(angVelXColumn)) {
+            columns[angVelXColumn][index] = angVelX;
+            columns[angVelYColumn][index] = angVelY;
+            columns[angVelZColumn][index] = angVelZ;
+        }
+        if (includesColumn(linVelXColumn)) {
+            columns[linVelXColumn][index] = linVelX;
+            columns[linVelYColumn][index] = linVelY;
+            columns[linVelZColumn][index] = linVelZ;
+        }
+        invalid[index] = false;
+        this.scale = scale;
+        size++;
+
+        // if this is not the first frame to be added, compute additional data
+        // which depends on the previous frame to be known
+        if (size > 1) {
+            computeAdditionalDataBasedOnPreviousFrame(index);
+
+            // remove the first frame, where that data could not yet have been set correctly
+            if (firstFrameLacksDerivedData) {
+                removeFirstFrame();
+                firstFrameLacksDerivedData = false;
+            }
+        } else {
+            firstFrameLacksDerivedData = true;
+        }
+    }
+
+    /**
+     * Fill out the data for the given frame that requires knowledge of the previous frame
+     *
+     * @param index
+     */
+    private void computeAdditionalDataBasedOnPreviousFrame(int index) {
+
+        int previous = index - 1;
+        double[] time = columns[timeColumn];
+
+        // linear velocity
+        if (includesColumn(linVelXColumn)) {
+            deriveVelocity(posXColumn, linVelXColumn, previous, index);
+            deriveVelocity(posYColumn, linVelYColumn, previous, index);
+            deriveVelocity(posZColumn, linVelZColumn, previous, index);
+        }
+
+        // angular velocity, which requires the comparatively expensive conversion to euler angles
+        if (includesColumn(angVelXColumn)) {
+            double[] rotX = columns[rotXColumn];
+            double[] rotY = columns[rotYColumn];
+            double[] rotZ = columns[rotZColumn];
+            double[] rotW = columns[rotWColumn];
+            double roll = MathHelper.getRoll(rotX[index], rotY[index], rotZ[index], rotW[index]);
+            double pitch = MathHelper.getPitch(rotX[index], rotY[index], rotZ[index], rotW[index]);
+            double yaw = MathHelper.getYaw(rotX[index], rotY[index], rotZ[index], rotW[index]);
+            double rollPrevious =
+                    MathHelper.getRoll(rotX[previous], rotY[previous], rotZ[previous], rotW[previous]);
+            double pitchPrevious =
+                    MathHelper.getPitch(rotX[previous], rotY[previous], rotZ[previous], rotW[previous]);
+            double yawPrevious =
+                    MathHelper.getYaw(rotX[previous], rotY[previous], rotZ[previous], rotW[previous]);
+            columns[angVelXColumn][index] = MathHelper.calculateVelocityFromPosition(
+                    rollPrevious, roll, time[previous], time[index]);
+            columns[angVelYColumn][index] = MathHelper.calculateVelocityFromPosition(
+                    pitchPrevious, pitch, time[previous], time[index]);
+            columns[angVelZColumn][index] = MathHelper.calculateVelocityFromPosition(
+                    yawPrevious, yaw, time[previous], time[index]);
+        }
+
+        // linear acceleration
+        if (includesColumn(linAccelerationXColumn)) {
+            deriveAcceleration(linVelXColumn, linAccelerationXColumn, previous, index);
+            deriveAcceleration(linVelYColumn, linAccelerationYColumn, previous, index);
+            deriveAcceleration(linVelZColumn, linAccelerationZColumn, previous, index);
+        }
+
+        // angular acceleration
+        if (includesColumn(angAccelerationXColumn)) {
+            deriveAcceleration(angVelXColumn, angAccelerationXColumn, previous, index);
+            deriveAcceleration(angVelYColumn, angAccelerationYColumn, previous, index);
+            deriveAcceleration(angVelZColumn, angAccelerationZColumn, previous, index);
+        }
+
+        // frame duration
+        columns[frameDurationColumn][index] = time[index] - time[previous];
+    }
+
+    /**
+     * Derive the velocity for the given frame from the change in position since the previous frame
+     *
+     * @param positionColumn
+     * @param velocityColumn
+     * @param previous
+     * @param index
+     */
+    private void deriveVelocity(int positionColumn, int velocityColumn, int previous, int index) {
+        double[] time = columns[timeColumn];
+        double[] position = columns[positionColumn];
+        columns[velocityColumn][index] = MathHelper.calculateVelocityFromPosition(
+                position[previous], position[index], time[previous], time[index]);
+    }
+
+    /**
+     * Derive the acceleration for the given frame from the change in velocity since the previous frame
+     *
+     * @param velocityColumn
+     * @param accelerationColumn
+     * @param previous
+     * @param index
+     */
+    private void deriveAcceleration(int velocityColumn, int accelerationColumn, int previous, int index) {
+        double[] time = columns[timeColumn];
+        double[] velocity = columns[velocityColumn];
+        columns[accelerationColumn][index] = MathHelper.calculateAccelerationFromVelocity(
+                velocity[previous], velocity[index], time[previous], time[index]);
+    }
+
+    /**
+     * Make sure there is room for the given number of frames
+     *
+     * @param requiredCapacity
+     */
+    private void ensureCapacity(int requiredCapacity) {
+        int capacity = invalid.length;
+        if (requiredCapacity > capacity) {
+            int newCapacity = Math.max(requiredCapacity, capacity + (capacity >> 1));
+            for (int column = 0; column < numberOfColumns; column++) {
+                if (includesColumn(column)) {
+                    columns[column] = Arrays.copyOf(columns[column], newCapacity);
+                }
+            }
+            invalid = Arrays.copyOf(invalid, newCapacity);
+        }
+    }
+
+    /**
+     * Release the memory reserved for frames that were never added
+     */
+    void trimToSize() {
+        if (size > 0 && size < invalid.length) {
+            for (int column = 0; column < numberOfColumns; column++) {
+                if (includesColumn(column)) {
+                    columns[column] = Arrays.copyOf(columns[column], size);
+                }
+            }
+            invalid = Arrays.copyOf(invalid, size);
+        }
+    }
+
+    /**
+     * Remove the first frame, moving all others forward
+     */
+    private void removeFirstFrame() {
+        for (int column = 0; column < numberOfColumns; column++) {
+            if (includesColumn(column)) {
+                System.arraycopy(columns[column], 1, columns[column], 0, size - 1);
+            }
+        }
+        System.arraycopy(invalid, 1, invalid, 0, size - 1);
+        size--;
+    }
+
+    /**
+     * Create an independent copy of the frames within the given index range
+     *
+     * @param startIndex
+     * @param endIndex
+     * @return
+     */
+    SensorColumns copyRange(int startIndex, int endIndex) {
+        int length = endIndex - startIndex;
+        SensorColumns copy = new SensorColumns(sensorPosition, getIncludedColumns(), Math.max(length, 1));
+        for (int column = 0; column < numberOfColumns; column++) {
+            if (includesColumn(column)) {
+                System.arraycopy(columns[column], startIndex, copy.columns[column], 0, length);
+            }
+        }
+        System.arraycopy(invalid, startIndex, copy.invalid, 0, length);
+        copy.size = length;
+        copy.scale = scale;
+        copy.firstFrameLacksDerivedData = startIndex == 0 && firstFrameLacksDerivedData;
+        return copy;
+    }
+
+    /**
+     * Whether the frames of this sensor were recorded at the same times as those of the given sensor
+     * <p>
+     * Only complete frames count, a sensor still waiting to replace its first frame never has the same frames
+     *
+     * @param other
+     * @return
+     */
+    boolean hasSameFramesAs(SensorColumns other) {
+        if (size != other.size || size == 0 || firstFrameLacksDerivedData || other.firstFrameLacksDerivedData) {
+            return false;
+        }
+        double[] time = columns[timeColumn];
+        double[] otherTime = other.columns[timeColumn];
+        double[] frameDuration = columns[frameDurationColumn];
+        double[] otherFrameDuration = other.columns[frameDurationColumn];
+        for (int i = 0; i < size; i++) {
+            if (Double.compare(time[i], otherTime[i]) != 0
+                    || Double.compare(frameDuration[i], otherFrameDuration[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Use the time and frame duration columns and the invalid flags of the given sensor from now on,
+     * which has the same frames as this one
+     * <p>
+     * The invalid flags of this sensor are replaced, they need to be merged into those of the given sensor first.
+     * Adding further frames gives each sensor its own copy again.
+     *
+     * @param other
+     */
+    void shareFramesOf(SensorColumns other) {
+        columns[timeColumn] = other.columns[timeColumn];
+        columns[frameDurationColumn] = other.columns[frameDurationColumn];
+        invalid = other.invalid;
+    }
+
+    /**
+     * Whether this sensor uses the time and frame duration columns and the invalid flags of the given sensor
+     *
+     * @param other
+     * @return
+     */
+    boolean sharesFramesOf(SensorColumns other) {
+        return columns[timeColumn] == other.columns[timeColumn] && invalid == other.invalid;
+    }
+
+    /**
+     * Whether the column with the given index is shared between sensors with the same frames
+     *
+     * @param column
+     * @return
+     */
+    static boolean isFrameColumn(int column) {
+        return column == timeColumn || column == frameDurationColumn;
+    }
+
+    /**
+     * The column with the given index, between 0 and numberOfColumns
+     *
+     * @param column
+     * @return the column, or null if it is not included
+     */
+    double[] getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * Whether the column with the given index is stored
+     *
+     * @param column
+     * @return
+     */
+    boolean includesColumn(int column) {
+        return columns[column] != null;
+    }
+
+    /**
+     * The columns that are stored
+     *
+     * @return one flag for each column, in the order given by getColumn
+     */
+    private boolean[] getIncludedColumns() {
+        boolean[] includedColumns = new boolean[numberOfColumns];
+        for (int column = 0; column < numberOfColumns; column++) {
+            includedColumns[column] = includesColumn(column);
+        }
+        return includedColumns;
+    }
+
+    /**
+     * The array holding the invalid flags of all frames
+     *
+     * @return
+     */
+    boolean[] getInvalidFlags() {
+        return invalid;
+    }
+
+    /**
+     * Whether the first frame is still waiting for a second one, to be replaced by it
+     *
+     * @return
+     */
+    boolean firstFrameLacksDerivedData() {
+        return firstFrameLacksDerivedData;
+    }
+
+    /**
+     * The position the sensor is worn, also known as the "tag"
+     *
+     * @return
+     */
+    public String getSensorPosition() {
+        return sensorPosition;
+    }
+
+    /**
+     * The id of this sensor within the SensorRegistry
+     *
+     * @return
+     */
+    public int getSensorId() {
+        return sensorId;
+    }
+
+    /**
+     * The number of frames recorded for this sensor
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Mark the given frame as containing data which cannot have been recorded correctly
+     * <p>
+     * E.g., if the sensor reported to be 100 meters above the ground
+     *
+     * @param index
+     */
+    void setInvalid(int index) {
+        invalid[index] = true;
+    }
+
+    /**
+     * Whether invalid values were detected for the given frame
+     *
+     * @param index
+     * @return
+     */
+    public boolean includesInvalidData(int index) {
+        return invalid[index];
+    }
+
+    // The column getters return the underlying arrays, which may be longer than the number of frames.
+    // They are meant for reading only, and should not be kept while frames are still being added.
+    // Derived channels that are not part of the DerivedChannelPlan the columns were created with are null.
+
+    /**
+     * The x positions
+     *
+     * @return
+     */
+    public double[] getPosX() {
+        return columns[posXColumn];
+    }
+
+    /**
+     * The y positions
+     *
+     * @return
+     */
+    public double[] getPosY() {
+        return columns[posYColumn];
+    }
+
+    /**
+     * The z positions
+     *
+     * @return
+     */
+    public double[] getPosZ() {
+        return columns[posZColumn];
+    }
+
+    /**
+     * The x rotations
+     *
+     * @return
+     */
+    public double[] getRotX() {
+        return columns[rotXColumn];
+    }
+
+    /**
+     * The y rotations
+     *
+     * @return
+     */
+    public double[] getRotY() {
+        return columns[rotYColumn];
+    }
+
+    /**
+     * The z rotations
+     *
+     * @return
+     */
+    public double[] getRotZ() {
+        return columns[rotZColumn];
+    }
+
+    /**
+     * The w rotations
+     *
+     * @return
+     */
+    public double[] getRotW() {
+        return columns[rotWColumn];
+    }
+
+    /**
+     * The scale, as determined by the height of the HMD during the subject calibration
+     *
+     * @return
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * The timestamps when the frames were recorded
+     *
+     * @return
+     */
+    public double[] getTime() {
+        return columns[timeColumn];
+    }
+
+    /**
+     * The difference in time between each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getFrameDuration() {
+        return columns[frameDurationColumn];
+    }
+
+    /**
+     * The x linear velocities, derived from the position of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinVelX() {
+        return columns[linVelXColumn];
+    }
+
+    /**
+     * The y linear velocities, derived from the position of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinVelY() {
+        return columns[linVelYColumn];
+    }
+
+    /**
+     * The z linear velocities, derived from the position of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinVelZ() {
+        return columns[linVelZColumn];
+    }
+
+    /**
+     * The x angular velocities, derived from the rotation of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngVelX() {
+        return columns[angVelXColumn];
+    }
+
+    /**
+     * The y angular velocities, derived from the rotation of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngVelY() {
+        return columns[angVelYColumn];
+    }
+
+    /**
+     * The z angular velocities, derived from the rotation of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngVelZ() {
+        return columns[angVelZColumn];
+    }
+
+    /**
+     * The x linear accelerations, derived from the velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinAccelerationX() {
+        return columns[linAccelerationXColumn];
+    }
+
+    /**
+     * The y linear accelerations, derived from the velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinAccelerationY() {
+        return columns[linAccelerationYColumn];
+    }
+
+    /**
+     * The z linear accelerations, derived from the velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getLinAccelerationZ() {
+        return columns[linAccelerationZColumn];
+    }
+
+    /**
+     * The x angular accelerations, derived from the angular velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngAccelerationX() {
+        return columns[angAccelerationXColumn];
+    }
+
+    /**
+     * The y angular accelerations, derived from the angular velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngAccelerationY() {
+        return columns[angAccelerationYColumn];
+    }
+
+    /**
+     * The z angular accelerations, derived from the angular velocity of each frame and its previous frame
+     *
+     * @return
+     */
+    public double[] getAngAccelerationZ() {
+        return columns[angAccelerationZColumn];
+    }
+}
@@ -0,0 +1,136 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.controller.TestBenchSettings;
+import com.romanuhlig.weka.math.MathHelper;
+import com.romanuhlig.weka.math.PointSetRange;
+
+/**
+ * Calculates the single-sensor features of a window in one pass over the columns of the sensor
+ * <p>
+ * All channels of the FeaturePlan (position, rotation, velocity and acceleration norms) are collected within
+ * the same loop into FeatureChannels, and their features are written directly into the row of the FeatureVector,
+ * in the order of the plan.
+ * <p>
+ * Each thread keeps one kernel, whose arrays are reused for every sensor of every window.
+ *
+ * @author Roman Uhlig
+ */
+final class SensorFeatureKernel {
+
+    // one kernel for each thread, since it holds the state of the sensor currently being processed
+    private static final ThreadLocal<SensorFeatureKernel> kernelOfThread =
+            ThreadLocal.withInitial(SensorFeatureKernel::new);
+
+    // the values and statistics of all channels
+    private final FeatureChannels channels = new FeatureChannels();
+
+    // for the range of the positions of the sensor
+    private final PointSetRange pointSetRange = new PointSetRange();
+
+    /**
+     * DO NOT USE, one kernel per thread is available through forCurrentThread
+     */
+    private SensorFeatureKernel() {
+    }
+
+    /**
+     * The kernel of the current thread
+     *
+     * @return
+     */
+    static SensorFeatureKernel forCurrentThread() {
+        return kernelOfThread.get();
+    }
+
+    /**
+     * Calculate the single-sensor features of the given sensor within the window, and add them to the FeatureVector
+     *
+     * @param featureVector
+     * @param featurePlan
+     * @param sensorColumns
+     * @param firstFrameIndex
+     * @param endFrameIndex
+     */
+    void addFeatures(FeatureVector featureVector, FeaturePlan featurePlan,
+                     SensorColumns sensorColumns, int firstFrameIndex, int endFrameIndex) {
+
+        int numberOfValues = endFrameIndex - firstFrameIndex;
+
+        boolean position = featurePlan.isSensorChannelPlanned(FeaturePlan.positionX);
+        boolean rotation = featurePlan.isSensorChannelPlanned(FeaturePlan.rotationX);
+        boolean velocity = featurePlan.isSensorChannelPlanned(FeaturePlan.velocityXYZ);
+        boolean acceleration = featurePlan.isSensorChannelPlanned(FeaturePlan.accelerationXYZ);
+
+        double[] posX = sensorColumns.getPosX();
+        double[] posY = sensorColumns.getPosY();
+        double[] posZ = sensorColumns.getPosZ();
+        double[] rotX = sensorColumns.getRotX();
+        double[] rotY = sensorColumns.getRotY();
+        double[] rotZ = sensorColumns.getRotZ();
+        double[] rotW = sensorColumns.getRotW();
+        double[] linVelX = sensorColumns.getLinVelX();
+        double[] linVelY = sensorColumns.getLinVelY();
+        double[] linVelZ = sensorColumns.getLinVelZ();
+        double[] linAccelerationX = sensorColumns.getLinAccelerationX();
+        double[] linAccelerationY = sensorColumns.getLinAccelerationY();
+        double[] linAccelerationZ = sensorColumns.getLinAccelerationZ();
+        double[] frameDuration = sensorColumns.getFrameDuration();
+
+        // determine values that stay true for the whole window
+        double overallTimePassed =
+                sensorColumns.getTime()[endFrameIndex - 1] - sensorColumns.getTime()[firstFrameIndex];
+        double bodySize = sensorColumns.getScale();
+
+        FeatureChannels channels = this.channels;
+        channels.prepare(FeaturePlan.numberOfSensorChannels, numberOfValues);
+
+        // collect all enabled channels in a single pass over the frames
+        for (int i = firstFrameIndex; i < endFrameIndex; i++) {
+
+            int index = i - firstFrameIndex;
+            double timeSinceLastFrame = frameDuration[i];
+
+            if (position) {
+                channels.collect(FeaturePlan.positionX, index, posX[i], timeSinceLastFrame);
+                channels.collect(FeaturePlan.positionY, index, posY[i], timeSinceLastFrame);
+                channels.collect(FeaturePlan.positionZ, index, posZ[i], timeSinceLastFrame);
+            }
+
+            if (rotation) {
+                channels.collect(FeaturePlan.rotationX, index, rotX[i], timeSinceLastFrame);
+                channels.collect(FeaturePlan.rotationY, index, rotY[i], timeSinceLastFrame);
+                channels.collect(FeaturePlan.rotationZ, index, rotZ[i], timeSinceLastFrame);
+                channels.collect(FeaturePlan.rotationW, index, rotW[i], timeSinceLastFrame);
+            }
+
+            if (velocity) {
+                channels.collect(FeaturePlan.velocityXYZ, index,
+                        MathHelper.EuclideanNorm(linVelX[i], linVelY[i], linVelZ[i]), timeSinceLastFrame);
+            }
+
+            if (acceleration) {
+                channels.collect(FeaturePlan.accelerationXYZ, index,
+                        MathHelper.EuclideanNorm(linAccelerationX[i], linAccelerationY[i], linAccelerationZ[i]),
+                        timeSinceLastFrame);
+            }
+        }
+
+        // write the features of each planned channel into the row
+        int offset = featureVector.reserveFeatures(featurePlan.getNumberOfFeaturesPerSensor());
+        double[] row = featureVector.getFeatureRow();
+        double scaleAllFeaturesBy = TestBenchSettings.scaleAllFeaturesBy();
+
+        // intuition suggests that average velocity and height / range will be more affected by body size
+        // than acceleration, testing shows that this corresponds to the "best" setting for detection
+        for (int channel : featurePlan.getSensorChannels()) {
+            double scaleBy = channel < FeaturePlan.velocityXYZ ? bodySize : 1;
+            offset = channels.writeFeatures(row, offset, channel, numberOfValues, overallTimePassed, scaleBy,
+                    scaleAllFeaturesBy, featurePlan.getSensorChannelFeatures());
+
+            if (channel == FeaturePlan.positionZ && featurePlan.isRangeXYZPlanned()) {
+                double rangeXYZ = pointSetRange.getRangeXYZ(posX, posY, posZ, firstFrameIndex, endFrameIndex);
+                row[offset++] = rangeXYZ / bodySize * scaleAllFeaturesBy;
+            }
+        }
+    }
+}
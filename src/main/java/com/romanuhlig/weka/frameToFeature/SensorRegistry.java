@@ -0,0 +1,288 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a dense integer id to every sensor position, and holds the plausibility rules for sensor readings
+ * in tables indexed by those ids
+ * <p>
+ * The rules are defined by sensor name once, and resolved into the tables whenever a new sensor is registered,
+ * so that checking a frame does not require any String comparisons.
+ * The number of frames rejected by each rule is counted for all recordings parsed during this run.
+ *
+ * @author Roman Uhlig
+ */
+public class SensorRegistry {
+
+    // the axis that points upwards for the height check of a sensor
+    static final int noHeightCheck = 0;
+    static final int heightAlongY = 1;
+    static final int heightAlongZ = 2;
+
+    // no distance between two sensors should be higher than this, no matter which sensor combination
+    private static final double overallMaximumDistance = 3.5;
+
+    // rules by sensor name, as defined below
+    private static final HashMap<String, Integer> heightAxisBySensor = new HashMap<>();
+    private static final HashMap<String, Double> heightLimitBySensor = new HashMap<>();
+    private static final HashMap<String, Double> distanceLimitBySensorPair = new HashMap<>();
+
+    static {
+        // height can always be checked for sanity
+        addHeightLimit(heightAlongZ, 3.0, "lForeArm", "rForeArm", "lHand", "rHand");
+        addHeightLimit(heightAlongZ, 2.75, "head");
+        addHeightLimit(heightAlongY, 2.5, "rArm");
+        addHeightLimit(heightAlongY, 2.25, "spine");
+        addHeightLimit(heightAlongY, 1.5, "hip");
+        addHeightLimit(heightAlongY, 1.0, "lLeg", "rLeg", "lFoot", "rFoot");
+
+        // based on the maximum achievable distance between neighbouring sensors
+        addDistanceLimit("head", "spine", 0.95);
+        addDistanceLimit("head", "lForeArm", 1.5);
+        addDistanceLimit("head", "rForeArm", 1.5);
+        addDistanceLimit("hip", "spine", 0.9);
+        addDistanceLimit("hip", "lLeg", 1.4);
+        addDistanceLimit("hip", "rLeg", 1.4);
+        addDistanceLimit("lFoot", "lLeg", 0.5);
+        addDistanceLimit("lForeArm", "lHand", 0.5);
+        addDistanceLimit("lForeArm", "spine", 1.1);
+        addDistanceLimit("rArm", "rForeArm", 0.6);
+        addDistanceLimit("rArm", "spine", 0.8);
+        addDistanceLimit("rFoot", "rLeg", 0.5);
+        addDistanceLimit("rForeArm", "rHand", 0.5);
+        addDistanceLimit("rForeArm", "spine", 1.1);
+    }
+
+    // sensor ids, the lookup by name happens once per new sensor list, not per frame
+    private static final ConcurrentHashMap<String, Integer> idBySensorPosition = new ConcurrentHashMap<>();
+
+    // current rules for all registered sensors, replaced as a whole whenever a sensor is added
+    private static volatile PlausibilityRules plausibilityRules = new PlausibilityRules(
+            new String[0], new int[0], new double[0], new double[0][]);
+
+    // number of frames rejected by the height rule of each sensor, and the distance rule of each sensor pair
+    private static long[] heightRejections = new long[0];
+    private static long[][] distanceRejections = new long[0][];
+
+    /**
+     * DO NOT USE, only static methods
+     */
+    private SensorRegistry() {
+    }
+
+    /**
+     * The rules for all registered sensors, indexed by sensor id
+     * <p>
+     * The tables are never changed after creation, registering a new sensor creates new tables
+     */
+    static final class PlausibilityRules {
+
+        final String[] sensorPositions;
+        // upwards axis for each sensor, see noHeightCheck, heightAlongY and heightAlongZ
+        final int[] heightAxes;
+        final double[] heightLimits;
+        // maximum distance for each sensor pair, including the overall maximum
+        final double[][] maximumDistances;
+
+        private PlausibilityRules(String[] sensorPositions, int[] heightAxes, double[] heightLimits,
+                                  double[][] maximumDistances) {
+            this.sensorPositions = sensorPositions;
+            this.heightAxes = heightAxes;
+            this.heightLimits = heightLimits;
+            this.maximumDistances = maximumDistances;
+        }
+    }
+
+    /**
+     * The id of the given sensor, which is registered first if it was not known yet
+     *
+     * @param sensorPosition
+     * @return
+     */
+    public static int getSensorId(String sensorPosition) {
+        Integer sensorId = idBySensorPosition.get(sensorPosition);
+        if (sensorId == null) {
+            sensorId = registerSensor(sensorPosition);
+        }
+        return sensorId;
+    }
+
+    /**
+     * The name of the sensor with the given id
+     *
+     * @param sensorId
+     * @return
+     */
+    public static String getSensorPosition(int sensorId) {
+        return plausibilityRules.sensorPositions[sensorId];
+    }
+
+    /**
+     * The current rules, which cover all sensors that were registered before this call
+     *
+     * @return
+     */
+    static PlausibilityRules getPlausibilityRules() {
+        return plausibilityRules;
+    }
+
+    /**
+     * Assign the next id to the given sensor, and extend all tables accordingly
+     *
+     * @param sensorPosition
+     * @return
+     */
+    private static synchronized int registerSensor(String sensorPosition) {
+
+        // another thread might have registered the sensor in the meantime
+        Integer knownSensorId = idBySensorPosition.get(sensorPosition);
+        if (knownSensorId != null) {
+            return knownSensorId;
+        }
+
+        PlausibilityRules oldRules = plausibilityRules;
+        int sensorId = oldRules.sensorPositions.length;
+        int numberOfSensors = sensorId + 1;
+
+        String[] sensorPositions = Arrays.copyOf(oldRules.sensorPositions, numberOfSensors);
+        sensorPositions[sensorId] = sensorPosition;
+
+        int[] heightAxes = Arrays.copyOf(oldRules.heightAxes, numberOfSensors);
+        double[] heightLimits = Arrays.copyOf(oldRules.heightLimits, numberOfSensors);
+        heightAxes[sensorId] = heightAxisBySensor.getOrDefault(sensorPosition, noHeightCheck);
+        heightLimits[sensorId] = heightLimitBySensor.getOrDefault(sensorPosition, Double.POSITIVE_INFINITY);
+
+        double[][] maximumDistances = new double[numberOfSensors][];
+        for (int a = 0; a < numberOfSensors; a++) {
+            maximumDistances[a] = new double[numberOfSensors];
+            for (int b = 0; b < numberOfSensors; b++) {
+                if (a < sensorId && b < sensorId) {
+                    maximumDistances[a][b] = oldRules.maximumDistances[a][b];
+                } else {
+                    maximumDistances[a][b] = getMaximumDistance(sensorPositions[a], sensorPositions[b]);
+                }
+            }
+        }
+
+        heightRejections = Arrays.copyOf(heightRejections, numberOfSensors);
+        long[][] newDistanceRejections = new long[numberOfSensors][numberOfSensors];
+        for (int a = 0; a < sensorId; a++) {
+            System.arraycopy(distanceRejections[a], 0, newDistanceRejections[a], 0, sensorId);
+        }
+        distanceRejections = newDistanceRejections;
+
+        plausibilityRules = new PlausibilityRules(sensorPositions, heightAxes, heightLimits, maximumDistances);
+        idBySensorPosition.put(sensorPosition, sensorId);
+        return sensorId;
+    }
+
+    /**
+     * Count a frame rejected by the height rule of the given sensor
+     *
+     * @param sensorId
+     */
+    static synchronized void countHeightRejection(int sensorId) {
+        heightRejections[sensorId]++;
+    }
+
+    /**
+     * Count a frame rejected by the distance rule of the given sensor pair
+     *
+     * @param sensorIdA
+     * @param sensorIdB
+     */
+    static synchronized void countDistanceRejection(int sensorIdA, int sensorIdB) {
+        distanceRejections[Math.min(sensorIdA, sensorIdB)][Math.max(sensorIdA, sensorIdB)]++;
+    }
+
+    /**
+     * A summary of all rules that rejected frames so far, one rule per line
+     * <p>
+     * Only covers recordings that were parsed during this run, recordings read from the FrameDataCache
+     * were checked when they were first parsed
+     *
+     * @return
+     */
+    public static synchronized ArrayList<String> getRejectionSummary() {
+
+        PlausibilityRules rules = plausibilityRules;
+        ArrayList<String> summary = new ArrayList<>();
+
+        for (int sensorId = 0; sensorId < heightRejections.length; sensorId++) {
+            if (heightRejections[sensorId] > 0) {
+                summary.add("height of " + rules.sensorPositions[sensorId]
+                        + " above " + rules.heightLimits[sensorId] + ":   " + heightRejections[sensorId]);
+            }
+        }
+
+        for (int a = 0; a < distanceRejections.length; a++) {
+            for (int b = a + 1; b < distanceRejections.length; b++) {
+                if (distanceRejections[a][b] > 0) {
+                    summary.add("distance between " + rules.sensorPositions[a] + " and " + rules.sensorPositions[b]
+                            + " above " + rules.maximumDistances[a][b] + ":   " + distanceRejections[a][b]);
+                }
+            }
+        }
+
+        return summary;
+    }
+
+    /**
+     * The maximum plausible distance between the given sensors
+     *
+     * @param sensorPositionA
+     * @param sensorPositionB
+     * @return
+     */
+    private static double getMaximumDistance(String sensorPositionA, String sensorPositionB) {
+        Double distanceLimit = distanceLimitBySensorPair.get(getPairKey(sensorPositionA, sensorPositionB));
+        if (distanceLimit == null) {
+            return overallMaximumDistance;
+        } else {
+            return Math.min(distanceLimit, overallMaximumDistance);
+        }
+    }
+
+    /**
+     * Define the height limit for the given sensors
+     *
+     * @param heightAxis
+     * @param heightLimit
+     * @param sensorPositions
+     */
+    private static void addHeightLimit(int heightAxis, double heightLimit, String... sensorPositions) {
+        for (String sensorPosition : sensorPositions) {
+            heightAxisBySensor.put(sensorPosition, heightAxis);
+            heightLimitBySensor.put(sensorPosition, heightLimit);
+        }
+    }
+
+    /**
+     * Define the distance limit for the given sensor pair, which applies in both directions
+     *
+     * @param sensorPositionA
+     * @param sensorPositionB
+     * @param distanceLimit
+     */
+    private static void addDistanceLimit(String sensorPositionA, String sensorPositionB, double distanceLimit) {
+        distanceLimitBySensorPair.put(getPairKey(sensorPositionA, sensorPositionB), distanceLimit);
+    }
+
+    /**
+     * The key for the given sensor pair, independent of their order
+     *
+     * @param sensorPositionA
+     * @param sensorPositionB
+     * @return
+     */
+    private static String getPairKey(String sensorPositionA, String sensorPositionB) {
+        if (sensorPositionA.compareTo(sensorPositionB) <= 0) {
+            return sensorPositionA + " " + sensorPositionB;
+        } else {
+            return sensorPositionB + " " + sensorPositionA;
+        }
+    }
+}
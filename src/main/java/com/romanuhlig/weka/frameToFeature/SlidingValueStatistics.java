@@ -0,0 +1,472 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.math.OrderStatistics;
+
+import java.util.Arrays;
+
+/**
+ * The statistics of a single data series within a window that slides over a recording
+ * <p>
+ * Moving to the next window only adds the frames that enter it, and removes the frames that leave it:
+ * <ul>
+ * <li>the time-weighted sum is kept as a compensated running sum</li>
+ * <li>mean and variance are kept with Welford's algorithm, which also supports removing values
+ * (if the rounding errors left by removed values come close to the remaining variance, it is recomputed
+ * from the values of the window, and constant windows do not deviate at all)</li>
+ * <li>all values of the covered frames are ranked once, and Fenwick trees over the ranks hold the count and sum
+ * of the values within the window, which yields percentiles, minimum and maximum by rank,
+ * and the mean absolute deviation from the sums below and above the mean</li>
+ * </ul>
+ * Only the mean crossing rate depends on the order of the values, and is recomputed from the frames of the window
+ * whenever it is requested, using the mean summed in the same order as StatisticalValueCollector.
+ * <p>
+ * Percentiles, minimum, maximum, range, interquartile range and mean crossing rate
+ * are identical to StatisticalValueCollector.
+ * The other statistics may differ by rounding, within the tolerance given by SlidingWindowFeatureExtractor
+ * (checked by SlidingWindowBenchmark).
+ *
+ * @author Roman Uhlig
+ */
+class SlidingValueStatistics implements WindowStatistics {
+
+    // the series and the frame durations used to weight it, with index 0 at the first covered frame
+    private final double[] values;
+    private final double[] frameDurations;
+    private final int firstCoveredFrame;
+
+    private final boolean scaleRunningSumByFrameDuration;
+    private final boolean scaleValuesByBodySize;
+
+    // rank of each covered frame, and the value for each rank, in the order of Double.compare
+    private final int[] rankOfFrame;
+    private final double[] valueOfRank;
+
+    // Fenwick trees over the ranks, 1-based, holding the count and sum of the values within the window
+    private final int[] countTree;
+    private final double[] sumTree;
+    private final int highestPowerOfTwo;
+
+    // the current window, as frame indices within the recording
+    private int windowStart = 0;
+    private int windowEnd = 0;
+
+    // settings for the current window
+    private double totalTimeForAllFrames = 0;
+    private double bodySize = 1;
+
+    // sums of squared differences below this multiple of their possible rounding error are recomputed,
+    // large enough for a standard deviation within SlidingWindowFeatureExtractor.relativeTolerance
+    private static final double recomputationThreshold = 1e9;
+
+    // running sum (with compensation for lost low-order bits), mean and sum of squared differences from the mean
+    private int numberOfValues = 0;
+    private double runningSum = 0;
+    private double runningSumCompensation = 0;
+    private double mean = 0;
+    private double sumOfSquaredDifferences = 0;
+    // rounding error the sum of squared differences may have gathered since it was last computed exactly
+    private double possibleRoundingError = 0;
+
+    /**
+     * Prepare the statistics for the given series, which covers all frames any window may include
+     *
+     * @param values                         the value of each covered frame
+     * @param frameDurations                 the frame duration of each covered frame
+     * @param firstCoveredFrame              frame index of the first covered frame within the recording
+     * @param scaleRunningSumByFrameDuration
+     * @param scaleValuesByBodySize
+     */
+    SlidingValueStatistics(double[] values, double[] frameDurations, int firstCoveredFrame,
+                           boolean scaleRunningSumByFrameDuration, boolean scaleValuesByBodySize) {
+
+        this.values = values;
+        this.frameDurations = frameDurations;
+        this.firstCoveredFrame = firstCoveredFrame;
+        this.scaleRunningSumByFrameDuration = scaleRunningSumByFrameDuration;
+        this.scaleValuesByBodySize = scaleValuesByBodySize;
+
+        // rank all values, equal values receive consecutive ranks
+        int n = values.length;
+        long[] sortedKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortedKeys[i] = OrderStatistics.toSortableKey(values[i]);
+        }
+        Arrays.sort(sortedKeys);
+        valueOfRank = new double[n];
+        for (int r = 0; r < n; r++) {
+            valueOfRank[r] = OrderStatistics.fromSortableKey(sortedKeys[r]);
+        }
+        rankOfFrame = new int[n];
+        int[] ranksTakenForKey = new int[n];
+        for (int i = 0; i < n; i++) {
+            int firstRank = lowerBound(sortedKeys, OrderStatistics.toSortableKey(values[i]));
+            rankOfFrame[i] = firstRank + ranksTakenForKey[firstRank]++;
+        }
+
+        countTree = new int[n + 1];
+        sumTree = new double[n + 1];
+        highestPowerOfTwo = n == 0 ? 0 : Integer.highestOneBit(n);
+    }
+
+    /**
+     * Move the window to the given frames, adding and removing only the frames that differ from the current window
+     *
+     * @param start                 first frame of the window within the recording
+     * @param end                   frame after the last frame of the window within the recording
+     * @param totalTimeForAllFrames
+     * @param bodySize
+     */
+    void moveTo(int start, int end, double totalTimeForAllFrames, double bodySize) {
+
+        this.totalTimeForAllFrames = totalTimeForAllFrames;
+        this.bodySize = bodySize;
+
+        if (start >= windowEnd || end <= windowStart) {
+            // no overlap, start over to avoid carrying rounding errors into an unrelated window
+            clear();
+            for (int i = start; i < end; i++) {
+                add(i);
+            }
+        } else {
+            // add first, so that the window never becomes empty in between
+            for (int i = start; i < windowStart; i++) {
+                add(i);
+            }
+            for (int i = windowEnd; i < end; i++) {
+                add(i);
+            }
+            for (int i = windowStart; i < start; i++) {
+                remove(i);
+            }
+            for (int i = end; i < windowEnd; i++) {
+                remove(i);
+            }
+        }
+
+        windowStart = start;
+        windowEnd = end;
+    }
+
+    /**
+     * Remove all values
+     */
+    private void clear() {
+        Arrays.fill(countTree, 0);
+        Arrays.fill(sumTree, 0);
+        numberOfValues = 0;
+        runningSum = 0;
+        runningSumCompensation = 0;
+        mean = 0;
+        sumOfSquaredDifferences = 0;
+        possibleRoundingError = 0;
+    }
+
+    /**
+     * Add the value of the given frame to the window
+     *
+     * @param frame
+     */
+    private void add(int frame) {
+        int index = frame - firstCoveredFrame;
+        double value = values[index];
+
+        updateTrees(rankOfFrame[index], 1, value);
+        addToRunningSum(scaleRunningSumByFrameDuration ? value * frameDurations[index] : value);
+
+        numberOfValues++;
+        double difference = value - mean;
+        mean += difference / numberOfValues;
+        sumOfSquaredDifferences += difference * (value - mean);
+        possibleRoundingError += Math.ulp(sumOfSquaredDifferences) + Math.ulp(difference * difference);
+    }
+
+    /**
+     * Remove the value of the given frame from the window
+     *
+     * @param frame
+     */
+    private void remove(int frame) {
+        int index = frame - firstCoveredFrame;
+        double value = values[index];
+
+        updateTrees(rankOfFrame[index], -1, -value);
+        addToRunningSum(-(scaleRunningSumByFrameDuration ? value * frameDurations[index] : value));
+
+        numberOfValues--;
+        if (numberOfValues == 0) {
+            mean = 0;
+            sumOfSquaredDifferences = 0;
+        } else {
+            double previousMean = mean;
+            mean -= (value - mean) / numberOfValues;
+            double change = (value - previousMean) * (value - mean);
+            // the rounding error depends on the sum before removing the value, which may be far larger than after
+            possibleRoundingError += Math.ulp(sumOfSquaredDifferences) + Math.ulp(change);
+            sumOfSquaredDifferences -= change;
+            // rounding may push the sum slightly below zero for (nearly) constant values
+            if (sumOfSquaredDifferences < 0) {
+                sumOfSquaredDifferences = 0;
+            }
+        }
+    }
+
+    /**
+     * Add the given value to the running sum, keeping track of the low-order bits lost in the process
+     *
+     * @param value
+     */
+    private void addToRunningSum(double value) {
+        double sum = runningSum + value;
+        if (Math.abs(runningSum) >= Math.abs(value)) {
+            runningSumCompensation += (runningSum - sum) + value;
+        } else {
+            runningSumCompensation += (value - sum) + runningSum;
+        }
+        runningSum = sum;
+    }
+
+    /**
+     * Change the count and sum stored for the given rank
+     *
+     * @param rank
+     * @param countChange
+     * @param sumChange
+     */
+    private void updateTrees(int rank, int countChange, double sumChange) {
+        for (int i = rank + 1; i < countTree.length; i += i & -i) {
+            countTree[i] += countChange;
+            sumTree[i] += sumChange;
+        }
+    }
+
+    /**
+     * The number of values within the window with a rank below the given one
+     *
+     * @param rank
+     * @return
+     */
+    private int countBelowRank(int rank) {
+        int count = 0;
+        for (int i = rank; i > 0; i -= i & -i) {
+            count += countTree[i];
+        }
+        return count;
+    }
+
+    /**
+     * The sum of the values within the window with a rank below the given one
+     *
+     * @param rank
+     * @return
+     */
+    private double sumBelowRank(int rank) {
+        double sum = 0;
+        for (int i = rank; i > 0; i -= i & -i) {
+            sum += sumTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * The value that would be at the given index, if the values within the window were sorted
+     *
+     * @param index
+     * @return
+     */
+    private double getValueAtSortedIndex(int index) {
+        if (numberOfValues == 0) {
+            throw new IllegalStateException("no values within the window");
+        }
+        // descend the tree, skipping every subtree that holds no more than the remaining number of values
+        int position = 0;
+        int remaining = index;
+        for (int step = highestPowerOfTwo; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < countTree.length && countTree[next] <= remaining) {
+                position = next;
+                remaining -= countTree[next];
+            }
+        }
+        return valueOfRank[position];
+    }
+
+    /**
+     * The first index within the sorted keys that holds a key not smaller than the given one
+     *
+     * @param sortedKeys
+     * @param key
+     * @return
+     */
+    private static int lowerBound(long[] sortedKeys, long key) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedKeys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The first rank with a value not smaller than the given one
+     *
+     * @param value
+     * @return
+     */
+    private int firstRankNotBelow(double value) {
+        int low = 0;
+        int high = valueOfRank.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Double.compare(valueOfRank[middle], value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Scale the value by body size if requested, or return it unchanged if not
+     *
+     * @param value
+     * @return
+     */
+    private double potentiallyScaledValue(double value) {
+        if (scaleValuesByBodySize) {
+            return value / bodySize;
+        } else {
+            return value;
+        }
+    }
+
+    @Override
+    public double getMeanScaledByTime() {
+        return potentiallyScaledValue((runningSum + runningSumCompensation) / totalTimeForAllFrames);
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        // the values of a constant window do not deviate at all, while adding and removing them leaves rounding errors
+        if (isConstant()) {
+            return potentiallyScaledValue(0);
+        }
+        // values that were added and removed again may have left rounding errors in the order of the sum
+        // at that time, if the remaining sum is not much larger than those, it is recomputed from the window
+        if (sumOfSquaredDifferences < possibleRoundingError * recomputationThreshold) {
+            recomputeSumOfSquaredDifferences();
+        }
+        return potentiallyScaledValue(Math.sqrt(sumOfSquaredDifferences / (numberOfValues - 1)));
+    }
+
+    /**
+     * Whether all values within the window are the same
+     *
+     * @return
+     */
+    private boolean isConstant() {
+        return getValueAtSortedIndex(0) == getValueAtSortedIndex(numberOfValues - 1);
+    }
+
+    /**
+     * Compute mean and sum of squared differences from the values of the window, with two passes over them
+     */
+    private void recomputeSumOfSquaredDifferences() {
+        int first = windowStart - firstCoveredFrame;
+        int end = windowEnd - firstCoveredFrame;
+
+        double sum = 0;
+        for (int i = first; i < end; i++) {
+            sum += values[i];
+        }
+        mean = sum / numberOfValues;
+
+        sumOfSquaredDifferences = 0;
+        for (int i = first; i < end; i++) {
+            double difference = values[i] - mean;
+            sumOfSquaredDifferences += difference * difference;
+        }
+        possibleRoundingError = 0;
+    }
+
+    @Override
+    public double getMeanAbsoluteDeviation() {
+        if (isConstant()) {
+            return potentiallyScaledValue(0);
+        }
+        // values below the mean contribute (mean - value), all others (value - mean)
+        int rankOfMean = firstRankNotBelow(mean);
+        int countBelow = countBelowRank(rankOfMean);
+        double sumBelow = sumBelowRank(rankOfMean);
+        double sumAll = sumBelowRank(valueOfRank.length);
+        double meanAbsoluteDeviation = (mean * countBelow - sumBelow)
+                + (sumAll - sumBelow - mean * (numberOfValues - countBelow));
+        return potentiallyScaledValue(meanAbsoluteDeviation / numberOfValues);
+    }
+
+    @Override
+    public double sort_getInterquartileRange() {
+        double quartile1 = getValueAtSortedIndex((int) ((numberOfValues - 1) * 0.25));
+        double quartile3 = getValueAtSortedIndex((int) ((numberOfValues - 1) * 0.75));
+        return potentiallyScaledValue(quartile3 - quartile1);
+    }
+
+    @Override
+    public double sort_getMax() {
+        return potentiallyScaledValue(getValueAtSortedIndex(numberOfValues - 1));
+    }
+
+    @Override
+    public double sort_getMin() {
+        if (numberOfValues == 0) return 0;
+        return potentiallyScaledValue(getValueAtSortedIndex(0));
+    }
+
+    @Override
+    public double sort_getRange() {
+        double min = getValueAtSortedIndex(0);
+        double max = getValueAtSortedIndex(numberOfValues - 1);
+        return potentiallyScaledValue(Math.abs(max - min));
+    }
+
+    @Override
+    public double sort_getMeanCrossingRate() {
+
+        int first = windowStart - firstCoveredFrame;
+        int end = windowEnd - firstCoveredFrame;
+
+        // whether a value lies above or below the mean is sensitive to the last bit of the mean,
+        // so it is summed exactly like the batch computation does, instead of using the running mean
+        double unscaledMean = 0;
+        for (int i = first; i < end; i++) {
+            unscaledMean += values[i];
+        }
+        unscaledMean /= numberOfValues;
+
+        // count instances where current and previous value are on opposite sides of mean
+        double crossingRate = 0;
+        for (int i = first + 1; i < end; i++) {
+            double previousValue = values[i - 1];
+            double currentValue = values[i];
+
+            if (previousValue < unscaledMean && currentValue > unscaledMean
+                    || previousValue > unscaledMean && currentValue < unscaledMean) {
+                crossingRate++;
+            }
+        }
+
+        crossingRate /= (numberOfValues - 1);
+        return crossingRate;
+    }
+
+    @Override
+    public double sort_getPercentile(double percentile) {
+        int index = (int) ((numberOfValues - 1) * percentile);
+        return potentiallyScaledValue(getValueAtSortedIndex(index));
+    }
+}
@@ -0,0 +1,357 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import com.romanuhlig.weka.math.MathHelper;
+import com.romanuhlig.weka.math.PointSetRange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the features of overlapping windows of the same recording,
+ * by moving the statistics of each data series from one window to the next instead of recomputing them
+ * <p>
+ * The windows need to be views of the same FrameDataSet (e.g. from separateFrameDataIntoValidWindows),
+ * ordered by their first frame. The resulting features are in the same order and layout as those of
+ * FeatureExtractor.getFeaturesForFrameDataSet. Percentiles, minimum, maximum, range, interquartile range and
+ * mean crossing rate are identical, while mean, standard deviation and mean absolute deviation
+ * may differ by rounding: by at most the given tolerance, relative to the largest magnitude
+ * of the values (after scaling) within the window.
+ *
+ * @author Roman Uhlig
+ */
+public class SlidingWindowFeatureExtractor {
+
+    // the largest expected difference to the batch computation, relative to the magnitude of the values
+    public static final double relativeTolerance = 1e-9;
+
+    /**
+     * DO NOT USE, only static methods
+     */
+    private SlidingWindowFeatureExtractor() {
+    }
+
+    /**
+     * Calculate the features for the given windows of a single recording
+     *
+     * @param windows views of the same FrameDataSet, ordered by their first frame
+     * @return one feature vector per window, in the order of the windows
+     */
+    public static ArrayList<FeatureVector> getFeaturesForWindows(List<FrameDataSet> windows) {
+        if (windows.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getFeaturesForWindows(windows, FeaturePlan.forFrameDataSet(windows.get(0)));
+    }
+
+    /**
+     * Calculate the planned features for the given windows of a single recording
+     *
+     * @param windows     views of the same FrameDataSet, ordered by their first frame
+     * @param featurePlan
+     * @return one feature vector per window, in the order of the windows
+     */
+    static ArrayList<FeatureVector> getFeaturesForWindows(List<FrameDataSet> windows, FeaturePlan featurePlan) {
+
+        ArrayList<FeatureVector> featureVectors = new ArrayList<>(windows.size());
+        if (windows.isEmpty()) {
+            return featureVectors;
+        }
+
+        ArrayList<SensorColumns> allSensorColumns = windows.get(0).getAllSensorColumns();
+
+        // the frames covered by any of the windows
+        int firstCoveredFrame = Integer.MAX_VALUE;
+        int endOfCoveredFrames = 0;
+        for (FrameDataSet window : windows) {
+            firstCoveredFrame = Math.min(firstCoveredFrame, window.getFirstFrameIndex());
+            for (SensorColumns sensorColumns : allSensorColumns) {
+                endOfCoveredFrames = Math.max(endOfCoveredFrames, window.getEndFrameIndex(sensorColumns));
+            }
+        }
+
+        // prepare the statistics of every planned data series, over all covered frames
+        int[] plannedSensors = featurePlan.getPlannedSensors();
+        int numberOfSensors = plannedSensors.length;
+        SensorStatistics[] sensorStatistics = new SensorStatistics[numberOfSensors];
+        for (int s = 0; s < numberOfSensors; s++) {
+            sensorStatistics[s] = new SensorStatistics(allSensorColumns.get(plannedSensors[s]), featurePlan,
+                    firstCoveredFrame, endOfCoveredFrames);
+        }
+        PairStatistics[][] pairStatistics = new PairStatistics[numberOfSensors][numberOfSensors];
+        if (featurePlan.includesPairs()) {
+            for (int a = 0; a < numberOfSensors; a++) {
+                for (int b = a + 1; b < numberOfSensors; b++) {
+                    pairStatistics[a][b] = new PairStatistics(allSensorColumns.get(plannedSensors[a]),
+                            allSensorColumns.get(plannedSensors[b]), featurePlan,
+                            firstCoveredFrame, endOfCoveredFrames);
+                }
+            }
+        }
+
+        // move through the windows, in the same feature order as the batch computation
+        PointSetRange pointSetRange = new PointSetRange();
+        for (FrameDataSet window : windows) {
+
+            FeatureVector featureVector = new FeatureVector(window.getSubject(), window.getActivity(),
+                    featurePlan.getNumberOfFeatures());
+            int firstFrameIndex = window.getFirstFrameIndex();
+
+            for (int s = 0; s < numberOfSensors; s++) {
+                SensorColumns sensorColumns = allSensorColumns.get(plannedSensors[s]);
+                int endFrameIndex = window.getEndFrameIndex(sensorColumns);
+                SensorStatistics statistics = sensorStatistics[s];
+                double bodySize = sensorColumns.getScale();
+                statistics.moveTo(firstFrameIndex, endFrameIndex,
+                        getOverallTimePassed(sensorColumns, firstFrameIndex, endFrameIndex), bodySize);
+
+                // the range depends on all positions of the window at once, so it is not moved along
+                double rangeXYZ = 0;
+                if (featurePlan.isRangeXYZPlanned()) {
+                    rangeXYZ = pointSetRange.getRangeXYZ(sensorColumns.getPosX(), sensorColumns.getPosY(),
+                            sensorColumns.getPosZ(), firstFrameIndex, endFrameIndex) / bodySize;
+                }
+                FeatureExtractor.addSingleSensorFeatures(featureVector, featurePlan, statistics.channels, rangeXYZ);
+            }
+
+            if (featurePlan.includesPairs()) {
+                for (int a = 0; a < numberOfSensors; a++) {
+                    SensorColumns sensorColumnsA = allSensorColumns.get(plannedSensors[a]);
+                    int endFrameIndex = window.getEndFrameIndex(sensorColumnsA);
+                    for (int b = a + 1; b < numberOfSensors; b++) {
+                        PairStatistics statistics = pairStatistics[a][b];
+                        // like the batch computation, the pair uses the timing and body size of the first sensor
+                        statistics.moveTo(firstFrameIndex, endFrameIndex,
+                                getOverallTimePassed(sensorColumnsA, firstFrameIndex, endFrameIndex),
+                                sensorColumnsA.getScale());
+                        FeatureExtractor.addDualSensorFeatures(featureVector, featurePlan, statistics.series);
+                    }
+                }
+            }
+
+            featureVectors.add(featureVector);
+        }
+
+        return featureVectors;
+    }
+
+    /**
+     * The time between the first and last frame of the window, for the given sensor
+     *
+     * @param sensorColumns
+     * @param firstFrameIndex
+     * @param endFrameIndex
+     * @return
+     */
+    private static double getOverallTimePassed(SensorColumns sensorColumns, int firstFrameIndex, int endFrameIndex) {
+        return sensorColumns.getTime()[endFrameIndex - 1] - sensorColumns.getTime()[firstFrameIndex];
+    }
+
+    /**
+     * Copy the given range of a column, or an empty series if the column is not available
+     *
+     * @param column
+     * @param start
+     * @param end
+     * @return
+     */
+    private static double[] getRange(double[] column, int start, int end) {
+        double[] range = new double[end - start];
+        if (column != null) {
+            System.arraycopy(column, start, range, 0, end - start);
+        }
+        return range;
+    }
+
+    /**
+     * The sliding statistics of all planned single-sensor data series of a sensor
+     */
+    private static class SensorStatistics {
+
+        // indexed like the channels of the FeaturePlan, null if the channel is not planned
+        // (or if the derived channels are not available)
+        final SlidingValueStatistics[] channels = new SlidingValueStatistics[FeaturePlan.numberOfSensorChannels];
+
+        SensorStatistics(SensorColumns sensorColumns, FeaturePlan featurePlan, int start, int end) {
+
+            double[] frameDuration = getRange(sensorColumns.getFrameDuration(), start, end);
+
+            for (int channel : featurePlan.getSensorChannels()) {
+                double[] values = getValues(sensorColumns, channel, start, end);
+                if (values != null) {
+                    // velocity and acceleration are not scaled by body size
+                    channels[channel] = new SlidingValueStatistics(values, frameDuration, start, true,
+                            channel < FeaturePlan.velocityXYZ);
+                }
+            }
+        }
+
+        /**
+         * The values of the given channel for each frame in the given range,
+         * or null if the derived channels are not available
+         *
+         * @param sensorColumns
+         * @param channel
+         * @param start
+         * @param end
+         * @return
+         */
+        private static double[] getValues(SensorColumns sensorColumns, int channel, int start, int end) {
+            switch (channel) {
+                case FeaturePlan.positionX:
+                    return getRange(sensorColumns.getPosX(), start, end);
+                case FeaturePlan.positionY:
+                    return getRange(sensorColumns.getPosY(), start, end);
+                case FeaturePlan.positionZ:
+                    return getRange(sensorColumns.getPosZ(), start, end);
+                case FeaturePlan.rotationX:
+                    return getRange(sensorColumns.getRotX(), start, end);
+                case FeaturePlan.rotationY:
+                    return getRange(sensorColumns.getRotY(), start, end);
+                case FeaturePlan.rotationZ:
+                    return getRange(sensorColumns.getRotZ(), start, end);
+                case FeaturePlan.rotationW:
+                    return getRange(sensorColumns.getRotW(), start, end);
+                case FeaturePlan.velocityXYZ:
+                    if (sensorColumns.getLinVelX() == null) {
+                        return null;
+                    }
+                    return getNorms(sensorColumns.getLinVelX(), sensorColumns.getLinVelY(),
+                            sensorColumns.getLinVelZ(), start, end);
+                case FeaturePlan.accelerationXYZ:
+                    if (sensorColumns.getLinAccelerationX() == null) {
+                        return null;
+                    }
+                    return getNorms(sensorColumns.getLinAccelerationX(), sensorColumns.getLinAccelerationY(),
+                            sensorColumns.getLinAccelerationZ(), start, end);
+                default:
+                    throw new IllegalArgumentException("unknown channel " + channel);
+            }
+        }
+
+        /**
+         * The euclidean norm of the given columns for each frame in the given range
+         *
+         * @param x
+         * @param y
+         * @param z
+         * @param start
+         * @param end
+         * @return
+         */
+        private static double[] getNorms(double[] x, double[] y, double[] z, int start, int end) {
+            double[] norms = new double[end - start];
+            for (int i = start; i < end; i++) {
+                norms[i - start] = MathHelper.EuclideanNorm(x[i], y[i], z[i]);
+            }
+            return norms;
+        }
+
+        /**
+         * Move all statistics to the given frame range
+         *
+         * @param start             first frame of the window
+         * @param end               frame after the last frame of the window
+         * @param overallTimePassed
+         * @param bodySize
+         */
+        void moveTo(int start, int end, double overallTimePassed, double bodySize) {
+            moveAllTo(channels, start, end, overallTimePassed, bodySize);
+        }
+    }
+
+    /**
+     * The sliding statistics of all planned dual-sensor data series of a pair of sensors
+     */
+    private static class PairStatistics {
+
+        // indexed like the pair series of the FeaturePlan, null if the series is not planned
+        // (or if the derived channels are not available)
+        final SlidingValueStatistics[] series = new SlidingValueStatistics[FeaturePlan.numberOfPairSeries];
+
+        PairStatistics(SensorColumns sensorA, SensorColumns sensorB, FeaturePlan featurePlan, int start, int end) {
+
+            int length = end - start;
+            double[] frameDuration = getRange(sensorA.getFrameDuration(), start, end);
+
+            if (featurePlan.isPairSeriesPlanned(FeaturePlan.distanceX)) {
+                double[] posXA = sensorA.getPosX();
+                double[] posYA = sensorA.getPosY();
+                double[] posZA = sensorA.getPosZ();
+                double[] posXB = sensorB.getPosX();
+                double[] posYB = sensorB.getPosY();
+                double[] posZB = sensorB.getPosZ();
+
+                // the same formulas as the batch computation
+                double[] valuesX = new double[length];
+                double[] valuesY = new double[length];
+                double[] valuesZ = new double[length];
+                double[] valuesXYZ = new double[length];
+                for (int i = start; i < end; i++) {
+                    valuesX[i - start] = MathHelper.distance(posXA[i], posXB[i]);
+                    valuesY[i - start] = MathHelper.distance(posYA[i], posYB[i]);
+                    valuesZ[i - start] = MathHelper.distance(posZA[i], posZB[i]);
+                    valuesXYZ[i - start] = MathHelper.distance(
+                            posXA[i], posYA[i], posZA[i],
+                            posXB[i], posYB[i], posZB[i]);
+                }
+
+                series[FeaturePlan.distanceX] =
+                        new SlidingValueStatistics(valuesX, frameDuration, start, true, true);
+                series[FeaturePlan.distanceY] =
+                        new SlidingValueStatistics(valuesY, frameDuration, start, true, true);
+                series[FeaturePlan.distanceZ] =
+                        new SlidingValueStatistics(valuesZ, frameDuration, start, true, true);
+                series[FeaturePlan.distanceXYZ] =
+                        new SlidingValueStatistics(valuesXYZ, frameDuration, start, true, true);
+            }
+
+            if (featurePlan.isPairSeriesPlanned(FeaturePlan.differenceVelocityXYZ)
+                    && sensorA.getLinVelX() != null && sensorB.getLinVelX() != null) {
+                double[] linVelXA = sensorA.getLinVelX();
+                double[] linVelYA = sensorA.getLinVelY();
+                double[] linVelZA = sensorA.getLinVelZ();
+                double[] linVelXB = sensorB.getLinVelX();
+                double[] linVelYB = sensorB.getLinVelY();
+                double[] linVelZB = sensorB.getLinVelZ();
+                double[] differences = new double[length];
+                for (int i = start; i < end; i++) {
+                    double velocityXYZa = MathHelper.EuclideanNorm(linVelXA[i], linVelYA[i], linVelZA[i]);
+                    double velocityXYZb = MathHelper.EuclideanNorm(linVelXB[i], linVelYB[i], linVelZB[i]);
+                    differences[i - start] = Math.abs(velocityXYZa - velocityXYZb);
+                }
+                series[FeaturePlan.differenceVelocityXYZ] =
+                        new SlidingValueStatistics(differences, frameDuration, start, true, false);
+            }
+        }
+
+        /**
+         * Move all statistics to the given frame range
+         *
+         * @param start             first frame of the window
+         * @param end               frame after the last frame of the window
+         * @param overallTimePassed
+         * @param bodySize
+         */
+        void moveTo(int start, int end, double overallTimePassed, double bodySize) {
+            moveAllTo(series, start, end, overallTimePassed, bodySize);
+        }
+    }
+
+    /**
+     * Move all available statistics to the given frame range
+     *
+     * @param statistics        null entries are skipped
+     * @param start             first frame of the window
+     * @param end               frame after the last frame of the window
+     * @param overallTimePassed
+     * @param bodySize
+     */
+    private static void moveAllTo(SlidingValueStatistics[] statistics, int start, int end,
+                                  double overallTimePassed, double bodySize) {
+        for (SlidingValueStatistics singleStatistics : statistics) {
+            if (singleStatistics != null) {
+                singleStatistics.moveTo(start, end, overallTimePassed, bodySize);
+            }
+        }
+    }
+}
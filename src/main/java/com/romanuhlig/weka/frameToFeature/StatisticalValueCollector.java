@@ -1,23 +1,46 @@
 package com.romanuhlig.weka.frameToFeature;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import com.romanuhlig.weka.math.OrderStatistics;
+
+import java.util.Arrays;
 
 /**
  * Collects data series and computes statistics for the collected data
+ * <p>
+ * Values are kept in primitive arrays, which are only replaced if they run out of space.
+ * A collector can be reset and reused for the next data series, without creating any further garbage.
+ * <p>
+ * The order statistics (methods starting with "sort_") do not sort the values.
+ * Minimum and maximum are tracked while values are added, and percentiles are found by selection,
+ * with results identical to those of a full sort.
  *
  * @author Roman Uhlig
  */
-public class StatisticalValueCollector {
+public class StatisticalValueCollector implements WindowStatistics {
+
+    // initial capacity if the number of values is not known in advance
+    private static final int defaultCapacity = 16;
+
+    // the collected values in the order they were added, followed by unused capacity
+    private double[] values;
+    private int numberOfValues = 0;
+
+    // minimum and maximum of the collected values, in the order of Double.compare
+    private double minimum = 0;
+    private double maximum = 0;
 
+    // the collected values as sortable keys, partially ordered by previous selections, only created when needed
+    private long[] selectionKeys;
+    private boolean selectionKeysWereCreated = false;
 
-    private final ArrayList<Double> values = new ArrayList<>();
-    private ArrayList<Double> sortedValues = new ArrayList<>();
-    private boolean sortedValuesWereCreated = false;
+    // indices within the selection keys that already hold their sorted value, in ascending order
+    private static final int maximumNumberOfSelectedIndices = 8;
+    private final int[] selectedIndices = new int[maximumNumberOfSelectedIndices];
+    private int numberOfSelectedIndices = 0;
 
-    private final double bodySize;
+    private double bodySize;
     private final boolean scaleValuesByBodySize;
-    private final double totalTimeForAllFrames;
+    private double totalTimeForAllFrames;
 
     // the sum of all collected values, and whether each individual added value should be scaled
     // by the body size when it is being added (only for the running sum)
@@ -33,29 +56,62 @@ public class StatisticalValueCollector {
     private boolean varianceComputed = false;
 
     /**
-     * Simple Comparator for the ordering of collected values by size
+     * Creates an empty Value Collector with the given settings
+     *
+     * @param scaleRunningSumByFrameDuration
+     * @param scaleValuesByBodySize
+     * @param totalTimeForAllFrames
+     * @param bodySize
      */
-    private final static Comparator<Double> valueComparator = new Comparator<Double>() {
-        @Override
-        public int compare(Double o1, Double o2) {
-            return o1.compareTo(o2);
-        }
-    };
+    public StatisticalValueCollector(boolean scaleRunningSumByFrameDuration, boolean scaleValuesByBodySize,
+                                     double totalTimeForAllFrames, double bodySize) {
+        this(scaleRunningSumByFrameDuration, scaleValuesByBodySize, totalTimeForAllFrames, bodySize,
+                defaultCapacity);
+    }
 
     /**
-     * Creates an empty Value Collector with the given settings
+     * Creates an empty Value Collector with the given settings, with room for the expected number of values
      *
      * @param scaleRunningSumByFrameDuration
      * @param scaleValuesByBodySize
      * @param totalTimeForAllFrames
      * @param bodySize
+     * @param expectedNumberOfValues
      */
     public StatisticalValueCollector(boolean scaleRunningSumByFrameDuration, boolean scaleValuesByBodySize,
-                                     double totalTimeForAllFrames, double bodySize) {
+                                     double totalTimeForAllFrames, double bodySize, int expectedNumberOfValues) {
         this.scaleRunningSumByFrameDuration = scaleRunningSumByFrameDuration;
         this.totalTimeForAllFrames = totalTimeForAllFrames;
         this.scaleValuesByBodySize = scaleValuesByBodySize;
         this.bodySize = bodySize;
+        int capacity = Math.max(expectedNumberOfValues, 1);
+        this.values = new double[capacity];
+        this.selectionKeys = new long[capacity];
+    }
+
+    /**
+     * Remove all collected values, and prepare for a new data series with the given total time and body size
+     * <p>
+     * The arrays are kept, and only grow if they cannot hold the expected number of values
+     *
+     * @param totalTimeForAllFrames
+     * @param bodySize
+     * @param expectedNumberOfValues
+     */
+    public void reset(double totalTimeForAllFrames, double bodySize, int expectedNumberOfValues) {
+        this.totalTimeForAllFrames = totalTimeForAllFrames;
+        this.bodySize = bodySize;
+        if (expectedNumberOfValues > values.length) {
+            values = new double[expectedNumberOfValues];
+            selectionKeys = new long[expectedNumberOfValues];
+        }
+        numberOfValues = 0;
+        minimum = 0;
+        maximum = 0;
+        runningSum = 0;
+        selectionKeysWereCreated = false;
+        unscaledMeanComputed = false;
+        varianceComputed = false;
     }
 
     /**
@@ -68,7 +124,20 @@ public class StatisticalValueCollector {
      */
     public void addValue(double value, double frameDuration) {
 
-        values.add(value);
+        if (numberOfValues == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[numberOfValues++] = value;
+
+        // keep track of minimum and maximum, so that they never require the selection keys
+        if (numberOfValues == 1) {
+            minimum = value;
+            maximum = value;
+        } else if (Double.compare(value, minimum) < 0) {
+            minimum = value;
+        } else if (Double.compare(value, maximum) > 0) {
+            maximum = value;
+        }
 
         // if requested, scale the value by the duration of the frame
         if (scaleRunningSumByFrameDuration) {
@@ -78,20 +147,68 @@ public class StatisticalValueCollector {
         }
 
         // after a new value was added, statistics have to be recreated when needed
-        sortedValuesWereCreated = false;
+        selectionKeysWereCreated = false;
         unscaledMeanComputed = false;
         varianceComputed = false;
     }
 
     /**
-     * Create a sorted list of all collected values
+     * Create the selection keys for all collected values, if they are not up to date
+     */
+    private void createSelectionKeys() {
+        if (!selectionKeysWereCreated) {
+            if (selectionKeys.length < numberOfValues) {
+                selectionKeys = new long[values.length];
+            }
+            for (int i = 0; i < numberOfValues; i++) {
+                selectionKeys[i] = OrderStatistics.toSortableKey(values[i]);
+            }
+            numberOfSelectedIndices = 0;
+            selectionKeysWereCreated = true;
+        }
+    }
+
+    /**
+     * The value that would be at the given index, if all collected values were sorted
+     * <p>
+     * Indices selected before limit the range that has to be searched
+     *
+     * @param index
+     * @return
      */
-    private void createSortedValues() {
-        if (!sortedValuesWereCreated) {
-            sortedValues = new ArrayList<>(values);
-            sortedValues.sort(valueComparator);
-            sortedValuesWereCreated = true;
+    private double getValueAtSortedIndex(int index) {
+
+        checkNotEmpty();
+        createSelectionKeys();
+
+        // find the closest previously selected indices around the requested one
+        int from = 0;
+        int to = numberOfValues;
+        int insertAt = 0;
+        for (int i = 0; i < numberOfSelectedIndices; i++) {
+            int selectedIndex = selectedIndices[i];
+            if (selectedIndex == index) {
+                return OrderStatistics.fromSortableKey(selectionKeys[index]);
+            } else if (selectedIndex < index) {
+                from = selectedIndex + 1;
+                insertAt = i + 1;
+            } else {
+                to = selectedIndex;
+                break;
+            }
         }
+
+        OrderStatistics.select(selectionKeys, from, to, index);
+
+        // remember the selected index, unless there are already too many to be worth it
+        if (numberOfSelectedIndices < maximumNumberOfSelectedIndices) {
+            System.arraycopy(selectedIndices, insertAt, selectedIndices, insertAt + 1,
+                    numberOfSelectedIndices - insertAt);
+            selectedIndices[insertAt] = index;
+            numberOfSelectedIndices++;
+        }
+
+        return OrderStatistics.fromSortableKey(selectionKeys[index]);
     }
 
     /**
@@ -103,30 +220,46 @@ public class StatisticalValueCollector {
 
         // determine lowest value
         double lowestValue = Double.MAX_VALUE;
-        for (Double value : values) {
-            if (value < lowestValue) {
-                lowestValue = value;
+        for (int i = 0; i < numberOfValues; i++) {
+            if (values[i] < lowestValue) {
+                lowestValue = values[i];
             }
         }
 
         // adjust all values by the lowest value
-        for (int i = 0; i < values.size(); i++) {
-            values.set(i, values.get(i) - lowestValue);
+        for (int i = 0; i < numberOfValues; i++) {
+            values[i] = values[i] - lowestValue;
+        }
+
+        // all statistics have to be recreated for the adjusted values
+        if (numberOfValues > 0) {
+            minimum = values[0];
+            maximum = values[0];
+            for (int i = 1; i < numberOfValues; i++) {
+                if (Double.compare(values[i], minimum) < 0) {
+                    minimum = values[i];
+                } else if (Double.compare(values[i], maximum) > 0) {
+                    maximum = values[i];
+                }
+            }
         }
+        selectionKeysWereCreated = false;
+        unscaledMeanComputed = false;
+        varianceComputed = false;
     }
 
     /**
-     * Determine the requested percentile, after creating the sorted value list
+     * Determine the requested percentile, by selecting it from the collected values
      *
      * @param percentile
      * @return
      */
+    @Override
     public double sort_getPercentile(double percentile) {
-        createSortedValues();
 
         // determine percentile
-        int index = (int) ((sortedValues.size() - 1) * percentile);
-        double value = sortedValues.get(index);
+        int index = (int) ((numberOfValues - 1) * percentile);
+        double value = getValueAtSortedIndex(index);
         return potentiallyScaledValue(value);
     }
 
@@ -149,41 +282,51 @@ public class StatisticalValueCollector {
      *
      * @return
      */
+    @Override
     public double getMeanScaledByTime() {
         return potentiallyScaledValue(runningSum / totalTimeForAllFrames);
     }
 
     /**
-     * Get the minimum collected value, after creating the sorted value list
+     * Get the minimum collected value, tracked while adding values
      *
      * @return
      */
+    @Override
     public double sort_getMin() {
-        if (sortedValues.size() == 0) return 0;
-        createSortedValues();
-        return potentiallyScaledValue(sortedValues.get(0));
+        if (numberOfValues == 0) return 0;
+        return potentiallyScaledValue(minimum);
     }
 
     /**
-     * Get the maximum collected value, after creating the sorted value list
+     * Get the maximum collected value, tracked while adding values
      *
      * @return
      */
+    @Override
     public double sort_getMax() {
-        createSortedValues();
-        return potentiallyScaledValue(sortedValues.get(sortedValues.size() - 1));
+        checkNotEmpty();
+        return potentiallyScaledValue(maximum);
     }
 
     /**
-     * Get the absolute difference between the minimum and maximum collected value, after creating the sorted value list
+     * Get the absolute difference between the minimum and maximum collected value
      *
      * @return
      */
+    @Override
     public double sort_getRange() {
-        createSortedValues();
-        double min = sortedValues.get(0);
-        double max = sortedValues.get(sortedValues.size() - 1);
-        return potentiallyScaledValue(Math.abs(max - min));
+        checkNotEmpty();
+        return potentiallyScaledValue(Math.abs(maximum - minimum));
+    }
+
+    /**
+     * Order statistics other than the minimum are not defined without any values
+     */
+    private void checkNotEmpty() {
+        if (numberOfValues == 0) {
+            throw new IllegalStateException("no values collected");
+        }
     }
 
     /**
@@ -195,11 +338,11 @@ public class StatisticalValueCollector {
         // = sqrt of the mean of the sum of all squares:
         // sum all squares
         double rootMeanSquare = 0;
-        for (Double value : values) {
-            rootMeanSquare += Math.pow(value, 2);
+        for (int i = 0; i < numberOfValues; i++) {
+            rootMeanSquare += Math.pow(values[i], 2);
         }
         // mean (of the sum of all squares)
-        rootMeanSquare /= values.size();
+        rootMeanSquare /= numberOfValues;
         // sqrt (of the mean of the sum of all squares)
         rootMeanSquare = Math.sqrt(rootMeanSquare);
         return potentiallyScaledValue(rootMeanSquare);
@@ -212,10 +355,10 @@ public class StatisticalValueCollector {
         if (!unscaledMeanComputed) {
 
             unscaledMean = 0;
-            for (Double value : values) {
-                unscaledMean += value;
+            for (int i = 0; i < numberOfValues; i++) {
+                unscaledMean += values[i];
             }
-            unscaledMean /= values.size();
+            unscaledMean /= numberOfValues;
 
             unscaledMeanComputed = true;
         }
@@ -228,6 +371,7 @@ public class StatisticalValueCollector {
      *
      * @return
      */
+    @Override
     public double getStandardDeviation() {
         computeVariance();
         double standardDeviation = Math.sqrt(variance);
@@ -253,10 +397,10 @@ public class StatisticalValueCollector {
             computeUnscaledMean();
 
             variance = 0;
-            for (Double value : values) {
-                variance += Math.pow(value - unscaledMean, 2);
+            for (int i = 0; i < numberOfValues; i++) {
+                variance += Math.pow(values[i] - unscaledMean, 2);
             }
-            variance = variance / (values.size() - 1);
+            variance = variance / (numberOfValues - 1);
 
             varianceComputed = true;
         }
@@ -267,51 +411,52 @@ public class StatisticalValueCollector {
      *
      * @return
      */
+    @Override
     public double getMeanAbsoluteDeviation() {
 
         computeUnscaledMean();
 
         double meanAbsoluteDeviation = 0;
-        for (Double value : values) {
-            meanAbsoluteDeviation += Math.abs(value - unscaledMean);
+        for (int i = 0; i < numberOfValues; i++) {
+            meanAbsoluteDeviation += Math.abs(values[i] - unscaledMean);
         }
-        meanAbsoluteDeviation /= values.size();
+        meanAbsoluteDeviation /= numberOfValues;
 
         return potentiallyScaledValue(meanAbsoluteDeviation);
     }
 
     /**
-     * Get the interquartile range of all collected values, after creating the sorted value list
+     * Get the interquartile range of all collected values, by selecting both quartiles
      *
      * @return
      */
+    @Override
     public double sort_getInterquartileRange() {
-        createSortedValues();
 
-        // q75 - q25
-        double quartile1 = sortedValues.get((int) ((sortedValues.size() - 1) * 0.25));
-        double quartile3 = sortedValues.get((int) ((sortedValues.size() - 1) * 0.75));
+        // q75 - q25, selecting the upper quartile first leaves a smaller range for the lower one
+        double quartile3 = getValueAtSortedIndex((int) ((numberOfValues - 1) * 0.75));
+        double quartile1 = getValueAtSortedIndex((int) ((numberOfValues - 1) * 0.25));
 
         return potentiallyScaledValue(quartile3 - quartile1);
 
     }
 
     /**
-     * Get the mean crossing rate of all collected values, after creating the sorted value list
+     * Get the mean crossing rate of all collected values
      *
      * @return
      */
+    @Override
     public double sort_getMeanCrossingRate() {
-        createSortedValues();
-        //double median = sortedValues.get((int) ((sortedValues.size() - 1) * 0.5));
+        //double median = getValueAtSortedIndex((int) ((numberOfValues - 1) * 0.5));
         computeUnscaledMean();
         double mean = unscaledMean;
 
         // count instances where current and previous value are on opposite sides of mean
         double crossingRate = 0;
-        for (int i = 1; i < values.size(); i++) {
-            double previousValue = values.get(i - 1);
-            double currentValue = values.get(i);
+        for (int i = 1; i < numberOfValues; i++) {
+            double previousValue = values[i - 1];
+            double currentValue = values[i];
 
             if (previousValue < mean && currentValue > mean
                     || previousValue > mean && currentValue < mean) {
@@ -319,7 +464,7 @@ public class StatisticalValueCollector {
             }
         }
 
-        crossingRate /= (values.size() - 1);
+        crossingRate /= (numberOfValues - 1);
         return crossingRate;
     }
 
@@ -0,0 +1,161 @@
+package com.romanuhlig.weka.frameToFeature;
+
+import java.util.ArrayList;
+
+/**
+ * Index over the frames of a FrameDataSet, for separating it into windows
+ * <p>
+ * Frames are found by their timestamp (those of the first sensor) through binary search. Timestamps that are not in
+ * ascending order are searched linearly instead, which gives the same results.
+ * The number of frames with invalid data (of any sensor) before each frame is counted as far as windows are checked,
+ * so that the validity of a window is known from two lookups, and each frame is only looked at once.
+ * The data of the FrameDataSet must not change while the index is in use.
+ *
+ * @author Roman Uhlig
+ */
+class WindowIndex {
+
+    // the timestamps of the first sensor, and the range of frames covered by the index
+    private final double[] times;
+    private final int firstFrameIndex;
+    private final int endFrameIndex;
+    private final boolean timesAscending;
+
+    // the sensors, and the index after the last frame of each sensor that belongs to the set
+    private final SensorColumns[] sensors;
+    private final int[] sensorEndFrameIndexes;
+
+    // the number of invalid frames from the first frame up to (not including) each frame,
+    // indexed relative to the first frame, and known up to the given frame
+    private final int[] invalidFramesBefore;
+    private int countedUpToFrameIndex;
+
+    /**
+     * Create the index for the given set
+     *
+     * @param frameDataSet
+     */
+    WindowIndex(FrameDataSet frameDataSet) {
+
+        ArrayList<SensorColumns> allSensorColumns = frameDataSet.getAllSensorColumns();
+        SensorColumns firstSensor = allSensorColumns.get(0);
+        times = firstSensor.getTime();
+        firstFrameIndex = frameDataSet.getFirstFrameIndex();
+        endFrameIndex = frameDataSet.getEndFrameIndex(firstSensor);
+        timesAscending = isAscending(times, firstFrameIndex, endFrameIndex);
+
+        sensors = allSensorColumns.toArray(new SensorColumns[0]);
+        sensorEndFrameIndexes = new int[sensors.length];
+        for (int s = 0; s < sensors.length; s++) {
+            sensorEndFrameIndexes[s] = frameDataSet.getEndFrameIndex(sensors[s]);
+        }
+
+        invalidFramesBefore = new int[Math.max(endFrameIndex - firstFrameIndex, 0) + 1];
+        countedUpToFrameIndex = firstFrameIndex;
+    }
+
+    /**
+     * Whether the given values are in ascending order (equal values are allowed)
+     *
+     * @param values
+     * @param from
+     * @param to
+     * @return
+     */
+    private static boolean isAscending(double[] values, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            // also fails for NaN, which would break the binary search
+            if (!(values[i] >= values[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The index of the first frame covered by the index
+     *
+     * @return
+     */
+    int getFirstFrameIndex() {
+        return firstFrameIndex;
+    }
+
+    /**
+     * The index after the last frame covered by the index
+     *
+     * @return
+     */
+    int getEndFrameIndex() {
+        return endFrameIndex;
+    }
+
+    /**
+     * The timestamp of the given frame
+     *
+     * @param frameIndex
+     * @return
+     */
+    double getTime(int frameIndex) {
+        return times[frameIndex];
+    }
+
+    /**
+     * The first frame at or after the given frame, whose timestamp is at least the given time
+     *
+     * @param time
+     * @param fromFrameIndex
+     * @return the end frame index, if there is no such frame
+     */
+    int findFirstFrameAtOrAfter(double time, int fromFrameIndex) {
+
+        if (!timesAscending) {
+            int frameIndex = fromFrameIndex;
+            while (frameIndex < endFrameIndex && !(times[frameIndex] >= time)) {
+                frameIndex++;
+            }
+            return frameIndex;
+        }
+
+        int low = fromFrameIndex;
+        int high = endFrameIndex;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] >= time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether none of the sensors holds invalid data within the given range of frames
+     *
+     * @param fromFrameIndex first frame of the range
+     * @param toFrameIndex   frame after the last frame of the range
+     * @return
+     */
+    boolean includesOnlyValidData(int fromFrameIndex, int toFrameIndex) {
+        countInvalidFramesUpTo(toFrameIndex);
+        return invalidFramesBefore[toFrameIndex - firstFrameIndex]
+                == invalidFramesBefore[fromFrameIndex - firstFrameIndex];
+    }
+
+    /**
+     * Count the invalid frames up to (not including) the given frame, continuing where the last count stopped
+     *
+     * @param toFrameIndex
+     */
+    private void countInvalidFramesUpTo(int toFrameIndex) {
+        for (int i = countedUpToFrameIndex; i < toFrameIndex; i++) {
+            boolean invalid = false;
+            for (int s = 0; s < sensors.length && !invalid; s++) {
+                invalid = i < sensorEndFrameIndexes[s] && sensors[s].includesInvalidData(i);
+            }
+            invalidFramesBefore[i + 1 - firstFrameIndex] = invalidFramesBefore[i - firstFrameIndex] + (invalid ? 1 : 0);
+        }
+        countedUpToFrameIndex = Math.max(countedUpToFrameIndex, toFrameIndex);
+    }
+}
@@ -0,0 +1,75 @@
+package com.romanuhlig.weka.frameToFeature;
+
+/**
+ * The statistics of a single data series within a window, from which the standard features are created
+ * <p>
+ * Values are scaled by body size if the implementation was set up to do so.
+ *
+ * @author Roman Uhlig
+ */
+public interface WindowStatistics {
+
+    /**
+     * The mean of all values, scaled by the total time
+     *
+     * @return
+     */
+    double getMeanScaledByTime();
+
+    /**
+     * The standard deviation of all values
+     *
+     * @return
+     */
+    double getStandardDeviation();
+
+    /**
+     * The mean absolute deviation of all values
+     *
+     * @return
+     */
+    double getMeanAbsoluteDeviation();
+
+    /**
+     * The difference between the 75th and 25th percentile
+     *
+     * @return
+     */
+    double sort_getInterquartileRange();
+
+    /**
+     * The largest value
+     *
+     * @return
+     */
+    double sort_getMax();
+
+    /**
+     * The smallest value
+     *
+     * @return
+     */
+    double sort_getMin();
+
+    /**
+     * The absolute difference between the smallest and largest value
+     *
+     * @return
+     */
+    double sort_getRange();
+
+    /**
+     * The fraction of consecutive values that lie on opposite sides of the mean
+     *
+     * @return
+     */
+    double sort_getMeanCrossingRate();
+
+    /**
+     * The value at the given percentile, between 0 and 1
+     *
+     * @param percentile
+     * @return
+     */
+    double sort_getPercentile(double percentile);
+}
@@ -0,0 +1,437 @@
+package com.romanuhlig.weka.io;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Stores feature extraction results in a binary, column-wise file, which is turned back into Weka Instances
+ * without parsing any text
+ * <p>
+ * The header describes the complete feature set (attribute names, nominal values and class),
+ * the sensor positions, and the subjects with the ranges of their rows and the paths of their feature files.
+ * It is followed by one block of values for each attribute, holding nominal values as their index.
+ * Values are stored with double precision, or optionally with single precision, which halves the size of the file
+ * but rounds the values. All column blocks are aligned, and are mapped into memory one by one when loading,
+ * so that the size of the file is not limited by the size of a single mapping.
+ *
+ * @author Roman Uhlig
+ */
+public class FeatureStore {
+
+    // file ending for feature stores
+    public static final String fileEnding = ".featurestore";
+
+    // identifies the file type and layout, increase the version whenever the layout changes
+    private static final int magicNumber = 0x46535452;
+    private static final int formatVersion = 1;
+
+    // all data is written in the same byte order, regardless of the machine
+    private static final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    // nominal values are counted instead, for nominal attributes
+    private static final int numericAttribute = -1;
+
+    /**
+     * DO NOT USE, only static methods
+     */
+    private FeatureStore() {
+    }
+
+    /**
+     * Whether the given file starts like a feature store
+     *
+     * @param file
+     * @return
+     */
+    public static boolean isFeatureStore(File file) {
+        if (!file.isFile() || file.length() < 8) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(byteOrder);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            buffer.flip();
+            return buffer.getInt() == magicNumber;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write the complete feature set and the subjects of the given results into the given file
+     * <p>
+     * The file is written under a temporary name first, so that an interrupted run leaves no partial file
+     *
+     * @param results
+     * @param storePath
+     * @param singlePrecision store the values as float instead of double
+     * @throws IOException
+     */
+    public static void write(SubjectsFeatureExtractionResults results, Path storePath, boolean singlePrecision)
+            throws IOException {
+
+        SubjectTrainingAndTestFilePackage completeFeatureSet = results.getCompleteFeatureSet();
+        Instances data = completeFeatureSet.getTrainingDataUnfiltered();
+        SubjectRowRanges subjectRowRanges = results.getSubjectRowRanges();
+        if (data == null || subjectRowRanges == null) {
+            throw new IOException("feature set not available");
+        }
+        boolean individualFeatureSets = !results.getSubjectTrainingAndTestFilePackages().isEmpty()
+                && !results.getSubjectTrainingAndTestFilePackages().get(0).getTrainingFilePath().isEmpty();
+
+        // header, collected in a growing buffer since most of it is strings
+        HeaderWriter header = new HeaderWriter();
+        header.putInt(magicNumber);
+        header.putInt(formatVersion);
+        header.putInt(singlePrecision ? Float.BYTES : Double.BYTES);
+        header.putString(data.relationName());
+        header.putInt(data.numInstances());
+        header.putInt(data.numAttributes());
+        for (int a = 0; a < data.numAttributes(); a++) {
+            Attribute attribute = data.attribute(a);
+            header.putString(attribute.name());
+            if (attribute.isNominal()) {
+                header.putInt(attribute.numValues());
+                for (int v = 0; v < attribute.numValues(); v++) {
+                    header.putString(attribute.value(v));
+                }
+            } else {
+                header.putInt(numericAttribute);
+            }
+        }
+        header.putInt(data.classIndex());
+
+        header.putInt(results.getAllSensorPositions().size());
+        for (String sensorPosition : results.getAllSensorPositions()) {
+            header.putString(sensorPosition);
+        }
+
+        header.putString(completeFeatureSet.getTrainingFilePath());
+        header.putString(completeFeatureSet.getTestFilePath());
+        header.putString(completeFeatureSet.getSubject());
+        header.putInt(individualFeatureSets ? 1 : 0);
+        header.putInt(results.getSubjectTrainingAndTestFilePackages().size());
+        for (SubjectTrainingAndTestFilePackage subjectPackage : results.getSubjectTrainingAndTestFilePackages()) {
+            header.putString(subjectPackage.getSubject());
+            header.putString(subjectPackage.getTrainingFilePath());
+            header.putString(subjectPackage.getTestFilePath());
+            int[] ranges = subjectRowRanges.getRanges(subjectPackage.getSubject());
+            header.putInt(ranges.length / 2);
+            for (int range : ranges) {
+                header.putInt(range);
+            }
+        }
+        ByteBuffer headerBuffer = header.getBuffer();
+
+        Files.createDirectories(storePath.toAbsolutePath().getParent());
+        Path temporaryPath = Paths.get(storePath.toString() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            writeFully(channel, headerBuffer, 0);
+
+            // one column after another, each taken from all rows
+            int numberOfRows = data.numInstances();
+            int valueBytes = singlePrecision ? Float.BYTES : Double.BYTES;
+            ByteBuffer columnBuffer = ByteBuffer.allocateDirect(numberOfRows * valueBytes).order(byteOrder);
+            long columnPosition = alignedToDoubles(headerBuffer.limit());
+            for (int a = 0; a < data.numAttributes(); a++) {
+                columnBuffer.clear();
+                for (int row = 0; row < numberOfRows; row++) {
+                    double value = data.instance(row).value(a);
+                    if (singlePrecision) {
+                        columnBuffer.putFloat((float) value);
+                    } else {
+                        columnBuffer.putDouble(value);
+                    }
+                }
+                columnBuffer.flip();
+                writeFully(channel, columnBuffer, columnPosition);
+                columnPosition = alignedToDoubles(columnPosition + (long) numberOfRows * valueBytes);
+            }
+        }
+        Files.move(temporaryPath, storePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write the remaining content of the buffer at the given position
+     *
+     * @param channel
+     * @param buffer
+     * @param position
+     * @throws IOException
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Load the feature extraction results from the given file
+     * <p>
+     * The feature sets are created in memory, the feature files they were written to are not needed.
+     * If the results contained individual feature sets for each subject, they are separated again
+     * from the complete feature set.
+     *
+     * @param storePath
+     * @return
+     * @throws IOException if the file is not a feature store, or damaged
+     */
+    public static SubjectsFeatureExtractionResults read(Path storePath) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(storePath, StandardOpenOption.READ)) {
+
+            // the header is mapped first, the columns later on their own
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), Integer.MAX_VALUE)).order(byteOrder);
+
+            if (buffer.remaining() < 12 || buffer.getInt() != magicNumber || buffer.getInt() != formatVersion) {
+                throw new IOException("not a feature store");
+            }
+            int valueBytes = buffer.getInt();
+            if (valueBytes != Float.BYTES && valueBytes != Double.BYTES) {
+                throw new IOException("unknown value size");
+            }
+            String relationName = getString(buffer);
+            int numberOfRows = buffer.getInt();
+            int numberOfAttributes = buffer.getInt();
+            ArrayList<Attribute> attributes = new ArrayList<>(numberOfAttributes);
+            for (int a = 0; a < numberOfAttributes; a++) {
+                String name = getString(buffer);
+                int numberOfValues = buffer.getInt();
+                if (numberOfValues == numericAttribute) {
+                    attributes.add(new Attribute(name));
+                } else {
+                    ArrayList<String> values = new ArrayList<>(numberOfValues);
+                    for (int v = 0; v < numberOfValues; v++) {
+                        values.add(getString(buffer));
+                    }
+                    attributes.add(new Attribute(name, values));
+                }
+            }
+            int classIndex = buffer.getInt();
+
+            int numberOfSensorPositions = buffer.getInt();
+            ArrayList<String> sensorPositions = new ArrayList<>(numberOfSensorPositions);
+            for (int s = 0; s < numberOfSensorPositions; s++) {
+                sensorPositions.add(getString(buffer));
+            }
+
+            String completeTrainingFilePath = getString(buffer);
+            String completeTestFilePath = getString(buffer);
+            String completeSubject = getString(buffer);
+            boolean individualFeatureSets = buffer.getInt() != 0;
+            int numberOfSubjects = buffer.getInt();
+            String[] subjects = new String[numberOfSubjects];
+            String[] trainingFilePaths = new String[numberOfSubjects];
+            String[] testFilePaths = new String[numberOfSubjects];
+            SubjectRowRanges subjectRowRanges = new SubjectRowRanges();
+            for (int s = 0; s < numberOfSubjects; s++) {
+                subjects[s] = getString(buffer);
+                trainingFilePaths[s] = getString(buffer);
+                testFilePaths[s] = getString(buffer);
+                int numberOfRanges = buffer.getInt();
+                for (int r = 0; r < numberOfRanges; r++) {
+                    int start = buffer.getInt();
+                    int end = buffer.getInt();
+                    if (start < 0 || end < start || end > numberOfRows) {
+                        throw new IOException("invalid row range");
+                    }
+                    subjectRowRanges.addRange(subjects[s], start, end);
+                }
+            }
+
+            // columns, copied into the rows one after another
+            double[][] rows = new double[numberOfRows][numberOfAttributes];
+            double[] column = new double[numberOfRows];
+            float[] floatColumn = valueBytes == Float.BYTES ? new float[numberOfRows] : null;
+            long columnPosition = alignedToDoubles(buffer.position());
+            long columnSize = (long) numberOfRows * valueBytes;
+            for (int a = 0; a < numberOfAttributes; a++) {
+                if (columnPosition + columnSize > channel.size()) {
+                    throw new IOException("feature store is incomplete");
+                }
+                ByteBuffer columnBuffer = channel.map(FileChannel.MapMode.READ_ONLY, columnPosition, columnSize)
+                        .order(byteOrder);
+                if (floatColumn != null) {
+                    columnBuffer.asFloatBuffer().get(floatColumn);
+                    for (int row = 0; row < numberOfRows; row++) {
+                        column[row] = floatColumn[row];
+                    }
+                } else {
+                    columnBuffer.asDoubleBuffer().get(column);
+                }
+                for (int row = 0; row < numberOfRows; row++) {
+                    rows[row][a] = column[row];
+                }
+                columnPosition = alignedToDoubles(columnPosition + columnSize);
+            }
+
+            Instances data = new Instances(relationName, attributes, numberOfRows);
+            data.setClassIndex(classIndex);
+            for (int row = 0; row < numberOfRows; row++) {
+                data.add(new DenseInstance(1.0, rows[row]));
+            }
+
+            // packages with the same content as when the features were extracted
+            SubjectsFeatureExtractionResults results = new SubjectsFeatureExtractionResults(sensorPositions);
+            results.setCompleteFeatureSet(new SubjectTrainingAndTestFilePackage(
+                    completeTrainingFilePath, completeTestFilePath, completeSubject, data, data));
+            results.setSubjectRowRanges(subjectRowRanges);
+            for (int s = 0; s < numberOfSubjects; s++) {
+                if (individualFeatureSets) {
+                    boolean[] subjectRows = getRowFlags(subjectRowRanges.getRanges(subjects[s]), numberOfRows);
+                    results.addTrainingAndTestFilePackage(new SubjectTrainingAndTestFilePackage(
+                            trainingFilePaths[s], testFilePaths[s], subjects[s],
+                            copyRows(data, "trainingDataSet", subjectRows, false),
+                            copyRows(data, "testDataSet", subjectRows, true)));
+                } else {
+                    results.addTrainingAndTestFilePackage(new SubjectTrainingAndTestFilePackage(subjects[s]));
+                }
+            }
+            return results;
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("feature store is damaged", e);
+        }
+    }
+
+    /**
+     * One flag for each row, set for the rows within the given ranges
+     *
+     * @param ranges        start and end (exclusive) of each range, one after another
+     * @param numberOfRows
+     * @return
+     */
+    private static boolean[] getRowFlags(int[] ranges, int numberOfRows) {
+        boolean[] rowFlags = new boolean[numberOfRows];
+        for (int r = 0; r < ranges.length; r += 2) {
+            for (int row = ranges[r]; row < ranges[r + 1]; row++) {
+                rowFlags[row] = true;
+            }
+        }
+        return rowFlags;
+    }
+
+    /**
+     * Copy the rows whose flag matches the given value into new Instances with the given name
+     *
+     * @param data
+     * @param relationName
+     * @param rowFlags
+     * @param flagValue
+     * @return
+     */
+    private static Instances copyRows(Instances data, String relationName, boolean[] rowFlags, boolean flagValue) {
+        Instances copy = new Instances(data, 0);
+        copy.setRelationName(relationName);
+        for (int row = 0; row < rowFlags.length; row++) {
+            if (rowFlags[row] == flagValue) {
+                copy.add(data.instance(row));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Read a string stored as its length followed by its UTF-8 bytes
+     *
+     * @param buffer
+     * @return
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The next multiple of the size of a double, starting at the given position
+     *
+     * @param position
+     * @return
+     */
+    private static long alignedToDoubles(long position) {
+        return (position + Double.BYTES - 1) & ~(long) (Double.BYTES - 1);
+    }
+
+    /**
+     * Collects the header of a feature store, growing as needed
+     */
+    private static class HeaderWriter {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(byteOrder);
+
+        /**
+         * Make room for the given number of bytes
+         *
+         * @param bytes
+         */
+        private void ensureRemaining(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer largerBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(byteOrder);
+                buffer.flip();
+                largerBuffer.put(buffer);
+                buffer = largerBuffer;
+            }
+        }
+
+        /**
+         * Add a single int
+         *
+         * @param value
+         */
+        void putInt(int value) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        /**
+         * Add a string as its length followed by its UTF-8 bytes
+         *
+         * @param value
+         */
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * The collected header, ready to be written
+         *
+         * @return
+         */
+        ByteBuffer getBuffer() {
+            ByteBuffer header = buffer.duplicate();
+            header.flip();
+            return header;
+        }
+    }
+}
@@ -126,84 +126,6 @@ public class FileWriter {
         writeTextFile(stringBuilder.toString(), folder, filename);
     }
 
-    /**
-     * Delete all files within the existing features extraction result folder,
-     * and place a new feature extraction result file within both folders
-     *
-     * @param results
-     * @param currentFolder
-     * @param existingFeaturesInputFolder
-     * @param filename
-     */
-    public static void writeNewFeatureExtractionResults(SubjectsFeatureExtractionResults results, String currentFolder,
-                                                        String existingFeaturesInputFolder, String filename) {
-
-        // get rid of any existing feature extraction result
-        File inputFolder = new File(existingFeaturesInputFolder);
-        File[] listOfInputFiles = inputFolder.listFiles();
-        if (listOfInputFiles != null) {
-            for (int i = listOfInputFiles.length - 1; i >= 0; i--) {
-                listOfInputFiles[i].delete();
-            }
-        }
-
-        // save new file
-        serializeFeatureExtractionResult(results, currentFolder, filename);
-        serializeFeatureExtractionResult(results, existingFeaturesInputFolder, filename);
-    }
-
-    /**
-     * Write a serialized version of the given feature extraction results to disk
-     *
-     * @param results
-     * @param folder
-     * @param filename
-     */
-    private static void serializeFeatureExtractionResult(
-            SubjectsFeatureExtractionResults results, String folder, String filename) {
-
-        ensureFolderExists(folder);
-
-        try {
-            FileOutputStream fileOutputStream = new FileOutputStream(folder + "/" + filename);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
-            objectOutputStream.writeObject(results);
-            objectOutputStream.flush();
-            objectOutputStream.close();
-        } catch (Exception e) {
-            System.out.println("unable to write serialized feature extraction results");
-        }
-    }
-
-    /**
-     * Load serialized feature extraction results from disk
-     * <p>
-     * Assumes that there is exactly one file within the given folder, which is a serialized version
-     * of previously created feature extraction results
-     *
-     * @param existingFeaturesInputFolder
-     * @return
-     */
-    public static SubjectsFeatureExtractionResults readExistingFeatureSet(String existingFeaturesInputFolder) {
-
-        // get all files within the given folder
-        File inputFolder = new File(existingFeaturesInputFolder);
-        File[] listOfInputFiles = inputFolder.listFiles();
-
-        try {
-            // try to load the first file (there should be only one)
-            FileInputStream fileInputStream = new FileInputStream(listOfInputFiles[0].getPath());
-            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
-            SubjectsFeatureExtractionResults result = (SubjectsFeatureExtractionResults) objectInputStream.readObject();
-            objectInputStream.close();
-            return result;
-        } catch (Exception e) {
-            System.out.println("unable to load existing feature extraction result");
-            e.printStackTrace();
-            return new SubjectsFeatureExtractionResults(new ArrayList<>());
-        }
-    }
-
     /**
      * Create the given folder, if it does not exist yet
      *
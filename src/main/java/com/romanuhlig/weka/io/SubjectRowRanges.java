@@ -0,0 +1,93 @@
+package com.romanuhlig.weka.io;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The rows that belong to each subject within a feature set
+ * <p>
+ * Since the features are sorted by class, the rows of a subject are not necessarily in a single block.
+ * They are kept as ranges of consecutive rows instead, in ascending order.
+ *
+ * @author Roman Uhlig
+ */
+public class SubjectRowRanges implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // start and end (exclusive) of each range of a subject, one after another
+    private final LinkedHashMap<String, int[]> rangesPerSubject = new LinkedHashMap<>();
+    private int numberOfRows;
+
+    /**
+     * Create the ranges for the given subject of each row
+     *
+     * @param subjectOfEachRow
+     */
+    public SubjectRowRanges(List<String> subjectOfEachRow) {
+        int rangeStart = 0;
+        for (int row = 1; row <= subjectOfEachRow.size(); row++) {
+            if (row == subjectOfEachRow.size() || !subjectOfEachRow.get(row).equals(subjectOfEachRow.get(rangeStart))) {
+                addRange(subjectOfEachRow.get(rangeStart), rangeStart, row);
+                rangeStart = row;
+            }
+        }
+    }
+
+    /**
+     * Create empty ranges, to which the ranges of each subject are added individually
+     */
+    public SubjectRowRanges() {
+    }
+
+    /**
+     * Add a range of rows to the given subject, after its previous ranges
+     *
+     * @param subject
+     * @param start   first row of the range
+     * @param end     row after the last row of the range
+     */
+    public void addRange(String subject, int start, int end) {
+        int[] ranges = rangesPerSubject.get(subject);
+        if (ranges == null) {
+            ranges = new int[0];
+        }
+        ranges = Arrays.copyOf(ranges, ranges.length + 2);
+        ranges[ranges.length - 2] = start;
+        ranges[ranges.length - 1] = end;
+        rangesPerSubject.put(subject, ranges);
+        numberOfRows = Math.max(numberOfRows, end);
+    }
+
+    /**
+     * All subjects, in the order in which they first appear
+     *
+     * @return
+     */
+    public ArrayList<String> getSubjects() {
+        return new ArrayList<>(rangesPerSubject.keySet());
+    }
+
+    /**
+     * The ranges of the given subject, as start and end (exclusive) of each range, one after another
+     *
+     * @param subject
+     * @return an empty array, if the subject has no rows
+     */
+    public int[] getRanges(String subject) {
+        int[] ranges = rangesPerSubject.get(subject);
+        return ranges == null ? new int[0] : ranges.clone();
+    }
+
+    /**
+     * The number of rows covered by all ranges
+     *
+     * @return
+     */
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+}
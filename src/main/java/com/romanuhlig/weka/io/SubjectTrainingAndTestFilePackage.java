@@ -7,6 +7,9 @@ import java.io.Serializable;
 
 /**
  * Stores the locations of the feature files for a single subject
+ * <p>
+ * If the features were extracted in the current run, they are kept in memory as well,
+ * and the files are only loaded when the package was read from disk.
  *
  * @author Roman Uhlig
  */
@@ -17,9 +20,9 @@ public class SubjectTrainingAndTestFilePackage implements Serializable {
     private final String testFilePath;
     private final String subject;
 
-    // cached data, to avoid reloading the files
-    private Instances trainingDataUnfiltered;
-    private Instances testDataUnfiltered;
+    // cached data, to avoid reloading the files (not serialized, the files are loaded instead)
+    private transient Instances trainingDataUnfiltered;
+    private transient Instances testDataUnfiltered;
 
     /**
      * Create a SubjectTrainingAndTestFilePackage for the given files and subject
@@ -34,6 +37,24 @@ public class SubjectTrainingAndTestFilePackage implements Serializable {
         this.subject = subject;
     }
 
+    /**
+     * Create a SubjectTrainingAndTestFilePackage for the given files and subject, whose data is already in memory
+     * <p>
+     * The files do not need to exist (yet), they are only loaded if the package was serialized and read again
+     *
+     * @param trainingFilePath
+     * @param testFilePath
+     * @param subject
+     * @param trainingData
+     * @param testData
+     */
+    public SubjectTrainingAndTestFilePackage(String trainingFilePath, String testFilePath, String subject,
+                                             Instances trainingData, Instances testData) {
+        this(trainingFilePath, testFilePath, subject);
+        this.trainingDataUnfiltered = trainingData;
+        this.testDataUnfiltered = testData;
+    }
+
     /**
      * Create a SubjectTrainingAndTestFilePackage for the given subject, with missing training and test files
      * <p>
@@ -66,7 +87,7 @@ public class SubjectTrainingAndTestFilePackage implements Serializable {
     }
 
     /**
-     * Load the training feature file for this subject
+     * Load the training feature file for this subject, unless the features are already in memory
      * <p>
      * The training features contain all but the subject's data
      *
@@ -89,7 +110,7 @@ public class SubjectTrainingAndTestFilePackage implements Serializable {
     }
 
     /**
-     * Load the test feature file for this subject
+     * Load the test feature file for this subject, unless the features are already in memory
      * <p>
      * The test features contain only the subject's data
      *
@@ -12,6 +12,8 @@ public class SubjectsFeatureExtractionResults implements Serializable {
 
     // the feature file location if a single file was created (for all subjects, see TestBenchSettings)
     private SubjectTrainingAndTestFilePackage completeFeatureSet;
+    // the rows of each subject within the complete feature set
+    private SubjectRowRanges subjectRowRanges;
     // the feature file locations if individual files were created (no longer used aside from debugging)
     private final ArrayList<SubjectTrainingAndTestFilePackage> subjectTrainingAndTestFilePackages = new ArrayList<>();
 
@@ -76,4 +78,22 @@ public class SubjectsFeatureExtractionResults implements Serializable {
     public void setCompleteFeatureSet(SubjectTrainingAndTestFilePackage completeFeatureSet) {
         this.completeFeatureSet = completeFeatureSet;
     }
+
+    /**
+     * The rows of each subject within the complete feature set
+     *
+     * @return null, if unknown
+     */
+    public SubjectRowRanges getSubjectRowRanges() {
+        return subjectRowRanges;
+    }
+
+    /**
+     * Set the rows of each subject within the complete feature set
+     *
+     * @param subjectRowRanges
+     */
+    public void setSubjectRowRanges(SubjectRowRanges subjectRowRanges) {
+        this.subjectRowRanges = subjectRowRanges;
+    }
 }
@@ -191,12 +191,12 @@ public class CppDataClassifier {
                 instance.setDataset(instances);
 
                 // create the feature values for the instance
-                ArrayList<Double> featureValues = features.getFeaturesWithoutClassAndSubject();
+                double[] featureValues = features.getFeaturesWithoutClassAndSubject();
 
                 // fill the attribute values for the instance with the feature values
                 for (int i = 0; i < numberOfFeatures; i++) {
                     try {
-                        instance.setValue(i, featureValues.get(i));
+                        instance.setValue(i, featureValues[i]);
                     } catch (Exception e) {
                         outputClassifierResultToCpp(e.getLocalizedMessage());
                         outputClassifierResultToCpp(
@@ -0,0 +1,152 @@
+package com.romanuhlig.weka.math;
+
+import java.util.Arrays;
+
+/**
+ * Finds individual order statistics (e.g. percentiles) without sorting all values
+ * <p>
+ * Doubles are converted into long keys with the same total order as Double.compare (and therefore Arrays.sort),
+ * so that negative zero, positive zero and NaN end up exactly where a full sort would put them.
+ * Selection uses introselect: quickselect with a three-way partition around a median-of-three pivot,
+ * falling back to a full sort of the remaining range if partitioning keeps failing.
+ *
+ * @author Roman Uhlig
+ */
+public class OrderStatistics {
+
+    // ranges of at most this size are finished with an insertion sort
+    private static final int insertionSortThreshold = 16;
+
+    /**
+     * DO NOT USE, only static methods
+     */
+    private OrderStatistics() {
+    }
+
+    /**
+     * Convert the given value into a key that orders like Double.compare when compared as a signed long
+     *
+     * @param value
+     * @return
+     */
+    public static long toSortableKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // negative values need their magnitude bits flipped, so that larger magnitudes become smaller keys
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Convert a key created by toSortableKey back into its value
+     *
+     * @param key
+     * @return
+     */
+    public static double fromSortableKey(long key) {
+        // the conversion is its own inverse
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * Rearrange the keys within the given range, so that the given index holds the key it would hold if the range
+     * was sorted, all keys before it are not larger, and all keys after it are not smaller
+     * <p>
+     * Since only the range is touched, previously selected indices can be used to narrow down later selections
+     *
+     * @param keys
+     * @param fromIndex first index of the range
+     * @param toIndex   index after the last index of the range
+     * @param k         the index to select, within the range
+     */
+    public static void select(long[] keys, int fromIndex, int toIndex, int k) {
+
+        int from = fromIndex;
+        int to = toIndex;
+
+        // allow about twice the expected number of partitioning steps before giving up on them
+        int remainingPartitions = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+
+        while (to - from > insertionSortThreshold) {
+
+            if (remainingPartitions-- == 0) {
+                Arrays.sort(keys, from, to);
+                return;
+            }
+
+            long pivot = medianOfThree(keys[from], keys[(from + to) >>> 1], keys[to - 1]);
+
+            // three-way partition: [from, lower) < pivot, [lower, upper] == pivot, (upper, to) > pivot
+            int lower = from;
+            int upper = to - 1;
+            int i = from;
+            while (i <= upper) {
+                long key = keys[i];
+                if (key < pivot) {
+                    swap(keys, lower++, i++);
+                } else if (key > pivot) {
+                    swap(keys, i, upper--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k < lower) {
+                to = lower;
+            } else if (k > upper) {
+                from = upper + 1;
+            } else {
+                // the selected index holds a key equal to the pivot, which is in its final place
+                return;
+            }
+        }
+
+        insertionSort(keys, from, to);
+    }
+
+    /**
+     * The median of the given keys
+     *
+     * @param a
+     * @param b
+     * @param c
+     * @return
+     */
+    private static long medianOfThree(long a, long b, long c) {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        } else {
+            return a < c ? a : (b < c ? c : b);
+        }
+    }
+
+    /**
+     * Sort the given range, which is expected to be small
+     *
+     * @param keys
+     * @param from
+     * @param to
+     */
+    private static void insertionSort(long[] keys, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                j--;
+            }
+            keys[j + 1] = key;
+        }
+    }
+
+    /**
+     * Swap the keys at the given indices
+     *
+     * @param keys
+     * @param a
+     * @param b
+     */
+    private static void swap(long[] keys, int a, int b) {
+        long temp = keys[a];
+        keys[a] = keys[b];
+        keys[b] = temp;
+    }
+}
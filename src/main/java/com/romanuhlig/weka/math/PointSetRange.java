@@ -0,0 +1,210 @@
+package com.romanuhlig.weka.math;
+
+import com.romanuhlig.weka.quickhull3d.QuickHull3D;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the range of a set of 3D points, as the largest distance between any two of them
+ * <p>
+ * The points are visited by descending distance to their centroid. Two points cannot be further apart than
+ * the sum of their distances to the centroid, so the search stops as soon as that sum cannot exceed
+ * the largest distance found so far. The result is the same as comparing all pairs, but usually only a small
+ * fraction of the pairs is compared.
+ * <p>
+ * The search can run on all points, or only on the vertices of their convex hull. Since most points of a window
+ * tend to be vertices of the hull, building the hull usually costs more than it saves.
+ * The hull (in pooled mode) and all arrays are kept and reused for the next set of points,
+ * instead of creating point objects.
+ * Instances are not thread-safe, each thread should use its own.
+ *
+ * @author Roman Uhlig
+ */
+public class PointSetRange {
+
+    // pairs are only skipped if their bound is clearly below the largest distance,
+    // even though the points are ordered by their distance with float precision
+    private static final double pruningMargin = 1 + 1e-6;
+
+    private final QuickHull3D hull = new QuickHull3D();
+
+    // x, y and z coordinates of the points, and of the vertices of their hull
+    private double[] pointCoordinates = new double[0];
+    private double[] vertexCoordinates = new double[0];
+
+    // the points ordered by descending distance to their centroid, and their distance
+    private long[] orderKeys = new long[0];
+    private int[] pointOrder = new int[0];
+    private double[] radii = new double[0];
+
+    /**
+     * Create an instance, whose hull keeps its faces between sets of points instead of creating new ones
+     */
+    public PointSetRange() {
+        hull.setPooling(true);
+    }
+
+    /**
+     * The largest distance between any two of the points within the given index range of the coordinate columns
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param from first index of the range
+     * @param to   index after the last index of the range
+     * @return
+     */
+    public double getRangeXYZ(double[] x, double[] y, double[] z, int from, int to) {
+        int numberOfPoints = setPoints(x, y, z, from, to);
+        return getDiameter(pointCoordinates, numberOfPoints);
+    }
+
+    /**
+     * The largest distance between any two of the points within the given index range of the coordinate columns,
+     * only searching among the vertices of their convex hull
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param from first index of the range
+     * @param to   index after the last index of the range
+     * @return 0, if the points do not span a volume
+     */
+    public double getRangeXYZOfHull(double[] x, double[] y, double[] z, int from, int to) {
+
+        int numberOfPoints = setPoints(x, y, z, from, to);
+
+        int numberOfVertices;
+        try {
+            hull.build(pointCoordinates, numberOfPoints);
+            numberOfVertices = hull.getVertices(vertexCoordinates);
+        } catch (Exception e) {
+            // if there is an exception, it is because all points were too similar
+            // if this is the case, we can just keep the maximum distance value at 0
+            return 0;
+        }
+
+        return getDiameter(vertexCoordinates, numberOfVertices);
+    }
+
+    /**
+     * Copy the points within the given index range of the coordinate columns into the coordinate array
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param from
+     * @param to
+     * @return the number of points
+     */
+    private int setPoints(double[] x, double[] y, double[] z, int from, int to) {
+
+        int numberOfPoints = to - from;
+        if (pointCoordinates.length < numberOfPoints * 3) {
+            pointCoordinates = new double[numberOfPoints * 3];
+            vertexCoordinates = new double[numberOfPoints * 3];
+        }
+
+        for (int i = from; i < to; i++) {
+            int offset = (i - from) * 3;
+            pointCoordinates[offset] = x[i];
+            pointCoordinates[offset + 1] = y[i];
+            pointCoordinates[offset + 2] = z[i];
+        }
+        return numberOfPoints;
+    }
+
+    /**
+     * The largest distance between any two of the given points
+     *
+     * @param coordinates    x, y and z coordinates of each point
+     * @param numberOfPoints
+     * @return
+     */
+    public double getDiameter(double[] coordinates, int numberOfPoints) {
+
+        if (numberOfPoints < 2) {
+            return 0;
+        }
+        if (radii.length < numberOfPoints) {
+            orderKeys = new long[numberOfPoints];
+            pointOrder = new int[numberOfPoints];
+            radii = new double[numberOfPoints];
+        }
+
+        double centroidX = 0;
+        double centroidY = 0;
+        double centroidZ = 0;
+        for (int p = 0; p < numberOfPoints; p++) {
+            centroidX += coordinates[p * 3];
+            centroidY += coordinates[p * 3 + 1];
+            centroidZ += coordinates[p * 3 + 2];
+        }
+        centroidX /= numberOfPoints;
+        centroidY /= numberOfPoints;
+        centroidZ /= numberOfPoints;
+
+        // order the points by descending distance to the centroid, through keys holding the distance
+        // (as float bits, which order like the distance itself) and the index of the point
+        for (int p = 0; p < numberOfPoints; p++) {
+            float radius = (float) getDistance(coordinates, p, centroidX, centroidY, centroidZ);
+            orderKeys[p] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(radius)) << 32) | p;
+        }
+        Arrays.sort(orderKeys, 0, numberOfPoints);
+        for (int k = 0; k < numberOfPoints; k++) {
+            int p = (int) orderKeys[k];
+            pointOrder[k] = p;
+            radii[k] = getDistance(coordinates, p, centroidX, centroidY, centroidZ);
+        }
+
+        double maxSquaredDistance = 0;
+        double maxDistance = 0;
+        for (int a = 0; a < numberOfPoints - 1; a++) {
+
+            // no later pair can be further apart
+            if ((radii[a] + radii[a + 1]) * pruningMargin < maxDistance) {
+                break;
+            }
+
+            int pointA = pointOrder[a] * 3;
+            double x = coordinates[pointA];
+            double y = coordinates[pointA + 1];
+            double z = coordinates[pointA + 2];
+            for (int b = a + 1; b < numberOfPoints; b++) {
+
+                // no later partner of point a can be further away
+                if ((radii[a] + radii[b]) * pruningMargin < maxDistance) {
+                    break;
+                }
+
+                int pointB = pointOrder[b] * 3;
+                double dx = x - coordinates[pointB];
+                double dy = y - coordinates[pointB + 1];
+                double dz = z - coordinates[pointB + 2];
+                double squaredDistance = dx * dx + dy * dy + dz * dz;
+                if (squaredDistance > maxSquaredDistance) {
+                    maxSquaredDistance = squaredDistance;
+                    maxDistance = Math.sqrt(maxSquaredDistance);
+                }
+            }
+        }
+        return maxDistance;
+    }
+
+    /**
+     * The distance between the given point and the given position
+     *
+     * @param coordinates
+     * @param point
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    private static double getDistance(double[] coordinates, int point, double x, double y, double z) {
+        double dx = coordinates[point * 3] - x;
+        double dy = coordinates[point * 3 + 1] - y;
+        double dz = coordinates[point * 3 + 2] - z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
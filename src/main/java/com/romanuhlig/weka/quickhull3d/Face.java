@@ -173,10 +173,36 @@ class Face
 	public static Face createTriangle (Vertex v0, Vertex v1, Vertex v2,
 					   double minArea)
 	 {
-	   Face face = new Face();
-	   HalfEdge he0 = new HalfEdge (v0, face);
-	   HalfEdge he1 = new HalfEdge (v1, face);
-	   HalfEdge he2 = new HalfEdge (v2, face);
+	   return createTriangle (v0, v1, v2, minArea, null);
+	 }
+
+	/**
+	 * Constructs a triangule Face from vertices v0, v1, and v2,
+	 * taking the face and its half-edges from a pool.
+	 *
+	 * @param v0 first vertex
+	 * @param v1 second vertex
+	 * @param v2 third vertex
+	 * @param pool pool of faces and half-edges, or null to
+	 * create new ones
+	 */
+	static Face createTriangle (Vertex v0, Vertex v1, Vertex v2,
+				    double minArea, FacePool pool)
+	 {
+	   Face face;
+	   HalfEdge he0, he1, he2;
+	   if (pool == null)
+	    { face = new Face();
+	      he0 = new HalfEdge (v0, face);
+	      he1 = new HalfEdge (v1, face);
+	      he2 = new HalfEdge (v2, face);
+	    }
+	   else
+	    { face = pool.newFace();
+	      he0 = pool.newHalfEdge (v0, face);
+	      he1 = pool.newHalfEdge (v1, face);
+	      he2 = pool.newHalfEdge (v2, face);
+	    }
 
 	   he0.prev = he2;
 	   he0.next = he1;
@@ -515,6 +541,11 @@ class Face
 	 }
 
 	public void triangulate (FaceList newFaces, double minArea)
+	 {
+	   triangulate (newFaces, minArea, null);
+	 }
+
+	void triangulate (FaceList newFaces, double minArea, FacePool pool)
 	 {
 	   HalfEdge hedge;
 
@@ -531,7 +562,8 @@ class Face
 
 	   for (hedge=hedge.next; hedge!=he0.prev; hedge=hedge.next)	   
 	    { Face face =
-		 createTriangle (v0, hedge.prev.head(), hedge.head(), minArea);
+		 createTriangle (v0, hedge.prev.head(), hedge.head(), minArea,
+				 pool);
 	      face.he0.next.setOpposite (oppPrev);
 	      face.he0.prev.setOpposite (hedge.opposite);
 	      oppPrev = face.he0;
@@ -540,7 +572,12 @@ class Face
 	       { face0 = face; 
 	       }
 	    }
-	   hedge = new HalfEdge (he0.prev.prev.head(), this);
+	   if (pool == null)
+	    { hedge = new HalfEdge (he0.prev.prev.head(), this);
+	    }
+	   else
+	    { hedge = pool.newHalfEdge (he0.prev.prev.head(), this);
+	    }
 	   hedge.setOpposite (oppPrev);
 
 	   hedge.prev = he0;
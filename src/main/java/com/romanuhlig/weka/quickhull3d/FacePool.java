@@ -0,0 +1,89 @@
+package com.romanuhlig.weka.quickhull3d;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the faces and half-edges of previous builds, so that QuickHull3D
+ * can reuse them instead of creating new ones for every hull.
+ *
+ * <p>All objects handed out since the last {@link #reset reset} belong to
+ * the current hull. The pool grows to the largest number of objects used
+ * by any single build, and never shrinks.
+ */
+class FacePool
+{
+	private Face[] faces = new Face[0];
+	private int numFaces;
+
+	private HalfEdge[] halfEdges = new HalfEdge[0];
+	private int numHalfEdges;
+
+	/**
+	 * Makes all pooled objects available again. Must only be called
+	 * when none of them is part of a hull that is still in use.
+	 */
+	public void reset()
+	 {
+	   numFaces = 0;
+	   numHalfEdges = 0;
+	 }
+
+	/**
+	 * Returns an unused face, in the same state as a newly
+	 * constructed one.
+	 *
+	 * @return the face
+	 */
+	public Face newFace()
+	 {
+	   if (numFaces == faces.length)
+	    { faces = Arrays.copyOf (faces, Math.max (16, 2*faces.length));
+	    }
+	   Face face = faces[numFaces];
+	   if (face == null)
+	    { face = new Face();
+	      faces[numFaces] = face;
+	    }
+	   else
+	    { face.he0 = null;
+	      face.area = 0;
+	      face.planeOffset = 0;
+	      face.index = 0;
+	      face.numVerts = 0;
+	      face.next = null;
+	      face.mark = Face.VISIBLE;
+	      face.outside = null;
+	    }
+	   numFaces++;
+	   return face;
+	 }
+
+	/**
+	 * Returns an unused half-edge with head vertex <code>v</code> and
+	 * left-hand face <code>f</code>, which is not yet linked to any
+	 * other half-edge.
+	 *
+	 * @param v head vertex
+	 * @param f left-hand face
+	 * @return the half-edge
+	 */
+	public HalfEdge newHalfEdge (Vertex v, Face f)
+	 {
+	   if (numHalfEdges == halfEdges.length)
+	    { halfEdges = Arrays.copyOf (halfEdges,
+					 Math.max (64, 2*halfEdges.length));
+	    }
+	   HalfEdge he = halfEdges[numHalfEdges];
+	   if (he == null)
+	    { he = new HalfEdge();
+	      halfEdges[numHalfEdges] = he;
+	    }
+	   he.vertex = v;
+	   he.face = f;
+	   he.next = null;
+	   he.prev = null;
+	   he.opposite = null;
+	   numHalfEdges++;
+	   return he;
+	 }
+}
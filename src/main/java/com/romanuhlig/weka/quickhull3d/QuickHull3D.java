@@ -69,6 +69,16 @@ import java.io.*;
  * and {@link #getVertices(double[]) getVertex} methods which
  * pass point information using an array of doubles.
  *
+ * <h3>Pooling</h3> When many hulls are built one after another, e.g. one
+ * for each window of a recording, the hull object can be told to
+ * {@link #setPooling keep its faces and half-edges} between builds. A
+ * build then only allocates memory while the pool is still growing, and
+ * the hull can be read through {@link #getVertices(double[]) getVertices}
+ * and {@link #getVertexPointIndices(int[]) getVertexPointIndices}, which
+ * write into arrays provided by the caller. Since the pooled objects are
+ * reused by the next build, the pool keeps as many of them as the largest
+ * hull built so far required.
+ *
  * <h3><a name=distTol>Robustness</h3> Because this algorithm uses floating
  * point arithmetic, it is potentially vulnerable to errors arising from
  * numerical imprecision.  We address this problem in the same way as <a
@@ -164,6 +174,20 @@ public class QuickHull3D
         private VertexList unclaimed = new VertexList();
         private VertexList claimed = new VertexList();
 
+        // faces and half-edges kept between builds, null if not pooling
+        private FacePool facePool = null;
+
+        // working storage of computeMaxAndMin and createInitialSimplex
+        private Vector3d maxCoords = new Vector3d();
+        private Vector3d minCoords = new Vector3d();
+        private Vertex[] simplexVtxs = new Vertex[4];
+        private Face[] simplexTris = new Face[4];
+        private Vector3d u01 = new Vector3d();
+        private Vector3d diff02 = new Vector3d();
+        private Vector3d nrml = new Vector3d();
+        private Vector3d xprod = new Vector3d();
+        private Vector3d res = new Vector3d();
+
         protected int numVertices;
         protected int numFaces;
         protected int numPoints;
@@ -192,6 +216,34 @@ public class QuickHull3D
            debug = enable;
          }
 
+        /**
+         * Returns true if faces and half-edges are kept between builds.
+         *
+         * @return true if pooling is enabled
+         * @see QuickHull3D#setPooling
+         */
+        public boolean getPooling()
+         {
+           return facePool != null;
+         }
+
+        /**
+         * Enables keeping the faces and half-edges of this hull between
+         * builds, so that they can be reused by the next build instead of
+         * being created again. The vertices are always reused.
+         *
+         * @param enable if true, enables pooling
+         */
+        public void setPooling (boolean enable)
+         {
+           if (!enable)
+            { facePool = null;
+            }
+           else if (facePool == null)
+            { facePool = new FacePool();
+            }
+         }
+
         /**
          * Precision of a double.
          */
@@ -543,7 +595,7 @@ public class QuickHull3D
             { Face face = (Face)it.next();
               if (face.mark == Face.VISIBLE)
                { 
-                 face.triangulate (newFaces, minArea);
+                 face.triangulate (newFaces, minArea, facePool);
                  // splitFace (face);
                }
             }
@@ -577,6 +629,9 @@ public class QuickHull3D
             }
            faces.clear();
            claimed.clear();
+           if (facePool != null)
+            { facePool.reset();
+            }
            numFaces = 0;
            numPoints = nump;
          }
@@ -603,8 +658,8 @@ public class QuickHull3D
 
         protected void computeMaxAndMin ()
          {
-           Vector3d max = new Vector3d();
-           Vector3d min = new Vector3d();
+           Vector3d max = maxCoords;
+           Vector3d min = minCoords;
 
            for (int i=0; i<3; i++)
             { maxVtxs[i] = minVtxs[i] = pointBuffer[0]; 
@@ -676,7 +731,8 @@ public class QuickHull3D
             { throw new IllegalArgumentException (
 "Input points appear to be coincident");
             }
-           Vertex[] vtx = new Vertex[4];
+           Vertex[] vtx = simplexVtxs;
+           vtx[2] = vtx[3] = null;
            // set first two vertices to be those with the greatest
            // one dimensional separation
 
@@ -685,10 +741,6 @@ public class QuickHull3D
 
            // set third vertex to be the vertex farthest from
            // the line between vtx0 and vtx1
-           Vector3d u01 = new Vector3d();
-           Vector3d diff02 = new Vector3d();
-           Vector3d nrml = new Vector3d();
-           Vector3d xprod = new Vector3d();
            double maxSqr = 0;
            u01.sub (vtx[1].pnt, vtx[0].pnt);
            u01.normalize();
@@ -712,7 +764,6 @@ public class QuickHull3D
 
            // recompute nrml to make sure it is normal to u10 - otherwise could
            // be errors in case vtx[2] is close to u10
-           Vector3d res = new Vector3d();
            res.scale (nrml.dot(u01), u01); // component of nrml along u01
            nrml.sub (res);
            nrml.normalize();
@@ -742,13 +793,13 @@ public class QuickHull3D
               System.out.println (vtx[3].index + ": " + vtx[3].pnt);
             }
 
-           Face[] tris = new Face[4];
+           Face[] tris = simplexTris;
 
            if (vtx[3].pnt.dot (nrml) - d0 < 0)
-            { tris[0] = Face.createTriangle (vtx[0], vtx[1], vtx[2]);
-              tris[1] = Face.createTriangle (vtx[3], vtx[1], vtx[0]);
-              tris[2] = Face.createTriangle (vtx[3], vtx[2], vtx[1]);
-              tris[3] = Face.createTriangle (vtx[3], vtx[0], vtx[2]);
+            { tris[0] = createTriangle (vtx[0], vtx[1], vtx[2]);
+              tris[1] = createTriangle (vtx[3], vtx[1], vtx[0]);
+              tris[2] = createTriangle (vtx[3], vtx[2], vtx[1]);
+              tris[3] = createTriangle (vtx[3], vtx[0], vtx[2]);
 
               for (int i=0; i<3; i++)
                { int k = (i+1)%3;
@@ -757,10 +808,10 @@ public class QuickHull3D
                }
             }
            else
-            { tris[0] = Face.createTriangle (vtx[0], vtx[2], vtx[1]);
-              tris[1] = Face.createTriangle (vtx[3], vtx[0], vtx[1]);
-              tris[2] = Face.createTriangle (vtx[3], vtx[1], vtx[2]);
-              tris[3] = Face.createTriangle (vtx[3], vtx[2], vtx[0]);
+            { tris[0] = createTriangle (vtx[0], vtx[2], vtx[1]);
+              tris[1] = createTriangle (vtx[3], vtx[0], vtx[1]);
+              tris[2] = createTriangle (vtx[3], vtx[1], vtx[2]);
+              tris[3] = createTriangle (vtx[3], vtx[2], vtx[0]);
 
               for (int i=0; i<3; i++)
                { int k = (i+1)%3;
@@ -858,6 +909,26 @@ public class QuickHull3D
            return indices;
          }
 
+        /**
+         * Writes the index of each hull vertex with respect to the original
+         * input points into the given array, in the same order as
+         * {@link #getVertices(double[]) getVertices}. The indices refer
+         * to the points of the coordinate array given to
+         * {@link #build(double[],int) build}.
+         *
+         * @param indices returns the vertex indices. The length of this
+         * array must be at least the number of vertices.
+         * @return the number of vertices
+         * @see QuickHull3D#getVertexPointIndices()
+         */
+        public int getVertexPointIndices(int[] indices)
+         { 
+           for (int i=0; i<numVertices; i++)
+            { indices[i] = vertexPointIndices[i];
+            }
+           return numVertices;
+         }
+
         /**
          * Returns the number of faces in this hull.
          *
@@ -1184,11 +1255,15 @@ public class QuickHull3D
            while (edge != edge0);
          }
 
+        private Face createTriangle (Vertex v0, Vertex v1, Vertex v2)
+         {
+           return Face.createTriangle (v0, v1, v2, 0, facePool);
+         }
+
         private HalfEdge addAdjoiningFace (
            Vertex eyeVtx, HalfEdge he)
          { 
-           Face face = Face.createTriangle (
-              eyeVtx, he.tail(), he.head());
+           Face face = createTriangle (eyeVtx, he.tail(), he.head());
            faces.add (face);
            face.getEdge(-1).setOpposite(he.getOpposite());
            return face.getEdge(0);
@@ -1202,8 +1277,8 @@ public class QuickHull3D
            HalfEdge hedgeSidePrev = null;
            HalfEdge hedgeSideBegin = null;
 
-           for (Iterator it=horizon.iterator(); it.hasNext(); ) 
-            { HalfEdge horizonHe = (HalfEdge)it.next();
+           for (int i=0; i<horizon.size(); i++)
+            { HalfEdge horizonHe = (HalfEdge)horizon.get(i);
               HalfEdge hedgeSide = addAdjoiningFace (eyeVtx, horizonHe);
               if (debug)
                { System.out.println (
@@ -1320,16 +1395,14 @@ public class QuickHull3D
             }
            // remove inactive faces and mark active vertices
            numFaces = 0;
-           for (Iterator it=faces.iterator(); it.hasNext(); )
-            { Face face = (Face)it.next();
-              if (face.mark != Face.VISIBLE)
-               { it.remove();
-               }
-              else
+           for (int i=0; i<faces.size(); i++)
+            { Face face = (Face)faces.get(i);
+              if (face.mark == Face.VISIBLE)
                { markFaceVertices (face, 0);
-                 numFaces++;
+                 Collections.swap (faces, i, numFaces++);
                }
             }
+           faces.setSize (numFaces);
            // reindex vertices
            numVertices = 0;
            for (int i=0; i<numPoints; i++)
@@ -30,6 +30,10 @@ import java.io.*;
  * </pre>
  * will cause timing information to be produced instead.
  *
+ * <p>The option <code>-pooled</code> may be added to either
+ * command, which enables pooling and reuses one hull object
+ * for all input sets.
+ *
  * @author John E. Lloyd, Fall 2004
  */
 public class QuickHull3DTest
@@ -39,6 +43,7 @@ public class QuickHull3DTest
 	static boolean triangulate = false;
 	static boolean doTesting = true;
 	static boolean doTiming = false;
+	static boolean pooled = false;
 
 	static boolean debugEnable = false;
 
@@ -48,6 +53,10 @@ public class QuickHull3DTest
 
 	Random rand; // random number generator
 
+	// hulls reused for all tests if pooled
+	QuickHull3D pooledHull;
+	QuickHull3D pooledDegenerateHull;
+
 	static boolean testRotation = true;
 	static int degeneracyTest = VERTEX_DEGENERACY;
 	static double epsScale = 2.0;
@@ -58,6 +67,10 @@ public class QuickHull3DTest
 	public QuickHull3DTest()
 	 { 
 	   rand = new Random();
+	   pooledHull = new QuickHull3D();
+	   pooledHull.setPooling (true);
+	   pooledDegenerateHull = new QuickHull3D();
+	   pooledDegenerateHull.setPooling (true);
 	   rand.setSeed (0x1234);
 	 }
 
@@ -337,7 +350,7 @@ public class QuickHull3DTest
 	void singleTest (double[] coords, int[][] checkFaces)
 	   throws Exception
 	 {
-	   QuickHull3D hull = new QuickHull3D ();
+	   QuickHull3D hull = (pooled ? pooledHull : new QuickHull3D ());
 	   hull.setDebug (debugEnable);
 
 	   hull.build (coords, coords.length/3);
@@ -401,7 +414,8 @@ public class QuickHull3DTest
 	 {
 	   double[] coordsx = addDegeneracy (degeneracyTest, coords, hull);
 
-	   QuickHull3D xhull = new QuickHull3D();
+	   QuickHull3D xhull =
+	      (pooled ? pooledDegenerateHull : new QuickHull3D());
 	   xhull.setDebug (debugEnable);
 
 	   try
@@ -470,7 +484,7 @@ public class QuickHull3DTest
 
 	void testException (double[] coords, String msg)
 	 {
-	   QuickHull3D hull = new QuickHull3D();
+	   QuickHull3D hull = (pooled ? pooledHull : new QuickHull3D());
 	   Exception ex = null;
 	   try
 	    { hull.build(coords); 
@@ -644,6 +658,7 @@ public class QuickHull3DTest
 	   long t0, t1;
 	   int n = 10;
 	   QuickHull3D hull = new QuickHull3D ();
+	   hull.setPooling (pooled);
 	   System.out.println ("warming up ... ");
 	   for (int i=0; i<2; i++)
 	    { double[] coords = randomSphericalPoints (10000, 1.0);
@@ -671,6 +686,8 @@ public class QuickHull3DTest
 	 *
 	 * <p>If the option <code>-timing</code> is supplied,
 	 * then timing information is produced instead.
+	 * If the option <code>-pooled</code> is supplied,
+	 * then pooling is enabled.
 	 */
 	public static void main (String[] args) 
 	 {
@@ -681,9 +698,12 @@ public class QuickHull3DTest
 	       { doTiming = true;
 		 doTesting = false;
 	       }
+	      else if (args[i].equals ("-pooled"))
+	       { pooled = true;
+	       }
 	      else
 	       { System.out.println (
-"Usage: java quickhull3d.QuickHull3DTest [-timing]");
+"Usage: java quickhull3d.QuickHull3DTest [-timing] [-pooled]");
 		 System.exit(1);
 	       }
 	    }